@@ -0,0 +1,477 @@
+package net.vclj.golab.analysis;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.format.PointSet;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfResult;
+import net.vclj.golab.store.GameStore;
+
+/**
+ * Tromp-Taylor area scoring of the final position of games, to check the
+ * recorded results (RE property) and fill the missing ones.
+ *
+ * The main line is replayed on bitboards : one bit per point in row order, in
+ * arrays of longs, as in {@link PointSet}. Captures and the areas are found by
+ * flood fill, a whole row of bits being grown at a time with shifts and
+ * masks. Setup stones (AB, AW, AE) are applied on the way, suicide removes the
+ * group played.
+ *
+ * Stones marked dead in the last node are removed before counting : white
+ * stones in black territory (TB) and black stones in white territory (TW), as
+ * written by KGS and most servers, and the stones of KGSDE. A point is then
+ * black area if it holds a black stone or if it is empty and only reaches
+ * black stones through empty points, and the other way round.
+ *
+ * A scorer keeps its bitboards from game to game : it is not thread safe, see
+ * {@link #scoreAll(GameStore)} for bulk scoring.
+ */
+public class AreaScorer {
+  /**
+   * The recorded result compared to the score.
+   */
+  public enum Check {
+    /**
+     * Same winner.
+     */
+    MATCH,
+    /**
+     * The recorded winner is not the winner by score.
+     */
+    MISMATCH,
+    /**
+     * No result, or not understood : the score gives one.
+     */
+    MISSING,
+    /**
+     * Won by resignation, time or forfeit, or void : the final position does
+     * not decide.
+     */
+    NOT_SCORED
+  }
+
+  /**
+   * Score of the final position of a game.
+   */
+  public static final class Score {
+    private final int blackArea;
+    private final int whiteArea;
+    private final int deadStones;
+    private final double komi;
+    private final SgfResult recorded;
+
+    Score(int blackArea, int whiteArea, int deadStones, double komi, SgfResult recorded) {
+      this.blackArea = blackArea;
+      this.whiteArea = whiteArea;
+      this.deadStones = deadStones;
+      this.komi = komi;
+      this.recorded = recorded;
+    }
+
+    /**
+     * @return the black stones and the empty points reaching black only
+     */
+    public int getBlackArea() {
+      return blackArea;
+    }
+
+    public int getWhiteArea() {
+      return whiteArea;
+    }
+
+    /**
+     * @return the number of stones removed as dead before counting
+     */
+    public int getDeadStones() {
+      return deadStones;
+    }
+
+    /**
+     * @return the komi, 0 if the game has none
+     */
+    public double getKomi() {
+      return komi;
+    }
+
+    /**
+     * @return black area minus white area and komi, positive if black wins
+     */
+    public double getMargin() {
+      return blackArea - whiteArea - komi;
+    }
+
+    public SgfResult.Winner getWinner() {
+      double margin = getMargin();
+      return margin > 0 ? SgfResult.Winner.BLACK : margin < 0 ? SgfResult.Winner.WHITE : SgfResult.Winner.DRAW;
+    }
+
+    /**
+     * @return the result of the score as an RE value ("B+3.5", "W+0.5", "0")
+     */
+    public String toResult() {
+      double margin = getMargin();
+      if (margin == 0) {
+        return "0";
+      }
+      double abs = Math.abs(margin);
+      String value = abs == Math.rint(abs) ? Long.toString((long) abs) : Double.toString(abs);
+      return (margin > 0 ? "B+" : "W+") + value;
+    }
+
+    /**
+     * @return the recorded result, null if the game has none
+     */
+    public SgfResult getRecordedResult() {
+      return recorded;
+    }
+
+    public Check check() {
+      if (recorded == null || recorded.getWinner() == SgfResult.Winner.UNKNOWN) {
+        return Check.MISSING;
+      }
+      if (recorded.isResign() || recorded.isTime() || recorded.isForfeit()
+          || recorded.getWinner() == SgfResult.Winner.NONE) {
+        return Check.NOT_SCORED;
+      }
+      return recorded.getWinner() == getWinner() ? Check.MATCH : Check.MISMATCH;
+    }
+
+    /**
+     * @return the difference between the margin recorded and the one of the
+     *         score (area and territory counting differ by a few points), NaN
+     *         if the result has no margin
+     */
+    public double getMarginDifference() {
+      if (recorded == null || !recorded.hasMargin()) {
+        return Double.NaN;
+      }
+      double margin = recorded.isWhiteWin() ? -recorded.getMargin() : recorded.getMargin();
+      return margin - getMargin();
+    }
+
+    @Override
+    public String toString() {
+      return "B " + blackArea + " W " + whiteArea + " komi " + komi + " : " + toResult() + " ("
+          + (recorded == null ? "no result" : recorded.getText()) + ", " + check() + ")";
+    }
+  }
+
+  private int width;
+  private int height;
+  private int words;
+  // boards, and the masks of the board and of its first and last columns
+  private long[] black = new long[0];
+  private long[] white = new long[0];
+  private long[] board;
+  private long[] firstColumn;
+  private long[] lastColumn;
+  // work boards
+  private long[] group;
+  private long[] next;
+  private long[] shifted;
+  private long[] mask;
+
+  /**
+   * Replays the main line of game and scores the final position.
+   *
+   * @throws IllegalArgumentException if a move or a setup point is off board
+   */
+  public Score score(SgfGame game) {
+    int w = game.getBoardWidth();
+    int h = game.getBoardHeight();
+    reset(w, h);
+    // the root properties are those of the game
+    Map<String, String> root = game.getProperties();
+    setup(points(root));
+    SgfGameNode last = null;
+    for (SgfGameNode node = game.getRootNode(); node != null; node = node.getNextNode()) {
+      setup(points(node));
+      if (node.isMove()) {
+        String value = node.getMoveString();
+        if (!CoordinateCodec.isSgfPass(value, Math.max(w, h))) {
+          int point = CoordinateCodec.sgfToPoint(value);
+          play(index(CoordinateCodec.pointX(point), CoordinateCodec.pointY(point)), node.isBlack());
+        }
+      }
+      last = node;
+    }
+    int dead = removeDead(last == game.getRootNode() ? points(root) : points(last));
+    double komi = game.getKomi();
+    return score(Double.isNaN(komi) ? 0 : komi, dead, game.getResult());
+  }
+
+  /**
+   * Scores every game of store in parallel.
+   *
+   * @return the scores by index of the games, null for the games that cannot
+   *         be replayed
+   */
+  public static Score[] scoreAll(GameStore store) {
+    Score[] rtrn = new Score[store.size()];
+    ThreadLocal<AreaScorer> scorers = ThreadLocal.withInitial(AreaScorer::new);
+    store.parallelForEach(record -> {
+      try {
+        rtrn[record.getIndex()] = scorers.get().score(record.toSgfGame());
+      }
+      catch (IllegalArgumentException e) {
+        // invalid points : not scored
+      }
+    });
+    return rtrn;
+  }
+
+  private void reset(int w, int h) {
+    if (w != width || h != height) {
+      width = w;
+      height = h;
+      words = (w * h + 63) >>> 6;
+      board = new long[words];
+      firstColumn = new long[words];
+      lastColumn = new long[words];
+      for (int i = 0; i < w * h; i++) {
+        set(board, i);
+        if (i % w == 0) {
+          set(firstColumn, i);
+        }
+        if (i % w == w - 1) {
+          set(lastColumn, i);
+        }
+      }
+      black = new long[words];
+      white = new long[words];
+      group = new long[words];
+      next = new long[words];
+      shifted = new long[words];
+      mask = new long[words];
+    } else {
+      Arrays.fill(black, 0L);
+      Arrays.fill(white, 0L);
+    }
+  }
+
+  private int index(int x, int y) {
+    if (x >= width || y >= height) {
+      throw new IllegalArgumentException("Point off the " + width + "x" + height + " board : " + x + "," + y);
+    }
+    return y * width + x;
+  }
+
+  private static void set(long[] bits, int i) {
+    bits[i >>> 6] |= 1L << i;
+  }
+
+  private static void clear(long[] bits, int i) {
+    bits[i >>> 6] &= ~(1L << i);
+  }
+
+  private static boolean get(long[] bits, int i) {
+    return (bits[i >>> 6] & 1L << i) != 0;
+  }
+
+  /**
+   * The point lists of a node, null for the properties it does not have.
+   */
+  private interface PointLists {
+    PointSet get(String key);
+  }
+
+  private PointLists points(SgfGameNode node) {
+    return key -> node.getProperty(key) == null ? null
+        : PointSet.parse(node.getPropertyValues(key), width, height);
+  }
+
+  private PointLists points(Map<String, String> properties) {
+    return key -> properties.containsKey(key) ? PointSet.parse(properties.get(key), width, height) : null;
+  }
+
+  private void setup(PointLists node) {
+    forEach(node, "AE", i -> {
+      clear(black, i);
+      clear(white, i);
+    });
+    forEach(node, "AB", i -> {
+      set(black, i);
+      clear(white, i);
+    });
+    forEach(node, "AW", i -> {
+      set(white, i);
+      clear(black, i);
+    });
+  }
+
+  private interface IndexAction {
+    void apply(int index);
+  }
+
+  private void forEach(PointLists node, String key, IndexAction action) {
+    PointSet points = node.get(key);
+    if (points == null) {
+      return;
+    }
+    for (int i = points.nextIndex(0); i >= 0; i = points.nextIndex(i + 1)) {
+      action.apply(i);
+    }
+  }
+
+  /**
+   * Plays a stone at index i : the opponent groups left without liberty are
+   * captured, then the group played if it has none.
+   */
+  private void play(int i, boolean isBlack) {
+    long[] own = isBlack ? black : white;
+    long[] other = isBlack ? white : black;
+    clear(other, i);
+    set(own, i);
+    int x = i % width;
+    if (x > 0) {
+      captureAt(i - 1, other);
+    }
+    if (x < width - 1) {
+      captureAt(i + 1, other);
+    }
+    if (i >= width) {
+      captureAt(i - width, other);
+    }
+    if (i + width < width * height) {
+      captureAt(i + width, other);
+    }
+    captureAt(i, own);
+  }
+
+  /**
+   * Removes the group of stones holding index i if it has no liberty.
+   */
+  private void captureAt(int i, long[] stones) {
+    if (!get(stones, i)) {
+      return;
+    }
+    Arrays.fill(group, 0L);
+    set(group, i);
+    fill(group, stones);
+    // the liberties : the points around the group that are empty
+    grow(group, next);
+    for (int k = 0; k < words; k++) {
+      if ((next[k] & ~black[k] & ~white[k]) != 0) {
+        return;
+      }
+    }
+    for (int k = 0; k < words; k++) {
+      stones[k] &= ~group[k];
+    }
+  }
+
+  /**
+   * Grows region to all the points of within connected to it.
+   */
+  private void fill(long[] region, long[] within) {
+    boolean changed = true;
+    while (changed) {
+      grow(region, next);
+      changed = false;
+      for (int k = 0; k < words; k++) {
+        long bits = next[k] & within[k];
+        if (bits != region[k]) {
+          region[k] |= bits;
+          changed = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets to the points of region and the points next to them.
+   */
+  private void grow(long[] region, long[] to) {
+    System.arraycopy(region, 0, to, 0, words);
+    // east : x + 1, the points moving to the first column come from the last
+    shiftUp(region, 1);
+    for (int k = 0; k < words; k++) {
+      to[k] |= shifted[k] & ~firstColumn[k];
+    }
+    shiftDown(region, 1);
+    for (int k = 0; k < words; k++) {
+      to[k] |= shifted[k] & ~lastColumn[k];
+    }
+    shiftUp(region, width);
+    for (int k = 0; k < words; k++) {
+      to[k] |= shifted[k];
+    }
+    shiftDown(region, width);
+    for (int k = 0; k < words; k++) {
+      to[k] |= shifted[k];
+      to[k] &= board[k];
+    }
+  }
+
+  /**
+   * Shifts the bits of region to higher indexes by 1 to 63, into shifted.
+   */
+  private void shiftUp(long[] region, int bits) {
+    for (int k = words - 1; k > 0; k--) {
+      shifted[k] = region[k] << bits | region[k - 1] >>> (64 - bits);
+    }
+    shifted[0] = region[0] << bits;
+  }
+
+  private void shiftDown(long[] region, int bits) {
+    for (int k = 0; k < words - 1; k++) {
+      shifted[k] = region[k] >>> bits | region[k + 1] << (64 - bits);
+    }
+    shifted[words - 1] = region[words - 1] >>> bits;
+  }
+
+  /**
+   * Removes the stones marked dead in node.
+   *
+   * @return the number of stones removed
+   */
+  private int removeDead(PointLists node) {
+    int[] rtrn = new int[1];
+    forEach(node, "TB", i -> {
+      if (get(white, i)) {
+        clear(white, i);
+        rtrn[0]++;
+      }
+    });
+    forEach(node, "TW", i -> {
+      if (get(black, i)) {
+        clear(black, i);
+        rtrn[0]++;
+      }
+    });
+    forEach(node, "KGSDE", i -> {
+      if (get(black, i) || get(white, i)) {
+        clear(black, i);
+        clear(white, i);
+        rtrn[0]++;
+      }
+    });
+    return rtrn[0];
+  }
+
+  private Score score(double komi, int dead, SgfResult recorded) {
+    // empty points reached by each color
+    for (int k = 0; k < words; k++) {
+      mask[k] = board[k] & ~white[k];
+      group[k] = black[k];
+    }
+    fill(group, mask);
+    long[] blackReach = group.clone();
+    for (int k = 0; k < words; k++) {
+      mask[k] = board[k] & ~black[k];
+      group[k] = white[k];
+    }
+    fill(group, mask);
+    int blackArea = 0;
+    int whiteArea = 0;
+    for (int k = 0; k < words; k++) {
+      long empty = board[k] & ~black[k] & ~white[k];
+      blackArea += Long.bitCount(black[k]) + Long.bitCount(blackReach[k] & empty & ~group[k]);
+      whiteArea += Long.bitCount(white[k]) + Long.bitCount(group[k] & empty & ~blackReach[k]);
+    }
+    return new Score(blackArea, whiteArea, dead, komi, recorded);
+  }
+}
@@ -0,0 +1,195 @@
+package net.vclj.golab.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Square go board with captures, simple ko and liberty counts, one byte per
+ * point (index y * size + x).
+ *
+ * Groups are found by iterative walks with a reused stack and epoch marks, so
+ * playing a move allocates nothing. A board is not thread safe.
+ */
+final class Board {
+  static final byte EMPTY = 0;
+  static final byte BLACK = 1;
+  static final byte WHITE = 2;
+
+  private final int size;
+  private final byte[] colors;
+  private int koPoint = -1;
+
+  // walks : stack of points, group and liberty marks by epoch
+  private final int[] stack;
+  private final int[] groupMarks;
+  private final int[] libertyMarks;
+  private int epoch = 0;
+
+  Board(int size) {
+    this.size = size;
+    colors = new byte[size * size];
+    stack = new int[size * size];
+    groupMarks = new int[size * size];
+    libertyMarks = new int[size * size];
+  }
+
+  int getSize() {
+    return size;
+  }
+
+  byte getColor(int index) {
+    return colors[index];
+  }
+
+  /**
+   * @return the point the player to move cannot play because of ko, -1 if
+   *         there is none
+   */
+  int getKoPoint() {
+    return koPoint;
+  }
+
+  void clear() {
+    Arrays.fill(colors, EMPTY);
+    koPoint = -1;
+  }
+
+  /**
+   * Puts a stone, or removes it for EMPTY, without capture (setup).
+   */
+  void setup(int index, byte color) {
+    colors[index] = color;
+    koPoint = -1;
+  }
+
+  void pass() {
+    koPoint = -1;
+  }
+
+  /**
+   * Plays a stone : the opponent groups left without liberty are captured,
+   * then the group played if it has none (suicide).
+   */
+  void play(int index, byte color) {
+    byte other = (byte) (3 - color);
+    colors[index] = color;
+    int captured = 0;
+    int capturedPoint = -1;
+    int x = index % size;
+    int y = index / size;
+    for (int d = 0; d < 4; d++) {
+      int neighbor = neighbor(x, y, d);
+      if (neighbor >= 0 && colors[neighbor] == other && countLiberties(neighbor) == 0) {
+        captured += remove(neighbor);
+        capturedPoint = neighbor;
+      }
+    }
+    int liberties = countLiberties(index);
+    if (liberties == 0) {
+      remove(index);
+    }
+    // a single stone capturing a single stone and left in atari : the
+    // opponent cannot take back at once
+    koPoint = captured == 1 && liberties == 1 && isSingle(index) ? capturedPoint : -1;
+  }
+
+  /**
+   * @return the neighbor of (x, y) in direction d (0 to 3), -1 off board
+   */
+  private int neighbor(int x, int y, int d) {
+    switch (d) {
+    case 0:
+      return x > 0 ? y * size + x - 1 : -1;
+    case 1:
+      return x < size - 1 ? y * size + x + 1 : -1;
+    case 2:
+      return y > 0 ? (y - 1) * size + x : -1;
+    default:
+      return y < size - 1 ? (y + 1) * size + x : -1;
+    }
+  }
+
+  private boolean isSingle(int index) {
+    int x = index % size;
+    int y = index / size;
+    for (int d = 0; d < 4; d++) {
+      int neighbor = neighbor(x, y, d);
+      if (neighbor >= 0 && colors[neighbor] == colors[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Marks the group of index with a new epoch.
+   *
+   * @return its number of liberties
+   */
+  private int countLiberties(int index) {
+    epoch++;
+    byte color = colors[index];
+    int rtrn = 0;
+    int top = 0;
+    stack[top++] = index;
+    groupMarks[index] = epoch;
+    while (top > 0) {
+      int point = stack[--top];
+      int x = point % size;
+      int y = point / size;
+      for (int d = 0; d < 4; d++) {
+        int neighbor = neighbor(x, y, d);
+        if (neighbor < 0) {
+          continue;
+        }
+        if (colors[neighbor] == EMPTY) {
+          if (libertyMarks[neighbor] != epoch) {
+            libertyMarks[neighbor] = epoch;
+            rtrn++;
+          }
+        } else if (colors[neighbor] == color && groupMarks[neighbor] != epoch) {
+          groupMarks[neighbor] = epoch;
+          stack[top++] = neighbor;
+        }
+      }
+    }
+    return rtrn;
+  }
+
+  /**
+   * Removes the group marked by the last count of liberties of index.
+   *
+   * @return the number of stones removed
+   */
+  private int remove(int index) {
+    int rtrn = 0;
+    int mark = groupMarks[index];
+    for (int point = 0; point < colors.length; point++) {
+      if (groupMarks[point] == mark && colors[point] != EMPTY) {
+        colors[point] = EMPTY;
+        rtrn++;
+      }
+    }
+    return rtrn;
+  }
+
+  /**
+   * Sets the number of liberties of the group of each stone, 0 for the empty
+   * points, capped to 255.
+   */
+  void liberties(int[] out) {
+    Arrays.fill(out, 0, colors.length, -1);
+    for (int index = 0; index < colors.length; index++) {
+      if (colors[index] == EMPTY) {
+        out[index] = 0;
+      } else if (out[index] < 0) {
+        int liberties = Math.min(255, countLiberties(index));
+        int mark = groupMarks[index];
+        for (int point = index; point < colors.length; point++) {
+          if (groupMarks[point] == mark) {
+            out[point] = liberties;
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,533 @@
+package net.vclj.golab.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.entity.Move;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfTreeIndex;
+
+/**
+ * Inverted index of the comments of games (C, GC and N properties, comments of
+ * the moves) : which nodes of which games mention a word or a phrase.
+ *
+ * Each commented node is a document. Its texts are split into lower case words
+ * (runs of letters and digits), and each word keeps a postings list of the
+ * documents it appears in with its positions, delta encoded in variable length
+ * bytes. Documents are numbered in the order they are added, so that adding a
+ * game appends to the lists of its words.
+ *
+ * A hit is a (game, node) pair : the node is the id of the {@link Move} for
+ * games of the database, 0 for the root properties, and the preorder id (see
+ * {@link SgfTreeIndex#getNode(int)}) for parsed games.
+ */
+public class CommentIndex {
+  // position gap between the properties of a node, so phrases do not span them
+  private static final int FIELD_GAP = 100;
+  private static final String[] ROOT_PROPERTIES = { "GC", "C", "N" };
+  private static final String[] NODE_PROPERTIES = { "C", "N" };
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // documents
+  private int documentCount = 0;
+  private long[] games = new long[1024];
+  private long[] nodes = new long[1024];
+
+  // words and their postings : document delta, position count, position deltas
+  private final Map<String, Integer> words = new HashMap<>();
+  private byte[][] postings = new byte[1024][];
+  private int[] postingSizes = new int[1024];
+  private int[] lastDocuments = new int[1024];
+  private int[] documentFrequencies = new int[1024];
+
+  /**
+   * A node whose comments match a query.
+   */
+  public static final class Hit {
+    private final long gameId;
+    private final long node;
+
+    Hit(long gameId, long node) {
+      this.gameId = gameId;
+      this.node = node;
+    }
+
+    public long getGameId() {
+      return gameId;
+    }
+
+    /**
+     * @return the id of the move, 0 for the root, or the preorder id of the
+     *         node for a parsed game
+     */
+    public long getNode() {
+      return node;
+    }
+
+    @Override
+    public String toString() {
+      return gameId + "/" + node;
+    }
+  }
+
+  /**
+   * The comments of a game of the database, copied out of the entity : its
+   * root properties, id 0, and the comments of its moves by move id.
+   */
+  public static final class GameComments {
+    private final long gameId;
+    private final List<Long> ids;
+    private final List<String[]> texts;
+
+    GameComments(long gameId, List<Long> ids, List<String[]> texts) {
+      this.gameId = gameId;
+      this.ids = ids;
+      this.texts = texts;
+    }
+
+    public long getGameId() {
+      return gameId;
+    }
+
+    /**
+     * @return the number of commented nodes
+     */
+    public int size() {
+      return ids.size();
+    }
+  }
+
+  /**
+   * @return the comments of a game of the database : its root properties and
+   *         the comments of its moves
+   */
+  public static GameComments comments(Game game) {
+    List<Long> ids = new ArrayList<>();
+    List<String[]> texts = new ArrayList<>();
+    String[] root = texts(game.getProperties(), ROOT_PROPERTIES);
+    if (root != null) {
+      ids.add(0L);
+      texts.add(root);
+    }
+    // iterative walk : main lines may be very long
+    Deque<Move> moves = new ArrayDeque<>();
+    if (game.getFirstMove() != null) {
+      moves.push(game.getFirstMove());
+    }
+    while (!moves.isEmpty()) {
+      Move move = moves.pop();
+      if (move.getComment() != null) {
+        ids.add(move.getId());
+        texts.add(new String[] { move.getComment() });
+      }
+      for (int i = move.getNextMoves().size() - 1; i >= 0; i--) {
+        moves.push(move.getNextMoves().get(i));
+      }
+    }
+    return new GameComments(game.getId(), ids, texts);
+  }
+
+  /**
+   * Indexes the comments of a game of the database, see
+   * {@link #comments(Game)}.
+   */
+  public void add(Game game) {
+    add(comments(game));
+  }
+
+  public void add(GameComments comments) {
+    add(comments.gameId, comments.ids, comments.texts);
+  }
+
+  /**
+   * Indexes the comments of a parsed game, by preorder id of the nodes.
+   */
+  public void add(long gameId, SgfGame game) {
+    List<Long> ids = new ArrayList<>();
+    List<String[]> texts = new ArrayList<>();
+    long id = 0;
+    for (SgfGameNode node : (Iterable<SgfGameNode>) game.preorder()::iterator) {
+      String[] text = texts(node.getProperties(), NODE_PROPERTIES);
+      if (id == 0) {
+        // the root properties are those of the game
+        String[] root = texts(game.getProperties(), ROOT_PROPERTIES);
+        text = text == null ? root : root == null ? text : concat(root, text);
+      }
+      if (text != null) {
+        ids.add(id);
+        texts.add(text);
+      }
+      id++;
+    }
+    add(gameId, ids, texts);
+  }
+
+  private static String[] texts(Map<String, String> properties, String[] keys) {
+    String[] rtrn = null;
+    for (String key : keys) {
+      String value = properties.get(key);
+      if (value != null) {
+        rtrn = rtrn == null ? new String[] { value } : concat(rtrn, new String[] { value });
+      }
+    }
+    return rtrn;
+  }
+
+  private static String[] concat(String[] first, String[] second) {
+    String[] rtrn = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, rtrn, first.length, second.length);
+    return rtrn;
+  }
+
+  /**
+   * Indexes the comments of games, tokenized in parallel then added in the
+   * order of the list : the hits come in this order, as after adding each game
+   * in turn.
+   */
+  public void addAll(List<GameComments> comments) {
+    List<List<Map<String, int[]>>> documents = comments.parallelStream().map(game -> documents(game.texts))
+        .collect(Collectors.toList());
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < comments.size(); i++) {
+        append(comments.get(i).gameId, comments.get(i).ids, documents.get(i));
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void add(long gameId, List<Long> ids, List<String[]> texts) {
+    // tokenized out of the lock
+    List<Map<String, int[]>> documents = documents(texts);
+    lock.writeLock().lock();
+    try {
+      append(gameId, ids, documents);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static List<Map<String, int[]>> documents(List<String[]> texts) {
+    List<Map<String, int[]>> rtrn = new ArrayList<>();
+    for (String[] text : texts) {
+      rtrn.add(positions(text));
+    }
+    return rtrn;
+  }
+
+  /**
+   * Appends the documents of a game, under the write lock.
+   */
+  private void append(long gameId, List<Long> ids, List<Map<String, int[]>> documents) {
+    for (int i = 0; i < documents.size(); i++) {
+      if (documentCount == games.length) {
+        games = Arrays.copyOf(games, documentCount * 2);
+        nodes = Arrays.copyOf(nodes, documentCount * 2);
+      }
+      int document = documentCount++;
+      games[document] = gameId;
+      nodes[document] = ids.get(i);
+      for (Map.Entry<String, int[]> word : documents.get(i).entrySet()) {
+        append(wordId(word.getKey()), document, word.getValue());
+      }
+    }
+  }
+
+  /**
+   * @return the positions of each word of the texts
+   */
+  private static Map<String, int[]> positions(String[] texts) {
+    Map<String, int[]> rtrn = new HashMap<>();
+    int position = 0;
+    for (String text : texts) {
+      for (String word : tokenize(text)) {
+        int[] positions = rtrn.get(word);
+        positions = positions == null ? new int[1] : Arrays.copyOf(positions, positions.length + 1);
+        positions[positions.length - 1] = position++;
+        rtrn.put(word, positions);
+      }
+      position += FIELD_GAP;
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the words of text : runs of letters and digits, in lower case
+   */
+  public static List<String> tokenize(String text) {
+    List<String> rtrn = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (inWord && start < 0) {
+        start = i;
+      } else if (!inWord && start >= 0) {
+        rtrn.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return rtrn;
+  }
+
+  private int wordId(String word) {
+    Integer rtrn = words.get(word);
+    if (rtrn == null) {
+      rtrn = words.size();
+      words.put(word, rtrn);
+      if (rtrn == postings.length) {
+        int capacity = rtrn * 2;
+        postings = Arrays.copyOf(postings, capacity);
+        postingSizes = Arrays.copyOf(postingSizes, capacity);
+        lastDocuments = Arrays.copyOf(lastDocuments, capacity);
+        documentFrequencies = Arrays.copyOf(documentFrequencies, capacity);
+      }
+      postings[rtrn] = new byte[8];
+      lastDocuments[rtrn] = -1;
+    }
+    return rtrn;
+  }
+
+  private void append(int word, int document, int[] positions) {
+    writeVarint(word, document - lastDocuments[word]);
+    writeVarint(word, positions.length);
+    int previous = 0;
+    for (int position : positions) {
+      writeVarint(word, position - previous);
+      previous = position;
+    }
+    lastDocuments[word] = document;
+    documentFrequencies[word]++;
+  }
+
+  private void writeVarint(int word, int value) {
+    byte[] bytes = postings[word];
+    int size = postingSizes[word];
+    if (size + 5 > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 5));
+      postings[word] = bytes;
+    }
+    while ((value & ~0x7F) != 0) {
+      bytes[size++] = (byte) (value & 0x7F | 0x80);
+      value >>>= 7;
+    }
+    bytes[size++] = (byte) value;
+    postingSizes[word] = size;
+  }
+
+  /**
+   * Reads a postings list document by document.
+   */
+  private final class Cursor {
+    private final byte[] bytes;
+    private final int end;
+    private int pos = 0;
+    private int document = -1;
+    private int[] positions = new int[8];
+    private int positionCount = 0;
+
+    Cursor(int word) {
+      bytes = postings[word];
+      end = postingSizes[word];
+    }
+
+    /**
+     * @return the next document, Integer.MAX_VALUE at the end
+     */
+    int next() {
+      if (pos >= end) {
+        document = Integer.MAX_VALUE;
+        return document;
+      }
+      document += readVarint();
+      positionCount = readVarint();
+      if (positionCount > positions.length) {
+        positions = new int[Math.max(positionCount, positions.length * 2)];
+      }
+      int position = 0;
+      for (int i = 0; i < positionCount; i++) {
+        position += readVarint();
+        positions[i] = position;
+      }
+      return document;
+    }
+
+    /**
+     * @return the first document at or after target
+     */
+    int advance(int target) {
+      while (document < target) {
+        next();
+      }
+      return document;
+    }
+
+    boolean hasPosition(int position) {
+      return Arrays.binarySearch(positions, 0, positionCount, position) >= 0;
+    }
+
+    private int readVarint() {
+      int rtrn = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = bytes[pos++];
+        rtrn |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return rtrn;
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the nodes whose comments hold all the words of query. Words between
+   * double quotes must follow each other as written.
+   *
+   * @param limit the maximal number of hits
+   * @return the hits in the order the games were added
+   */
+  public List<Hit> search(String query, int limit) {
+    // phrases : the words of each quoted part, or single words
+    List<List<String>> phrases = new ArrayList<>();
+    String[] parts = query.split("\"", -1);
+    for (int i = 0; i < parts.length; i++) {
+      List<String> tokens = tokenize(parts[i]);
+      if (i % 2 == 1) {
+        if (!tokens.isEmpty()) {
+          phrases.add(tokens);
+        }
+      } else {
+        for (String token : tokens) {
+          phrases.add(Arrays.asList(token));
+        }
+      }
+    }
+    List<Hit> rtrn = new ArrayList<>();
+    if (phrases.isEmpty() || limit <= 0) {
+      return rtrn;
+    }
+    lock.readLock().lock();
+    try {
+      // one cursor per word of each phrase
+      List<Cursor[]> cursors = new ArrayList<>();
+      Cursor rarest = null;
+      int rarestFrequency = Integer.MAX_VALUE;
+      for (List<String> phrase : phrases) {
+        Cursor[] phraseCursors = new Cursor[phrase.size()];
+        for (int i = 0; i < phrase.size(); i++) {
+          Integer word = words.get(phrase.get(i));
+          if (word == null) {
+            return rtrn;
+          }
+          phraseCursors[i] = new Cursor(word);
+          if (documentFrequencies[word] < rarestFrequency) {
+            rarestFrequency = documentFrequencies[word];
+            rarest = phraseCursors[i];
+          }
+        }
+        cursors.add(phraseCursors);
+      }
+      // leapfrog : the rarest word proposes, the others advance to it
+      int candidate = rarest.next();
+      while (candidate != Integer.MAX_VALUE && rtrn.size() < limit) {
+        int next = candidate;
+        for (Cursor[] phraseCursors : cursors) {
+          for (Cursor cursor : phraseCursors) {
+            next = Math.max(next, cursor.advance(candidate));
+          }
+        }
+        if (next == candidate) {
+          boolean match = true;
+          for (Cursor[] phraseCursors : cursors) {
+            match = match && matchesPhrase(phraseCursors);
+          }
+          if (match) {
+            rtrn.add(new Hit(games[candidate], nodes[candidate]));
+          }
+          candidate = rarest.next();
+        } else {
+          candidate = rarest.advance(next);
+        }
+      }
+      return rtrn;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return true if the words of the cursors, all on the same document, follow
+   *         each other
+   */
+  private static boolean matchesPhrase(Cursor[] cursors) {
+    if (cursors.length == 1) {
+      return true;
+    }
+    Cursor first = cursors[0];
+    for (int i = 0; i < first.positionCount; i++) {
+      int start = first.positions[i];
+      boolean match = true;
+      for (int k = 1; k < cursors.length && match; k++) {
+        match = cursors[k].hasPosition(start + k);
+      }
+      if (match) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of documents : nodes with comments
+   */
+  public int getDocumentCount() {
+    lock.readLock().lock();
+    try {
+      return documentCount;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getWordCount() {
+    lock.readLock().lock();
+    try {
+      return words.size();
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the size of the postings lists in bytes
+   */
+  public long getPostingsSize() {
+    lock.readLock().lock();
+    try {
+      long rtrn = 0;
+      for (int word = 0; word < words.size(); word++) {
+        rtrn += postingSizes[word];
+      }
+      return rtrn;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package net.vclj.golab.analysis;
+
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.repository.GameRepository;
+import net.vclj.golab.service.GameImportService;
+
+/**
+ * Search of the comments of the games of the database : a {@link CommentIndex}
+ * rebuilt on demand from the repository and updated with each game imported
+ * (see {@link RepositoryIndex}).
+ */
+@Service
+public class CommentSearch extends RepositoryIndex<CommentIndex.GameComments, CommentIndex> {
+  public static final int DEFAULT_LIMIT = 100;
+
+  public CommentSearch(GameRepository repository, GameImportService importService,
+      PlatformTransactionManager transactionManager) {
+    super(repository, importService, transactionManager, new CommentIndex());
+  }
+
+  @Override
+  protected CommentIndex.GameComments extract(Game game) {
+    CommentIndex.GameComments rtrn = CommentIndex.comments(game);
+    return rtrn.size() == 0 ? null : rtrn;
+  }
+
+  @Override
+  protected CommentIndex build(List<CommentIndex.GameComments> comments) {
+    CommentIndex rtrn = new CommentIndex();
+    rtrn.addAll(comments);
+    return rtrn;
+  }
+
+  @Override
+  protected void add(CommentIndex index, CommentIndex.GameComments comments) {
+    index.add(comments);
+  }
+
+  @Override
+  protected String describe(CommentIndex index) {
+    return "Comment index of " + index.getDocumentCount() + " nodes (" + index.getWordCount() + " words, "
+        + index.getPostingsSize() + " bytes of postings)";
+  }
+
+  @Override
+  public CommentIndex getIndex() {
+    return super.getIndex();
+  }
+
+  /**
+   * @see CommentIndex#search(String, int)
+   */
+  public List<CommentIndex.Hit> search(String query) {
+    return getIndex().search(query, DEFAULT_LIMIT);
+  }
+}
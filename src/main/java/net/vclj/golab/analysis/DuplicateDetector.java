@@ -0,0 +1,554 @@
+package net.vclj.golab.analysis;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.entity.Move;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+
+/**
+ * Finds the near duplicates of a game collection : the same game published
+ * again with an extra move, a truncated ending, other comments or a few moves
+ * played in another order.
+ *
+ * The main line of each game is cut into shingles of {@link #SHINGLE}
+ * consecutive moves and summarized by a MinHash signature of {@link #HASHES}
+ * values : the share of equal values of two signatures estimates the Jaccard
+ * similarity of their shingle sets. Signatures are bucketed by locality
+ * sensitive hashing, {@link #BANDS} bands of {@link #ROWS} values : games
+ * sharing a band are compared instead of all the pairs. Two games of
+ * similarity s share a band with probability 1 - (1 - s^4)^32 : 0.9998 at
+ * {@link #DEFAULT_THRESHOLD} 0.7, 0.87 at 0.5 and 0.23 at 0.3, the
+ * candidates below the threshold being dropped once compared.
+ *
+ * Signatures are computed on import and stored with the games (see
+ * {@link Game#getSignature()}). The index is in arrays : the signatures one
+ * after the other, and the buckets as chains of rows whose heads are in an
+ * open addressing table of the band keys.
+ */
+public class DuplicateDetector {
+  public static final int SHINGLE = 3;
+  public static final int HASHES = 128;
+  public static final int BANDS = 32;
+  public static final int ROWS = HASHES / BANDS;
+  public static final double DEFAULT_THRESHOLD = 0.7;
+
+  private static final long[] MULTIPLIERS = new long[HASHES];
+  private static final long[] INCREMENTS = new long[HASHES];
+
+  static {
+    for (int j = 0; j < HASHES; j++) {
+      MULTIPLIERS[j] = mix(2 * j + 1) | 1;
+      INCREMENTS[j] = mix(2 * j + 2);
+    }
+  }
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private int size = 0;
+  private long[] ids = new long[1024];
+  private int[] signatures = new int[1024 * HASHES];
+  // buckets : the last row of each band key, -1 for a free slot, in a table
+  // probed linearly and at most half full, then the previous row of the same
+  // key for each row and band
+  private long[] bucketKeys = new long[4096];
+  private int[] bucketRows = filled(4096);
+  private int bucketCount = 0;
+  private int[] previous = new int[1024 * BANDS];
+
+  /**
+   * A game similar to another.
+   */
+  public static final class Match {
+    private final long id;
+    private final long otherId;
+    private final double similarity;
+
+    Match(long id, long otherId, double similarity) {
+      this.id = id;
+      this.otherId = otherId;
+      this.similarity = similarity;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public long getOtherId() {
+      return otherId;
+    }
+
+    /**
+     * @return the estimated Jaccard similarity of the shingles of both games
+     */
+    public double getSimilarity() {
+      return similarity;
+    }
+
+    @Override
+    public String toString() {
+      return id + "~" + otherId + " " + similarity;
+    }
+  }
+
+  /**
+   * Games connected by similar pairs.
+   */
+  public static final class Cluster {
+    private final long[] ids;
+    private final List<Match> matches;
+
+    Cluster(long[] ids, List<Match> matches) {
+      this.ids = ids;
+      this.matches = matches;
+    }
+
+    /**
+     * @return the ids of the games, sorted
+     */
+    public long[] getIds() {
+      return ids.clone();
+    }
+
+    public int size() {
+      return ids.length;
+    }
+
+    /**
+     * @return the similar pairs linking the games of the cluster
+     */
+    public List<Match> getMatches() {
+      return matches;
+    }
+
+    /**
+     * @return the lowest similarity of the pairs
+     */
+    public double getMinSimilarity() {
+      double rtrn = 1;
+      for (Match match : matches) {
+        rtrn = Math.min(rtrn, match.getSimilarity());
+      }
+      return rtrn;
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(ids) + " " + matches;
+    }
+  }
+
+  /**
+   * The signature of a game, copied out of the entity : the one stored, or the
+   * moves of its main line to compute it from.
+   */
+  public static final class GameSignature {
+    private final long gameId;
+    private final int[] stored;
+    private final int[] moves;
+
+    GameSignature(long gameId, int[] stored, int[] moves) {
+      this.gameId = gameId;
+      this.stored = stored;
+      this.moves = moves;
+    }
+
+    public long getGameId() {
+      return gameId;
+    }
+
+    /**
+     * @return the signature, computed if none was stored, null if the game is
+     *         too short to be compared
+     */
+    public int[] getSignature() {
+      return stored != null ? stored : signature(moves);
+    }
+  }
+
+  /**
+   * @return the moves of the main line of game, see {@link OpeningTrie#move}
+   */
+  public static int[] moves(Game game) {
+    List<Move> line = new ArrayList<>();
+    for (Move move = game.getFirstMove(); move != null;) {
+      line.add(move);
+      move = move.getNextMoves().isEmpty() ? null : move.getNextMoves().get(0);
+    }
+    int[] rtrn = new int[line.size()];
+    for (int i = 0; i < rtrn.length; i++) {
+      rtrn[i] = OpeningTrie.move(line.get(i).getPlayer(), line.get(i).getLocation());
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the moves of the main line of game, see {@link OpeningTrie#move}
+   */
+  public static int[] moves(SgfGame game) {
+    int size = game.getBoardWidth();
+    return game.mainLine().filter(SgfGameNode::isMove)
+        .mapToInt(node -> OpeningTrie.move(node.getColor(),
+            CoordinateCodec.sgfToLocation(node.getMoveString(), size)))
+        .toArray();
+  }
+
+  /**
+   * @return the MinHash signature of the shingles of moves, null if there are
+   *         less than {@link #SHINGLE} moves
+   */
+  public static int[] signature(int[] moves) {
+    if (moves.length < SHINGLE) {
+      return null;
+    }
+    int[] rtrn = new int[HASHES];
+    Arrays.fill(rtrn, Integer.MAX_VALUE);
+    for (int i = 0; i + SHINGLE <= moves.length; i++) {
+      long shingle = 0;
+      for (int k = i; k < i + SHINGLE; k++) {
+        shingle = shingle * 0x9E3779B97F4A7C15L + moves[k] + 1;
+      }
+      shingle = mix(shingle);
+      for (int j = 0; j < HASHES; j++) {
+        int hash = (int) ((MULTIPLIERS[j] * shingle + INCREMENTS[j]) >>> 33);
+        if (hash < rtrn[j]) {
+          rtrn[j] = hash;
+        }
+      }
+    }
+    return rtrn;
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * @return the share of equal values of two signatures
+   */
+  public static double similarity(int[] signature, int[] other) {
+    int equal = 0;
+    for (int j = 0; j < HASHES; j++) {
+      if (signature[j] == other[j]) {
+        equal++;
+      }
+    }
+    return (double) equal / HASHES;
+  }
+
+  /**
+   * @return the signature as stored in {@link Game}, null for null
+   */
+  public static byte[] toBytes(int[] signature) {
+    if (signature == null) {
+      return null;
+    }
+    ByteBuffer rtrn = ByteBuffer.allocate(4 * HASHES);
+    rtrn.asIntBuffer().put(signature);
+    return rtrn.array();
+  }
+
+  /**
+   * @return the signature stored in {@link Game}, null if bytes is not one
+   */
+  public static int[] fromBytes(byte[] bytes) {
+    if (bytes == null || bytes.length != 4 * HASHES) {
+      return null;
+    }
+    int[] rtrn = new int[HASHES];
+    ByteBuffer.wrap(bytes).asIntBuffer().get(rtrn);
+    return rtrn;
+  }
+
+  /**
+   * @return the signature stored with game, computed if there is none
+   */
+  public static int[] signature(Game game) {
+    return gameSignature(game).getSignature();
+  }
+
+  /**
+   * @return the signature stored with game, or the moves to compute it from
+   */
+  public static GameSignature gameSignature(Game game) {
+    int[] stored = fromBytes(game.getSignature());
+    return new GameSignature(game.getId(), stored, stored != null ? null : moves(game));
+  }
+
+  /**
+   * @return an index of games, their missing signatures computed in parallel.
+   *         The games are read in the calling thread, see
+   *         {@link #buildSignatures(Collection)}.
+   */
+  public static DuplicateDetector build(Collection<Game> games) {
+    List<GameSignature> signatures = new ArrayList<>();
+    for (Game game : games) {
+      signatures.add(gameSignature(game));
+    }
+    return buildSignatures(signatures);
+  }
+
+  /**
+   * @return an index of the games of signatures, the missing signatures
+   *         computed in parallel
+   */
+  public static DuplicateDetector buildSignatures(Collection<GameSignature> signatures) {
+    List<GameSignature> list = new ArrayList<>(signatures);
+    List<int[]> computed = list.parallelStream().map(GameSignature::getSignature).collect(Collectors.toList());
+    DuplicateDetector rtrn = new DuplicateDetector();
+    for (int i = 0; i < list.size(); i++) {
+      rtrn.add(list.get(i).getGameId(), computed.get(i));
+    }
+    return rtrn;
+  }
+
+  public boolean add(Game game) {
+    return add(game.getId(), signature(game));
+  }
+
+  /**
+   * Adds a game to the index.
+   *
+   * @return false if signature is null : the game is too short to be compared
+   */
+  public boolean add(long id, int[] signature) {
+    if (signature == null) {
+      return false;
+    }
+    lock.writeLock().lock();
+    try {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+        signatures = Arrays.copyOf(signatures, size * 2 * HASHES);
+        previous = Arrays.copyOf(previous, size * 2 * BANDS);
+      }
+      int row = size++;
+      ids[row] = id;
+      System.arraycopy(signature, 0, signatures, row * HASHES, HASHES);
+      for (int band = 0; band < BANDS; band++) {
+        previous[row * BANDS + band] = putBucket(bandKey(signature, 0, band), row);
+      }
+      return true;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static int[] filled(int capacity) {
+    int[] rtrn = new int[capacity];
+    Arrays.fill(rtrn, -1);
+    return rtrn;
+  }
+
+  /**
+   * @return the slot of key, or the free slot where it goes
+   */
+  private static int slot(long[] keys, int[] rows, long key) {
+    int mask = keys.length - 1;
+    // band keys are mixed already
+    int rtrn = (int) key & mask;
+    while (rows[rtrn] >= 0 && keys[rtrn] != key) {
+      rtrn = (rtrn + 1) & mask;
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the last row of the bucket of key, -1 if there is none
+   */
+  private int getBucket(long key) {
+    return bucketRows[slot(bucketKeys, bucketRows, key)];
+  }
+
+  /**
+   * Makes row the last row of the bucket of key.
+   *
+   * @return the row it replaces, -1 if there was none
+   */
+  private int putBucket(long key, int row) {
+    if (2 * (bucketCount + 1) > bucketKeys.length) {
+      long[] keys = new long[bucketKeys.length * 2];
+      int[] rows = filled(keys.length);
+      for (int i = 0; i < bucketKeys.length; i++) {
+        if (bucketRows[i] >= 0) {
+          int slot = slot(keys, rows, bucketKeys[i]);
+          keys[slot] = bucketKeys[i];
+          rows[slot] = bucketRows[i];
+        }
+      }
+      bucketKeys = keys;
+      bucketRows = rows;
+    }
+    int slot = slot(bucketKeys, bucketRows, key);
+    int rtrn = bucketRows[slot];
+    if (rtrn < 0) {
+      bucketCount++;
+      bucketKeys[slot] = key;
+    }
+    bucketRows[slot] = row;
+    return rtrn;
+  }
+
+  private static long bandKey(int[] signature, int offset, int band) {
+    long rtrn = band;
+    for (int j = band * ROWS; j < (band + 1) * ROWS; j++) {
+      rtrn = mix(rtrn * 31 + signature[offset + j]);
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the number of games indexed
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param id the id of the game of signature, for the matches
+   * @return the indexed games similar to signature at threshold or more, the
+   *         most similar first
+   */
+  public List<Match> findSimilar(long id, int[] signature, double threshold) {
+    lock.readLock().lock();
+    try {
+      List<Match> rtrn = new ArrayList<>();
+      for (int row : candidates(signature, 0, Integer.MAX_VALUE)) {
+        double similarity = similarity(signature, row);
+        if (similarity >= threshold) {
+          rtrn.add(new Match(id, ids[row], similarity));
+        }
+      }
+      rtrn.sort((a, b) -> Double.compare(b.getSimilarity(), a.getSimilarity()));
+      return rtrn;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the rows sharing a band with signature, below row end
+   */
+  private int[] candidates(int[] signature, int offset, int end) {
+    int[] rtrn = new int[16];
+    int count = 0;
+    for (int band = 0; band < BANDS; band++) {
+      for (int row = getBucket(bandKey(signature, offset, band)); row >= 0; row = previous[row * BANDS + band]) {
+        if (row >= end) {
+          continue;
+        }
+        if (count == rtrn.length) {
+          rtrn = Arrays.copyOf(rtrn, count * 2);
+        }
+        rtrn[count++] = row;
+      }
+    }
+    return IntStream.of(rtrn).limit(count).sorted().distinct().toArray();
+  }
+
+  private double similarity(int[] signature, int row) {
+    int equal = 0;
+    for (int j = 0; j < HASHES; j++) {
+      if (signature[j] == signatures[row * HASHES + j]) {
+        equal++;
+      }
+    }
+    return (double) equal / HASHES;
+  }
+
+  /**
+   * Compares each game to the games sharing a band with it, in parallel.
+   *
+   * @return the pairs of games at threshold or more
+   */
+  public List<Match> findPairs(double threshold) {
+    lock.readLock().lock();
+    try {
+      return IntStream.range(0, size).parallel().boxed().flatMap(row -> {
+        int[] signature = Arrays.copyOfRange(signatures, row * HASHES, (row + 1) * HASHES);
+        List<Match> matches = new ArrayList<>();
+        for (int other : candidates(signature, 0, row)) {
+          double similarity = similarity(signature, other);
+          if (similarity >= threshold) {
+            matches.add(new Match(ids[other], ids[row], similarity));
+          }
+        }
+        return matches.stream();
+      }).collect(Collectors.toList());
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Groups the games linked by pairs at threshold or more.
+   *
+   * @return the clusters of at least two games, the largest first
+   */
+  public List<Cluster> findClusters(double threshold) {
+    List<Match> pairs = findPairs(threshold);
+    // union find over the ids
+    Map<Long, Long> parents = new HashMap<>();
+    for (Match pair : pairs) {
+      long a = root(parents, pair.getId());
+      long b = root(parents, pair.getOtherId());
+      if (a != b) {
+        parents.put(Math.max(a, b), Math.min(a, b));
+      }
+    }
+    Map<Long, List<Long>> members = new HashMap<>();
+    for (Long id : parents.keySet()) {
+      members.computeIfAbsent(root(parents, id), key -> new ArrayList<>()).add(id);
+    }
+    Map<Long, List<Match>> matches = new HashMap<>();
+    for (Match pair : pairs) {
+      matches.computeIfAbsent(root(parents, pair.getId()), key -> new ArrayList<>()).add(pair);
+    }
+    List<Cluster> rtrn = new ArrayList<>();
+    for (Map.Entry<Long, List<Long>> entry : members.entrySet()) {
+      long[] ids = entry.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+      rtrn.add(new Cluster(ids, matches.get(entry.getKey())));
+    }
+    rtrn.sort((a, b) -> a.size() != b.size() ? Integer.compare(b.size(), a.size())
+        : Long.compare(a.ids[0], b.ids[0]));
+    return rtrn;
+  }
+
+  private static long root(Map<Long, Long> parents, long id) {
+    long rtrn = id;
+    Long parent = parents.putIfAbsent(id, id);
+    while (parent != null && parent != rtrn) {
+      rtrn = parent;
+      parent = parents.get(rtrn);
+    }
+    // path compression
+    for (long node = id; node != rtrn;) {
+      long next = parents.get(node);
+      parents.put(node, rtrn);
+      node = next;
+    }
+    return rtrn;
+  }
+}
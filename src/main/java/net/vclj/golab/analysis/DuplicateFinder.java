@@ -0,0 +1,70 @@
+package net.vclj.golab.analysis;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.repository.GameRepository;
+import net.vclj.golab.service.GameImportService;
+
+/**
+ * Near duplicates among the games of the database : a {@link DuplicateDetector}
+ * of the signatures stored with the games, rebuilt on demand from the
+ * repository and updated with each game imported (see {@link RepositoryIndex}).
+ */
+@Service
+public class DuplicateFinder extends RepositoryIndex<DuplicateDetector.GameSignature, DuplicateDetector> {
+  private static final Logger log = LoggerFactory.getLogger(DuplicateFinder.class);
+
+  public DuplicateFinder(GameRepository repository, GameImportService importService,
+      PlatformTransactionManager transactionManager) {
+    super(repository, importService, transactionManager, new DuplicateDetector());
+  }
+
+  @Override
+  protected DuplicateDetector.GameSignature extract(Game game) {
+    return DuplicateDetector.gameSignature(game);
+  }
+
+  @Override
+  protected DuplicateDetector build(List<DuplicateDetector.GameSignature> signatures) {
+    return DuplicateDetector.buildSignatures(signatures);
+  }
+
+  /**
+   * Adds a game to detector, after logging its near duplicates already there.
+   */
+  @Override
+  protected void add(DuplicateDetector detector, DuplicateDetector.GameSignature gameSignature) {
+    int[] signature = gameSignature.getSignature();
+    if (signature == null) {
+      return;
+    }
+    List<DuplicateDetector.Match> matches = detector.findSimilar(gameSignature.getGameId(), signature,
+        DuplicateDetector.DEFAULT_THRESHOLD);
+    if (!matches.isEmpty()) {
+      log.info("Game {} is a near duplicate of {}", gameSignature.getGameId(), matches);
+    }
+    detector.add(gameSignature.getGameId(), signature);
+  }
+
+  @Override
+  protected String describe(DuplicateDetector detector) {
+    return "Duplicate index of " + detector.size() + " games";
+  }
+
+  public DuplicateDetector getDetector() {
+    return getIndex();
+  }
+
+  /**
+   * @see DuplicateDetector#findClusters(double)
+   */
+  public List<DuplicateDetector.Cluster> findClusters(double threshold) {
+    return getIndex().findClusters(threshold);
+  }
+}
@@ -0,0 +1,715 @@
+package net.vclj.golab.analysis;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.entity.Move;
+import net.vclj.golab.format.SgfDateRange;
+import net.vclj.golab.format.SgfFileManager;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfResult;
+import net.vclj.golab.format.SgfValues;
+
+/**
+ * Header information of many games in memory, column by column, for analytics
+ * over the whole database without loading the games.
+ *
+ * Text columns (players, event, rules) are dictionary encoded : each row holds
+ * the int code of its value, 0 for none. The other columns are primitive
+ * arrays : date as yyyymmdd (0 when unknown), komi (NaN when unknown),
+ * handicap, winner, board size and number of moves of the main line.
+ *
+ * {@link #query()} filters, groups and aggregates the rows, chunks of rows
+ * being processed in parallel. The table never changes once built, see
+ * {@link Builder}.
+ */
+public class GameMetadataTable {
+  /**
+   * The columns that can be filtered and grouped by. PLAYER is either player :
+   * a game counts once for each of its two players when grouped by it.
+   */
+  public enum Column {
+    BLACK_PLAYER, WHITE_PLAYER, PLAYER, EVENT, RULES, YEAR, MONTH, KOMI, HANDICAP, WINNER, BOARD_SIZE, MOVES
+  }
+
+  private static final int CHUNK_SIZE = 1 << 16;
+  private static final SgfResult.Winner[] WINNERS = SgfResult.Winner.values();
+  // komi is grouped by half points, offset to be positive, 0 being unknown
+  private static final int KOMI_OFFSET = 1024;
+
+  private final int size;
+  private final long[] ids;
+  private final int[] blackPlayers;
+  private final int[] whitePlayers;
+  private final int[] events;
+  private final int[] rules;
+  private final int[] dates;
+  private final float[] komis;
+  private final byte[] handicaps;
+  private final byte[] winners;
+  private final short[] boardSizes;
+  private final int[] moveCounts;
+  private final String[] playerNames;
+  private final String[] eventNames;
+  private final String[] ruleNames;
+  private final int maxMoves;
+
+  private GameMetadataTable(Builder builder) {
+    size = builder.size;
+    ids = Arrays.copyOf(builder.ids, size);
+    blackPlayers = Arrays.copyOf(builder.blackPlayers, size);
+    whitePlayers = Arrays.copyOf(builder.whitePlayers, size);
+    events = Arrays.copyOf(builder.events, size);
+    rules = Arrays.copyOf(builder.rules, size);
+    dates = Arrays.copyOf(builder.dates, size);
+    komis = Arrays.copyOf(builder.komis, size);
+    handicaps = Arrays.copyOf(builder.handicaps, size);
+    winners = Arrays.copyOf(builder.winners, size);
+    boardSizes = Arrays.copyOf(builder.boardSizes, size);
+    moveCounts = Arrays.copyOf(builder.moveCounts, size);
+    playerNames = builder.players.values();
+    eventNames = builder.eventDictionary.values();
+    ruleNames = builder.ruleDictionary.values();
+    int max = 0;
+    for (int i = 0; i < size; i++) {
+      max = Math.max(max, moveCounts[i]);
+    }
+    maxMoves = max;
+  }
+
+  /**
+   * @return a table of the games, their main line being walked to count the
+   *         moves
+   */
+  public static GameMetadataTable fromGames(Iterable<Game> games) {
+    Builder builder = new Builder();
+    for (Game game : games) {
+      builder.add(game);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Reads SGF files in parallel, the id of each row being the index of its
+   * file.
+   */
+  public static GameMetadataTable fromFiles(List<Path> paths) {
+    return IntStream.range(0, paths.size()).parallel().collect(Builder::new,
+        (builder, i) -> builder.add(SgfFileManager.createFromPath(paths.get(i)), i), Builder::addAll).build();
+  }
+
+  /**
+   * Accumulates rows, dictionary encoding the text values.
+   */
+  public static class Builder {
+    private int size = 0;
+    private long[] ids = new long[1024];
+    private int[] blackPlayers = new int[1024];
+    private int[] whitePlayers = new int[1024];
+    private int[] events = new int[1024];
+    private int[] rules = new int[1024];
+    private int[] dates = new int[1024];
+    private float[] komis = new float[1024];
+    private byte[] handicaps = new byte[1024];
+    private byte[] winners = new byte[1024];
+    private short[] boardSizes = new short[1024];
+    private int[] moveCounts = new int[1024];
+    private final Dictionary players = new Dictionary();
+    private final Dictionary eventDictionary = new Dictionary();
+    private final Dictionary ruleDictionary = new Dictionary();
+
+    public Builder add(Game game) {
+      int moves = 0;
+      for (Move move = game.getFirstMove(); move != null;) {
+        moves++;
+        move = move.getNextMoves().isEmpty() ? null : move.getNextMoves().get(0);
+      }
+      return add(game.getProperties(), moves, game.getId());
+    }
+
+    public Builder add(SgfGame game, long id) {
+      int moves = (int) game.mainLine().filter(SgfGameNode::isMove).count();
+      return add(game.getProperties(), moves, id);
+    }
+
+    /**
+     * Adds a row from the root properties of a game, the values of each
+     * property joined by commas.
+     */
+    public Builder add(Map<String, String> properties, int moveCount, long id) {
+      grow();
+      int row = size++;
+      ids[row] = id;
+      blackPlayers[row] = players.code(properties.get("PB"));
+      whitePlayers[row] = players.code(properties.get("PW"));
+      events[row] = eventDictionary.code(properties.get("EV"));
+      rules[row] = ruleDictionary.code(properties.get("RU"));
+      SgfDateRange date = SgfDateRange.parse(properties.get("DT"));
+      dates[row] = date == null ? 0 : toInt(date.getFirst());
+      komis[row] = (float) SgfValues.parseReal(properties.get("KM"));
+      handicaps[row] = (byte) Math.max(0, Math.min(127, SgfValues.parseNumber(properties.get("HA"), 0)));
+      winners[row] = (byte) SgfResult.parse(properties.get("RE")).getWinner().ordinal();
+      boardSizes[row] = (short) boardSize(properties.get("SZ"));
+      moveCounts[row] = moveCount;
+      return this;
+    }
+
+    /**
+     * Adds the rows of other, after the rows of this builder.
+     */
+    public Builder addAll(Builder other) {
+      for (int i = 0; i < other.size; i++) {
+        grow();
+        int row = size++;
+        ids[row] = other.ids[i];
+        blackPlayers[row] = players.code(other.players.value(other.blackPlayers[i]));
+        whitePlayers[row] = players.code(other.players.value(other.whitePlayers[i]));
+        events[row] = eventDictionary.code(other.eventDictionary.value(other.events[i]));
+        rules[row] = ruleDictionary.code(other.ruleDictionary.value(other.rules[i]));
+        dates[row] = other.dates[i];
+        komis[row] = other.komis[i];
+        handicaps[row] = other.handicaps[i];
+        winners[row] = other.winners[i];
+        boardSizes[row] = other.boardSizes[i];
+        moveCounts[row] = other.moveCounts[i];
+      }
+      return this;
+    }
+
+    private void grow() {
+      if (size < ids.length) {
+        return;
+      }
+      int capacity = ids.length * 2;
+      ids = Arrays.copyOf(ids, capacity);
+      blackPlayers = Arrays.copyOf(blackPlayers, capacity);
+      whitePlayers = Arrays.copyOf(whitePlayers, capacity);
+      events = Arrays.copyOf(events, capacity);
+      rules = Arrays.copyOf(rules, capacity);
+      dates = Arrays.copyOf(dates, capacity);
+      komis = Arrays.copyOf(komis, capacity);
+      handicaps = Arrays.copyOf(handicaps, capacity);
+      winners = Arrays.copyOf(winners, capacity);
+      boardSizes = Arrays.copyOf(boardSizes, capacity);
+      moveCounts = Arrays.copyOf(moveCounts, capacity);
+    }
+
+    public GameMetadataTable build() {
+      return new GameMetadataTable(this);
+    }
+  }
+
+  private static int toInt(LocalDate date) {
+    int year = Math.max(0, Math.min(9999, date.getYear()));
+    return year * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+  }
+
+  private static int boardSize(String size) {
+    if (size == null) {
+      return 19;
+    }
+    try {
+      // the width of rectangular boards
+      return SgfValues.parseBoardSize(size.trim()) >>> 8;
+    }
+    catch (IllegalArgumentException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Text values and their codes, 0 being no value.
+   */
+  private static final class Dictionary {
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>(Collections.singletonList((String) null));
+
+    int code(String value) {
+      if (value == null) {
+        return 0;
+      }
+      String key = value.trim();
+      Integer rtrn = codes.get(key);
+      if (rtrn == null) {
+        rtrn = values.size();
+        codes.put(key, rtrn);
+        values.add(key);
+      }
+      return rtrn;
+    }
+
+    String value(int code) {
+      return values.get(code);
+    }
+
+    String[] values() {
+      return values.toArray(new String[values.size()]);
+    }
+  }
+
+  /**
+   * @return the number of rows
+   */
+  public int size() {
+    return size;
+  }
+
+  public long getId(int row) {
+    return ids[row];
+  }
+
+  /**
+   * @return a new query over all the rows
+   */
+  public Query query() {
+    return new Query();
+  }
+
+  private int codeOf(String[] dictionary, String value) {
+    if (value == null) {
+      return 0;
+    }
+    String key = value.trim();
+    for (int code = 1; code < dictionary.length; code++) {
+      if (dictionary[code].equals(key)) {
+        return code;
+      }
+    }
+    return -1;
+  }
+
+  private int[] textColumn(Column column) {
+    switch (column) {
+    case BLACK_PLAYER:
+      return blackPlayers;
+    case WHITE_PLAYER:
+      return whitePlayers;
+    case EVENT:
+      return events;
+    case RULES:
+      return rules;
+    default:
+      throw new IllegalArgumentException("Not a text column : " + column);
+    }
+  }
+
+  private String[] dictionary(Column column) {
+    switch (column) {
+    case BLACK_PLAYER:
+    case WHITE_PLAYER:
+    case PLAYER:
+      return playerNames;
+    case EVENT:
+      return eventNames;
+    case RULES:
+      return ruleNames;
+    default:
+      throw new IllegalArgumentException("Not a text column : " + column);
+    }
+  }
+
+  /**
+   * @return the int value of a numeric column : year, yyyymm month, handicap,
+   *         winner ordinal, board size or moves
+   */
+  private int intValue(Column column, int row) {
+    switch (column) {
+    case YEAR:
+      return dates[row] / 10000;
+    case MONTH:
+      return dates[row] / 100;
+    case HANDICAP:
+      return handicaps[row];
+    case WINNER:
+      return winners[row];
+    case BOARD_SIZE:
+      return boardSizes[row];
+    case MOVES:
+      return moveCounts[row];
+    default:
+      throw new IllegalArgumentException("Not an int column : " + column);
+    }
+  }
+
+  /**
+   * @return the number of distinct group codes of a column
+   */
+  private long radix(Column column) {
+    switch (column) {
+    case BLACK_PLAYER:
+    case WHITE_PLAYER:
+    case PLAYER:
+      return playerNames.length;
+    case EVENT:
+      return eventNames.length;
+    case RULES:
+      return ruleNames.length;
+    case YEAR:
+      return 10000;
+    case MONTH:
+      return 1000000;
+    case KOMI:
+      return 2 * KOMI_OFFSET;
+    case HANDICAP:
+      return 128;
+    case WINNER:
+      return WINNERS.length;
+    case BOARD_SIZE:
+      return 256;
+    default:
+      return maxMoves + 1;
+    }
+  }
+
+  private int groupCode(Column column, int row) {
+    switch (column) {
+    case BLACK_PLAYER:
+    case WHITE_PLAYER:
+    case EVENT:
+    case RULES:
+      return textColumn(column)[row];
+    case KOMI:
+      float komi = komis[row];
+      return Float.isNaN(komi) ? 0 : Math.max(1, Math.min(2 * KOMI_OFFSET - 1, Math.round(komi * 2) + KOMI_OFFSET));
+    default:
+      return intValue(column, row);
+    }
+  }
+
+  private Object decode(Column column, int code) {
+    switch (column) {
+    case BLACK_PLAYER:
+    case WHITE_PLAYER:
+    case PLAYER:
+    case EVENT:
+    case RULES:
+      return dictionary(column)[code];
+    case KOMI:
+      return code == 0 ? Double.NaN : (code - KOMI_OFFSET) / 2.0;
+    case WINNER:
+      return WINNERS[code];
+    default:
+      return code;
+    }
+  }
+
+  private interface RowFilter {
+    boolean test(int row);
+  }
+
+  /**
+   * Statistics of the games of a group.
+   */
+  public static final class Group {
+    private final Object[] keys;
+    private final long count;
+    private final long blackWins;
+    private final long whiteWins;
+    private final long draws;
+    private final long moves;
+
+    Group(Object[] keys, long count, long blackWins, long whiteWins, long draws, long moves) {
+      this.keys = keys;
+      this.count = count;
+      this.blackWins = blackWins;
+      this.whiteWins = whiteWins;
+      this.draws = draws;
+      this.moves = moves;
+    }
+
+    /**
+     * @return the value of the i-th column grouped by : String (null for
+     *         none), Integer, Double for komi (NaN for none) or Winner
+     */
+    public Object getKey(int i) {
+      return keys[i];
+    }
+
+    public List<Object> getKeys() {
+      return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getBlackWins() {
+      return blackWins;
+    }
+
+    public long getWhiteWins() {
+      return whiteWins;
+    }
+
+    public long getDraws() {
+      return draws;
+    }
+
+    /**
+     * @return the share of the games won by black among the games won by a
+     *         player, NaN if there is none
+     */
+    public double getBlackWinRate() {
+      long decided = blackWins + whiteWins;
+      return decided == 0 ? Double.NaN : (double) blackWins / decided;
+    }
+
+    public double getAverageMoves() {
+      return count == 0 ? Double.NaN : (double) moves / count;
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(keys) + " count=" + count + " B=" + blackWins + " W=" + whiteWins + " draws=" + draws;
+    }
+  }
+
+  /**
+   * Filters, then groups the rows and aggregates each group.
+   */
+  public final class Query {
+    private final List<RowFilter> filters = new ArrayList<>();
+    private Column[] groupBy = new Column[0];
+
+    /**
+     * Keeps the rows whose value passes predicate : year, yyyymm month,
+     * handicap, board size or moves.
+     */
+    public Query where(Column column, IntPredicate predicate) {
+      switch (column) {
+      case YEAR:
+      case MONTH:
+      case HANDICAP:
+      case BOARD_SIZE:
+      case MOVES:
+        break;
+      default:
+        throw new IllegalArgumentException("Not an int column : " + column);
+      }
+      filters.add(row -> predicate.test(intValue(column, row)));
+      return this;
+    }
+
+    /**
+     * Keeps the rows whose komi passes predicate, NaN when unknown.
+     */
+    public Query whereKomi(DoublePredicate predicate) {
+      filters.add(row -> predicate.test(komis[row]));
+      return this;
+    }
+
+    public Query whereWinner(SgfResult.Winner winner) {
+      byte ordinal = (byte) winner.ordinal();
+      filters.add(row -> winners[row] == ordinal);
+      return this;
+    }
+
+    /**
+     * Keeps the rows whose text column is value, null for none. PLAYER keeps
+     * the games of a player with either color.
+     */
+    public Query whereEquals(Column column, String value) {
+      int code = codeOf(dictionary(column), value);
+      if (code < 0) {
+        filters.add(row -> false);
+      } else if (column == Column.PLAYER) {
+        filters.add(row -> blackPlayers[row] == code || whitePlayers[row] == code);
+      } else {
+        int[] codes = textColumn(column);
+        filters.add(row -> codes[row] == code);
+      }
+      return this;
+    }
+
+    /**
+     * Groups the rows by the values of columns, all the rows being in one
+     * group without column.
+     */
+    public Query groupBy(Column... columns) {
+      int players = 0;
+      long groups = 1;
+      for (Column column : columns) {
+        if (column == Column.PLAYER) {
+          players++;
+        }
+        try {
+          groups = Math.multiplyExact(groups, radix(column));
+        }
+        catch (ArithmeticException e) {
+          throw new IllegalArgumentException("Too many columns to group by : " + Arrays.toString(columns));
+        }
+      }
+      if (players > 1) {
+        throw new IllegalArgumentException("PLAYER can be grouped by once only");
+      }
+      groupBy = columns.clone();
+      return this;
+    }
+
+    /**
+     * @return the groups, the largest first
+     */
+    public List<Group> run() {
+      int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+      Accumulator total = IntStream.range(0, chunks).parallel()
+          .mapToObj(chunk -> aggregate(chunk * CHUNK_SIZE, Math.min(size, (chunk + 1) * CHUNK_SIZE)))
+          .reduce(Accumulator::merge).orElseGet(Accumulator::new);
+      List<Group> rtrn = new ArrayList<>(total.groupCount);
+      for (int g = 0; g < total.groupCount; g++) {
+        rtrn.add(new Group(decodeKey(total.groupKeys[g]), total.counts[g], total.blackWins[g], total.whiteWins[g],
+            total.draws[g], total.moves[g]));
+      }
+      rtrn.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+      return rtrn;
+    }
+
+    /**
+     * @return the number of rows passing the filters
+     */
+    public long count() {
+      return IntStream.range(0, size).parallel().filter(this::accepts).count();
+    }
+
+    private boolean accepts(int row) {
+      for (RowFilter filter : filters) {
+        if (!filter.test(row)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private Accumulator aggregate(int from, int to) {
+      Accumulator rtrn = new Accumulator();
+      int playerIndex = Arrays.asList(groupBy).indexOf(Column.PLAYER);
+      for (int row = from; row < to; row++) {
+        if (!accepts(row)) {
+          continue;
+        }
+        if (playerIndex < 0) {
+          rtrn.add(key(row, 0), row);
+        } else {
+          rtrn.add(key(row, blackPlayers[row]), row);
+          if (whitePlayers[row] != blackPlayers[row]) {
+            rtrn.add(key(row, whitePlayers[row]), row);
+          }
+        }
+      }
+      return rtrn;
+    }
+
+    /**
+     * @return the mixed radix key of the group of row, player being the code
+     *         of the player for the PLAYER column
+     */
+    private long key(int row, int player) {
+      long rtrn = 0;
+      for (Column column : groupBy) {
+        int code = column == Column.PLAYER ? player : groupCode(column, row);
+        rtrn = rtrn * radix(column) + code;
+      }
+      return rtrn;
+    }
+
+    private Object[] decodeKey(long key) {
+      Object[] rtrn = new Object[groupBy.length];
+      for (int i = groupBy.length - 1; i >= 0; i--) {
+        long radix = radix(groupBy[i]);
+        rtrn[i] = decode(groupBy[i], (int) (key % radix));
+        key /= radix;
+      }
+      return rtrn;
+    }
+
+    /**
+     * Aggregates by group key, in an open addressing table.
+     */
+    private final class Accumulator {
+      private int[] slots = new int[64];
+      private long[] groupKeys = new long[32];
+      private int groupCount = 0;
+      private long[] counts = new long[32];
+      private long[] blackWins = new long[32];
+      private long[] whiteWins = new long[32];
+      private long[] draws = new long[32];
+      private long[] moves = new long[32];
+
+      private int group(long key) {
+        int mask = slots.length - 1;
+        int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+        while (slots[slot] != 0) {
+          int group = slots[slot] - 1;
+          if (groupKeys[group] == key) {
+            return group;
+          }
+          slot = (slot + 1) & mask;
+        }
+        if (groupCount == groupKeys.length) {
+          int capacity = groupCount * 2;
+          groupKeys = Arrays.copyOf(groupKeys, capacity);
+          counts = Arrays.copyOf(counts, capacity);
+          blackWins = Arrays.copyOf(blackWins, capacity);
+          whiteWins = Arrays.copyOf(whiteWins, capacity);
+          draws = Arrays.copyOf(draws, capacity);
+          moves = Arrays.copyOf(moves, capacity);
+        }
+        int rtrn = groupCount++;
+        groupKeys[rtrn] = key;
+        slots[slot] = rtrn + 1;
+        if (groupCount * 2 > slots.length) {
+          rehash();
+        }
+        return rtrn;
+      }
+
+      private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int group = 0; group < groupCount; group++) {
+          int slot = Long.hashCode(groupKeys[group] * 0x9E3779B97F4A7C15L) & mask;
+          while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          slots[slot] = group + 1;
+        }
+      }
+
+      void add(long key, int row) {
+        int group = group(key);
+        counts[group]++;
+        SgfResult.Winner winner = WINNERS[winners[row]];
+        if (winner == SgfResult.Winner.BLACK) {
+          blackWins[group]++;
+        } else if (winner == SgfResult.Winner.WHITE) {
+          whiteWins[group]++;
+        } else if (winner == SgfResult.Winner.DRAW) {
+          draws[group]++;
+        }
+        moves[group] += moveCounts[row];
+      }
+
+      Accumulator merge(Accumulator other) {
+        for (int g = 0; g < other.groupCount; g++) {
+          int group = group(other.groupKeys[g]);
+          counts[group] += other.counts[g];
+          blackWins[group] += other.blackWins[g];
+          whiteWins[group] += other.whiteWins[g];
+          draws[group] += other.draws[g];
+          moves[group] += other.moves[g];
+        }
+        return this;
+      }
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package net.vclj.golab.analysis;
+
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.repository.GameRepository;
+import net.vclj.golab.service.GameImportService;
+
+/**
+ * Opening explorer over the games of the database : an {@link OpeningTrie} of
+ * the 19x19 games, canonicalized over the symmetries of the board, rebuilt on
+ * demand from the repository and updated with each game imported (see
+ * {@link RepositoryIndex}).
+ */
+@Service
+public class OpeningExplorer extends RepositoryIndex<OpeningTrie.Opening, OpeningTrie> {
+  public static final int BOARD_SIZE = 19;
+
+  public OpeningExplorer(GameRepository repository, GameImportService importService,
+      PlatformTransactionManager transactionManager) {
+    super(repository, importService, transactionManager,
+        new OpeningTrie(BOARD_SIZE, OpeningTrie.DEFAULT_MAX_MOVES, true));
+  }
+
+  @Override
+  protected OpeningTrie.Opening extract(Game game) {
+    return OpeningTrie.opening(game, BOARD_SIZE, OpeningTrie.DEFAULT_MAX_MOVES);
+  }
+
+  @Override
+  protected OpeningTrie build(List<OpeningTrie.Opening> openings) {
+    return OpeningTrie.buildOpenings(openings, BOARD_SIZE, OpeningTrie.DEFAULT_MAX_MOVES, true);
+  }
+
+  @Override
+  protected void add(OpeningTrie trie, OpeningTrie.Opening opening) {
+    trie.add(opening);
+  }
+
+  @Override
+  protected String describe(OpeningTrie trie) {
+    return "Opening trie of " + trie.getGameCount() + " games (" + trie.size() + " nodes)";
+  }
+
+  public OpeningTrie getTrie() {
+    return getIndex();
+  }
+
+  /**
+   * @see OpeningTrie#getContinuations(int...)
+   */
+  public List<OpeningTrie.Continuation> getContinuations(int... sequence) {
+    return getIndex().getContinuations(sequence);
+  }
+}
@@ -0,0 +1,664 @@
+package net.vclj.golab.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.entity.Move;
+import net.vclj.golab.format.SgfResult;
+import net.vclj.golab.format.SgfValues;
+
+/**
+ * Opening explorer : the first moves of the main line of many games merged in
+ * a trie, giving for any opening sequence the moves played next, how often and
+ * with which results.
+ *
+ * Nodes are stored in parallel int arrays (move, first child, next sibling,
+ * counts) rather than objects, a node being an index in these arrays, the root
+ * 0. Moves are encoded as location << 1 | 1 for white, see
+ * {@link #move(String, int)}.
+ *
+ * When the trie is canonical, each sequence is stored under the symmetry of the
+ * board (rotations and reflections) giving the smallest sequence : the same
+ * opening played in another corner is counted once. Queries are canonicalized
+ * the same way and the moves returned are given back in the orientation of the
+ * query.
+ *
+ * Only games of the size of the trie starting from an empty board are added,
+ * games with setup stones (handicap) are ignored. Adds and queries can run
+ * concurrently, see {@link #build(Collection, int, int, boolean)} to build a
+ * trie in parallel.
+ */
+public class OpeningTrie {
+  public static final int DEFAULT_MAX_MOVES = 30;
+
+  private static final int MAGIC = 0x474C4F54;
+  private static final int VERSION = 1;
+
+  private static final int ROOT = 0;
+  private static final int NONE = -1;
+  private static final int SYMMETRIES = 8;
+
+  private final int boardSize;
+  private final int maxMoves;
+  private final boolean canonical;
+  // symmetries[s][location] and the index of the inverse of each symmetry
+  private final int[][] symmetries;
+  private final int[] inverses;
+
+  private int size;
+  private int[] moves;
+  private int[] firstChildren;
+  private int[] nextSiblings;
+  private int[] counts;
+  private int[] blackWins;
+  private int[] whiteWins;
+  private long[] examples;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Moves following an opening sequence, with the statistics of the games that
+   * played them.
+   */
+  public static final class Continuation {
+    private final int move;
+    private final int count;
+    private final int blackWins;
+    private final int whiteWins;
+    private final long exampleGameId;
+
+    Continuation(int move, int count, int blackWins, int whiteWins, long exampleGameId) {
+      this.move = move;
+      this.count = count;
+      this.blackWins = blackWins;
+      this.whiteWins = whiteWins;
+      this.exampleGameId = exampleGameId;
+    }
+
+    /**
+     * @return the move, see {@link OpeningTrie#move(String, int)}
+     */
+    public int getMove() {
+      return move;
+    }
+
+    public String getColor() {
+      return color(move);
+    }
+
+    /**
+     * @return the location of the move, 0 for a pass
+     */
+    public int getLocation() {
+      return location(move);
+    }
+
+    /**
+     * @return the number of games that played the move
+     */
+    public int getCount() {
+      return count;
+    }
+
+    public int getBlackWins() {
+      return blackWins;
+    }
+
+    public int getWhiteWins() {
+      return whiteWins;
+    }
+
+    /**
+     * @return the share of the games won by black, NaN if no game has a winner
+     */
+    public double getBlackWinRate() {
+      int decided = blackWins + whiteWins;
+      return decided == 0 ? Double.NaN : (double) blackWins / decided;
+    }
+
+    /**
+     * @return the id of the first game that played the move
+     */
+    public long getExampleGameId() {
+      return exampleGameId;
+    }
+
+    @Override
+    public String toString() {
+      return color(move) + location(move) + " x" + count + " B" + blackWins + " W" + whiteWins;
+    }
+  }
+
+  /**
+   * The opening of a game as added to a trie, copied out of the entity : the
+   * moves of its main line and its winner.
+   */
+  public static final class Opening {
+    private final long gameId;
+    private final int boardSize;
+    private final int[] sequence;
+    private final SgfResult.Winner winner;
+
+    Opening(long gameId, int boardSize, int[] sequence, SgfResult.Winner winner) {
+      this.gameId = gameId;
+      this.boardSize = boardSize;
+      this.sequence = sequence;
+      this.winner = winner;
+    }
+
+    public long getGameId() {
+      return gameId;
+    }
+
+    public int getLength() {
+      return sequence.length;
+    }
+
+    public SgfResult.Winner getWinner() {
+      return winner;
+    }
+  }
+
+  public OpeningTrie(int boardSize, int maxMoves, boolean canonical) {
+    if (boardSize < 1 || boardSize > CoordinateCodec.MAX_BOARD_SIZE) {
+      throw new IllegalArgumentException("Invalid board size : " + boardSize);
+    }
+    if (maxMoves < 1) {
+      throw new IllegalArgumentException("At least one move must be kept : " + maxMoves);
+    }
+    this.boardSize = boardSize;
+    this.maxMoves = maxMoves;
+    this.canonical = canonical;
+    this.symmetries = symmetries(boardSize);
+    this.inverses = inverses(symmetries);
+    allocate(1024);
+    size = 1;
+    moves[ROOT] = NONE;
+    firstChildren[ROOT] = NONE;
+    nextSiblings[ROOT] = NONE;
+    examples[ROOT] = NONE;
+  }
+
+  /**
+   * Builds a trie from games in parallel : each thread fills its own trie, the
+   * tries are then merged. The openings are taken from the games first, in the
+   * calling thread, as entities read from the database cannot be walked by
+   * other threads.
+   */
+  public static OpeningTrie build(Collection<Game> games, int boardSize, int maxMoves, boolean canonical) {
+    List<Opening> openings = new ArrayList<>();
+    for (Game game : games) {
+      Opening opening = opening(game, boardSize, maxMoves);
+      if (opening != null) {
+        openings.add(opening);
+      }
+    }
+    return buildOpenings(openings, boardSize, maxMoves, canonical);
+  }
+
+  /**
+   * Builds a trie from openings in parallel, see
+   * {@link #build(Collection, int, int, boolean)}.
+   */
+  public static OpeningTrie buildOpenings(Collection<Opening> openings, int boardSize, int maxMoves,
+      boolean canonical) {
+    return openings.parallelStream().collect(() -> new OpeningTrie(boardSize, maxMoves, canonical),
+        OpeningTrie::add, OpeningTrie::merge);
+  }
+
+  /**
+   * @return the move of color at location, 0 being a pass
+   */
+  public static int move(String color, int location) {
+    if (!"B".equals(color) && !"W".equals(color)) {
+      throw new IllegalArgumentException("Not a color : " + color);
+    }
+    return location << 1 | ("W".equals(color) ? 1 : 0);
+  }
+
+  public static int location(int move) {
+    return move >>> 1;
+  }
+
+  public static String color(int move) {
+    return (move & 1) == 0 ? "B" : "W";
+  }
+
+  /**
+   * Location of each point under the 8 symmetries : bit 0 swaps the
+   * coordinates, then bit 1 mirrors x and bit 2 mirrors y.
+   */
+  private static int[][] symmetries(int boardSize) {
+    int[][] rtrn = new int[SYMMETRIES][boardSize * boardSize + 1];
+    for (int s = 0; s < SYMMETRIES; s++) {
+      for (int location = 1; location <= boardSize * boardSize; location++) {
+        int point = CoordinateCodec.locationToPoint(location, boardSize);
+        int x = CoordinateCodec.pointX(point);
+        int y = CoordinateCodec.pointY(point);
+        if ((s & 1) != 0) {
+          int swap = x;
+          x = y;
+          y = swap;
+        }
+        if ((s & 2) != 0) {
+          x = boardSize - 1 - x;
+        }
+        if ((s & 4) != 0) {
+          y = boardSize - 1 - y;
+        }
+        rtrn[s][location] = CoordinateCodec.pointToLocation(CoordinateCodec.point(x, y), boardSize);
+      }
+    }
+    return rtrn;
+  }
+
+  private static int[] inverses(int[][] symmetries) {
+    int[] rtrn = new int[SYMMETRIES];
+    for (int s = 0; s < SYMMETRIES; s++) {
+      for (int t = 0; t < SYMMETRIES; t++) {
+        boolean inverse = true;
+        for (int location = 1; inverse && location < symmetries[s].length; location++) {
+          inverse = symmetries[t][symmetries[s][location]] == location;
+        }
+        if (inverse) {
+          rtrn[s] = t;
+          break;
+        }
+      }
+    }
+    return rtrn;
+  }
+
+  private int transform(int symmetry, int move) {
+    return symmetries[symmetry][move >>> 1] << 1 | (move & 1);
+  }
+
+  /**
+   * @return the symmetry giving the lexicographically smallest sequence, which
+   *         also gives the smallest prefixes : a sequence and its prefixes are
+   *         stored on the same path
+   */
+  private int canonicalSymmetry(int[] sequence, int length) {
+    if (!canonical) {
+      return 0;
+    }
+    int rtrn = 0;
+    for (int s = 1; s < SYMMETRIES; s++) {
+      for (int i = 0; i < length; i++) {
+        int diff = transform(s, sequence[i]) - transform(rtrn, sequence[i]);
+        if (diff != 0) {
+          if (diff < 0) {
+            rtrn = s;
+          }
+          break;
+        }
+      }
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the opening of the game for a trie of boardSize keeping maxMoves,
+   *         null if the game cannot be added : other board size, setup stones
+   *         or no move
+   */
+  public static Opening opening(Game game, int boardSize, int maxMoves) {
+    Map<String, String> properties = game.getProperties();
+    String size = properties.get("SZ");
+    try {
+      int packed = size == null ? 19 << 8 | 19 : SgfValues.parseBoardSize(size.trim());
+      if (packed >>> 8 != boardSize || (packed & 0xFF) != boardSize) {
+        return null;
+      }
+    }
+    catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (properties.containsKey("AB") || properties.containsKey("AW")) {
+      return null;
+    }
+    int[] sequence = new int[maxMoves];
+    int length = 0;
+    for (Move move = game.getFirstMove(); move != null && length < maxMoves;) {
+      if (move.getLocation() < 0 || move.getLocation() > boardSize * boardSize) {
+        return null;
+      }
+      sequence[length++] = move(move.getPlayer(), move.getLocation());
+      move = move.getNextMoves().isEmpty() ? null : move.getNextMoves().get(0);
+    }
+    if (length == 0) {
+      return null;
+    }
+    return new Opening(game.getId(), boardSize, Arrays.copyOf(sequence, length),
+        SgfResult.parse(properties.get("RE")).getWinner());
+  }
+
+  /**
+   * Adds the opening of a game.
+   *
+   * @return false if the game was ignored : other board size, setup stones or
+   *         no move
+   */
+  public boolean add(Game game) {
+    Opening opening = opening(game, boardSize, maxMoves);
+    if (opening == null) {
+      return false;
+    }
+    add(opening);
+    return true;
+  }
+
+  /**
+   * Adds an opening taken for the board size and number of moves of this trie.
+   */
+  public void add(Opening opening) {
+    int[] sequence = opening.sequence;
+    if (opening.boardSize != boardSize || sequence.length > maxMoves) {
+      throw new IllegalArgumentException("Opening taken for other settings");
+    }
+    int black = opening.winner == SgfResult.Winner.BLACK ? 1 : 0;
+    int white = opening.winner == SgfResult.Winner.WHITE ? 1 : 0;
+    int symmetry = canonicalSymmetry(sequence, sequence.length);
+    lock.writeLock().lock();
+    try {
+      int node = ROOT;
+      count(node, 1, black, white);
+      for (int move : sequence) {
+        node = child(node, transform(symmetry, move), opening.gameId);
+        count(node, 1, black, white);
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds the games of other, which must have the same settings.
+   */
+  public void merge(OpeningTrie other) {
+    if (other.boardSize != boardSize || other.maxMoves != maxMoves || other.canonical != canonical) {
+      throw new IllegalArgumentException("Tries built with other settings");
+    }
+    lock.writeLock().lock();
+    other.lock.readLock().lock();
+    try {
+      count(ROOT, other.counts[ROOT], other.blackWins[ROOT], other.whiteWins[ROOT]);
+      // pairs of nodes of other and of this trie, without recursion
+      int[] stack = new int[64];
+      int top = 0;
+      stack[top++] = ROOT;
+      stack[top++] = ROOT;
+      while (top > 0) {
+        int node = stack[--top];
+        int otherNode = stack[--top];
+        for (int child = other.firstChildren[otherNode]; child != NONE; child = other.nextSiblings[child]) {
+          int merged = child(node, other.moves[child], other.examples[child]);
+          count(merged, other.counts[child], other.blackWins[child], other.whiteWins[child]);
+          if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+          }
+          stack[top++] = child;
+          stack[top++] = merged;
+        }
+      }
+    }
+    finally {
+      other.lock.readLock().unlock();
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void count(int node, int count, int black, int white) {
+    counts[node] += count;
+    blackWins[node] += black;
+    whiteWins[node] += white;
+  }
+
+  /**
+   * @return the child of node playing move, added if there is none
+   */
+  private int child(int node, int move, long example) {
+    int rtrn = find(node, move);
+    if (rtrn != NONE) {
+      return rtrn;
+    }
+    if (size == moves.length) {
+      allocate(size * 2);
+    }
+    rtrn = size++;
+    moves[rtrn] = move;
+    firstChildren[rtrn] = NONE;
+    nextSiblings[rtrn] = firstChildren[node];
+    firstChildren[node] = rtrn;
+    examples[rtrn] = example;
+    return rtrn;
+  }
+
+  private int find(int node, int move) {
+    for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+      if (moves[child] == move) {
+        return child;
+      }
+    }
+    return NONE;
+  }
+
+  private void allocate(int capacity) {
+    moves = moves == null ? new int[capacity] : Arrays.copyOf(moves, capacity);
+    firstChildren = firstChildren == null ? new int[capacity] : Arrays.copyOf(firstChildren, capacity);
+    nextSiblings = nextSiblings == null ? new int[capacity] : Arrays.copyOf(nextSiblings, capacity);
+    counts = counts == null ? new int[capacity] : Arrays.copyOf(counts, capacity);
+    blackWins = blackWins == null ? new int[capacity] : Arrays.copyOf(blackWins, capacity);
+    whiteWins = whiteWins == null ? new int[capacity] : Arrays.copyOf(whiteWins, capacity);
+    examples = examples == null ? new long[capacity] : Arrays.copyOf(examples, capacity);
+  }
+
+  /**
+   * @return the node of the canonical sequence, NONE if it was never played
+   */
+  private int node(int[] sequence, int symmetry) {
+    int rtrn = ROOT;
+    for (int i = 0; i < sequence.length && rtrn != NONE; i++) {
+      rtrn = find(rtrn, transform(symmetry, sequence[i]));
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the number of games that started with the sequence, all the games
+   *         for an empty sequence
+   */
+  public int getCount(int... sequence) {
+    lock.readLock().lock();
+    try {
+      int node = node(sequence, canonicalSymmetry(sequence, sequence.length));
+      return node == NONE ? 0 : counts[node];
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the moves played after the sequence, the most played first, in the
+   *         orientation of the sequence
+   */
+  public List<Continuation> getContinuations(int... sequence) {
+    List<Continuation> rtrn = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      int symmetry = canonicalSymmetry(sequence, sequence.length);
+      int node = node(sequence, symmetry);
+      if (node == NONE) {
+        return rtrn;
+      }
+      int inverse = inverses[symmetry];
+      for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+        rtrn.add(new Continuation(transform(inverse, moves[child]), counts[child], blackWins[child],
+            whiteWins[child], examples[child]));
+      }
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+    rtrn.sort(Comparator.comparingInt(Continuation::getCount).reversed().thenComparingInt(Continuation::getMove));
+    return rtrn;
+  }
+
+  /**
+   * @return the ids of up to limit games that started with the sequence, the
+   *         games that first played the moves closest to the sequence first
+   */
+  public long[] getExamples(int limit, int... sequence) {
+    Set<Long> rtrn = new LinkedHashSet<>();
+    lock.readLock().lock();
+    try {
+      int start = node(sequence, canonicalSymmetry(sequence, sequence.length));
+      if (start == NONE) {
+        return new long[0];
+      }
+      // breadth first, stops as soon as there are enough games
+      int[] queue = new int[16];
+      int head = 0;
+      int tail = 0;
+      queue[tail++] = start;
+      while (head < tail && rtrn.size() < limit) {
+        int node = queue[head++];
+        if (examples[node] != NONE) {
+          rtrn.add(examples[node]);
+        }
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+          if (tail == queue.length) {
+            queue = Arrays.copyOf(queue, queue.length * 2);
+          }
+          queue[tail++] = child;
+        }
+      }
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+    return rtrn.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  /**
+   * @return the number of games added
+   */
+  public int getGameCount() {
+    return getCount();
+  }
+
+  /**
+   * @return the number of nodes, the root included
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getBoardSize() {
+    return boardSize;
+  }
+
+  public int getMaxMoves() {
+    return maxMoves;
+  }
+
+  public boolean isCanonical() {
+    return canonical;
+  }
+
+  /**
+   * Saves the trie, replacing the file atomically.
+   */
+  public void save(Path path) {
+    Path tmpPath = Paths.get(path.toString() + ".tmp");
+    lock.readLock().lock();
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmpPath), 1 << 16))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(boardSize);
+        out.writeInt(maxMoves);
+        out.writeBoolean(canonical);
+        out.writeInt(size);
+        for (int node = 0; node < size; node++) {
+          out.writeInt(moves[node]);
+          out.writeInt(firstChildren[node]);
+          out.writeInt(nextSiblings[node]);
+          out.writeInt(counts[node]);
+          out.writeInt(blackWins[node]);
+          out.writeInt(whiteWins[node]);
+          out.writeLong(examples[node]);
+        }
+      }
+      Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Reads a saved trie.
+   *
+   * @return the trie, null if there is none or it is not a trie
+   */
+  public static OpeningTrie load(Path path) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      OpeningTrie rtrn = new OpeningTrie(in.readInt(), in.readInt(), in.readBoolean());
+      int size = in.readInt();
+      rtrn.allocate(Math.max(size, 1));
+      for (int node = 0; node < size; node++) {
+        rtrn.moves[node] = in.readInt();
+        rtrn.firstChildren[node] = in.readInt();
+        rtrn.nextSiblings[node] = in.readInt();
+        rtrn.counts[node] = in.readInt();
+        rtrn.blackWins[node] = in.readInt();
+        rtrn.whiteWins[node] = in.readInt();
+        rtrn.examples[node] = in.readLong();
+      }
+      rtrn.size = size;
+      return rtrn;
+    }
+    catch (NoSuchFileException e) {
+      return null;
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,483 @@
+package net.vclj.golab.analysis;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.format.SgfDateRange;
+import net.vclj.golab.format.SgfResult;
+import net.vclj.golab.format.SgfValues;
+import net.vclj.golab.store.GameStore;
+
+/**
+ * Elo ratings of the players of a game collection, computed from the PB, PW,
+ * DT, HA and RE properties of the games in date order.
+ *
+ * Players are interned to int ids and all the state is in primitive arrays :
+ * the games sorted by date, the current rating of each player and the history
+ * of its ratings after each of its games, which answers the ratings as of any
+ * date.
+ *
+ * Games are added incrementally. A game dated before the last games is
+ * inserted at its place and the games after it are replayed, as long as it is
+ * within the replay window : older games are kept pending until the next
+ * {@link #recompute()}. Bulk loading ({@link #build(GameStore, double, int)})
+ * sorts the games once and rates them in a single pass.
+ */
+public class RatingEngine {
+  public static final double INITIAL_RATING = 1500;
+  public static final double DEFAULT_K_FACTOR = 20;
+  public static final int DEFAULT_REPLAY_WINDOW_DAYS = 365;
+  // rating advantage of black per handicap stone
+  public static final double HANDICAP_STONE = 100;
+
+  private final double kFactor;
+  private final int replayWindowDays;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final Map<String, Integer> playerIds = new HashMap<>();
+  private final List<String> playerNames = new ArrayList<>();
+
+  // games sorted by key : epoch day << 32 | arrival sequence
+  private int gameCount = 0;
+  private long[] keys = new long[1024];
+  private int[] blacks = new int[1024];
+  private int[] whites = new int[1024];
+  private byte[] handicaps = new byte[1024];
+  // score of black in half points : 0 lost, 1 draw, 2 won
+  private byte[] scores = new byte[1024];
+  private int sequence = 0;
+  // games older than the replay window, as key, black, white, handicap, score
+  private final List<long[]> pending = new ArrayList<>();
+
+  // per player : current rating, and keys and ratings after each game
+  private double[] ratings = new double[256];
+  private long[][] historyKeys = new long[256][];
+  private float[][] historyRatings = new float[256][];
+  private int[] historySizes = new int[256];
+  private int[] marks = new int[256];
+  private int markEpoch = 0;
+
+  public RatingEngine() {
+    this(DEFAULT_K_FACTOR, DEFAULT_REPLAY_WINDOW_DAYS);
+  }
+
+  /**
+   * @param kFactor the maximal change of rating after a game
+   * @param replayWindowDays how far back from the last game a late game is
+   *          still rated on arrival
+   */
+  public RatingEngine(double kFactor, int replayWindowDays) {
+    if (kFactor <= 0 || replayWindowDays < 0) {
+      throw new IllegalArgumentException("Invalid K factor " + kFactor + " or replay window " + replayWindowDays);
+    }
+    this.kFactor = kFactor;
+    this.replayWindowDays = replayWindowDays;
+  }
+
+  /**
+   * @return the ratings of the games of a store, read in a single scan
+   */
+  public static RatingEngine build(GameStore store, double kFactor, int replayWindowDays) {
+    RatingEngine rtrn = new RatingEngine(kFactor, replayWindowDays);
+    store.forEach(record -> rtrn.append(record.getProperty("PB"), record.getProperty("PW"),
+        record.getProperty("DT"), record.getProperty("HA"), record.getProperty("RE")));
+    rtrn.recompute();
+    return rtrn;
+  }
+
+  /**
+   * @return the ratings of games, typically all the games of the repository
+   */
+  public static RatingEngine build(Iterable<Game> games, double kFactor, int replayWindowDays) {
+    RatingEngine rtrn = new RatingEngine(kFactor, replayWindowDays);
+    for (Game game : games) {
+      Map<String, String> properties = game.getProperties();
+      rtrn.append(properties.get("PB"), properties.get("PW"), properties.get("DT"), properties.get("HA"),
+          properties.get("RE"));
+    }
+    rtrn.recompute();
+    return rtrn;
+  }
+
+  /**
+   * Rates a game from its root properties.
+   *
+   * @see #add(String, String, String, String, String)
+   */
+  public boolean add(Map<String, String> properties) {
+    return add(properties.get("PB"), properties.get("PW"), properties.get("DT"), properties.get("HA"),
+        properties.get("RE"));
+  }
+
+  public boolean add(Game game) {
+    return add(game.getProperties());
+  }
+
+  /**
+   * Rates a game, replaying the games after it if it is not the last one. A
+   * game older than the replay window is kept pending until the next
+   * {@link #recompute()}.
+   *
+   * @param date the DT value, the first date of the range being used
+   * @param result the RE value
+   * @return false if the game cannot be rated : a player, the date or the
+   *         winner is unknown
+   */
+  public boolean add(String black, String white, String date, String handicap, String result) {
+    lock.writeLock().lock();
+    try {
+      int row = append(black, white, date, handicap, result);
+      if (row < 0) {
+        return false;
+      }
+      long key = keys[row];
+      if (row == 0 || key > keys[row - 1]) {
+        rate(row);
+      } else if ((key >> 32) < (keys[row - 1] >> 32) - replayWindowDays) {
+        pending.add(new long[] { key, blacks[row], whites[row], handicaps[row], scores[row] });
+        gameCount--;
+      } else {
+        int at = insertionPoint(key, row);
+        move(row, at);
+        replay(at);
+      }
+      return true;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Rates all the games again from the initial ratings, pending games
+   * included.
+   */
+  public void recompute() {
+    lock.writeLock().lock();
+    try {
+      for (long[] game : pending) {
+        grow();
+        int row = gameCount++;
+        keys[row] = game[0];
+        blacks[row] = (int) game[1];
+        whites[row] = (int) game[2];
+        handicaps[row] = (byte) game[3];
+        scores[row] = (byte) game[4];
+      }
+      pending.clear();
+      sort();
+      Arrays.fill(ratings, 0, playerNames.size(), INITIAL_RATING);
+      Arrays.fill(historySizes, 0, playerNames.size(), 0);
+      for (int row = 0; row < gameCount; row++) {
+        rate(row);
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Appends a game at the end of the arrays.
+   *
+   * @return its row, -1 if it cannot be rated
+   */
+  private int append(String black, String white, String date, String handicap, String result) {
+    SgfDateRange range = SgfDateRange.parse(date);
+    SgfResult.Winner winner = SgfResult.parse(result).getWinner();
+    if (black == null || white == null || range == null || black.trim().isEmpty() || white.trim().isEmpty()) {
+      return -1;
+    }
+    byte score;
+    switch (winner) {
+    case BLACK:
+      score = 2;
+      break;
+    case WHITE:
+      score = 0;
+      break;
+    case DRAW:
+      score = 1;
+      break;
+    default:
+      return -1;
+    }
+    int blackId = playerId(black.trim());
+    int whiteId = playerId(white.trim());
+    if (blackId == whiteId) {
+      return -1;
+    }
+    grow();
+    int rtrn = gameCount++;
+    keys[rtrn] = range.getFirstEpochDay() << 32 | (sequence++ & 0xffffffffL);
+    blacks[rtrn] = blackId;
+    whites[rtrn] = whiteId;
+    handicaps[rtrn] = (byte) Math.max(0, Math.min(127, SgfValues.parseNumber(handicap, 0)));
+    scores[rtrn] = score;
+    return rtrn;
+  }
+
+  private void grow() {
+    if (gameCount < keys.length) {
+      return;
+    }
+    int capacity = gameCount * 2;
+    keys = Arrays.copyOf(keys, capacity);
+    blacks = Arrays.copyOf(blacks, capacity);
+    whites = Arrays.copyOf(whites, capacity);
+    handicaps = Arrays.copyOf(handicaps, capacity);
+    scores = Arrays.copyOf(scores, capacity);
+  }
+
+  private int playerId(String name) {
+    Integer rtrn = playerIds.get(name);
+    if (rtrn == null) {
+      rtrn = playerNames.size();
+      playerIds.put(name, rtrn);
+      playerNames.add(name);
+      if (rtrn == ratings.length) {
+        int capacity = rtrn * 2;
+        ratings = Arrays.copyOf(ratings, capacity);
+        historyKeys = Arrays.copyOf(historyKeys, capacity);
+        historyRatings = Arrays.copyOf(historyRatings, capacity);
+        historySizes = Arrays.copyOf(historySizes, capacity);
+        marks = Arrays.copyOf(marks, capacity);
+      }
+      ratings[rtrn] = INITIAL_RATING;
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the index of the first game before end whose key is greater than
+   *         key
+   */
+  private int insertionPoint(long key, int end) {
+    int low = 0;
+    int high = end;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (keys[middle] < key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Moves the game at row to index at, before it, the games between being
+   * shifted.
+   */
+  private void move(int row, int at) {
+    long key = keys[row];
+    int black = blacks[row];
+    int white = whites[row];
+    byte handicap = handicaps[row];
+    byte score = scores[row];
+    int length = row - at;
+    System.arraycopy(keys, at, keys, at + 1, length);
+    System.arraycopy(blacks, at, blacks, at + 1, length);
+    System.arraycopy(whites, at, whites, at + 1, length);
+    System.arraycopy(handicaps, at, handicaps, at + 1, length);
+    System.arraycopy(scores, at, scores, at + 1, length);
+    keys[at] = key;
+    blacks[at] = black;
+    whites[at] = white;
+    handicaps[at] = handicap;
+    scores[at] = score;
+  }
+
+  /**
+   * Rates the games from index from, the histories of their players being cut
+   * back to the games before it.
+   */
+  private void replay(int from) {
+    long key = keys[from];
+    markEpoch++;
+    for (int row = from; row < gameCount; row++) {
+      rewind(blacks[row], key);
+      rewind(whites[row], key);
+      rate(row);
+    }
+  }
+
+  private void rewind(int player, long key) {
+    if (marks[player] == markEpoch) {
+      return;
+    }
+    marks[player] = markEpoch;
+    int size = historyIndex(player, key);
+    historySizes[player] = size;
+    ratings[player] = size == 0 ? INITIAL_RATING : historyRatings[player][size - 1];
+  }
+
+  /**
+   * @return the number of games of player whose key is less than key
+   */
+  private int historyIndex(int player, long key) {
+    long[] history = historyKeys[player];
+    int low = 0;
+    int high = historySizes[player];
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (history[middle] < key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Updates the ratings of the players of the game at row.
+   */
+  private void rate(int row) {
+    int black = blacks[row];
+    int white = whites[row];
+    double expected = 1 / (1 + Math.pow(10,
+        (ratings[white] - ratings[black] - handicaps[row] * HANDICAP_STONE) / 400));
+    double change = kFactor * (scores[row] / 2.0 - expected);
+    ratings[black] += change;
+    ratings[white] -= change;
+    record(black, keys[row]);
+    record(white, keys[row]);
+  }
+
+  private void record(int player, long key) {
+    int size = historySizes[player];
+    if (historyKeys[player] == null) {
+      historyKeys[player] = new long[4];
+      historyRatings[player] = new float[4];
+    } else if (size == historyKeys[player].length) {
+      historyKeys[player] = Arrays.copyOf(historyKeys[player], size * 2);
+      historyRatings[player] = Arrays.copyOf(historyRatings[player], size * 2);
+    }
+    historyKeys[player][size] = key;
+    historyRatings[player][size] = (float) ratings[player];
+    historySizes[player] = size + 1;
+  }
+
+  /**
+   * Sorts all the games by date, the games of the same date staying in
+   * arrival order, and numbers them again.
+   */
+  private void sort() {
+    // the rows of a same date are in arrival order : the rated games are
+    // sorted and the others were appended after them
+    long[] order = new long[gameCount];
+    for (int row = 0; row < gameCount; row++) {
+      order[row] = (keys[row] >> 32) << 32 | row;
+    }
+    Arrays.parallelSort(order);
+    int[] sortedBlacks = new int[keys.length];
+    int[] sortedWhites = new int[keys.length];
+    byte[] sortedHandicaps = new byte[keys.length];
+    byte[] sortedScores = new byte[keys.length];
+    for (int i = 0; i < gameCount; i++) {
+      int row = (int) order[i];
+      sortedBlacks[i] = blacks[row];
+      sortedWhites[i] = whites[row];
+      sortedHandicaps[i] = handicaps[row];
+      sortedScores[i] = scores[row];
+      keys[i] = (order[i] >> 32) << 32 | i;
+    }
+    blacks = sortedBlacks;
+    whites = sortedWhites;
+    handicaps = sortedHandicaps;
+    scores = sortedScores;
+    sequence = gameCount;
+  }
+
+  /**
+   * @return the current rating of player, NaN if unknown
+   */
+  public double getRating(String player) {
+    lock.readLock().lock();
+    try {
+      Integer id = playerIds.get(player);
+      return id == null ? Double.NaN : ratings[id];
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the rating of player after its games played up to date included,
+   *         the initial rating if none, NaN if the player is unknown
+   */
+  public double getRating(String player, LocalDate date) {
+    lock.readLock().lock();
+    try {
+      Integer id = playerIds.get(player);
+      if (id == null) {
+        return Double.NaN;
+      }
+      int size = historyIndex(id, (date.toEpochDay() + 1) << 32);
+      return size == 0 ? INITIAL_RATING : historyRatings[id][size - 1];
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of rated games of player
+   */
+  public int getGameCount(String player) {
+    lock.readLock().lock();
+    try {
+      Integer id = playerIds.get(player);
+      return id == null ? 0 : historySizes[id];
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of rated games
+   */
+  public int getGameCount() {
+    lock.readLock().lock();
+    try {
+      return gameCount;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of games waiting for {@link #recompute()}
+   */
+  public int getPendingCount() {
+    lock.readLock().lock();
+    try {
+      return pending.size();
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getPlayerCount() {
+    lock.readLock().lock();
+    try {
+      return playerNames.size();
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+}
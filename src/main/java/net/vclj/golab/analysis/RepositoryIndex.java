@@ -0,0 +1,152 @@
+package net.vclj.golab.analysis;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.repository.GameRepository;
+import net.vclj.golab.service.GameImportService;
+
+/**
+ * Index of the games of the database, rebuilt on demand from the repository
+ * and updated with each game imported.
+ *
+ * A rebuild reads the games by pages of {@link #PAGE_SIZE}, by increasing id,
+ * each page in its own read-only transaction. What the index needs of each game
+ * (S) is copied out of the entity in the reading thread, while its lazy
+ * properties and moves can still be loaded, and the page is then dropped. The
+ * index (I) is built from these copies, possibly in parallel. Games imported
+ * meanwhile are added to the new index.
+ *
+ * @param <S> what is taken of a game, null if it is not indexed
+ * @param <I> the index
+ */
+public abstract class RepositoryIndex<S, I> {
+  public static final int PAGE_SIZE = 1000;
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final GameRepository repository;
+  private final TransactionTemplate readTransaction;
+
+  private volatile I index;
+
+  // what was taken of the games imported during a rebuild by id, null when
+  // there is none
+  private Map<Long, S> imported;
+
+  protected RepositoryIndex(GameRepository repository, GameImportService importService,
+      PlatformTransactionManager transactionManager, I index) {
+    this.repository = repository;
+    this.readTransaction = new TransactionTemplate(transactionManager);
+    readTransaction.setReadOnly(true);
+    this.index = index;
+    importService.addListener(this::add);
+  }
+
+  /**
+   * @return what the index needs of game, null if it is not indexed. Called in
+   *         the transaction that read game.
+   */
+  protected abstract S extract(Game game);
+
+  /**
+   * @return a new index of sources
+   */
+  protected abstract I build(List<S> sources);
+
+  /**
+   * Adds source to index, an index built or the current one.
+   */
+  protected abstract void add(I index, S source);
+
+  /**
+   * @return what to log of a rebuilt index
+   */
+  protected abstract String describe(I index);
+
+  /**
+   * Replaces the index by one built from all the games of the repository.
+   * Games imported while it is built are added to the new index.
+   */
+  public void rebuild() {
+    long start = System.nanoTime();
+    synchronized (this) {
+      imported = new LinkedHashMap<>();
+    }
+    Set<Long> ids = new HashSet<>();
+    I rebuilt;
+    try {
+      List<S> sources = new ArrayList<>();
+      Long last = Long.MIN_VALUE;
+      while (last != null) {
+        long after = last;
+        last = readTransaction.execute(status -> readPage(after, ids, sources));
+      }
+      rebuilt = build(sources);
+    }
+    catch (RuntimeException e) {
+      synchronized (this) {
+        imported = null;
+      }
+      throw e;
+    }
+    synchronized (this) {
+      for (Map.Entry<Long, S> entry : imported.entrySet()) {
+        if (!ids.contains(entry.getKey())) {
+          add(rebuilt, entry.getValue());
+        }
+      }
+      imported = null;
+      index = rebuilt;
+    }
+    log.info("{} built in {} ms", describe(rebuilt), (System.nanoTime() - start) / 1000000);
+  }
+
+  /**
+   * Reads the page of games following id after, adding their ids and what is
+   * taken of them.
+   *
+   * @return the id of the last game of the page, null if there is none
+   */
+  private Long readPage(long after, Set<Long> ids, List<S> sources) {
+    List<Game> games = repository.findByIdGreaterThan(after, PageRequest.of(0, PAGE_SIZE, Sort.by("id")));
+    for (Game game : games) {
+      ids.add(game.getId());
+      S source = extract(game);
+      if (source != null) {
+        sources.add(source);
+      }
+    }
+    return games.isEmpty() ? null : games.get(games.size() - 1).getId();
+  }
+
+  /**
+   * Adds an imported game to the current index.
+   */
+  public synchronized void add(Game game) {
+    S source = extract(game);
+    if (source == null) {
+      return;
+    }
+    add(index, source);
+    if (imported != null) {
+      imported.put(game.getId(), source);
+    }
+  }
+
+  protected I getIndex() {
+    return index;
+  }
+}
@@ -0,0 +1,704 @@
+package net.vclj.golab.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import net.vclj.golab.format.SgfArchive;
+import net.vclj.golab.format.SgfCollectionIndex;
+import net.vclj.golab.format.SgfFileManager;
+import net.vclj.golab.format.SgfHandler;
+import net.vclj.golab.format.SgfResult;
+import net.vclj.golab.format.SgfScanner;
+import net.vclj.golab.format.SgfText;
+import net.vclj.golab.format.SgfValues;
+
+/**
+ * Time used by the players of a game, from the clock properties of the moves
+ * of its main line : BL and WL, the time left in seconds after the move, and
+ * OB and OW, the byo-yomi periods left (stones left in the period for Canadian
+ * overtime).
+ *
+ * The games are read with {@link SgfScanner} : no tree is built, the main line
+ * being the nodes before the first end of variation. The time spent on each
+ * move is the difference with the previous move of the same color, the first
+ * one starting from the main time (TM), the byo-yomi periods used being added
+ * for the overtimes written by KGS in OT ("5x30 byo-yomi", "25/600 Canadian").
+ * It is NaN when a clock is missing, or when the time left grows with an
+ * unknown overtime (Fischer increments for example).
+ *
+ * {@link Aggregate} sums the time trouble of players by rank over a corpus.
+ */
+public final class TimeUsage {
+  public static final double DEFAULT_TROUBLE_SECONDS = 10;
+
+  public enum Overtime {
+    /**
+     * No OT property.
+     */
+    NONE,
+    /**
+     * Japanese byo-yomi : periods of a fixed time, one used up each time it
+     * runs out.
+     */
+    BYO_YOMI,
+    /**
+     * A number of stones to play in a fixed time, renewed when they are
+     * played.
+     */
+    CANADIAN,
+    /**
+     * Not understood.
+     */
+    OTHER
+  }
+
+  private static final Pattern BYO_YOMI = Pattern.compile("(\\d+)\\s*x\\s*(\\d+(?:\\.\\d+)?)\\s*byo-?yomi.*",
+      Pattern.CASE_INSENSITIVE);
+  private static final Pattern CANADIAN = Pattern.compile("(\\d+)\\s*/\\s*(\\d+(?:\\.\\d+)?)\\s*canadian.*",
+      Pattern.CASE_INSENSITIVE);
+  private static final Pattern RANK = Pattern.compile("\\s*(\\d+)\\s*([kdp]).*", Pattern.CASE_INSENSITIVE);
+
+  /**
+   * The clock of the moves of one color, by move of this color.
+   */
+  public static final class Series {
+    private final int[] moves;
+    private final float[] timeLeft;
+    private final float[] timeSpent;
+    private final int[] periodsLeft;
+
+    private Series(int[] moves, float[] timeLeft, int[] periodsLeft) {
+      this.moves = moves;
+      this.timeLeft = timeLeft;
+      this.timeSpent = new float[moves.length];
+      this.periodsLeft = periodsLeft;
+    }
+
+    public int size() {
+      return moves.length;
+    }
+
+    /**
+     * @return the number of each move in the main line, from 0
+     */
+    public int[] getMoves() {
+      return moves;
+    }
+
+    /**
+     * @return the seconds left after each move, NaN when not recorded
+     */
+    public float[] getTimeLeft() {
+      return timeLeft;
+    }
+
+    /**
+     * @return the seconds spent on each move, NaN when unknown
+     */
+    public float[] getTimeSpent() {
+      return timeSpent;
+    }
+
+    /**
+     * @return the byo-yomi periods (or Canadian stones) left after each move,
+     *         -1 in main time
+     */
+    public int[] getPeriodsLeft() {
+      return periodsLeft;
+    }
+
+    public boolean isByoYomi(int i) {
+      return periodsLeft[i] >= 0;
+    }
+  }
+
+  private final Series black;
+  private final Series white;
+  private final int moveCount;
+  private final double mainTime;
+  private final String overtimeText;
+  private final Overtime overtime;
+  // byo-yomi periods or Canadian stones, and the time of a period
+  private final int periods;
+  private final double periodTime;
+  private final String blackRank;
+  private final String whiteRank;
+  private final SgfResult result;
+
+  private TimeUsage(Extractor game) {
+    black = game.black.build();
+    white = game.white.build();
+    moveCount = game.moves;
+    mainTime = SgfValues.parseReal(game.mainTime);
+    overtimeText = game.overtime;
+    Matcher matcher;
+    if (overtimeText == null) {
+      overtime = Overtime.NONE;
+      periods = 0;
+      periodTime = Double.NaN;
+    } else if ((matcher = BYO_YOMI.matcher(overtimeText.trim())).matches()) {
+      overtime = Overtime.BYO_YOMI;
+      periods = Integer.parseInt(matcher.group(1));
+      periodTime = Double.parseDouble(matcher.group(2));
+    } else if ((matcher = CANADIAN.matcher(overtimeText.trim())).matches()) {
+      overtime = Overtime.CANADIAN;
+      periods = Integer.parseInt(matcher.group(1));
+      periodTime = Double.parseDouble(matcher.group(2));
+    } else {
+      overtime = Overtime.OTHER;
+      periods = 0;
+      periodTime = Double.NaN;
+    }
+    blackRank = game.blackRank;
+    whiteRank = game.whiteRank;
+    result = SgfResult.parse(game.result);
+    spend(black);
+    spend(white);
+  }
+
+  /**
+   * Extracts the clocks of every game of sgf, which can be a collection.
+   *
+   * @throws net.vclj.golab.format.SgfParseException if a value is not
+   *           terminated
+   */
+  public static List<TimeUsage> extract(String sgf) {
+    Extractor extractor = new Extractor();
+    SgfScanner.scan(sgf, extractor);
+    if (extractor.depth > 0) {
+      // game tree not terminated : what was read
+      extractor.endGame();
+    }
+    return extractor.games;
+  }
+
+  /**
+   * Fills the time spent on each move from the time left.
+   */
+  private void spend(Series series) {
+    double left = mainTime;
+    int periodsLeft = -1;
+    for (int i = 0; i < series.size(); i++) {
+      double now = series.timeLeft[i];
+      int periodsNow = series.periodsLeft[i];
+      double spent;
+      if (periodsNow < 0) {
+        spent = left - now;
+      } else if (overtime == Overtime.BYO_YOMI) {
+        // the time left in main time, the periods used, and the time used in
+        // the current period
+        spent = (periodsLeft < 0 ? left + (periods - periodsNow) * periodTime
+            : (periodsLeft - periodsNow) * periodTime) + periodTime - now;
+      } else if (overtime == Overtime.CANADIAN) {
+        if (periodsLeft < 0) {
+          spent = left + periodTime - now;
+        } else if (periodsNow < periodsLeft) {
+          spent = left - now;
+        } else {
+          // new period : the rest of the previous one was not used
+          spent = periodTime - now;
+        }
+      } else {
+        spent = periodsNow == periodsLeft ? left - now : Double.NaN;
+      }
+      // NaN stays NaN
+      series.timeSpent[i] = spent >= 0 ? (float) spent : Float.NaN;
+      left = now;
+      periodsLeft = periodsNow;
+    }
+  }
+
+  public Series getBlack() {
+    return black;
+  }
+
+  public Series getWhite() {
+    return white;
+  }
+
+  /**
+   * @return the number of moves of the main line
+   */
+  public int getMoveCount() {
+    return moveCount;
+  }
+
+  /**
+   * @return the main time in seconds, NaN if unknown
+   */
+  public double getMainTime() {
+    return mainTime;
+  }
+
+  public Overtime getOvertime() {
+    return overtime;
+  }
+
+  /**
+   * @return the OT property, null if there is none
+   */
+  public String getOvertimeText() {
+    return overtimeText;
+  }
+
+  /**
+   * @return the byo-yomi periods, or the stones of a Canadian period, 0 without
+   *         overtime
+   */
+  public int getPeriods() {
+    return periods;
+  }
+
+  /**
+   * @return the seconds of a period, NaN without overtime
+   */
+  public double getPeriodTime() {
+    return periodTime;
+  }
+
+  public String getBlackRank() {
+    return blackRank;
+  }
+
+  public String getWhiteRank() {
+    return whiteRank;
+  }
+
+  public SgfResult getResult() {
+    return result;
+  }
+
+  /**
+   * A move is played in time trouble when the player has less than threshold
+   * seconds to play it and the following ones : the time left in main time
+   * when there is no known overtime, the time of the last byo-yomi period, the
+   * time left by stone of the Canadian period.
+   */
+  public boolean isInTimeTrouble(Series series, int i, double threshold) {
+    double left = series.timeLeft[i];
+    int periodsLeft = series.periodsLeft[i];
+    if (Double.isNaN(left)) {
+      return false;
+    }
+    if (periodsLeft < 0) {
+      return (overtime == Overtime.NONE || overtime == Overtime.OTHER) && left < threshold;
+    }
+    switch (overtime) {
+    case BYO_YOMI:
+      return periodsLeft <= 1 && left < threshold;
+    case CANADIAN:
+      return left < threshold * Math.max(1, periodsLeft);
+    default:
+      return left < threshold;
+    }
+  }
+
+  /**
+   * @return the number of moves of series played in time trouble
+   */
+  public int getTroubleCount(Series series, double threshold) {
+    int rtrn = 0;
+    for (int i = 0; i < series.size(); i++) {
+      if (isInTimeTrouble(series, i, threshold)) {
+        rtrn++;
+      }
+    }
+    return rtrn;
+  }
+
+  /**
+   * Receives the game trees of the scanned input, keeping the clocks of the
+   * main line.
+   */
+  private static final class Extractor implements SgfHandler {
+    private final List<TimeUsage> games = new ArrayList<>();
+    private int depth;
+    private boolean mainLine;
+    private int nodes;
+    private int moves;
+    // game properties of the root node
+    private String mainTime;
+    private String overtime;
+    private String blackRank;
+    private String whiteRank;
+    private String result;
+    private final SeriesBuilder black = new SeriesBuilder();
+    private final SeriesBuilder white = new SeriesBuilder();
+    // current node
+    private int color;
+    private double blackLeft;
+    private double whiteLeft;
+    private int blackPeriods;
+    private int whitePeriods;
+
+    @Override
+    public void startTree(int offset) {
+      if (depth == 0) {
+        mainLine = true;
+        nodes = 0;
+        moves = 0;
+        mainTime = null;
+        overtime = null;
+        blackRank = null;
+        whiteRank = null;
+        result = null;
+        black.clear();
+        white.clear();
+      }
+      depth++;
+    }
+
+    @Override
+    public void endTree(int offset) {
+      if (depth == 0) {
+        return;
+      }
+      // the first end of variation closes the main line
+      mainLine = false;
+      depth--;
+      if (depth == 0) {
+        endGame();
+      }
+    }
+
+    private void endGame() {
+      games.add(new TimeUsage(this));
+      depth = 0;
+    }
+
+    @Override
+    public void startNode(int offset) {
+      if (mainLine) {
+        nodes++;
+        color = 0;
+        blackLeft = Double.NaN;
+        whiteLeft = Double.NaN;
+        blackPeriods = -1;
+        whitePeriods = -1;
+      }
+    }
+
+    @Override
+    public void endNode(int offset) {
+      if (mainLine && color != 0) {
+        if (color == 'B') {
+          black.add(moves, blackLeft, blackPeriods);
+        } else {
+          white.add(moves, whiteLeft, whitePeriods);
+        }
+        moves++;
+      }
+    }
+
+    @Override
+    public void property(String source, int keyStart, int keyEnd, int valueStart, int valueEnd) {
+      if (!mainLine) {
+        return;
+      }
+      int length = keyEnd - keyStart;
+      if (length == 1) {
+        char key = source.charAt(keyStart);
+        if (key == 'B' || key == 'W') {
+          color = key;
+        }
+      } else if (length == 2) {
+        char first = source.charAt(keyStart);
+        char second = source.charAt(keyStart + 1);
+        if (second == 'L' && (first == 'B' || first == 'W')) {
+          double left = SgfValues.parseReal(source.subSequence(valueStart, valueEnd));
+          if (first == 'B') {
+            blackLeft = left;
+          } else {
+            whiteLeft = left;
+          }
+        } else if (first == 'O' && (second == 'B' || second == 'W')) {
+          int periods = SgfValues.parseNumber(source.subSequence(valueStart, valueEnd), -1);
+          if (second == 'B') {
+            blackPeriods = periods;
+          } else {
+            whitePeriods = periods;
+          }
+        } else if (nodes == 1) {
+          String value = SgfText.unescape(source, valueStart, valueEnd);
+          if (first == 'T' && second == 'M') {
+            mainTime = value;
+          } else if (first == 'O' && second == 'T') {
+            overtime = value;
+          } else if (first == 'B' && second == 'R') {
+            blackRank = value;
+          } else if (first == 'W' && second == 'R') {
+            whiteRank = value;
+          } else if (first == 'R' && second == 'E') {
+            result = value;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Growable arrays of the clocks of one color, reused from game to game.
+   */
+  private static final class SeriesBuilder {
+    private int size;
+    private int[] moves = new int[256];
+    private float[] timeLeft = new float[256];
+    private int[] periodsLeft = new int[256];
+
+    void clear() {
+      size = 0;
+    }
+
+    void add(int move, double left, int periods) {
+      if (size == moves.length) {
+        moves = Arrays.copyOf(moves, size * 2);
+        timeLeft = Arrays.copyOf(timeLeft, size * 2);
+        periodsLeft = Arrays.copyOf(periodsLeft, size * 2);
+      }
+      moves[size] = move;
+      timeLeft[size] = (float) left;
+      periodsLeft[size] = periods;
+      size++;
+    }
+
+    Series build() {
+      return new Series(Arrays.copyOf(moves, size), Arrays.copyOf(timeLeft, size), Arrays.copyOf(periodsLeft, size));
+    }
+  }
+
+  /**
+   * @return the rank as "5k", "3d" or "1p", null if it is not one
+   */
+  public static String normalizeRank(String rank) {
+    if (rank == null) {
+      return null;
+    }
+    Matcher matcher = RANK.matcher(rank);
+    return matcher.matches() ? Integer.parseInt(matcher.group(1)) + matcher.group(2).toLowerCase() : null;
+  }
+
+  /**
+   * @return the order of a normalized rank, kyus then dans then pros
+   */
+  private static int rankOrder(String rank) {
+    if (rank == null) {
+      return Integer.MAX_VALUE;
+    }
+    int level = Integer.parseInt(rank.substring(0, rank.length() - 1));
+    switch (rank.charAt(rank.length() - 1)) {
+    case 'k':
+      return -level;
+    case 'd':
+      return level;
+    default:
+      return 100 + level;
+    }
+  }
+
+  /**
+   * Time usage of the players of one rank.
+   */
+  public static final class RankStats {
+    private final String rank;
+    private int games;
+    private int troubleGames;
+    private int timeLosses;
+    private long moves;
+    private long troubleMoves;
+    private long spentMoves;
+    private double spent;
+
+    private RankStats(String rank) {
+      this.rank = rank;
+    }
+
+    private void merge(RankStats other) {
+      games += other.games;
+      troubleGames += other.troubleGames;
+      timeLosses += other.timeLosses;
+      moves += other.moves;
+      troubleMoves += other.troubleMoves;
+      spentMoves += other.spentMoves;
+      spent += other.spent;
+    }
+
+    /**
+     * @return the normalized rank, null for the players without rank
+     */
+    public String getRank() {
+      return rank;
+    }
+
+    /**
+     * @return the number of games played at this rank, with a clock
+     */
+    public int getGames() {
+      return games;
+    }
+
+    /**
+     * @return the number of games with at least one move in time trouble
+     */
+    public int getTroubleGames() {
+      return troubleGames;
+    }
+
+    public int getTimeLosses() {
+      return timeLosses;
+    }
+
+    public long getMoves() {
+      return moves;
+    }
+
+    public long getTroubleMoves() {
+      return troubleMoves;
+    }
+
+    public double getTroubleRate() {
+      return games == 0 ? 0 : (double) troubleGames / games;
+    }
+
+    public double getTimeLossRate() {
+      return games == 0 ? 0 : (double) timeLosses / games;
+    }
+
+    /**
+     * @return the average seconds spent on a move, NaN if none is known
+     */
+    public double getAverageTimeSpent() {
+      return spentMoves == 0 ? Double.NaN : spent / spentMoves;
+    }
+
+    @Override
+    public String toString() {
+      return (rank == null ? "?" : rank) + " : " + games + " games, " + troubleGames + " in time trouble, "
+          + timeLosses + " lost on time";
+    }
+  }
+
+  /**
+   * Sums the time usage of the players by rank. The players of the games
+   * without any clock are not counted.
+   */
+  public static final class Aggregate {
+    private final double threshold;
+    private final Map<String, RankStats> ranks = new HashMap<>();
+
+    public Aggregate() {
+      this(DEFAULT_TROUBLE_SECONDS);
+    }
+
+    /**
+     * @param threshold seconds under which a move is in time trouble, see
+     *          {@link TimeUsage#isInTimeTrouble(Series, int, double)}
+     */
+    public Aggregate(double threshold) {
+      this.threshold = threshold;
+    }
+
+    /**
+     * Adds every game of sgf.
+     */
+    public void add(String sgf) {
+      for (TimeUsage usage : extract(sgf)) {
+        add(usage);
+      }
+    }
+
+    public void add(TimeUsage usage) {
+      add(usage, usage.getBlack(), usage.getBlackRank(), SgfResult.Winner.WHITE);
+      add(usage, usage.getWhite(), usage.getWhiteRank(), SgfResult.Winner.BLACK);
+    }
+
+    private void add(TimeUsage usage, Series series, String rank, SgfResult.Winner opponent) {
+      boolean clocked = false;
+      for (float left : series.getTimeLeft()) {
+        clocked |= !Float.isNaN(left);
+      }
+      if (!clocked) {
+        return;
+      }
+      String normalized = normalizeRank(rank);
+      RankStats stats = ranks.computeIfAbsent(normalized, RankStats::new);
+      int trouble = usage.getTroubleCount(series, threshold);
+      stats.games++;
+      stats.troubleGames += trouble > 0 ? 1 : 0;
+      SgfResult result = usage.getResult();
+      stats.timeLosses += result.getWinner() == opponent && result.getReason() == SgfResult.Reason.TIME ? 1 : 0;
+      stats.moves += series.size();
+      stats.troubleMoves += trouble;
+      for (float spent : series.getTimeSpent()) {
+        if (!Float.isNaN(spent)) {
+          stats.spentMoves++;
+          stats.spent += spent;
+        }
+      }
+    }
+
+    /**
+     * Adds the sums of other to this one.
+     *
+     * @return this
+     */
+    public Aggregate merge(Aggregate other) {
+      for (RankStats stats : other.ranks.values()) {
+        ranks.computeIfAbsent(stats.rank, RankStats::new).merge(stats);
+      }
+      return this;
+    }
+
+    /**
+     * @return the statistics by rank, from the weakest, the players without
+     *         rank last
+     */
+    public List<RankStats> getRanks() {
+      List<RankStats> rtrn = new ArrayList<>(ranks.values());
+      rtrn.sort(Comparator.comparingInt(stats -> rankOrder(stats.rank)));
+      return rtrn;
+    }
+
+    /**
+     * @return the statistics of one rank, null if it has no game
+     */
+    public RankStats getRank(String rank) {
+      return ranks.get(normalizeRank(rank));
+    }
+  }
+
+  /**
+   * Aggregates every game of an archive, its blocks being inflated and scanned
+   * in parallel.
+   */
+  public static Aggregate aggregate(SgfArchive archive, double threshold) {
+    Collection<Aggregate> parts = new ConcurrentLinkedQueue<>();
+    ThreadLocal<Aggregate> aggregates = ThreadLocal.withInitial(() -> {
+      Aggregate rtrn = new Aggregate(threshold);
+      parts.add(rtrn);
+      return rtrn;
+    });
+    archive.forEach((sgf, k) -> aggregates.get().add(sgf), true);
+    Aggregate rtrn = new Aggregate(threshold);
+    for (Aggregate part : parts) {
+      rtrn.merge(part);
+    }
+    return rtrn;
+  }
+
+  /**
+   * Aggregates every game of an indexed collection file in parallel.
+   */
+  public static Aggregate aggregate(SgfCollectionIndex collection, double threshold) {
+    return IntStream.range(0, collection.size()).parallel().collect(() -> new Aggregate(threshold),
+        (aggregate, k) -> aggregate.add(SgfFileManager.readFromCollection(collection, k)), Aggregate::merge);
+  }
+}
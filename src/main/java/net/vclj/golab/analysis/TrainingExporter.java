@@ -0,0 +1,394 @@
+package net.vclj.golab.analysis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.format.PointSet;
+import net.vclj.golab.format.SgfCollectionIndex;
+import net.vclj.golab.format.SgfFileManager;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfResult;
+import net.vclj.golab.store.GameStore;
+
+/**
+ * Export of the main line positions of games as training records for move
+ * prediction models : one fixed size record per position and per symmetry,
+ * so that the file can be mapped as an array of records by the trainer.
+ *
+ * <pre>
+ * header   : int magic "GLTR", int version, int header size, int board size,
+ *            int plane count, int record size, long record count,
+ *            int symmetries (1 or 8), int game count,
+ *            short layout length, layout (ASCII), zero padded to 256 bytes
+ * record   : planes of size * size bytes, by row, relative to the player
+ *              to move : own stones, opponent stones, empty points,
+ *              liberties of the group of each stone (capped to 255),
+ *              ko point (the point the player to move cannot take back)
+ *            int game (index in the source), short move number (from 0),
+ *            short next move (y * size + x, size * size for a pass),
+ *            byte color to move (0 black, 1 white), byte result for the
+ *            player to move (1 win, -1 loss, 0 draw or unknown),
+ *            byte symmetry, byte 0
+ * </pre>
+ *
+ * Numbers are big endian, the ByteBuffer default. Symmetry s of a position
+ * swaps the coordinates if bit 0 is set, then mirrors x for bit 1 and y for
+ * bit 2, as in {@link OpeningTrie}.
+ *
+ * Games are replayed twice : a first parallel pass counts their positions,
+ * which gives each game the offset of its records, then the file is written
+ * by chunks of consecutive games in parallel, each chunk in its own mapped
+ * region. Games of another board size, and games with a point off board, are
+ * skipped. The file is written next to the destination and moved on it when
+ * complete.
+ */
+public class TrainingExporter {
+  private static final Logger log = LoggerFactory.getLogger(TrainingExporter.class);
+
+  public static final int MAGIC = 0x474C5452;
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 256;
+  public static final int PLANES = 5;
+  public static final int FIELDS_SIZE = 12;
+  public static final int SYMMETRIES = 8;
+
+  public static final String LAYOUT = "planes=own,opponent,empty,liberties,ko:u8;"
+      + "fields=game:i32,move:i16,next:i16,color:u8,result:i8,symmetry:u8,pad:u8;order=big";
+
+  // upper bound of the region mapped by a chunk of games
+  private static final long CHUNK_SIZE = 1 << 26;
+
+  private final int boardSize;
+  private final boolean augment;
+  private final int[][] symmetries;
+
+  /**
+   * @param augment true to write the 8 symmetries of each position, false
+   *          for the position as played only
+   */
+  public TrainingExporter(int boardSize, boolean augment) {
+    if (boardSize < 2 || boardSize > CoordinateCodec.MAX_SGF_BOARD_SIZE) {
+      throw new IllegalArgumentException("Invalid board size : " + boardSize);
+    }
+    this.boardSize = boardSize;
+    this.augment = augment;
+    symmetries = symmetries(boardSize);
+  }
+
+  public int getBoardSize() {
+    return boardSize;
+  }
+
+  public int getRecordSize() {
+    return PLANES * boardSize * boardSize + FIELDS_SIZE;
+  }
+
+  /**
+   * @return the number of records written for each position
+   */
+  public int getSymmetryCount() {
+    return augment ? SYMMETRIES : 1;
+  }
+
+  /**
+   * Exports the games of a store.
+   *
+   * @return the number of records written
+   */
+  public long export(GameStore store, Path destination) {
+    return export(store.size(), k -> store.get(k).toSgfGame(), destination);
+  }
+
+  /**
+   * Exports the games of an indexed collection file.
+   *
+   * @return the number of records written
+   */
+  public long export(SgfCollectionIndex collection, Path destination) {
+    return export(collection.size(), k -> SgfFileManager.createFromCollection(collection, k), destination);
+  }
+
+  /**
+   * Exports parsed games.
+   *
+   * @return the number of records written
+   */
+  public long export(List<SgfGame> games, Path destination) {
+    return export(games.size(), games::get, destination);
+  }
+
+  private long export(int gameCount, IntFunction<SgfGame> games, Path destination) {
+    ThreadLocal<Board> boards = ThreadLocal.withInitial(() -> new Board(boardSize));
+    int[] positions = new int[gameCount];
+    IntStream.range(0, gameCount).parallel()
+        .forEach(k -> positions[k] = replay(games.apply(k), boards.get(), null));
+
+    long recordSize = (long) getRecordSize() * getSymmetryCount();
+    long[] offsets = new long[gameCount + 1];
+    offsets[0] = HEADER_SIZE;
+    for (int k = 0; k < gameCount; k++) {
+      offsets[k + 1] = offsets[k] + positions[k] * recordSize;
+    }
+    long recordCount = (offsets[gameCount] - HEADER_SIZE) / getRecordSize();
+
+    // chunks of consecutive games, small enough to be mapped, and numerous
+    // enough to keep the cores busy
+    long chunkSize = Math.max(recordSize,
+        Math.min(CHUNK_SIZE, (offsets[gameCount] - HEADER_SIZE) / (4L * Runtime.getRuntime().availableProcessors())));
+    List<Integer> starts = new ArrayList<>();
+    for (int k = 0; k < gameCount; k++) {
+      if (starts.isEmpty() || offsets[k + 1] - offsets[starts.get(starts.size() - 1)] > chunkSize) {
+        starts.add(k);
+      }
+    }
+    starts.add(gameCount);
+
+    // written then renamed : the destination is complete or untouched
+    Path temporary = Paths.get(destination.toString() + ".tmp");
+    boolean moved = false;
+    try {
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        channel.write(header(recordCount, gameCount), 0);
+        IntStream.range(0, starts.size() - 1).parallel().forEach(c -> {
+          int from = starts.get(c);
+          int to = starts.get(c + 1);
+          if (offsets[to] == offsets[from]) {
+            return;
+          }
+          MappedByteBuffer region;
+          try {
+            region = channel.map(FileChannel.MapMode.READ_WRITE, offsets[from], offsets[to] - offsets[from]);
+          }
+          catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          Writer writer = new Writer(region);
+          for (int k = from; k < to; k++) {
+            if (positions[k] > 0) {
+              SgfGame game = games.apply(k);
+              writer.game = k;
+              writer.result = winner(game);
+              if (replay(game, boards.get(), writer) != positions[k]) {
+                throw new IllegalStateException("Game " + k + " replayed differently");
+              }
+            }
+          }
+          region.force();
+        });
+        channel.force(true);
+      }
+      Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      moved = true;
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    finally {
+      if (!moved) {
+        try {
+          Files.deleteIfExists(temporary);
+        }
+        catch (IOException e) {
+          log.warn("Could not delete {}", temporary, e);
+        }
+      }
+    }
+    return recordCount;
+  }
+
+  private ByteBuffer header(long recordCount, int gameCount) {
+    ByteBuffer rtrn = ByteBuffer.allocate(HEADER_SIZE);
+    byte[] layout = LAYOUT.getBytes(StandardCharsets.US_ASCII);
+    rtrn.putInt(MAGIC).putInt(VERSION).putInt(HEADER_SIZE).putInt(boardSize).putInt(PLANES)
+        .putInt(getRecordSize()).putLong(recordCount).putInt(getSymmetryCount()).putInt(gameCount)
+        .putShort((short) layout.length).put(layout);
+    rtrn.position(0);
+    return rtrn;
+  }
+
+  /**
+   * @return the winner of game seen by black : 1, -1 for white, 0 otherwise
+   */
+  private static int winner(SgfGame game) {
+    SgfResult result = game.getResult();
+    if (result == null || result.getWinner() == null) {
+      return 0;
+    }
+    switch (result.getWinner()) {
+    case BLACK:
+      return 1;
+    case WHITE:
+      return -1;
+    default:
+      return 0;
+    }
+  }
+
+  /**
+   * Replays the main line of game, writing the position before each move
+   * when writer is not null.
+   *
+   * @return the number of positions, 0 if the game cannot be exported
+   */
+  private int replay(SgfGame game, Board board, Writer writer) {
+    if (game.getBoardWidth() != boardSize || game.getBoardHeight() != boardSize) {
+      return 0;
+    }
+    board.clear();
+    int rtrn = 0;
+    try {
+      // the root properties are those of the game
+      setup(game.getProperties(), board);
+      for (SgfGameNode node = game.getRootNode(); node != null; node = node.getNextNode()) {
+        setup(node, board);
+        if (!node.isMove()) {
+          continue;
+        }
+        String value = node.getMoveString();
+        byte color = node.isBlack() ? Board.BLACK : Board.WHITE;
+        int next = boardSize * boardSize;
+        if (!CoordinateCodec.isSgfPass(value, boardSize)) {
+          int point = CoordinateCodec.sgfToPoint(value);
+          int x = CoordinateCodec.pointX(point);
+          int y = CoordinateCodec.pointY(point);
+          if (x >= boardSize || y >= boardSize) {
+            return 0;
+          }
+          next = y * boardSize + x;
+        }
+        if (writer != null) {
+          writer.write(board, rtrn, color, next);
+        }
+        rtrn++;
+        if (next == boardSize * boardSize) {
+          board.pass();
+        } else {
+          board.play(next, color);
+        }
+      }
+    }
+    catch (IllegalArgumentException e) {
+      // invalid point list
+      return 0;
+    }
+    return rtrn;
+  }
+
+  private void setup(Map<String, String> properties, Board board) {
+    setup(board, properties.get("AE"), Board.EMPTY);
+    setup(board, properties.get("AB"), Board.BLACK);
+    setup(board, properties.get("AW"), Board.WHITE);
+  }
+
+  private void setup(SgfGameNode node, Board board) {
+    if (node.getProperty("AE") != null) {
+      setup(board, PointSet.parse(node.getPropertyValues("AE"), boardSize, boardSize), Board.EMPTY);
+    }
+    if (node.getProperty("AB") != null) {
+      setup(board, PointSet.parse(node.getPropertyValues("AB"), boardSize, boardSize), Board.BLACK);
+    }
+    if (node.getProperty("AW") != null) {
+      setup(board, PointSet.parse(node.getPropertyValues("AW"), boardSize, boardSize), Board.WHITE);
+    }
+  }
+
+  private void setup(Board board, String points, byte color) {
+    if (points != null) {
+      setup(board, PointSet.parse(points, boardSize, boardSize), color);
+    }
+  }
+
+  private static void setup(Board board, PointSet points, byte color) {
+    for (int i = points.nextIndex(0); i >= 0; i = points.nextIndex(i + 1)) {
+      board.setup(i, color);
+    }
+  }
+
+  /**
+   * Index of each point under the 8 symmetries, the pass (size * size) being
+   * kept.
+   */
+  private static int[][] symmetries(int boardSize) {
+    int[][] rtrn = new int[SYMMETRIES][boardSize * boardSize + 1];
+    for (int s = 0; s < SYMMETRIES; s++) {
+      for (int index = 0; index < boardSize * boardSize; index++) {
+        int x = index % boardSize;
+        int y = index / boardSize;
+        if ((s & 1) != 0) {
+          int swap = x;
+          x = y;
+          y = swap;
+        }
+        if ((s & 2) != 0) {
+          x = boardSize - 1 - x;
+        }
+        if ((s & 4) != 0) {
+          y = boardSize - 1 - y;
+        }
+        rtrn[s][index] = y * boardSize + x;
+      }
+      rtrn[s][boardSize * boardSize] = boardSize * boardSize;
+    }
+    return rtrn;
+  }
+
+  /**
+   * Writes the records of the games of a chunk in its mapped region.
+   */
+  private final class Writer {
+    private final MappedByteBuffer region;
+    private final int points = boardSize * boardSize;
+    private final byte[] planes = new byte[PLANES * boardSize * boardSize];
+    private final int[] liberties = new int[boardSize * boardSize];
+    private int game;
+    private int result;
+
+    Writer(MappedByteBuffer region) {
+      this.region = region;
+    }
+
+    void write(Board board, int move, byte color, int next) {
+      board.liberties(liberties);
+      int ko = board.getKoPoint();
+      for (int s = 0; s < getSymmetryCount(); s++) {
+        int[] symmetry = symmetries[s];
+        for (int index = 0; index < points; index++) {
+          int target = symmetry[index];
+          byte stone = board.getColor(index);
+          planes[target] = (byte) (stone == color ? 1 : 0);
+          planes[points + target] = (byte) (stone != Board.EMPTY && stone != color ? 1 : 0);
+          planes[2 * points + target] = (byte) (stone == Board.EMPTY ? 1 : 0);
+          planes[3 * points + target] = (byte) liberties[index];
+          planes[4 * points + target] = (byte) (index == ko ? 1 : 0);
+        }
+        region.put(planes);
+        region.putInt(game);
+        region.putShort((short) move);
+        region.putShort((short) symmetry[next]);
+        region.put((byte) (color == Board.BLACK ? 0 : 1));
+        region.put((byte) (color == Board.BLACK ? result : -result));
+        region.put((byte) s);
+        region.put((byte) 0);
+      }
+    }
+  }
+}
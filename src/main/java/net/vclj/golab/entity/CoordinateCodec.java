@@ -0,0 +1,305 @@
+package net.vclj.golab.entity;
+
+/**
+ * Conversions between the three ways a point of the board is written :
+ * <ul>
+ * <li>SGF coordinates : two letters, column then row from the top left corner,
+ * 'a' to 'z' then 'A' to 'Z' hence boards up to 52 ("pd" is the upper right
+ * star point on 19x19);</li>
+ * <li>GTP / {@link Location} text : column letter(s) without 'I' then row
+ * number from the bottom ("Q16" for the same point);</li>
+ * <li>{@link Location} integers, for a given board size (301 for the same
+ * point).</li>
+ * </ul>
+ *
+ * Points are also handled as packed integers (column in the high byte, row from
+ * the top in the low byte, both starting at 0) to avoid int[] pairs. Every
+ * conversion goes through lookup tables built once : nothing is allocated on the
+ * hot path, the String returning methods hand out cached instances.
+ *
+ * Like Location, this class is a collection of static methods and is not meant
+ * to be instantiated.
+ */
+public class CoordinateCodec {
+  public static final int MAX_SGF_BOARD_SIZE = 52;
+
+  public static final int MAX_BOARD_SIZE = 99;
+
+  /**
+   * Packed point of a pass, see {@link #isSgfPass(CharSequence, int)}.
+   */
+  public static final int PASS = -1;
+
+  private static final String SGF_LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+  /**
+   * SGF letter to its index (0 to 51), -1 for any other character.
+   */
+  private static final byte[] SGF_INDEX = new byte[128];
+
+  /**
+   * Letter to its GTP index (1 to 25, 'I' skipped), 0 for any other character.
+   * Both cases are accepted.
+   */
+  private static final byte[] GTP_INDEX = new byte[128];
+
+  /**
+   * Cached SGF strings of every packed point.
+   */
+  private static final String[] SGF_POINTS = new String[MAX_SGF_BOARD_SIZE * 256];
+
+  /**
+   * Letter(s) of the coordinates 1 to 99 ('A', 'AB'...).
+   */
+  private static final String[] LETTERS = new String[MAX_BOARD_SIZE + 1];
+
+  /**
+   * Numbers 1 to 99 as strings.
+   */
+  private static final String[] NUMBERS = new String[MAX_BOARD_SIZE + 1];
+
+  static {
+    for (int i = 0; i < SGF_INDEX.length; i++) {
+      SGF_INDEX[i] = -1;
+    }
+    for (int i = 0; i < SGF_LETTERS.length(); i++) {
+      SGF_INDEX[SGF_LETTERS.charAt(i)] = (byte) i;
+    }
+    for (int x = 0; x < MAX_SGF_BOARD_SIZE; x++) {
+      for (int y = 0; y < MAX_SGF_BOARD_SIZE; y++) {
+        SGF_POINTS[point(x, y)] = new String(new char[] { SGF_LETTERS.charAt(x), SGF_LETTERS.charAt(y) });
+      }
+    }
+    int index = 1;
+    for (char c = 'A'; c <= 'Z'; c++) {
+      if (c != 'I') {
+        GTP_INDEX[c] = (byte) index;
+        GTP_INDEX[Character.toLowerCase(c)] = (byte) index;
+        index++;
+      }
+    }
+    for (int coord = 1; coord <= MAX_BOARD_SIZE; coord++) {
+      int num1 = (coord - 1) / 25;
+      int num2 = (coord - 1) % 25;
+      char letter = (char) (num2 < 8 ? 'A' + num2 : 'A' + num2 + 1);
+      LETTERS[coord] = num1 > 0 ? new String(new char[] { (char) ('A' + num1 - 1), letter }) : String.valueOf(letter);
+      NUMBERS[coord] = Integer.toString(coord);
+    }
+  }
+
+  private CoordinateCodec() {
+  }
+
+  /**
+   * @return the packed point of column x and row y (from the top), both from 0
+   */
+  public static int point(int x, int y) {
+    return x << 8 | y;
+  }
+
+  public static int pointX(int point) {
+    return point >>> 8;
+  }
+
+  public static int pointY(int point) {
+    return point & 0xFF;
+  }
+
+  /**
+   * @return the index (0 to 51) of an SGF coordinate letter, -1 if c is not one
+   */
+  public static int sgfIndex(char c) {
+    return c < 128 ? SGF_INDEX[c] : -1;
+  }
+
+  public static char sgfLetter(int index) {
+    return SGF_LETTERS.charAt(index);
+  }
+
+  /**
+   * Decodes the two SGF letters starting at offset.
+   *
+   * @return the packed point
+   */
+  public static int sgfToPoint(CharSequence sgf, int offset) {
+    if (sgf == null || sgf.length() < offset + 2) {
+      throw new IllegalArgumentException("An SGF point must be made of 2 letters : '" + sgf + "'");
+    }
+    int x = sgfIndex(sgf.charAt(offset));
+    int y = sgfIndex(sgf.charAt(offset + 1));
+    if (x < 0 || y < 0) {
+      throw new IllegalArgumentException("An SGF point must be made of letters : '" + sgf + "'");
+    }
+    return point(x, y);
+  }
+
+  public static int sgfToPoint(CharSequence sgf) {
+    return sgfToPoint(sgf, 0);
+  }
+
+  /**
+   * Decodes the two SGF letters starting at offset of an ASCII byte buffer.
+   *
+   * @return the packed point
+   */
+  public static int sgfToPoint(byte[] sgf, int offset) {
+    int x = sgf[offset] >= 0 ? SGF_INDEX[sgf[offset]] : -1;
+    int y = sgf[offset + 1] >= 0 ? SGF_INDEX[sgf[offset + 1]] : -1;
+    if (x < 0 || y < 0) {
+      throw new IllegalArgumentException("An SGF point must be made of letters at offset " + offset);
+    }
+    return point(x, y);
+  }
+
+  /**
+   * @return true if the value is a pass : empty, or "tt" on boards up to 19x19
+   */
+  public static boolean isSgfPass(CharSequence sgf, int boardSize) {
+    return sgf == null || sgf.length() == 0
+        || (boardSize <= 19 && sgf.length() == 2 && sgf.charAt(0) == 't' && sgf.charAt(1) == 't');
+  }
+
+  /**
+   * @return the (cached) SGF string of a packed point
+   */
+  public static String pointToSgf(int point) {
+    if (pointX(point) >= MAX_SGF_BOARD_SIZE || pointY(point) >= MAX_SGF_BOARD_SIZE) {
+      throw new IllegalArgumentException("SGF points must be within " + MAX_SGF_BOARD_SIZE + " : " + point);
+    }
+    return SGF_POINTS[point];
+  }
+
+  public static StringBuilder appendSgf(StringBuilder out, int point) {
+    return out.append(SGF_LETTERS.charAt(pointX(point))).append(SGF_LETTERS.charAt(pointY(point)));
+  }
+
+  /**
+   * Converts a packed point into a {@link Location}.
+   */
+  public static int pointToLocation(int point, int boardSize) {
+    int x = pointX(point);
+    int y = pointY(point);
+    if (x >= boardSize || y >= boardSize) {
+      throw new IllegalArgumentException("Point not valid for selected board size (" + boardSize + ") : "
+          + (x < MAX_SGF_BOARD_SIZE && y < MAX_SGF_BOARD_SIZE ? SGF_POINTS[point] : Integer.toString(point)));
+    }
+    return x * boardSize + boardSize - y;
+  }
+
+  /**
+   * Converts a {@link Location} into a packed point.
+   */
+  public static int locationToPoint(int location, int boardSize) {
+    checkLocation(location, boardSize);
+    return point((location - 1) / boardSize, boardSize - 1 - (location - 1) % boardSize);
+  }
+
+  /**
+   * @return the Location of SGF coordinates, 0 for a pass
+   */
+  public static int sgfToLocation(CharSequence sgf, int boardSize) {
+    if (isSgfPass(sgf, boardSize)) {
+      return 0;
+    }
+    return pointToLocation(sgfToPoint(sgf, 0), boardSize);
+  }
+
+  /**
+   * @return the (cached) SGF coordinates of a Location
+   */
+  public static String locationToSgf(int location, int boardSize) {
+    return pointToSgf(locationToPoint(location, boardSize));
+  }
+
+  /**
+   * @return the (cached) letter(s) of a Location column, 1 for 'A'
+   */
+  public static String letters(int coord) {
+    if (coord < 1 || coord > MAX_BOARD_SIZE) {
+      throw new IllegalArgumentException("Location coordinates must be between 1 and " + MAX_BOARD_SIZE + " : " + coord);
+    }
+    return LETTERS[coord];
+  }
+
+  /**
+   * @return the (cached) number of a Location row
+   */
+  public static String number(int coord) {
+    if (coord < 1 || coord > MAX_BOARD_SIZE) {
+      throw new IllegalArgumentException("A board coordinate must be between 1 and " + MAX_BOARD_SIZE + " : " + coord);
+    }
+    return NUMBERS[coord];
+  }
+
+  /**
+   * Parses GTP / Location text ("Q16", "AB12"), letters in either case.
+   *
+   * @return the Location
+   */
+  public static int gtpToLocation(CharSequence gtp, int boardSize) {
+    checkBoardSize(boardSize);
+    int length = gtp.length();
+    if (length < 2 || length > 4) {
+      throw new IllegalArgumentException("A location must be made of 2 to 4 characters : '" + gtp + "'");
+    }
+    int column = gtpIndex(gtp.charAt(0));
+    int i = 1;
+    if (column == 0) {
+      throw new IllegalArgumentException("A location must start with a letter other than 'I' : '" + gtp + "'");
+    }
+    int second = gtpIndex(gtp.charAt(1));
+    if (second > 0) {
+      column = column * 25 + second;
+      i = 2;
+    }
+    int row = 0;
+    if (i == length || length - i > 2) {
+      throw new IllegalArgumentException("A location must end with a 1 or 2 digit number : '" + gtp + "'");
+    }
+    for (; i < length; i++) {
+      char c = gtp.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new IllegalArgumentException("A location must end with a 1 or 2 digit number : '" + gtp + "'");
+      }
+      row = row * 10 + c - '0';
+    }
+    if (column > boardSize || row < 1 || row > boardSize) {
+      throw new IllegalArgumentException("Location not valid for selected board size (" + boardSize + ") : " + gtp);
+    }
+    return (column - 1) * boardSize + row;
+  }
+
+  /**
+   * Writes the GTP / Location text of a location without allocating.
+   */
+  public static StringBuilder appendGtp(StringBuilder out, int location, int boardSize) {
+    checkLocation(location, boardSize);
+    return out.append(LETTERS[(location - 1) / boardSize + 1]).append(NUMBERS[(location - 1) % boardSize + 1]);
+  }
+
+  public static String locationToGtp(int location, int boardSize) {
+    checkLocation(location, boardSize);
+    return LETTERS[(location - 1) / boardSize + 1].concat(NUMBERS[(location - 1) % boardSize + 1]);
+  }
+
+  /**
+   * @return the GTP index of a letter (1 to 25), 0 if c is not one
+   */
+  public static int gtpIndex(char c) {
+    return c < 128 ? GTP_INDEX[c] : 0;
+  }
+
+  private static void checkBoardSize(int boardSize) {
+    if (boardSize < 1 || boardSize > MAX_BOARD_SIZE) {
+      throw new IllegalArgumentException("A board size must be between 1 and " + MAX_BOARD_SIZE + " : " + boardSize);
+    }
+  }
+
+  private static void checkLocation(int location, int boardSize) {
+    checkBoardSize(boardSize);
+    if (location < 1 || location > boardSize * boardSize) {
+      throw new IllegalArgumentException(
+          "Location not valid for selected board size (" + boardSize + ") : " + location);
+    }
+  }
+}
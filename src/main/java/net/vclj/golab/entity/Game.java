@@ -3,6 +3,8 @@ package net.vclj.golab.entity;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -15,9 +17,45 @@ public class Game {
   @GeneratedValue(generator="game_id_generator")
   private long id;
 
-  @OneToOne
+  @OneToOne(cascade = CascadeType.ALL)
   private Move firstMove;
 
+  /**
+   * Root properties of the SGF game (players, komi, result...), game comments
+   * included hence the length of the values.
+   */
   @ElementCollection
+  @Column(length=10000)
   private Map<String, String> properties = new HashMap<String, String>();
+
+  /**
+   * MinHash signature of the main line, to find near duplicates, null for the
+   * games too short to be compared.
+   */
+  @Column(length = 512)
+  private byte[] signature;
+
+  public long getId() {
+    return id;
+  }
+
+  public Move getFirstMove() {
+    return firstMove;
+  }
+
+  public void setFirstMove(Move firstMove) {
+    this.firstMove = firstMove;
+  }
+
+  public Map<String, String> getProperties() {
+    return properties;
+  }
+
+  public byte[] getSignature() {
+    return signature;
+  }
+
+  public void setSignature(byte[] signature) {
+    this.signature = signature;
+  }
 }
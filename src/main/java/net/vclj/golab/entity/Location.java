@@ -21,6 +21,9 @@ package net.vclj.golab.entity;
  *
  * As is customary, letter coordinate does not allow 'I' to avoid confusion with
  * 'J'. There are therefore 25 letter coordinates.
+ *
+ * Conversions to and from SGF coordinates, and the table based implementation
+ * of the text conversions, are in {@link CoordinateCodec}.
  */
 
 public class Location {
@@ -34,22 +37,7 @@ public class Location {
    * @return the corresponding letters in a String
    */
   static public String toLetter(int coord) {
-    if (coord < 1 || coord > MAX_BOARD_SIZE) {
-      throw new IllegalArgumentException(
-          "Location coordinates must be between 1 and " + MAX_BOARD_SIZE + " : " + coord);
-    }
-    int num1 = (coord - 1) / 25;
-    int num2 = (coord - 1) % 25;
-    String letters = "";
-    if (num1 > 0) {
-      letters = Character.toString((char) ('A' + num1 - 1));
-    }
-    if (num2 < 8) {
-      letters += Character.toString((char) ('A' + num2));
-    } else {
-      letters += Character.toString((char) ('A' + num2 + 1));
-    }
-    return letters;
+    return CoordinateCodec.letters(coord);
   }
 
   /**
@@ -91,10 +79,7 @@ public class Location {
   }
 
   static public String toNumber(int coord) {
-    if (coord < 1 || coord > MAX_BOARD_SIZE) {
-      throw new IllegalArgumentException("A board coordinate must be between 1 and " + MAX_BOARD_SIZE + " : " + coord);
-    }
-    return Integer.toString(coord);
+    return CoordinateCodec.number(coord);
   }
 
   static public int fromNumber(String number) {
@@ -111,39 +96,20 @@ public class Location {
     return coord;
   }
 
+  /**
+   * Transform a location in its text form ("A1", "K10"...), see
+   * {@link CoordinateCodec#appendGtp(StringBuilder, int, int)} to avoid the
+   * allocation of the String.
+   */
   static public String toString(int location, int boardSize) {
-    if (boardSize < 1 || boardSize > MAX_BOARD_SIZE) {
-      throw new IllegalArgumentException("A board size must be bet<ween 1 and " + MAX_BOARD_SIZE + " : " + boardSize);
-    }
-    int coord1 = (location - 1) / boardSize + 1;
-    int coord2 = (location - 1) % boardSize + 1;
-    if (coord1 < 1 || coord1 > boardSize || coord2 < 1 || coord2 > boardSize) {
-      throw new IllegalArgumentException(
-          "Location not valid for selected board size (" + boardSize + ") : " + location);
-    }
-    return toLetter(coord1) + toNumber(coord2);
+    return CoordinateCodec.locationToGtp(location, boardSize);
   }
 
+  /**
+   * Transform a location text ("A1", "K10"...) in its integer.
+   */
   static public int fromString(String location, int boardSize) {
-    int coord1, coord2;
-    if (boardSize < 1 || boardSize > MAX_BOARD_SIZE) {
-      throw new IllegalArgumentException("A board size must be bet<ween 1 and " + MAX_BOARD_SIZE + " : " + boardSize);
-    }
-    if (location.length() < 2 || location.length() > 4) {
-      throw new IllegalArgumentException("A location must be made of 2 to 4 characters : '" + location + "'");
-    }
-    if (location.charAt(1) >= 'A' && location.charAt(1) <= 'Z') {
-      coord1 = fromLetter(location.substring(0, 2));
-      coord2 = fromNumber(location.substring(2));
-    } else {
-      coord1 = fromLetter(location.substring(0, 1));
-      coord2 = fromNumber(location.substring(1));
-    }
-    if (coord1 < 1 || coord1 > boardSize || coord2 < 1 || coord2 > boardSize) {
-      throw new IllegalArgumentException(
-          "Location not valid for selected board size (" + boardSize + ") : " + location);
-    }
-    return (coord1 - 1) * boardSize + coord2;
+    return CoordinateCodec.gtpToLocation(location, boardSize);
   }
 
   public Location() {
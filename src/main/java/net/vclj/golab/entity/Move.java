@@ -1,5 +1,6 @@
 package net.vclj.golab.entity;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.CascadeType;
@@ -24,12 +25,65 @@ public class Move {
 
 	private int moveNumber;
 
+	/**
+	 * Stone location as computed by {@link Location}, 0 for a pass
+	 */
+	private int location;
+
 	@ManyToOne
 	private Move previousMove;
 
 	@OneToMany(cascade = CascadeType.ALL, mappedBy = "previousMove")
-	private List<Move> nextMoves;
+	private List<Move> nextMoves = new ArrayList<Move>();
 
 	@Column(length=10000)
 	private String comment;
+
+	public long getId() {
+		return id;
+	}
+
+	public String getPlayer() {
+		return player;
+	}
+
+	public void setPlayer(String player) {
+		this.player = player;
+	}
+
+	public int getMoveNumber() {
+		return moveNumber;
+	}
+
+	public void setMoveNumber(int moveNumber) {
+		this.moveNumber = moveNumber;
+	}
+
+	public int getLocation() {
+		return location;
+	}
+
+	public void setLocation(int location) {
+		this.location = location;
+	}
+
+	public Move getPreviousMove() {
+		return previousMove;
+	}
+
+	public void setPreviousMove(Move previousMove) {
+		this.previousMove = previousMove;
+	}
+
+	public List<Move> getNextMoves() {
+		return nextMoves;
+	}
+
+	public String getComment() {
+		return comment;
+	}
+
+	public void setComment(String comment) {
+		this.comment = comment;
+	}
 }
@@ -0,0 +1,192 @@
+package net.vclj.golab.format;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Properties of a {@link PersistentSgfNode} or a {@link PersistentSgfGame} :
+ * the same information as an {@link SgfPropertyMap} in plain arrays that are
+ * never modified once built, so that they can be read from any thread without
+ * synchronization. Changes return new instances sharing the unchanged values.
+ */
+final class ImmutableProperties {
+  static final ImmutableProperties EMPTY = new ImmutableProperties(new SgfProperty[0], new String[0][]);
+
+  private final SgfProperty[] properties;
+  private final String[][] values;
+
+  private ImmutableProperties(SgfProperty[] properties, String[][] values) {
+    this.properties = properties;
+    this.values = values;
+  }
+
+  /**
+   * @return a copy of the values of a mutable map
+   */
+  static ImmutableProperties of(SgfPropertyMap map) {
+    if (map.isEmpty()) {
+      return EMPTY;
+    }
+    SgfProperty[] properties = new SgfProperty[map.size()];
+    String[][] values = new String[map.size()][];
+    for (int i = 0; i < properties.length; i++) {
+      properties[i] = map.propertyAt(i);
+      values[i] = map.valuesAt(i).toArray(new String[0]);
+    }
+    return new ImmutableProperties(properties, values);
+  }
+
+  /**
+   * Adds the values to a mutable map.
+   */
+  void addTo(SgfPropertyMap map) {
+    for (int i = 0; i < properties.length; i++) {
+      map.setValues(properties[i], Arrays.asList(values[i]));
+    }
+  }
+
+  int size() {
+    return properties.length;
+  }
+
+  boolean isEmpty() {
+    return properties.length == 0;
+  }
+
+  SgfProperty propertyAt(int index) {
+    return properties[index];
+  }
+
+  private int indexOf(SgfProperty property) {
+    for (int i = 0; i < properties.length; i++) {
+      if (properties[i] == property) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  boolean contains(SgfProperty property) {
+    return indexOf(property) >= 0;
+  }
+
+  String getFirst(SgfProperty property) {
+    int index = indexOf(property);
+    return index < 0 ? null : values[index][0];
+  }
+
+  String getJoined(SgfProperty property) {
+    int index = indexOf(property);
+    return index < 0 ? null : String.join(",", values[index]);
+  }
+
+  List<String> getValues(SgfProperty property) {
+    int index = indexOf(property);
+    return index < 0 ? Collections.<String> emptyList() : Collections.unmodifiableList(Arrays.asList(values[index]));
+  }
+
+  Map<String, String> asMap() {
+    Map<String, String> rtrn = new LinkedHashMap<>();
+    for (int i = 0; i < properties.length; i++) {
+      rtrn.put(properties[i].getKey(), String.join(",", values[i]));
+    }
+    return Collections.unmodifiableMap(rtrn);
+  }
+
+  /**
+   * @return the properties with the values of property replaced, this if they
+   *         are the same
+   */
+  ImmutableProperties with(SgfProperty property, String... newValues) {
+    if (newValues.length == 0) {
+      return without(property);
+    }
+    int index = indexOf(property);
+    if (index >= 0 && Arrays.equals(values[index], newValues)) {
+      return this;
+    }
+    if (index < 0) {
+      SgfProperty[] rtrnProperties = Arrays.copyOf(properties, properties.length + 1);
+      String[][] rtrnValues = Arrays.copyOf(values, values.length + 1);
+      rtrnProperties[properties.length] = property;
+      rtrnValues[values.length] = newValues.clone();
+      return new ImmutableProperties(rtrnProperties, rtrnValues);
+    }
+    String[][] rtrnValues = values.clone();
+    rtrnValues[index] = newValues.clone();
+    return new ImmutableProperties(properties, rtrnValues);
+  }
+
+  /**
+   * @return the properties with value appended to the values of property
+   */
+  ImmutableProperties withAdded(SgfProperty property, String value) {
+    int index = indexOf(property);
+    if (index < 0) {
+      return with(property, value);
+    }
+    String[] newValues = Arrays.copyOf(values[index], values[index].length + 1);
+    newValues[newValues.length - 1] = value;
+    String[][] rtrnValues = values.clone();
+    rtrnValues[index] = newValues;
+    return new ImmutableProperties(properties, rtrnValues);
+  }
+
+  /**
+   * @return the properties without property, this if it is not defined
+   */
+  ImmutableProperties without(SgfProperty property) {
+    int index = property == null ? -1 : indexOf(property);
+    if (index < 0) {
+      return this;
+    }
+    if (properties.length == 1) {
+      return EMPTY;
+    }
+    SgfProperty[] rtrnProperties = new SgfProperty[properties.length - 1];
+    String[][] rtrnValues = new String[values.length - 1][];
+    System.arraycopy(properties, 0, rtrnProperties, 0, index);
+    System.arraycopy(properties, index + 1, rtrnProperties, index, properties.length - index - 1);
+    System.arraycopy(values, 0, rtrnValues, 0, index);
+    System.arraycopy(values, index + 1, rtrnValues, index, values.length - index - 1);
+    return new ImmutableProperties(rtrnProperties, rtrnValues);
+  }
+
+  @Override
+  public int hashCode() {
+    int rtrn = 0;
+    for (int i = 0; i < properties.length; i++) {
+      rtrn += properties[i].hashCode() ^ Arrays.hashCode(values[i]);
+    }
+    return rtrn;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ImmutableProperties)) {
+      return false;
+    }
+    ImmutableProperties other = (ImmutableProperties) obj;
+    if (other.properties.length != properties.length) {
+      return false;
+    }
+    for (int i = 0; i < properties.length; i++) {
+      int index = other.indexOf(properties[i]);
+      if (index < 0 || !Arrays.equals(values[i], other.values[index])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return asMap().toString();
+  }
+}
@@ -0,0 +1,174 @@
+package net.vclj.golab.format;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, persistent version of an {@link SgfGame}.
+ *
+ * Every edit returns a new game and leaves this one as it was. Only the nodes
+ * on the path from the root to the edited node are copied, everything else is
+ * shared between the versions : an edit costs the depth of the node, not the
+ * size of the game, and keeping old versions for undo costs little. As nothing
+ * ever changes, a version can be read by any number of threads without locks,
+ * see {@link SgfGameHistory} to publish new versions.
+ *
+ * Nodes are designated by their path : the indexes of the children to follow
+ * from the root, the empty path being the root itself and {0, 0, 0} the third
+ * move of the main line when the root has no move.
+ */
+public final class PersistentSgfGame {
+  public static final PersistentSgfGame EMPTY = new PersistentSgfGame(ImmutableProperties.EMPTY,
+      PersistentSgfNode.EMPTY);
+
+  private final ImmutableProperties properties;
+  private final PersistentSgfNode root;
+
+  private PersistentSgfGame(ImmutableProperties properties, PersistentSgfNode root) {
+    this.properties = properties;
+    this.root = root;
+  }
+
+  /**
+   * @return an immutable copy of a game
+   */
+  public static PersistentSgfGame of(SgfGame game) {
+    PersistentSgfNode root = game.getRootNode() == null ? PersistentSgfNode.EMPTY
+        : PersistentSgfNode.of(game.getRootNode());
+    return new PersistentSgfGame(ImmutableProperties.of(game.getPropertyMap()), root);
+  }
+
+  /**
+   * @return a mutable copy of the game, not post processed
+   */
+  public SgfGame toSgfGame() {
+    SgfGame rtrn = new SgfGame(null);
+    properties.addTo(rtrn.getPropertyMap());
+    rtrn.setRootNode(root.toSgfGameNode(null));
+    return rtrn;
+  }
+
+  public PersistentSgfNode getRootNode() {
+    return root;
+  }
+
+  /**
+   * @return the node at path
+   * @throws IndexOutOfBoundsException if there is no such node
+   */
+  public PersistentSgfNode getNode(int... path) {
+    PersistentSgfNode rtrn = root;
+    for (int index : path) {
+      rtrn = rtrn.getChild(index);
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the values of a game property joined by commas, null if not defined
+   */
+  public String getProperty(String key) {
+    return properties.getJoined(SgfProperty.get(key));
+  }
+
+  public List<String> getPropertyValues(String key) {
+    return properties.getValues(SgfProperty.get(key));
+  }
+
+  public Map<String, String> getProperties() {
+    return properties.asMap();
+  }
+
+  /**
+   * @return the number of nodes
+   */
+  public int size() {
+    return root.size();
+  }
+
+  /**
+   * @return the game with the values of a game property replaced
+   */
+  public PersistentSgfGame withProperty(String key, String... values) {
+    ImmutableProperties newProperties = properties.with(SgfProperty.intern(key), values);
+    return newProperties == properties ? this : new PersistentSgfGame(newProperties, root);
+  }
+
+  /**
+   * @return the game without a game property
+   */
+  public PersistentSgfGame withoutProperty(String key) {
+    ImmutableProperties newProperties = properties.without(SgfProperty.get(key));
+    return newProperties == properties ? this : new PersistentSgfGame(newProperties, root);
+  }
+
+  /**
+   * @return the game with the values of a property of the node at path replaced
+   */
+  public PersistentSgfGame withNodeProperty(int[] path, String key, String... values) {
+    return withNode(path, getNode(path).withProperty(key, values));
+  }
+
+  /**
+   * @return the game with value appended to a property of the node at path
+   */
+  public PersistentSgfGame withAddedNodeProperty(int[] path, String key, String value) {
+    return withNode(path, getNode(path).withAddedProperty(key, value));
+  }
+
+  /**
+   * @return the game without a property of the node at path
+   */
+  public PersistentSgfGame withoutNodeProperty(int[] path, String key) {
+    return withNode(path, getNode(path).withoutProperty(key));
+  }
+
+  /**
+   * Adds child after the children of the node at path : the next move if the
+   * node has none, a new variation otherwise.
+   *
+   * @return the game with the child added
+   */
+  public PersistentSgfGame withChild(int[] path, PersistentSgfNode child) {
+    return withNode(path, getNode(path).withChild(child));
+  }
+
+  /**
+   * @return the game without the node at path and its subtree
+   */
+  public PersistentSgfGame withoutNode(int... path) {
+    if (path.length == 0) {
+      throw new IllegalArgumentException("The root node cannot be removed");
+    }
+    int[] parentPath = Arrays.copyOf(path, path.length - 1);
+    return withNode(parentPath, getNode(parentPath).withoutChild(path[path.length - 1]));
+  }
+
+  /**
+   * Replaces the node at path, copying its ancestors.
+   *
+   * @return the new game, this if node is already at path
+   */
+  public PersistentSgfGame withNode(int[] path, PersistentSgfNode node) {
+    PersistentSgfNode[] ancestors = new PersistentSgfNode[path.length];
+    PersistentSgfNode current = root;
+    for (int i = 0; i < path.length; i++) {
+      ancestors[i] = current;
+      current = current.getChild(path[i]);
+    }
+    if (current == node) {
+      return this;
+    }
+    PersistentSgfNode replacement = node;
+    for (int i = path.length - 1; i >= 0; i--) {
+      replacement = ancestors[i].withChild(path[i], replacement);
+    }
+    return new PersistentSgfGame(properties, replacement);
+  }
+
+  @Override
+  public String toString() {
+    return toSgfGame().toString();
+  }
+}
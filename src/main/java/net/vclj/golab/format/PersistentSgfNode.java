@@ -0,0 +1,242 @@
+package net.vclj.golab.format;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable node of a {@link PersistentSgfGame}.
+ *
+ * A node never changes once built : the with and without methods return a new
+ * node which shares the properties and the children that did not change. A node
+ * does not know its parent, which is what allows the same subtree to be part of
+ * several versions of a game.
+ */
+public final class PersistentSgfNode {
+  private static final PersistentSgfNode[] NO_CHILDREN = new PersistentSgfNode[0];
+
+  public static final PersistentSgfNode EMPTY = new PersistentSgfNode(ImmutableProperties.EMPTY, NO_CHILDREN);
+
+  private final ImmutableProperties properties;
+  private final PersistentSgfNode[] children;
+
+  private PersistentSgfNode(ImmutableProperties properties, PersistentSgfNode[] children) {
+    this.properties = properties;
+    this.children = children;
+  }
+
+  /**
+   * @return a node without children playing a move
+   * @param color "B" or "W"
+   * @param point the SGF point of the move, "" for a pass
+   */
+  public static PersistentSgfNode move(String color, String point) {
+    if (!"B".equals(color) && !"W".equals(color)) {
+      throw new IllegalArgumentException("Not a color : " + color);
+    }
+    return EMPTY.withProperty(color, point);
+  }
+
+  /**
+   * @return an immutable copy of a node and its subtree
+   */
+  public static PersistentSgfNode of(SgfGameNode node) {
+    // post order without recursion, lines of play may be very long : when a
+    // node is done its children are the last nodes built
+    List<SgfGameNode> nodes = new ArrayList<>();
+    List<Integer> nextChildren = new ArrayList<>();
+    List<PersistentSgfNode> built = new ArrayList<>();
+    nodes.add(node);
+    nextChildren.add(0);
+    while (!nodes.isEmpty()) {
+      int top = nodes.size() - 1;
+      SgfGameNode current = nodes.get(top);
+      List<SgfGameNode> children = current.getChildren();
+      int next = nextChildren.get(top);
+      if (next < children.size()) {
+        nextChildren.set(top, next + 1);
+        nodes.add(children.get(next));
+        nextChildren.add(0);
+        continue;
+      }
+      nodes.remove(top);
+      nextChildren.remove(top);
+      PersistentSgfNode[] copies = NO_CHILDREN;
+      if (!children.isEmpty()) {
+        List<PersistentSgfNode> last = built.subList(built.size() - children.size(), built.size());
+        copies = last.toArray(new PersistentSgfNode[children.size()]);
+        last.clear();
+      }
+      built.add(new PersistentSgfNode(ImmutableProperties.of(current.getPropertyMap()), copies));
+    }
+    return built.get(0);
+  }
+
+  /**
+   * @return a mutable copy of the node and its subtree, the root of the copy
+   *         having parent as parent
+   */
+  public SgfGameNode toSgfGameNode(SgfGameNode parent) {
+    SgfGameNode rtrn = new SgfGameNode(parent);
+    properties.addTo(rtrn.getPropertyMap());
+    List<PersistentSgfNode> sources = new ArrayList<>();
+    List<SgfGameNode> copies = new ArrayList<>();
+    sources.add(this);
+    copies.add(rtrn);
+    while (!sources.isEmpty()) {
+      PersistentSgfNode source = sources.remove(sources.size() - 1);
+      SgfGameNode copy = copies.remove(copies.size() - 1);
+      for (PersistentSgfNode child : source.children) {
+        SgfGameNode childCopy = new SgfGameNode(copy);
+        copy.addChild(childCopy);
+        child.properties.addTo(childCopy.getPropertyMap());
+        sources.add(child);
+        copies.add(childCopy);
+      }
+    }
+    return rtrn;
+  }
+
+  ImmutableProperties getPropertyList() {
+    return properties;
+  }
+
+  /**
+   * @return the values of the property joined by commas, null if not defined
+   */
+  public String getProperty(String key) {
+    return properties.getJoined(SgfProperty.get(key));
+  }
+
+  public List<String> getPropertyValues(String key) {
+    return properties.getValues(SgfProperty.get(key));
+  }
+
+  /**
+   * @return the properties, the values of each property joined by commas
+   */
+  public Map<String, String> getProperties() {
+    return properties.asMap();
+  }
+
+  public boolean isMove() {
+    return properties.contains(SgfProperty.B) || properties.contains(SgfProperty.W);
+  }
+
+  /**
+   * @return "B" or "W" for a move, null otherwise
+   */
+  public String getColor() {
+    if (properties.contains(SgfProperty.W)) {
+      return "W";
+    }
+    return properties.contains(SgfProperty.B) ? "B" : null;
+  }
+
+  public String getMoveString() {
+    String rtrn = properties.getFirst(SgfProperty.W);
+    return rtrn != null ? rtrn : properties.getFirst(SgfProperty.B);
+  }
+
+  public int getChildCount() {
+    return children.length;
+  }
+
+  public PersistentSgfNode getChild(int index) {
+    return children[index];
+  }
+
+  /**
+   * @return the first child, next on the same line of play, null if none
+   */
+  public PersistentSgfNode getNextNode() {
+    return children.length == 0 ? null : children[0];
+  }
+
+  public List<PersistentSgfNode> getChildren() {
+    return Collections.unmodifiableList(Arrays.asList(children));
+  }
+
+  /**
+   * @return the number of nodes of the subtree, this node included
+   */
+  public int size() {
+    int rtrn = 0;
+    List<PersistentSgfNode> stack = new ArrayList<>();
+    stack.add(this);
+    while (!stack.isEmpty()) {
+      PersistentSgfNode node = stack.remove(stack.size() - 1);
+      rtrn++;
+      stack.addAll(Arrays.asList(node.children));
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the node with the values of the property replaced, this if they are
+   *         the same
+   */
+  public PersistentSgfNode withProperty(String key, String... values) {
+    return withProperties(properties.with(SgfProperty.intern(key), values));
+  }
+
+  /**
+   * @return the node with value appended to the values of the property
+   */
+  public PersistentSgfNode withAddedProperty(String key, String value) {
+    return withProperties(properties.withAdded(SgfProperty.intern(key), value));
+  }
+
+  /**
+   * @return the node without the property, this if it is not defined
+   */
+  public PersistentSgfNode withoutProperty(String key) {
+    return withProperties(properties.without(SgfProperty.get(key)));
+  }
+
+  private PersistentSgfNode withProperties(ImmutableProperties newProperties) {
+    return newProperties == properties ? this : new PersistentSgfNode(newProperties, children);
+  }
+
+  /**
+   * @return the node with child added after its children, a new variation if
+   *         the node already has a child
+   */
+  public PersistentSgfNode withChild(PersistentSgfNode child) {
+    PersistentSgfNode[] newChildren = Arrays.copyOf(children, children.length + 1);
+    newChildren[children.length] = child;
+    return new PersistentSgfNode(properties, newChildren);
+  }
+
+  /**
+   * @return the node with its child at index replaced by child
+   */
+  public PersistentSgfNode withChild(int index, PersistentSgfNode child) {
+    if (children[index] == child) {
+      return this;
+    }
+    PersistentSgfNode[] newChildren = children.clone();
+    newChildren[index] = child;
+    return new PersistentSgfNode(properties, newChildren);
+  }
+
+  /**
+   * @return the node without its child at index and the subtree of this child
+   */
+  public PersistentSgfNode withoutChild(int index) {
+    if (index < 0 || index >= children.length) {
+      throw new IndexOutOfBoundsException("Child " + index + " out of " + children.length);
+    }
+    PersistentSgfNode[] newChildren = children.length == 1 ? NO_CHILDREN : new PersistentSgfNode[children.length - 1];
+    System.arraycopy(children, 0, newChildren, 0, index);
+    System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+    return new PersistentSgfNode(properties, newChildren);
+  }
+
+  @Override
+  public String toString() {
+    return "PersistentSgfNode " + properties + " children=" + children.length;
+  }
+}
@@ -0,0 +1,408 @@
+package net.vclj.golab.format;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import net.vclj.golab.entity.CoordinateCodec;
+
+/**
+ * Set of points of a board, backed by a bitset sized to the board : bit y *
+ * width + x stands for the point of column x and row y (from the top left
+ * corner, as in SGF).
+ *
+ * It is meant for the point list properties (setup stones and markup) that are
+ * stored in the nodes as comma-joined SGF values, single points ("dd") or
+ * compressed rectangles ("aa:cc"). See {@link #parse(String, int, int)} and
+ * {@link #toSgf()}.
+ *
+ * Points are given and returned either as coordinates or as packed points of
+ * {@link CoordinateCodec}.
+ */
+public class PointSet {
+  private static final Set<String> pointListProps = new HashSet<>();
+
+  static {
+    // add black / white / empty
+    pointListProps.add("AB");
+    pointListProps.add("AW");
+    pointListProps.add("AE");
+    // markup : triangle, square, circle, cross, selected
+    pointListProps.add("TR");
+    pointListProps.add("SQ");
+    pointListProps.add("CR");
+    pointListProps.add("MA");
+    pointListProps.add("SL");
+  }
+
+  private final int width;
+  private final int height;
+  private final long[] words;
+
+  public PointSet(int boardSize) {
+    this(boardSize, boardSize);
+  }
+
+  public PointSet(int width, int height) {
+    if (width < 1 || height < 1 || width > CoordinateCodec.MAX_SGF_BOARD_SIZE
+        || height > CoordinateCodec.MAX_SGF_BOARD_SIZE) {
+      throw new IllegalArgumentException("Board dimensions must be between 1 and "
+          + CoordinateCodec.MAX_SGF_BOARD_SIZE + " : " + width + "x" + height);
+    }
+    this.width = width;
+    this.height = height;
+    this.words = new long[(width * height + 63) >>> 6];
+  }
+
+  /**
+   * @return true if the property holds a list of points that can be handled as
+   *         a PointSet
+   */
+  public static boolean isPointListProperty(String key) {
+    return pointListProps.contains(key);
+  }
+
+  /**
+   * Parses comma-joined SGF values, each being a point or a rectangle given by
+   * two opposite corners ("aa:cc"). Empty values are ignored.
+   */
+  public static PointSet parse(String values, int width, int height) {
+    PointSet rtrn = new PointSet(width, height);
+    if (values != null) {
+      rtrn.addValues(values);
+    }
+    return rtrn;
+  }
+
+  /**
+   * Adds the points of comma-joined SGF values.
+   */
+  private void addValues(String values) {
+    int start = 0;
+    int length = values.length();
+    while (start < length) {
+      int end = values.indexOf(',', start);
+      if (end < 0) {
+        end = length;
+      }
+      int valueLength = end - start;
+      if (valueLength == 2) {
+        int point = CoordinateCodec.sgfToPoint(values, start);
+        add(CoordinateCodec.pointX(point), CoordinateCodec.pointY(point));
+      } else if (valueLength == 5 && values.charAt(start + 2) == ':') {
+        int from = CoordinateCodec.sgfToPoint(values, start);
+        int to = CoordinateCodec.sgfToPoint(values, start + 3);
+        addRectangle(CoordinateCodec.pointX(from), CoordinateCodec.pointY(from), CoordinateCodec.pointX(to),
+            CoordinateCodec.pointY(to));
+      } else if (valueLength != 0) {
+        throw new IllegalArgumentException("Invalid point list value '" + values.substring(start, end) + "'");
+      }
+      start = end + 1;
+    }
+  }
+
+  /**
+   * Parses SGF values, each being a point or a rectangle given by two opposite
+   * corners ("aa:cc"). Empty values are ignored.
+   */
+  public static PointSet parse(Iterable<String> values, int width, int height) {
+    PointSet rtrn = new PointSet(width, height);
+    for (String value : values) {
+      rtrn.addValues(value);
+    }
+    return rtrn;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public boolean contains(int x, int y) {
+    int index = index(x, y);
+    return (words[index >>> 6] & (1L << index)) != 0;
+  }
+
+  public boolean containsPoint(int point) {
+    return contains(CoordinateCodec.pointX(point), CoordinateCodec.pointY(point));
+  }
+
+  public void add(int x, int y) {
+    int index = index(x, y);
+    words[index >>> 6] |= 1L << index;
+  }
+
+  public void addPoint(int point) {
+    add(CoordinateCodec.pointX(point), CoordinateCodec.pointY(point));
+  }
+
+  public void remove(int x, int y) {
+    int index = index(x, y);
+    words[index >>> 6] &= ~(1L << index);
+  }
+
+  public void removePoint(int point) {
+    remove(CoordinateCodec.pointX(point), CoordinateCodec.pointY(point));
+  }
+
+  /**
+   * Adds every point of the rectangle of corners (x1, y1) and (x2, y2), in any
+   * order.
+   */
+  public void addRectangle(int x1, int y1, int x2, int y2) {
+    int left = Math.min(x1, x2);
+    int right = Math.max(x1, x2);
+    int top = Math.min(y1, y2);
+    int bottom = Math.max(y1, y2);
+    index(left, top);
+    index(right, bottom);
+    for (int y = top; y <= bottom; y++) {
+      setRange(y * width + left, y * width + right + 1);
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(words, 0L);
+  }
+
+  public int size() {
+    int rtrn = 0;
+    for (long word : words) {
+      rtrn += Long.bitCount(word);
+    }
+    return rtrn;
+  }
+
+  public boolean isEmpty() {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds all the points of other, which must have the same dimensions.
+   *
+   * @return this
+   */
+  public PointSet union(PointSet other) {
+    checkSameBoard(other);
+    for (int i = 0; i < words.length; i++) {
+      words[i] |= other.words[i];
+    }
+    return this;
+  }
+
+  /**
+   * Keeps only the points also in other, which must have the same dimensions.
+   *
+   * @return this
+   */
+  public PointSet intersect(PointSet other) {
+    checkSameBoard(other);
+    for (int i = 0; i < words.length; i++) {
+      words[i] &= other.words[i];
+    }
+    return this;
+  }
+
+  /**
+   * Removes all the points of other, which must have the same dimensions.
+   *
+   * @return this
+   */
+  public PointSet subtract(PointSet other) {
+    checkSameBoard(other);
+    for (int i = 0; i < words.length; i++) {
+      words[i] &= ~other.words[i];
+    }
+    return this;
+  }
+
+  public boolean intersects(PointSet other) {
+    checkSameBoard(other);
+    for (int i = 0; i < words.length; i++) {
+      if ((words[i] & other.words[i]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public PointSet copy() {
+    PointSet rtrn = new PointSet(width, height);
+    System.arraycopy(words, 0, rtrn.words, 0, words.length);
+    return rtrn;
+  }
+
+  /**
+   * Iteration over the points in row order, in the manner of
+   * {@link java.util.BitSet#nextSetBit(int)} :
+   *
+   * <pre>
+   * for (int i = set.nextIndex(0); i &gt;= 0; i = set.nextIndex(i + 1)) {
+   *   int x = i % set.getWidth(), y = i / set.getWidth();
+   * }
+   * </pre>
+   *
+   * @return the index (y * width + x) of the first point at or after from, -1
+   *         if there is none
+   */
+  public int nextIndex(int from) {
+    return nextIndex(words, from);
+  }
+
+  /**
+   * Calls action with the packed point of every point of the set, in row order.
+   */
+  public void forEachPoint(IntConsumer action) {
+    for (int i = nextIndex(0); i >= 0; i = nextIndex(i + 1)) {
+      action.accept(CoordinateCodec.point(i % width, i / width));
+    }
+  }
+
+  /**
+   * Compresses the set into SGF values : rectangles ("aa:cc") wherever several
+   * points can be grouped, single points ("dd") otherwise. Rectangles are grown
+   * greedily in row order, first along the row then downwards.
+   *
+   * @return the values, without brackets
+   */
+  public List<String> toSgfValues() {
+    List<String> rtrn = new ArrayList<>();
+    long[] remaining = words.clone();
+    for (int i = nextIndex(remaining, 0); i >= 0; i = nextIndex(remaining, i + 1)) {
+      int left = i % width;
+      int top = i / width;
+      int right = left;
+      while (right + 1 < width && isSet(remaining, top * width + right + 1)) {
+        right++;
+      }
+      int bottom = top;
+      while (bottom + 1 < height && isRowSet(remaining, bottom + 1, left, right)) {
+        bottom++;
+      }
+      for (int y = top; y <= bottom; y++) {
+        for (int x = left; x <= right; x++) {
+          int index = y * width + x;
+          remaining[index >>> 6] &= ~(1L << index);
+        }
+      }
+      String topLeft = CoordinateCodec.pointToSgf(CoordinateCodec.point(left, top));
+      if (left == right && top == bottom) {
+        rtrn.add(topLeft);
+      } else {
+        rtrn.add(topLeft + ":" + CoordinateCodec.pointToSgf(CoordinateCodec.point(right, bottom)));
+      }
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the compressed values joined by commas, as stored in the nodes
+   */
+  public String toSgf() {
+    return String.join(",", toSgfValues());
+  }
+
+  /**
+   * Appends the compressed values in SGF syntax ("[aa:cc][dd]").
+   */
+  public StringBuilder appendSgf(StringBuilder out) {
+    for (String value : toSgfValues()) {
+      out.append('[').append(value).append(']');
+    }
+    return out;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * width + height) + Arrays.hashCode(words);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null || getClass() != obj.getClass())
+      return false;
+    PointSet other = (PointSet) obj;
+    return width == other.width && height == other.height && Arrays.equals(words, other.words);
+  }
+
+  @Override
+  public String toString() {
+    return "PointSet " + width + "x" + height + " " + toSgfValues();
+  }
+
+  private int index(int x, int y) {
+    if (x < 0 || y < 0 || x >= width || y >= height) {
+      throw new IllegalArgumentException("Point (" + x + "," + y + ") outside of " + width + "x" + height + " board");
+    }
+    return y * width + x;
+  }
+
+  /**
+   * Sets bits from (inclusive) to to (exclusive).
+   */
+  private void setRange(int from, int to) {
+    int startWord = from >>> 6;
+    int endWord = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (startWord == endWord) {
+      words[startWord] |= firstMask & lastMask;
+    } else {
+      words[startWord] |= firstMask;
+      for (int i = startWord + 1; i < endWord; i++) {
+        words[i] = -1L;
+      }
+      words[endWord] |= lastMask;
+    }
+  }
+
+  private void checkSameBoard(PointSet other) {
+    if (width != other.width || height != other.height) {
+      throw new IllegalArgumentException(
+          "Point sets of different boards : " + width + "x" + height + " and " + other.width + "x" + other.height);
+    }
+  }
+
+  private boolean isRowSet(long[] bits, int y, int left, int right) {
+    for (int x = left; x <= right; x++) {
+      if (!isSet(bits, y * width + x)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSet(long[] bits, int index) {
+    return (bits[index >>> 6] & (1L << index)) != 0;
+  }
+
+  private static int nextIndex(long[] bits, int from) {
+    int wordIndex = from >>> 6;
+    if (wordIndex >= bits.length) {
+      return -1;
+    }
+    long word = bits[wordIndex] & (-1L << from);
+    while (true) {
+      if (word != 0) {
+        return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+      }
+      if (++wordIndex == bits.length) {
+        return -1;
+      }
+      word = bits[wordIndex];
+    }
+  }
+}
@@ -0,0 +1,246 @@
+package net.vclj.golab.format;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Archive of SGF games compressed by blocks, written by
+ * {@link SgfArchiveWriter}.
+ *
+ * Compressing a whole collection (gzip) gives the best ratio but reading one
+ * game means inflating everything before it. The archive compresses blocks of
+ * about 64 KB independently, as BGZF does, and indexes both the blocks and the
+ * games : reading game k is one positioned read of its block and the inflation
+ * of that block up to the end of the game.
+ *
+ * <pre>
+ * header  : int magic "GLBZ", int version
+ * block   : int compressed length, int uncompressed length,
+ *           int CRC32 of the uncompressed data, raw deflate data
+ * index   : long offset of each block,
+ *           then int block, int start in the block, int length of each game
+ * trailer : long index offset, int block count, int game count, int magic
+ * </pre>
+ *
+ * Games are stored as UTF-8. The file channel is only used for positioned
+ * reads, so an archive can be read by several threads.
+ */
+public class SgfArchive implements Closeable {
+  static final int MAGIC = 0x474C425A;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 8;
+  static final int BLOCK_HEADER_SIZE = 12;
+  static final int TRAILER_SIZE = 20;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final long indexOffset;
+  private final long[] blockOffsets;
+  private final int[] gameBlocks;
+  private final int[] gameStarts;
+  private final int[] gameLengths;
+
+  private SgfArchive(Path path) throws IOException {
+    this.path = path;
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      ByteBuffer header = readBytes(0, HEADER_SIZE);
+      if (size < HEADER_SIZE + TRAILER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+        throw new IllegalStateException("Not an SGF archive : " + path);
+      }
+      ByteBuffer trailer = readBytes(size - TRAILER_SIZE, TRAILER_SIZE);
+      if (trailer.getInt(16) != MAGIC) {
+        throw new IllegalStateException("Incomplete SGF archive : " + path);
+      }
+      indexOffset = trailer.getLong(0);
+      int blockCount = trailer.getInt(8);
+      int gameCount = trailer.getInt(12);
+
+      ByteBuffer index = readBytes(indexOffset, 8 * blockCount + 12 * gameCount);
+      blockOffsets = new long[blockCount];
+      for (int i = 0; i < blockCount; i++) {
+        blockOffsets[i] = index.getLong();
+      }
+      gameBlocks = new int[gameCount];
+      gameStarts = new int[gameCount];
+      gameLengths = new int[gameCount];
+      for (int k = 0; k < gameCount; k++) {
+        gameBlocks[k] = index.getInt();
+        gameStarts[k] = index.getInt();
+        gameLengths[k] = index.getInt();
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens an archive, reading its indexes.
+   */
+  public static SgfArchive open(Path path) {
+    try {
+      return new SgfArchive(path);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * @return the number of games
+   */
+  public int size() {
+    return gameBlocks.length;
+  }
+
+  public int getBlockCount() {
+    return blockOffsets.length;
+  }
+
+  /**
+   * @return the length in bytes of the UTF-8 text of game k
+   */
+  public int getLength(int k) {
+    checkIndex(k);
+    return gameLengths[k];
+  }
+
+  /**
+   * @return the SGF text of game k, as it was added
+   */
+  public String read(int k) {
+    checkIndex(k);
+    // the block is only inflated up to the end of the game
+    byte[] data = inflate(gameBlocks[k], gameStarts[k] + gameLengths[k]);
+    return new String(data, gameStarts[k], gameLengths[k], StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Calls visitor with the text and the index of every game, inflating each
+   * block once. The blocks are inflated in parallel when parallel is true, the
+   * visitor is then called from several threads and must be thread safe.
+   */
+  public void forEach(ObjIntConsumer<String> visitor, boolean parallel) {
+    IntStream blocks = IntStream.range(0, blockOffsets.length);
+    if (parallel) {
+      blocks = blocks.parallel();
+    }
+    blocks.forEach(block -> {
+      byte[] data = inflate(block, -1);
+      int k = firstGame(block);
+      for (; k < gameBlocks.length && gameBlocks[k] == block; k++) {
+        visitor.accept(new String(data, gameStarts[k], gameLengths[k], StandardCharsets.UTF_8), k);
+      }
+    });
+  }
+
+  /**
+   * @return the first game of a block, games being in block order
+   */
+  private int firstGame(int block) {
+    int low = 0;
+    int high = gameBlocks.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (gameBlocks[middle] < block) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Reads and inflates a block.
+   *
+   * @param length number of bytes needed, -1 for the whole block which is then
+   *          checked against its CRC
+   */
+  private byte[] inflate(int block, int length) {
+    long start = blockOffsets[block];
+    long end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : indexOffset;
+    Inflater inflater = new Inflater(true);
+    try {
+      ByteBuffer compressed = readBytes(start, (int) (end - start));
+      int uncompressedLength = compressed.getInt(4);
+      int crc = compressed.getInt(8);
+      byte[] rtrn = new byte[length < 0 ? uncompressedLength : length];
+      inflater.setInput(compressed.array(), BLOCK_HEADER_SIZE, compressed.getInt(0));
+      int inflated = 0;
+      while (inflated < rtrn.length) {
+        int n = inflater.inflate(rtrn, inflated, rtrn.length - inflated);
+        if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalStateException("Block " + block + " of " + path + " is truncated");
+        }
+        inflated += n;
+      }
+      if (length < 0) {
+        CRC32 check = new CRC32();
+        check.update(rtrn, 0, rtrn.length);
+        if ((int) check.getValue() != crc) {
+          throw new IllegalStateException("Block " + block + " of " + path + " is corrupted");
+        }
+      }
+      return rtrn;
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    catch (DataFormatException e) {
+      throw new IllegalStateException("Block " + block + " of " + path + " is corrupted", e);
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  private ByteBuffer readBytes(long position, int length) throws IOException {
+    ByteBuffer rtrn = ByteBuffer.allocate(length);
+    while (rtrn.hasRemaining()) {
+      if (channel.read(rtrn, position + rtrn.position()) < 0) {
+        throw new IllegalStateException("Truncated SGF archive : " + path);
+      }
+    }
+    rtrn.flip();
+    return rtrn;
+  }
+
+  private void checkIndex(int k) {
+    if (k < 0 || k >= gameBlocks.length) {
+      throw new IndexOutOfBoundsException("Game " + k + " out of " + gameBlocks.length + " in " + path);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SgfArchive " + path + " games=" + size() + " blocks=" + getBlockCount();
+  }
+}
@@ -0,0 +1,240 @@
+package net.vclj.golab.format;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an {@link SgfArchive} : games are packed into blocks of about
+ * blockSize bytes which are compressed independently, in parallel on an
+ * executor, and written in order. A game is never split between blocks, a
+ * game larger than the block size gets a block of its own.
+ *
+ * The archive is complete once closed, the indexes being written last.
+ */
+public class SgfArchiveWriter implements Closeable {
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+  private final FileChannel channel;
+  private final int blockSize;
+  private final int level;
+  private final Executor executor;
+  private final int maxPending;
+  private final Deque<CompletableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+
+  private byte[] block;
+  private int blockLength;
+  private int blockCount;
+  private long position;
+  private long[] blockOffsets = new long[64];
+
+  private int gameCount;
+  private int[] gameBlocks = new int[256];
+  private int[] gameStarts = new int[256];
+  private int[] gameLengths = new int[256];
+
+  private SgfArchiveWriter(Path path, int blockSize, int level, Executor executor, int parallelism)
+      throws IOException {
+    this.blockSize = blockSize;
+    this.level = level;
+    this.executor = executor;
+    this.maxPending = 2 * parallelism;
+    block = new byte[blockSize];
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(SgfArchive.HEADER_SIZE);
+    header.putInt(SgfArchive.MAGIC).putInt(SgfArchive.VERSION).flip();
+    write(header);
+  }
+
+  /**
+   * Creates or replaces the archive at path, compressing with the common pool.
+   */
+  public static SgfArchiveWriter create(Path path) {
+    return create(path, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, ForkJoinPool.commonPool(),
+        ForkJoinPool.getCommonPoolParallelism());
+  }
+
+  /**
+   * @param blockSize target size of the uncompressed blocks, the bigger the
+   *          better the compression and the slower the access to one game
+   * @param level Deflater compression level
+   * @param executor runs the compression of the blocks
+   * @param parallelism number of blocks compressed at the same time
+   */
+  public static SgfArchiveWriter create(Path path, int blockSize, int level, Executor executor, int parallelism) {
+    if (blockSize < 1024) {
+      throw new IllegalArgumentException("Block size too small : " + blockSize);
+    }
+    try {
+      return new SgfArchiveWriter(path, blockSize, level, executor, Math.max(1, parallelism));
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Adds a game as written by {@link SgfGame#toString()}.
+   *
+   * @return the index of the game in the archive
+   */
+  public int add(SgfGame game) {
+    return add(game.toString());
+  }
+
+  /**
+   * Adds the SGF text of a game, kept as it is.
+   *
+   * @return the index of the game in the archive
+   */
+  public int add(String sgf) {
+    byte[] bytes = sgf.getBytes(StandardCharsets.UTF_8);
+    if (blockLength > 0 && blockLength + bytes.length > blockSize) {
+      submitBlock();
+    }
+    if (blockLength + bytes.length > block.length) {
+      block = Arrays.copyOf(block, blockLength + bytes.length);
+    }
+    System.arraycopy(bytes, 0, block, blockLength, bytes.length);
+
+    if (gameCount == gameBlocks.length) {
+      gameBlocks = Arrays.copyOf(gameBlocks, gameCount * 2);
+      gameStarts = Arrays.copyOf(gameStarts, gameCount * 2);
+      gameLengths = Arrays.copyOf(gameLengths, gameCount * 2);
+    }
+    gameBlocks[gameCount] = blockCount;
+    gameStarts[gameCount] = blockLength;
+    gameLengths[gameCount] = bytes.length;
+    blockLength += bytes.length;
+    return gameCount++;
+  }
+
+  /**
+   * @return the number of games added
+   */
+  public int getCount() {
+    return gameCount;
+  }
+
+  /**
+   * Hands the current block to the executor, writing the blocks already
+   * compressed so that at most maxPending are in memory.
+   */
+  private void submitBlock() {
+    byte[] data = Arrays.copyOf(block, blockLength);
+    int level = this.level;
+    pending.add(CompletableFuture.supplyAsync(() -> compress(data, level), executor));
+    blockCount++;
+    blockLength = 0;
+    while (pending.size() > maxPending || (!pending.isEmpty() && pending.peek().isDone())) {
+      writeBlock(pending.poll());
+    }
+  }
+
+  /**
+   * @return the block as stored : compressed length, uncompressed length, CRC32
+   *         of the uncompressed data, raw deflate data
+   */
+  private static ByteBuffer compress(byte[] data, int level) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      byte[] out = new byte[SgfArchive.BLOCK_HEADER_SIZE + data.length + (data.length >> 3) + 64];
+      int length = SgfArchive.BLOCK_HEADER_SIZE;
+      while (!deflater.finished()) {
+        if (length == out.length) {
+          out = Arrays.copyOf(out, out.length * 2);
+        }
+        length += deflater.deflate(out, length, out.length - length);
+      }
+      CRC32 crc = new CRC32();
+      crc.update(data, 0, data.length);
+      ByteBuffer rtrn = ByteBuffer.wrap(out, 0, length);
+      rtrn.putInt(0, length - SgfArchive.BLOCK_HEADER_SIZE);
+      rtrn.putInt(4, data.length);
+      rtrn.putInt(8, (int) crc.getValue());
+      return rtrn;
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  private void writeBlock(CompletableFuture<ByteBuffer> future) {
+    ByteBuffer compressed;
+    try {
+      compressed = future.join();
+    }
+    catch (CompletionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    int index = blockCount - pending.size() - 1;
+    if (index == blockOffsets.length) {
+      blockOffsets = Arrays.copyOf(blockOffsets, index * 2);
+    }
+    blockOffsets[index] = position;
+    write(compressed);
+  }
+
+  private void write(ByteBuffer buffer) {
+    try {
+      position += buffer.remaining();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Writes the last block, the indexes and the trailer, then closes the file.
+   */
+  @Override
+  public void close() {
+    try {
+      if (blockLength > 0) {
+        submitBlock();
+      }
+      while (!pending.isEmpty()) {
+        writeBlock(pending.poll());
+      }
+
+      long indexOffset = position;
+      ByteBuffer index = ByteBuffer.allocate(8 * blockCount + 12 * gameCount + SgfArchive.TRAILER_SIZE);
+      for (int i = 0; i < blockCount; i++) {
+        index.putLong(blockOffsets[i]);
+      }
+      for (int k = 0; k < gameCount; k++) {
+        index.putInt(gameBlocks[k]).putInt(gameStarts[k]).putInt(gameLengths[k]);
+      }
+      index.putLong(indexOffset).putInt(blockCount).putInt(gameCount).putInt(SgfArchive.MAGIC);
+      index.flip();
+      write(index);
+    }
+    finally {
+      try {
+        channel.close();
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
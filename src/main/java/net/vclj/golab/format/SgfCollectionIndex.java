@@ -0,0 +1,351 @@
+package net.vclj.golab.format;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Sidecar index of an SGF collection file, a file holding many game trees one
+ * after the other, see {@link SgfFileManager#createFromCollection(Path, int)}.
+ *
+ * For every top level game tree the index records its byte offset and length
+ * in the file and a few root properties ({@link #HEADER_KEYS}), so that game k
+ * is read with one positioned read instead of parsing all the games before it.
+ * The index is saved next to the collection (games.sgf.idx) with the size and
+ * the modification time of the collection : when either changes the index is
+ * stale and has to be built again.
+ *
+ * Building the index is a single streaming pass over the bytes of the file :
+ * the syntax characters of SGF are ASCII and cannot be part of a multi-byte
+ * character, so game boundaries are found without decoding the file. Only the
+ * games themselves are decoded, to read their root properties. This holds for
+ * UTF-8 and the single byte charsets, not for the double byte ones whose
+ * second bytes may look like ']' or '\\' (Shift_JIS, GBK).
+ */
+public final class SgfCollectionIndex {
+  public static final String SUFFIX = ".idx";
+
+  /**
+   * The root properties kept in the index.
+   */
+  public static final String[] HEADER_KEYS = new String[] { "PB", "PW", "DT", "RE", "SZ", "EV" };
+
+  private static final int MAGIC = 0x474C4349;
+  private static final int VERSION = 1;
+
+  // header values are only meant for listings
+  private static final int MAX_HEADER_LENGTH = 1000;
+
+  private final Path path;
+  private final String charSet;
+  private final long fileSize;
+  private final long lastModified;
+  private int count;
+  private long[] offsets;
+  private int[] lengths;
+  private String[] headers;
+
+  private SgfCollectionIndex(Path path, String charSet, long fileSize, long lastModified, int capacity) {
+    this.path = path;
+    this.charSet = charSet;
+    this.fileSize = fileSize;
+    this.lastModified = lastModified;
+    offsets = new long[capacity];
+    lengths = new int[capacity];
+    headers = new String[capacity * HEADER_KEYS.length];
+  }
+
+  /**
+   * @return the path of the sidecar index of a collection file
+   */
+  public static Path indexPath(Path path) {
+    return Paths.get(path.toString() + SUFFIX);
+  }
+
+  /**
+   * Returns the saved index of the collection if it is up to date, otherwise
+   * builds and saves a new one.
+   */
+  public static SgfCollectionIndex open(Path path) {
+    return open(path, "UTF-8");
+  }
+
+  public static SgfCollectionIndex open(Path path, String charSet) {
+    SgfCollectionIndex rtrn = load(path);
+    if (rtrn == null || rtrn.isStale() || !rtrn.charSet.equals(charSet)) {
+      rtrn = build(path, charSet);
+      rtrn.save();
+    }
+    return rtrn;
+  }
+
+  /**
+   * Builds the index of a collection without saving it.
+   */
+  public static SgfCollectionIndex build(Path path) {
+    return build(path, "UTF-8");
+  }
+
+  public static SgfCollectionIndex build(Path path, String charSet) {
+    Charset charset = Charset.forName(charSet);
+    try {
+      long fileSize = Files.size(path);
+      long lastModified = Files.getLastModifiedTime(path).toMillis();
+      SgfCollectionIndex rtrn = new SgfCollectionIndex(path, charSet, fileSize, lastModified, 64);
+      try (InputStream in = Files.newInputStream(path)) {
+        rtrn.scan(in, charset);
+      }
+      return rtrn;
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Finds the top level game trees : depth of the parentheses outside values,
+   * values ending at the first unescaped ']' as in {@link SgfScanner}.
+   */
+  private void scan(InputStream in, Charset charset) throws IOException {
+    byte[] game = new byte[1 << 12];
+    int gameLength = 0;
+    long gameStart = 0;
+    int depth = 0;
+    boolean inValue = false;
+    boolean escaped = false;
+    long position = 0;
+    byte[] chunk = new byte[1 << 16];
+    int read;
+    while ((read = in.read(chunk)) != -1) {
+      for (int i = 0; i < read; i++, position++) {
+        byte b = chunk[i];
+        if (depth > 0) {
+          if (gameLength == game.length) {
+            game = Arrays.copyOf(game, game.length * 2);
+          }
+          game[gameLength++] = b;
+        }
+        if (inValue) {
+          if (escaped) {
+            escaped = false;
+          } else if (b == '\\') {
+            escaped = true;
+          } else if (b == ']') {
+            inValue = false;
+          }
+        } else if (b == '[') {
+          inValue = true;
+        } else if (b == '(') {
+          if (depth == 0) {
+            gameStart = position;
+            game[0] = b;
+            gameLength = 1;
+          }
+          depth++;
+        } else if (b == ')' && depth > 0) {
+          depth--;
+          if (depth == 0) {
+            add(gameStart, gameLength, new String(game, 0, gameLength, charset));
+          }
+        }
+      }
+    }
+    if (depth > 0) {
+      throw new SgfParseException("Game tree starting at offset " + gameStart + " of " + path + " is not terminated");
+    }
+  }
+
+  private void add(long offset, int length, String game) {
+    if (count == offsets.length) {
+      offsets = Arrays.copyOf(offsets, count * 2);
+      lengths = Arrays.copyOf(lengths, count * 2);
+      headers = Arrays.copyOf(headers, count * 2 * HEADER_KEYS.length);
+    }
+    offsets[count] = offset;
+    lengths[count] = length;
+    int base = count * HEADER_KEYS.length;
+    SgfScanner.scan(game, new SgfHandler() {
+      private int nodes;
+
+      @Override
+      public void startNode(int offset) {
+        nodes++;
+      }
+
+      @Override
+      public void property(String source, int keyStart, int keyEnd, int valueStart, int valueEnd) {
+        if (nodes != 1) {
+          return;
+        }
+        for (int i = 0; i < HEADER_KEYS.length; i++) {
+          String key = HEADER_KEYS[i];
+          if (keyEnd - keyStart == key.length() && source.startsWith(key, keyStart) && headers[base + i] == null) {
+            String value = SgfText.unescape(source, valueStart, valueEnd);
+            headers[base + i] = value.length() > MAX_HEADER_LENGTH ? value.substring(0, MAX_HEADER_LENGTH) : value;
+          }
+        }
+      }
+    });
+    count++;
+  }
+
+  /**
+   * Reads the saved index of a collection.
+   *
+   * @return the index, null if there is none or it is not an index
+   */
+  public static SgfCollectionIndex load(Path path) {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(indexPath(path)), 1 << 16))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      long fileSize = in.readLong();
+      long lastModified = in.readLong();
+      String charSet = in.readUTF();
+      String[] keys = new String[in.readInt()];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = in.readUTF();
+      }
+      if (!Arrays.equals(keys, HEADER_KEYS)) {
+        return null;
+      }
+      int count = in.readInt();
+      SgfCollectionIndex rtrn = new SgfCollectionIndex(path, charSet, fileSize, lastModified, Math.max(count, 1));
+      for (int k = 0; k < count; k++) {
+        rtrn.offsets[k] = in.readLong();
+        rtrn.lengths[k] = in.readInt();
+        for (int i = 0; i < keys.length; i++) {
+          rtrn.headers[k * keys.length + i] = in.readBoolean() ? in.readUTF() : null;
+        }
+      }
+      rtrn.count = count;
+      return rtrn;
+    }
+    catch (NoSuchFileException e) {
+      return null;
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves the index next to the collection, replacing the previous one
+   * atomically.
+   */
+  public void save() {
+    Path indexPath = indexPath(path);
+    Path tmpPath = Paths.get(indexPath.toString() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmpPath), 1 << 16))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fileSize);
+        out.writeLong(lastModified);
+        out.writeUTF(charSet);
+        out.writeInt(HEADER_KEYS.length);
+        for (String key : HEADER_KEYS) {
+          out.writeUTF(key);
+        }
+        out.writeInt(count);
+        for (int k = 0; k < count; k++) {
+          out.writeLong(offsets[k]);
+          out.writeInt(lengths[k]);
+          for (int i = 0; i < HEADER_KEYS.length; i++) {
+            String value = headers[k * HEADER_KEYS.length + i];
+            out.writeBoolean(value != null);
+            if (value != null) {
+              out.writeUTF(value);
+            }
+          }
+        }
+      }
+      Files.move(tmpPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return true if the collection changed since the index was built (size or
+   *         modification time), or does not exist any more
+   */
+  public boolean isStale() {
+    try {
+      return Files.size(path) != fileSize || Files.getLastModifiedTime(path).toMillis() != lastModified;
+    }
+    catch (IOException e) {
+      return true;
+    }
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public String getCharSet() {
+    return charSet;
+  }
+
+  /**
+   * @return the number of games in the collection
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return the byte offset of the '(' starting game k
+   */
+  public long getOffset(int k) {
+    checkIndex(k);
+    return offsets[k];
+  }
+
+  /**
+   * @return the length in bytes of game k, up to its closing ')'
+   */
+  public int getLength(int k) {
+    checkIndex(k);
+    return lengths[k];
+  }
+
+  /**
+   * @param key one of {@link #HEADER_KEYS}
+   * @return the unescaped value of a root property of game k, null if not
+   *         defined
+   */
+  public String getHeader(int k, String key) {
+    checkIndex(k);
+    for (int i = 0; i < HEADER_KEYS.length; i++) {
+      if (HEADER_KEYS[i].equals(key)) {
+        return headers[k * HEADER_KEYS.length + i];
+      }
+    }
+    throw new IllegalArgumentException("Property " + key + " is not indexed");
+  }
+
+  private void checkIndex(int k) {
+    if (k < 0 || k >= count) {
+      throw new IndexOutOfBoundsException("Game " + k + " out of " + count + " in " + path);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SgfCollectionIndex " + path + " games=" + count;
+  }
+}
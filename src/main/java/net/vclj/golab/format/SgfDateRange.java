@@ -0,0 +1,219 @@
+package net.vclj.golab.format;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Dates a game was played on, parsed from the DT property. SGF writes a list
+ * of dates in ISO format where the year and month may be omitted when they are
+ * the same as the previous date ("1996-05-06,07,08", "1996-05-06,06-01"), and
+ * partial dates for unknown days or months ("1996-05", "1996").
+ *
+ * The range goes from the first day of the earliest date to the last day of the
+ * latest : a partial date covers its whole month or year.
+ */
+public final class SgfDateRange {
+  private final LocalDate first;
+  private final LocalDate last;
+
+  public SgfDateRange(LocalDate first, LocalDate last) {
+    if (last.isBefore(first)) {
+      throw new IllegalArgumentException("Date range ending before it starts : " + first + " " + last);
+    }
+    this.first = first;
+    this.last = last;
+  }
+
+  /**
+   * @return the range, null if the value is not a date list
+   */
+  public static SgfDateRange parse(String value) {
+    if (value == null) {
+      return null;
+    }
+    Parser parser = new Parser();
+    return parser.add(value) ? parser.toRange() : null;
+  }
+
+  /**
+   * Parses the values of a DT property, each value being itself a comma
+   * separated list of dates.
+   *
+   * @return the range, null if the values are not date lists
+   */
+  public static SgfDateRange parse(List<String> values) {
+    Parser parser = new Parser();
+    for (String value : values) {
+      if (!parser.add(value)) {
+        return null;
+      }
+    }
+    return parser.toRange();
+  }
+
+  public LocalDate getFirst() {
+    return first;
+  }
+
+  public LocalDate getLast() {
+    return last;
+  }
+
+  public long getFirstEpochDay() {
+    return first.toEpochDay();
+  }
+
+  public long getLastEpochDay() {
+    return last.toEpochDay();
+  }
+
+  public boolean contains(LocalDate date) {
+    return !date.isBefore(first) && !date.isAfter(last);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * first.hashCode() + last.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null || getClass() != obj.getClass())
+      return false;
+    SgfDateRange other = (SgfDateRange) obj;
+    return first.equals(other.first) && last.equals(other.last);
+  }
+
+  @Override
+  public String toString() {
+    return first.equals(last) ? first.toString() : first + ".." + last;
+  }
+
+  /**
+   * Reads dates one after the other, remembering the year and month of the
+   * previous one for the shortened forms.
+   */
+  private static class Parser {
+    private static final int MONTH = 2;
+    private static final int DAY = 3;
+
+    private int year = -1;
+    private int month = -1;
+    private int precision = 0;
+    private LocalDate first;
+    private LocalDate last;
+
+    boolean add(String value) {
+      int start = 0;
+      int length = value.length();
+      while (start <= length) {
+        int end = value.indexOf(',', start);
+        if (end < 0) {
+          end = length;
+        }
+        if (!addDate(value, start, end)) {
+          return false;
+        }
+        start = end + 1;
+      }
+      return true;
+    }
+
+    SgfDateRange toRange() {
+      return first == null ? null : new SgfDateRange(first, last);
+    }
+
+    private boolean addDate(String value, int start, int end) {
+      while (start < end && value.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && value.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      // up to 3 numbers separated by '-'
+      int[] parts = new int[3];
+      int[] lengths = new int[3];
+      int count = 0;
+      for (int i = start; i <= end; i++) {
+        if (i == end || value.charAt(i) == '-') {
+          if (count == 3 || lengths[count] == 0) {
+            return false;
+          }
+          count++;
+        } else {
+          char c = value.charAt(i);
+          if (c < '0' || c > '9' || count == 3 || lengths[count] == 4) {
+            return false;
+          }
+          parts[count] = parts[count] * 10 + c - '0';
+          lengths[count]++;
+        }
+      }
+      if (lengths[0] == 4) {
+        if (!hasTwoDigits(lengths, 1, count)) {
+          return false;
+        }
+        year = parts[0];
+        month = count > 1 ? parts[1] : -1;
+        precision = count;
+        return addRange(count > 2 ? parts[2] : -1);
+      }
+      if (year < 0 || !hasTwoDigits(lengths, 0, count)) {
+        return false;
+      }
+      if (count == 2 && precision == DAY) {
+        // MM-DD after a full date
+        month = parts[0];
+        return addRange(parts[1]);
+      } else if (count == 1 && precision == DAY) {
+        return addRange(parts[0]);
+      } else if (count == 1 && precision == MONTH) {
+        month = parts[0];
+        return addRange(-1);
+      }
+      return false;
+    }
+
+    private static boolean hasTwoDigits(int[] lengths, int from, int to) {
+      for (int i = from; i < to; i++) {
+        if (lengths[i] != 2) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Extends the range with the current year and month and the day, a negative
+     * month or day standing for the whole year or month.
+     */
+    private boolean addRange(int day) {
+      try {
+        LocalDate from;
+        LocalDate to;
+        if (month < 0) {
+          from = LocalDate.of(year, 1, 1);
+          to = LocalDate.of(year, 12, 31);
+        } else if (day < 0) {
+          from = LocalDate.of(year, month, 1);
+          to = from.withDayOfMonth(from.lengthOfMonth());
+        } else {
+          from = LocalDate.of(year, month, day);
+          to = from;
+        }
+        if (first == null || from.isBefore(first)) {
+          first = from;
+        }
+        if (last == null || to.isAfter(last)) {
+          last = to;
+        }
+        return true;
+      } catch (DateTimeException e) {
+        return false;
+      }
+    }
+  }
+}
@@ -8,59 +8,182 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import net.vclj.golab.metrics.SgfMetrics;
+import net.vclj.golab.metrics.SgfReadEvent;
+import net.vclj.golab.metrics.SgfWriteEvent;
 
 public class SgfFileManager {
   private SgfGame game;
 
-  private SgfFileManager(String sgf) {
-    game = SgfParser.parse(sgf);
+  // phase durations, in nanoseconds
+  private long parseDuration;
+  private long postProcessDuration;
+
+  private SgfFileManager(String sgf, String fileName) {
+    long start = System.nanoTime();
+    game = SgfParser.parse(sgf, fileName);
+    long parsed = System.nanoTime();
+    parseDuration = parsed - start;
 
     game.postProcess();
+    postProcessDuration = System.nanoTime() - parsed;
   }
 
   public static SgfGame createFromPath(Path path, String charSet) {
+    long start = System.nanoTime();
     try {
-      String gameAsString = new String(Files.readAllBytes(path), charSet);
-      return createFromString(gameAsString);
+      byte[] bytes = Files.readAllBytes(path);
+      return load(SgfMetrics.SOURCE_FILE, path.toString(), new String(bytes, charSet), bytes.length, start);
     }
     catch (IOException e) {
+      SgfMetrics.recordRead(SgfMetrics.SOURCE_FILE, SgfMetrics.OUTCOME_FAILURE, 0, System.nanoTime() - start);
       throw new RuntimeException(e);
     }
   }
 
   public static SgfGame createFromPath(Path path) {
-    try {
-      String gameAsString = new String(Files.readAllBytes(path), "UTF-8");
-      return createFromString(gameAsString);
+    return createFromPath(path, "UTF-8");
+  }
+
+  /**
+   * Reads game k of a collection file (several game trees in one file) without
+   * parsing the games before it, through its sidecar index which is built on
+   * first use and again when the collection changes, see
+   * {@link SgfCollectionIndex}.
+   */
+  public static SgfGame createFromCollection(Path path, int k) {
+    return createFromCollection(SgfCollectionIndex.open(path), k);
+  }
+
+  /**
+   * Reads game k of an indexed collection file with one positioned read.
+   *
+   * @throws IllegalStateException if the collection changed since it was indexed
+   */
+  public static SgfGame createFromCollection(SgfCollectionIndex index, int k) {
+    long start = System.nanoTime();
+    String sgf = readFromCollection(index, k);
+    return load(SgfMetrics.SOURCE_FILE, index.getPath() + "#" + k, sgf, index.getLength(k), start);
+  }
+
+  /**
+   * @return the SGF text of game k of an indexed collection file, as it is in
+   *         the file
+   * @throws IllegalStateException if the collection changed since it was indexed
+   */
+  public static String readFromCollection(SgfCollectionIndex index, int k) {
+    long start = System.nanoTime();
+    if (index.isStale()) {
+      throw new IllegalStateException("Index of " + index.getPath() + " is stale");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(index.getLength(k));
+    long offset = index.getOffset(k);
+    try (FileChannel channel = FileChannel.open(index.getPath(), StandardOpenOption.READ)) {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, offset + buffer.position()) < 0) {
+          throw new IllegalStateException("Index of " + index.getPath() + " is stale");
+        }
+      }
     }
     catch (IOException e) {
+      SgfMetrics.recordRead(SgfMetrics.SOURCE_FILE, SgfMetrics.OUTCOME_FAILURE, 0, System.nanoTime() - start);
       throw new RuntimeException(e);
     }
+    return new String(buffer.array(), 0, buffer.limit(), Charset.forName(index.getCharSet()));
+  }
+
+  /**
+   * Reads game k of a block-compressed archive, see {@link SgfArchive}.
+   */
+  public static SgfGame createFromArchive(Path path, int k) {
+    try (SgfArchive archive = SgfArchive.open(path)) {
+      return createFromArchive(archive, k);
+    }
+  }
+
+  /**
+   * Reads game k of an open archive : one positioned read and the inflation of
+   * one block.
+   */
+  public static SgfGame createFromArchive(SgfArchive archive, int k) {
+    long start = System.nanoTime();
+    String sgf;
+    try {
+      sgf = archive.read(k);
+    }
+    catch (RuntimeException e) {
+      SgfMetrics.recordRead(SgfMetrics.SOURCE_FILE, SgfMetrics.OUTCOME_FAILURE, 0, System.nanoTime() - start);
+      throw e;
+    }
+    return load(SgfMetrics.SOURCE_FILE, archive.getPath() + "#" + k, sgf, archive.getLength(k), start);
   }
 
   public static SgfGame createFromString(String gameAsString) {
-    SgfFileManager rtrn = new SgfFileManager(gameAsString);
-    return rtrn.getGame();
+    return load(SgfMetrics.SOURCE_STRING, null, gameAsString, gameAsString.length(), System.nanoTime());
   }
 
   public static SgfGame createFromInputStream(InputStream in) {
+    long start = System.nanoTime();
     try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8").newDecoder()))) {
       StringBuilder out = new StringBuilder();
       String line;
       while ((line = reader.readLine()) != null) {
         out.append(line);
       }
-      SgfFileManager rtrn = new SgfFileManager(out.toString());
-      return rtrn.getGame();
+      return load(SgfMetrics.SOURCE_STREAM, null, out.toString(), out.length(), start);
     }
     catch (IOException e) {
+      SgfMetrics.recordRead(SgfMetrics.SOURCE_STREAM, SgfMetrics.OUTCOME_FAILURE, 0, System.nanoTime() - start);
       throw new RuntimeException(e);
     }
+  }
 
+  /**
+   * Parses and post processes a game, recording the time spent since start (the
+   * input was read in between) and the size of the input.
+   *
+   * @param fileName the file read, null for other sources
+   */
+  private static SgfGame load(String source, String fileName, String sgf, long size, long start) {
+    long readDuration = System.nanoTime() - start;
+    SgfReadEvent event = new SgfReadEvent();
+    event.begin();
+    SgfFileManager rtrn = null;
+    try {
+      rtrn = new SgfFileManager(sgf, fileName);
+    }
+    catch (RuntimeException e) {
+      SgfMetrics.recordRead(source, SgfMetrics.OUTCOME_FAILURE, size, System.nanoTime() - start);
+      throw e;
+    }
+    finally {
+      // committed for the failures too, without the parse statistics
+      event.end();
+      if (event.shouldCommit()) {
+        event.fileName = fileName;
+        event.source = source;
+        event.byteSize = size;
+        event.readDuration = readDuration;
+        event.failed = rtrn == null;
+        if (rtrn != null) {
+          event.nodeCount = rtrn.game.getParsedNodes();
+          event.maxDepth = rtrn.game.getParsedDepth();
+          event.parseDuration = rtrn.parseDuration;
+          event.postProcessDuration = rtrn.postProcessDuration;
+        }
+        event.commit();
+      }
+    }
+    SgfMetrics.recordRead(source, SgfMetrics.OUTCOME_SUCCESS, size, System.nanoTime() - start);
+    return rtrn.getGame();
   }
 
   public static void writeToFile(SgfGame game, Path destination) {
@@ -81,13 +204,27 @@ public class SgfFileManager {
   }
 
   public static void writeToFile(SgfGame game, Path destination, String encoding) {
+    SgfWriteEvent event = new SgfWriteEvent();
+    event.begin();
+    long start = System.nanoTime();
+    String sgf = game.toString();
+    long serialisationDuration = System.nanoTime() - start;
     try (
         OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(destination.toFile()), Charset.forName(encoding).newEncoder())) {
-      osw.write(game.toString());
+      osw.write(sgf);
     }
     catch (IOException e) {
       throw new RuntimeException(e);
     }
+    event.end();
+    if (event.shouldCommit()) {
+      event.fileName = destination.toString();
+      // encoded : not the length of sgf
+      event.byteSize = destination.toFile().length();
+      event.nodeCount = game.getNoNodes();
+      event.serialisationDuration = serialisationDuration;
+      event.commit();
+    }
   }
 
   public static File writeToFile(String sgf) {
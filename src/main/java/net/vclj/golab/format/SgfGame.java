@@ -1,13 +1,22 @@
 package net.vclj.golab.format;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.vclj.golab.metrics.SgfMetrics;
+import net.vclj.golab.metrics.SgfPostProcessEvent;
+
 /**
  * This class stores a Go game created by parsing a SGF file. It deals with
  * loading the game and saving the game back to disk.
@@ -15,7 +24,7 @@ import org.slf4j.LoggerFactory;
 public class SgfGame {
   private static final Logger log = LoggerFactory.getLogger(SgfGame.class);
   
-  private Map<String, String> properties = new HashMap<String, String>();
+  private final SgfPropertyMap properties = new SgfPropertyMap();
   
   private SgfGameNode rootNode;
   
@@ -23,8 +32,22 @@ public class SgfGame {
 
   private int noNodes = 0;
 
+  // kept up to date by the edit methods once the game is post processed
+  private boolean processed = false;
+  private SgfGameNode firstMove;
+  private SgfGameNode lastMove;
+  // edit count of the tree when the moves above were last updated
+  private int edits;
+  // built on demand, dropped when the shape of the tree changes
+  private SgfTreeIndex treeIndex;
+  private int treeIndexEdits;
+
   private String originalSgf = null;
 
+  // statistics set by the parser, all the nodes and the longest line
+  private int parsedNodes = 0;
+  private int parsedDepth = 0;
+
   public SgfGame(String sgfString) {
     this.originalSgf = sgfString;
   }
@@ -35,38 +58,286 @@ public class SgfGame {
      * software that the expectation is that everything is appended rather than the
      * last definition wins.
      */
-    if (properties.get(key) != null) {
-      String current = properties.get(key);
-      properties.put(key, current + "," + value);
-    } else {
-      properties.put(key, value);
-    }
+    properties.add(SgfProperty.intern(key), value);
+  }
+
+  public void addProperty(SgfProperty property, String value) {
+    properties.add(property, value);
+  }
+
+  /**
+   * Replaces all the values of the property by a single one.
+   */
+  public void setProperty(String key, String value) {
+    properties.set(SgfProperty.intern(key), value);
+  }
+
+  public void removeProperty(String key) {
+    properties.remove(SgfProperty.get(key));
   }
 
+  /**
+   * @return the values of the property joined by commas, null if not defined
+   */
   public String getProperty(String key) {
-    return properties.get(key);
+    return properties.getJoined(SgfProperty.get(key));
   }
 
   public String getProperty(String key, String defaultValue) {
-    if (properties.get(key) == null) {
-      return defaultValue;
-    } else {
-      return properties.get(key);
-    }
+    String value = getProperty(key);
+    return value == null ? defaultValue : value;
   }
 
+  /**
+   * @return a read-only view of the values of the property
+   */
+  public List<String> getPropertyValues(String key) {
+    return properties.getValues(SgfProperty.get(key));
+  }
+
+  /**
+   * @return a read-only view of the game properties, the values of each property
+   *         joined by commas
+   */
   public Map<String, String> getProperties() {
-    return new HashMap<String, String>(this.properties);
+    return properties.asMap();
+  }
+
+  /**
+   * @return the game properties themselves, read-only as far as the game is
+   *         concerned
+   */
+  SgfPropertyMap getPropertyMap() {
+    return properties;
+  }
+
+  /**
+   * @return the width of the board (SZ property, "19" or "19:13"), 19 by default
+   */
+  public int getBoardWidth() {
+    return getBoardSize() >>> 8;
+  }
+
+  /**
+   * @return the height of the board, the width for square boards
+   */
+  public int getBoardHeight() {
+    return getBoardSize() & 0xFF;
+  }
+
+  /**
+   * @throws IllegalArgumentException if SZ is not a size, the failure being
+   *           cached like the size
+   */
+  private int getBoardSize() {
+    Integer size = properties.getParsed(SgfProperty.SZ, SgfValues.BOARD_SIZE);
+    if (size == null) {
+      return 19 << 8 | 19;
+    }
+    if (size == SgfValues.INVALID_BOARD_SIZE) {
+      throw new IllegalArgumentException("Invalid board size : '" + properties.getFirst(SgfProperty.SZ) + "'");
+    }
+    return size;
+  }
+
+  /*
+   * The typed accessors below parse the property on first access only : the
+   * parsed value is cached with the property and dropped when it changes. They
+   * can be called from several threads while the game is not changed.
+   */
+
+  /**
+   * @return the komi (KM property), NaN if not defined or invalid
+   */
+  public double getKomi() {
+    Double komi = properties.getParsed(SgfProperty.KM, SgfValues.REAL);
+    return komi == null ? Double.NaN : komi;
+  }
+
+  /**
+   * @return the number of handicap stones (HA property), 0 if not defined or
+   *         invalid
+   */
+  public int getHandicap() {
+    Integer handicap = properties.getParsed(SgfProperty.HA, SgfValues.NUMBER);
+    return handicap == null ? 0 : handicap;
+  }
+
+  /**
+   * @return the result (RE property), null if not defined
+   */
+  public SgfResult getResult() {
+    return properties.getParsed(SgfProperty.RE, SgfValues.RESULT);
+  }
+
+  /**
+   * @return the dates the game was played on (DT property), null if not defined
+   *         or invalid
+   */
+  public SgfDateRange getDateRange() {
+    return properties.getParsed(SgfProperty.DT, SgfValues.DATE_RANGE);
+  }
+
+  /**
+   * @return the main time in seconds (TM property), NaN if not defined or invalid
+   */
+  public double getTimeLimit() {
+    Double time = properties.getParsed(SgfProperty.TM, SgfValues.REAL);
+    return time == null ? Double.NaN : time;
+  }
+
+  /**
+   * @return the time left to black in seconds when BL is set on the root node,
+   *         NaN otherwise, see {@link SgfGameNode#getBlackTimeLeft()}
+   */
+  public double getBlackTimeLeft() {
+    Double time = properties.getParsed(SgfProperty.BL, SgfValues.REAL);
+    return time == null ? Double.NaN : time;
+  }
+
+  /**
+   * @return the time left to white in seconds when WL is set on the root node,
+   *         NaN otherwise
+   */
+  public double getWhiteTimeLeft() {
+    Double time = properties.getParsed(SgfProperty.WL, SgfValues.REAL);
+    return time == null ? Double.NaN : time;
+  }
+
+  /**
+   * Point list properties of the root node (setup stones and markup), see
+   * {@link SgfGameNode#getPointSet(String, int, int)}.
+   */
+  public PointSet getPointSet(String key) {
+    SgfGameNode.checkPointListProperty(key);
+    return PointSet.parse(properties.getValues(SgfProperty.get(key)), getBoardWidth(), getBoardHeight());
+  }
+
+  /**
+   * Replaces a point list property of the root node, compressed in rectangles.
+   * An empty set removes the property.
+   */
+  public void setPointSet(String key, PointSet points) {
+    SgfGameNode.checkPointListProperty(key);
+    properties.setValues(SgfProperty.intern(key), points.toSgfValues());
+  }
+
+  void setParseStatistics(int parsedNodes, int parsedDepth) {
+    this.parsedNodes = parsedNodes;
+    this.parsedDepth = parsedDepth;
+  }
+
+  /**
+   * @return the number of nodes created when parsing the game, variations
+   *         included
+   */
+  public int getParsedNodes() {
+    return parsedNodes;
+  }
+
+  /**
+   * @return the number of nodes of the longest line of play found when parsing
+   *         the game
+   */
+  public int getParsedDepth() {
+    return parsedDepth;
   }
 
   public void setRootNode(SgfGameNode rootNode) {
     this.rootNode = rootNode;
+    this.processed = false;
+    this.treeIndex = null;
   }
 
   public SgfGameNode getRootNode() {
     return rootNode;
   }
 
+  /**
+   * @return the navigation index of the tree, built on first call and after
+   *         each change of the children of its nodes
+   */
+  public SgfTreeIndex getTreeIndex() {
+    SgfTreeIndex rtrn = treeIndex;
+    int edits = getRootNode() == null ? 0 : getRootNode().getShapeEditCount();
+    if (rtrn == null || treeIndexEdits != edits) {
+      rtrn = SgfTreeIndex.build(this);
+      treeIndex = rtrn;
+      treeIndexEdits = edits;
+    }
+    return rtrn;
+  }
+
+  /*
+   * Traversals : lazy streams over the tree, to be made parallel with
+   * parallel(), see SgfTreeSpliterator. The tree must not change meanwhile.
+   */
+
+  /**
+   * @return all the nodes, in preorder : a node, then its first variation, then
+   *         the next ones
+   */
+  public Stream<SgfGameNode> preorder() {
+    // a hint only, for splitting
+    long estimate = treeIndex != null ? treeIndex.size() : parsedNodes > 0 ? parsedNodes : Long.MAX_VALUE;
+    return StreamSupport.stream(SgfTreeSpliterator.preorder(getRootNode(), estimate), false);
+  }
+
+  /**
+   * @return the nodes of the main line, from the root
+   */
+  public Stream<SgfGameNode> mainLine() {
+    Spliterator<SgfGameNode> spliterator = new Spliterators.AbstractSpliterator<SgfGameNode>(Long.MAX_VALUE,
+        Spliterator.ORDERED | Spliterator.NONNULL) {
+      private SgfGameNode next = getRootNode();
+
+      @Override
+      public boolean tryAdvance(Consumer<? super SgfGameNode> action) {
+        if (next == null) {
+          return false;
+        }
+        SgfGameNode node = next;
+        next = node.getNextNode();
+        action.accept(node);
+        return true;
+      }
+    };
+    return StreamSupport.stream(spliterator, false);
+  }
+
+  /**
+   * @return the nodes without children, the last nodes of each variation
+   */
+  public Stream<SgfGameNode> leaves() {
+    return preorder().filter(node -> !node.hasChildren());
+  }
+
+  /**
+   * @return the lines of play from the root to each leaf, the main line first
+   */
+  public Stream<List<SgfGameNode>> variations() {
+    return leaves().map(SgfGame::pathTo);
+  }
+
+  /**
+   * @return the nodes depth nodes below the root, in preorder
+   */
+  public Stream<SgfGameNode> nodesAtDepth(int depth) {
+    return StreamSupport.stream(SgfTreeSpliterator.atDepth(getRootNode(), depth), false);
+  }
+
+  /**
+   * @return the nodes from the root to node
+   */
+  private static List<SgfGameNode> pathTo(SgfGameNode node) {
+    List<SgfGameNode> rtrn = new ArrayList<>();
+    for (SgfGameNode current = node; current != null; current = current.getParentNode()) {
+      rtrn.add(current);
+    }
+    Collections.reverse(rtrn);
+    return rtrn;
+  }
+
   public int getNoMoves() {
     return noMoves;
   }
@@ -75,65 +346,311 @@ public class SgfGame {
     this.noMoves = noMoves;
   }
 
+  /**
+   * Numbers the moves and the nodes, counts the moves and the nodes of the main
+   * line. Once done, the edit methods below keep everything up to date touching
+   * the edited subtree only.
+   */
   public void postProcess() {
+    long start = System.nanoTime();
+    SgfPostProcessEvent event = new SgfPostProcessEvent();
+    event.begin();
     // make sure we have a empty first node
     if (getRootNode().isMove()) {
       SgfGameNode oldRoot = getRootNode();
       SgfGameNode newRoot = new SgfGameNode(null);
 
       newRoot.addChild(oldRoot);
+      oldRoot.setParentNode(newRoot);
       setRootNode(newRoot);
     }
 
-    SgfGameNode node = getRootNode();
     // I'll need to figure out if and how to add the heuristical
     // reorder. This can be bad as right now it will have side-effects
     // when saving the game.
     // heuristicalBranchReorder(node);
 
-    // count the moves & nodes
-    node = getRootNode();
-    do {
+    // number all the moves, then count the moves & nodes
+    treeIndex = null;
+    numberSubtree(getRootNode(), 1, 0, true);
+    countMainLine();
+    processed = true;
+    edits = getRootNode().getEditCount();
+
+    SgfMetrics.recordPostProcess(System.nanoTime() - start);
+    event.end();
+    if (event.shouldCommit()) {
+      event.nodeCount = noNodes;
+      event.moveCount = noMoves;
+      event.commit();
+    }
+  }
+
+  /**
+   * Numbers the nodes of a subtree, startNode being the moveNo-th move if it is
+   * a move and at depth nodeNo, and on the main line if mainLine. Variations
+   * continue the numbering of the line they branch from.
+   */
+  private static void numberSubtree(SgfGameNode startNode, int moveNo, int nodeNo, boolean mainLine) {
+    // without recursion, lines of play may be very long
+    List<SgfGameNode> nodes = new ArrayList<>();
+    List<Integer> moveNos = new ArrayList<>();
+    nodes.add(startNode);
+    moveNos.add(moveNo);
+    startNode.setNodeNo(nodeNo);
+    startNode.setMainLine(mainLine);
+    while (!nodes.isEmpty()) {
+      SgfGameNode node = nodes.remove(nodes.size() - 1);
+      int nextMoveNo = moveNos.remove(moveNos.size() - 1);
+      if (node.isMove()) {
+        node.setMoveNo(nextMoveNo++);
+      } else {
+        node.setMoveNo(-1);
+      }
+      for (SgfGameNode child : node.getChildren()) {
+        child.setNodeNo(node.getNodeNo() + 1);
+        child.setMainLine(node.isMainLine() && child == node.getNextNode());
+        nodes.add(child);
+        moveNos.add(nextMoveNo);
+      }
+    }
+  }
+
+  /**
+   * @return the last move played up to node, node included, null if none
+   */
+  private static SgfGameNode lastMoveUpTo(SgfGameNode node) {
+    for (SgfGameNode current = node; current != null; current = current.getParentNode()) {
+      if (current.isMove()) {
+        return current;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the number of moves played up to node, node included
+   */
+  private static int movesUpTo(SgfGameNode node) {
+    SgfGameNode move = lastMoveUpTo(node);
+    return move == null ? 0 : move.getMoveNo();
+  }
+
+  /**
+   * @return true if node is on the main line : the root or the next node of a
+   *         node on the main line
+   */
+  public boolean isOnMainLine(SgfGameNode node) {
+    if (isUpToDate()) {
+      return node.isMainLine() && node.isSameTree(getRootNode());
+    }
+    SgfGameNode current = node;
+    while (current.getParentNode() != null) {
+      if (current.getParentNode().getNextNode() != current) {
+        return false;
+      }
+      current = current.getParentNode();
+    }
+    return current == getRootNode();
+  }
+
+  /**
+   * Counts the moves and the nodes of the main line, numbered, and finds its
+   * first and last moves.
+   */
+  private void countMainLine() {
+    noMoves = 0;
+    noNodes = 0;
+    firstMove = null;
+    lastMove = null;
+    for (SgfGameNode node = getRootNode(); node != null; node = node.getNextNode()) {
+      noNodes++;
       if (node.isMove()) {
         noMoves++;
+        if (firstMove == null) {
+          firstMove = node;
+        }
+        lastMove = node;
+      }
+    }
+  }
+
+  /**
+   * Updates the counts, the first and last moves and the main line flags after
+   * the next node of parent, on the main line, changed from oldNext to newNext.
+   * Walks the lines below parent only, not the whole main line.
+   */
+  private void mainLineChanged(SgfGameNode parent, SgfGameNode oldNext, SgfGameNode newNext) {
+    // no move up to parent : the first move was below it
+    boolean firstBelow = firstMove == null || firstMove.getNodeNo() > parent.getNodeNo();
+    for (SgfGameNode node = oldNext; node != null; node = node.getNextNode()) {
+      node.setMainLine(false);
+      noNodes--;
+      if (node.isMove()) {
+        noMoves--;
       }
+    }
+    SgfGameNode first = null;
+    SgfGameNode last = null;
+    for (SgfGameNode node = newNext; node != null; node = node.getNextNode()) {
+      node.setMainLine(true);
       noNodes++;
-    } while (((node = node.getNextNode()) != null));
+      if (node.isMove()) {
+        noMoves++;
+        if (first == null) {
+          first = node;
+        }
+        last = node;
+      }
+    }
+    lastMove = last != null ? last : lastMoveUpTo(parent);
+    if (firstBelow) {
+      firstMove = first;
+    }
+  }
+
+  /**
+   * Renumbers the whole tree if it was edited directly since the last update.
+   */
+  private void checkProcessed() {
+    if (!processed) {
+      throw new IllegalStateException("The game is not post processed");
+    }
+    if (!isUpToDate()) {
+      treeIndex = null;
+      numberSubtree(getRootNode(), 1, 0, true);
+      countMainLine();
+    }
+  }
 
-    // number all the moves
-    numberTheMoves(getRootNode(), 1, 0);
+  /**
+   * @return true if the counts and moves kept are those of the tree : the game
+   *         is post processed and its nodes were not edited directly since
+   */
+  private boolean isUpToDate() {
+    return processed && edits == getRootNode().getEditCount();
   }
 
-  private void numberTheMoves(SgfGameNode startNode, int moveNo, int nodeNo) {
-    SgfGameNode node = startNode;
-    int nextMoveNo = moveNo;
-    int nextNodeNo = nodeNo;
+  /**
+   * Adds child after the children of parent : the next node if parent has none,
+   * a new variation otherwise.
+   */
+  public void addChild(SgfGameNode parent, SgfGameNode child) {
+    insertChild(parent, parent.getChildren().size(), child);
+  }
 
-    if (node.isMove()) {
-      startNode.setMoveNo(moveNo);
-      nextMoveNo++;
+  /**
+   * Inserts child, with its subtree, among the children of parent and numbers
+   * it. Index 0 makes it the next node of parent.
+   */
+  public void insertChild(SgfGameNode parent, int index, SgfGameNode child) {
+    checkProcessed();
+    treeIndex = null;
+    SgfGameNode oldNext = index == 0 ? parent.getNextNode() : null;
+    parent.insertChild(index, child);
+    child.setParentNode(parent);
+    boolean mainLine = index == 0 && parent.isMainLine();
+    numberSubtree(child, movesUpTo(parent) + 1, parent.getNodeNo() + 1, mainLine);
+    if (mainLine) {
+      mainLineChanged(parent, oldNext, child);
     }
+    edits = getRootNode().getEditCount();
+  }
 
-    startNode.setNodeNo(nodeNo);
-    nextNodeNo++;
+  /**
+   * Removes child and its subtree from the children of parent.
+   *
+   * @return true if child was a child of parent
+   */
+  public boolean removeChild(SgfGameNode parent, SgfGameNode child) {
+    checkProcessed();
+    boolean wasNext = parent.getNextNode() == child;
+    if (!parent.removeChild(child)) {
+      return false;
+    }
+    treeIndex = null;
+    child.setParentNode(null);
+    if (wasNext && parent.isMainLine()) {
+      mainLineChanged(parent, child, parent.getNextNode());
+    }
+    edits = getRootNode().getEditCount();
+    return true;
+  }
 
-    if (node.getNextNode() != null) {
-      numberTheMoves(node.getNextNode(), nextMoveNo, nextNodeNo);
+  /**
+   * Makes node a move, renumbering the moves that follow it.
+   *
+   * @param color "B" or "W"
+   * @param point the SGF point of the move, "" for a pass
+   */
+  public void setMove(SgfGameNode node, String color, String point) {
+    if (!"B".equals(color) && !"W".equals(color)) {
+      throw new IllegalArgumentException("Not a color : " + color);
     }
+    checkProcessed();
+    boolean wasMove = node.isMove();
+    node.removeProperty("B");
+    node.removeProperty("W");
+    node.setProperty(color, point);
+    moveChanged(node, wasMove);
+  }
+
+  /**
+   * Makes node a node without move, renumbering the moves that follow it.
+   */
+  public void removeMove(SgfGameNode node) {
+    checkProcessed();
+    boolean wasMove = node.isMove();
+    node.removeProperty("B");
+    node.removeProperty("W");
+    moveChanged(node, wasMove);
+  }
 
-    if (node.hasChildren()) {
-      for (Iterator<SgfGameNode> ite = node.getChildren().iterator(); ite.hasNext();) {
-        SgfGameNode childNode = ite.next();
-        numberTheMoves(childNode, nextMoveNo, nextNodeNo);
+  private void moveChanged(SgfGameNode node, boolean wasMove) {
+    SgfGameNode parent = node.getParentNode();
+    numberSubtree(node, parent == null ? 1 : movesUpTo(parent) + 1, node.getNodeNo(), node.isMainLine());
+    if (node.isMainLine() && node.isMove() != wasMove) {
+      if (node.isMove()) {
+        noMoves++;
+        if (firstMove == null || firstMove.getNodeNo() > node.getNodeNo()) {
+          firstMove = node;
+        }
+        if (lastMove == null || lastMove.getNodeNo() < node.getNodeNo()) {
+          lastMove = node;
+        }
+      } else {
+        noMoves--;
+        if (firstMove == node) {
+          // the next move if any, within the subtree just numbered
+          firstMove = null;
+          for (SgfGameNode next = node.getNextNode(); next != null && firstMove == null; next = next.getNextNode()) {
+            if (next.isMove()) {
+              firstMove = next;
+            }
+          }
+        }
+        if (lastMove == node) {
+          lastMove = lastMoveUpTo(parent);
+        }
       }
     }
+    edits = getRootNode().getEditCount();
   }
 
   public int getNoNodes() {
     return noNodes;
   }
 
+  /**
+   * @return the first move of the main line, kept by the game once post
+   *         processed. Looked for again while the nodes were edited directly,
+   *         until the next post processing or edit through the game.
+   */
   public SgfGameNode getFirstMove() {
+    return isUpToDate() ? firstMove : findFirstMove();
+  }
+
+  private SgfGameNode findFirstMove() {
     SgfGameNode node = getRootNode();
 
     do {
@@ -144,7 +661,13 @@ public class SgfGame {
     return null;
   }
 
+  /**
+   * @return the last move of the main line, see {@link #getFirstMove()}
+   */
   public SgfGameNode getLastMove() {
+    if (isUpToDate()) {
+      return lastMove;
+    }
     SgfGameNode node = getRootNode();
     SgfGameNode rtrn = null;
     do {
@@ -168,22 +691,22 @@ public class SgfGame {
     }
 
     // all root level properties have to match
-    Map<String, String> reReadProps = otherGame.getProperties();
+    SgfPropertyMap reReadProps = otherGame.properties;
     if (properties.size() != reReadProps.size()) {
-      log.trace("Properties mismatch {} {}", properties.size(), otherGame.getProperties().size());
+      log.trace("Properties mismatch {} {}", properties.size(), reReadProps.size());
       if (verbose) {
-        System.out.printf("Properties mismatch %s %s\n", properties.size(), otherGame.getProperties().size());
+        System.out.printf("Properties mismatch %s %s\n", properties.size(), reReadProps.size());
       }
       return false;
     }
 
-    for (Iterator<Map.Entry<String, String>> ite = properties.entrySet().iterator(); ite.hasNext();) {
-      Map.Entry<String, String> entry = ite.next();
-      if (!entry.getValue().equals(reReadProps.get(entry.getKey()))) {
-        log.trace("Property mismatch {}={} {}", entry.getKey(), entry.getValue(), reReadProps.get(entry.getKey()));
+    for (int i = 0; i < properties.size(); i++) {
+      SgfProperty property = properties.propertyAt(i);
+      if (!properties.valuesAt(i).equals(reReadProps.getValues(property))) {
+        log.trace("Property mismatch {}={} {}", property, properties.joinedAt(i), reReadProps.getJoined(property));
         if (verbose) {
-          System.out.printf("Property mismatch %s='%s' '%s'", entry.getKey(), entry.getValue(),
-              reReadProps.get(entry.getKey()));
+          System.out.printf("Property mismatch %s='%s' '%s'", property, properties.joinedAt(i),
+              reReadProps.getJoined(property));
         }
         return false;
       }
@@ -303,50 +826,74 @@ public class SgfGame {
     StringBuilder rtrn = new StringBuilder();
     rtrn.append("(");
 
-    // lets write all the root node properties
-    Map<String, String> props = getProperties();
-    if (props.size() > 0) {
-      rtrn.append(";");
+    // the root node holds the game properties as well as its own ones
+    rtrn.append(";");
+    appendProperties(properties, rtrn);
+    if (getRootNode() != null) {
+      appendProperties(getRootNode().getPropertyMap(), rtrn);
+      rtrn.append("\n");
+      populateSgf(getRootNode().getChildren(), rtrn);
     }
 
-    for (Iterator<Map.Entry<String, String>> ite = props.entrySet().iterator(); ite.hasNext();) {
-      Map.Entry<String, String> entry = ite.next();
-      rtrn.append(entry.getKey() + "[" + entry.getValue() + "]");
-    }
-
-    populateSgf(getRootNode(), rtrn);
-
     rtrn.append(")");
     return rtrn.toString();
   }
 
-  private void populateSgf(SgfGameNode node, StringBuilder sgfString) {
-    // print out the node
-    sgfString.append(";");
-    for (Iterator<Map.Entry<String, String>> ite = node.getProperties().entrySet().iterator(); ite.hasNext();) {
-      Map.Entry<String, String> entry = ite.next();
-      sgfString.append(entry.getKey() + "[" + entry.getValue() + "]");
+  /**
+   * Writes properties, each value in its own brackets. Values read from the SGF
+   * input are written as found, point lists are written compressed in
+   * rectangles when possible.
+   */
+  private void appendProperties(SgfPropertyMap props, StringBuilder sgfString) {
+    for (int i = 0; i < props.size(); i++) {
+      SgfProperty property = props.propertyAt(i);
+      sgfString.append(property.getKey());
+      if (PointSet.isPointListProperty(property.getKey())) {
+        List<String> values = props.valuesAt(i);
+        PointSet points;
+        try {
+          points = PointSet.parse(values, getBoardWidth(), getBoardHeight());
+        } catch (IllegalArgumentException e) {
+          // not understood (off board, invalid size...) : written as found
+          log.warn("Point list {}{} written uncompressed : {}", property, values, e.getMessage());
+          points = null;
+        }
+        if (points != null) {
+          List<String> compressed = points.toSgfValues();
+          if (compressed.isEmpty()) {
+            sgfString.append("[]");
+          }
+          for (String value : compressed) {
+            sgfString.append('[').append(value).append(']');
+          }
+          continue;
+        }
+      }
+      props.appendSgfAt(i, sgfString);
     }
-    sgfString.append("\n");
+  }
 
-    // if we have children then first print out the
-    // getNextNode() and then the rest of the children
-    if (node.hasChildren()) {
-      sgfString.append("(");
-      populateSgf(node.getNextNode(), sgfString);
-      sgfString.append(")");
+  /**
+   * Writes the nodes following a node : its next node and the line of play that
+   * follows, or one variation per child when there are several.
+   */
+  private void populateSgf(List<SgfGameNode> children, StringBuilder sgfString) {
+    // the line of play is written in a loop, variations recursively
+    while (children.size() == 1) {
+      SgfGameNode node = children.get(0);
+      // print out the node
+      sgfString.append(";");
+      appendProperties(node.getPropertyMap(), sgfString);
       sgfString.append("\n");
-
-      for (SgfGameNode childNode : node.getChildren()) {
-        sgfString.append("(");
-        populateSgf(childNode, sgfString);
-        sgfString.append(")");
-        sgfString.append("\n");
-      }
+      children = node.getChildren();
     }
-    // we can just continue with the next elem
-    else if (node.getNextNode() != null) {
-      populateSgf(node.getNextNode(), sgfString);
+    for (SgfGameNode childNode : children) {
+      sgfString.append("(;");
+      appendProperties(childNode.getPropertyMap(), sgfString);
+      sgfString.append("\n");
+      populateSgf(childNode.getChildren(), sgfString);
+      sgfString.append(")");
+      sgfString.append("\n");
     }
   }
 }
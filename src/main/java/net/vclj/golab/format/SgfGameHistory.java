@@ -0,0 +1,163 @@
+package net.vclj.golab.format;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * The successive versions of a game being edited, for a server where one user
+ * edits a game while others view it.
+ *
+ * Readers take the current {@link PersistentSgfGame} with {@link #current()}, a
+ * volatile read, and keep a consistent snapshot as long as they want without
+ * locking anything. Edits build a new version and publish it atomically. The
+ * versions replaced are kept for {@link #undo()}, up to a maximum : as versions
+ * share all the nodes an edit did not change, each costs about the depth of the
+ * edited node.
+ */
+public class SgfGameHistory {
+  public static final int DEFAULT_MAX_UNDO = 1000;
+
+  /**
+   * Immutable state : the current game, the undo stack linked through undo, the
+   * redo stack through redo.
+   */
+  private static final class Version {
+    final PersistentSgfGame game;
+    final Version undo;
+    final Version redo;
+    final int undoDepth;
+
+    Version(PersistentSgfGame game, Version undo, Version redo) {
+      this.game = game;
+      this.undo = undo;
+      this.redo = redo;
+      this.undoDepth = undo == null ? 0 : undo.undoDepth + 1;
+    }
+  }
+
+  private final AtomicReference<Version> current;
+  private final int maxUndo;
+
+  public SgfGameHistory(PersistentSgfGame game) {
+    this(game, DEFAULT_MAX_UNDO);
+  }
+
+  /**
+   * @param maxUndo number of versions kept for undo
+   */
+  public SgfGameHistory(PersistentSgfGame game, int maxUndo) {
+    if (maxUndo < 0) {
+      throw new IllegalArgumentException("Negative max undo : " + maxUndo);
+    }
+    this.current = new AtomicReference<>(new Version(game, null, null));
+    this.maxUndo = maxUndo;
+  }
+
+  /**
+   * @return the current version, which never changes
+   */
+  public PersistentSgfGame current() {
+    return current.get().game;
+  }
+
+  /**
+   * Publishes a new version, clearing the redo history.
+   */
+  public void publish(PersistentSgfGame game) {
+    update(ignored -> game);
+  }
+
+  /**
+   * Publishes edit(current), retrying if another version was published in
+   * between : edit must have no side effect.
+   *
+   * @return the version published
+   */
+  public PersistentSgfGame update(UnaryOperator<PersistentSgfGame> edit) {
+    while (true) {
+      Version version = current.get();
+      PersistentSgfGame game = edit.apply(version.game);
+      if (game == version.game) {
+        return game;
+      }
+      Version next = new Version(game, trim(version), null);
+      if (current.compareAndSet(version, next)) {
+        return game;
+      }
+    }
+  }
+
+  /**
+   * @return version, to be the previous version of a new one, without the
+   *         versions beyond maxUndo
+   */
+  private Version trim(Version version) {
+    if (maxUndo == 0) {
+      return null;
+    }
+    if (version.undoDepth < 2 * maxUndo) {
+      return version;
+    }
+    // rebuilt from time to time only, the versions are immutable
+    Version[] kept = new Version[maxUndo];
+    Version undo = version;
+    for (int i = 0; i < maxUndo; i++) {
+      kept[i] = undo;
+      undo = undo.undo;
+    }
+    Version rtrn = null;
+    for (int i = maxUndo - 1; i >= 0; i--) {
+      rtrn = new Version(kept[i].game, rtrn, null);
+    }
+    return rtrn;
+  }
+
+  /**
+   * Goes back to the previous version.
+   *
+   * @return the version now current, null if there was nothing to undo
+   */
+  public PersistentSgfGame undo() {
+    while (true) {
+      Version version = current.get();
+      if (version.undo == null) {
+        return null;
+      }
+      Version previous = version.undo;
+      Version next = new Version(previous.game, previous.undo, new Version(version.game, null, version.redo));
+      if (current.compareAndSet(version, next)) {
+        return next.game;
+      }
+    }
+  }
+
+  /**
+   * Goes forward to the version undone last.
+   *
+   * @return the version now current, null if there was nothing to redo
+   */
+  public PersistentSgfGame redo() {
+    while (true) {
+      Version version = current.get();
+      if (version.redo == null) {
+        return null;
+      }
+      Version next = new Version(version.redo.game, trim(version), version.redo.redo);
+      if (current.compareAndSet(version, next)) {
+        return next.game;
+      }
+    }
+  }
+
+  /**
+   * @return the number of versions that can be undone, at least the max undo
+   *         of the history when there are more versions
+   */
+  public int getUndoCount() {
+    return current.get().undoDepth;
+  }
+
+  public boolean canRedo() {
+    return current.get().redo != null;
+  }
+}
@@ -0,0 +1,232 @@
+package net.vclj.golab.format;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.vclj.golab.entity.CoordinateCodec;
+
+/**
+ * Folds several copies of a game, for example the reviews of several
+ * annotators, into one tree.
+ *
+ * Nodes playing the same move (color and point) after the same line of play
+ * are merged into one node, the lines found in one copy only become variations.
+ * Nodes without move are merged when they set up the same stones. The
+ * properties of the merged nodes are combined : distinct comments are
+ * appended, markup point lists and labels are joined, the other properties
+ * keep the value found first.
+ *
+ * The children of the merged nodes are indexed by move, so that merging costs
+ * about the total number of nodes of the copies. The copies are not modified.
+ */
+public class SgfGameMerger {
+  private static final String COMMENT_SEPARATOR = "\n\n";
+
+  private final SgfGame game = new SgfGame(null);
+  // the children of the merged nodes by move key, see moveKey
+  private final Map<SgfGameNode, Map<String, SgfGameNode>> childIndex = new IdentityHashMap<>();
+  // the distinct comments (C and GC) of the merged properties, joined by
+  // getGame
+  private final Map<SgfPropertyMap, Map<SgfProperty, Set<String>>> comments = new IdentityHashMap<>();
+  private int width;
+  private int height;
+  private int gameCount = 0;
+
+  /**
+   * @return a new game merging games, post processed
+   */
+  public static SgfGame merge(Collection<SgfGame> games) {
+    SgfGameMerger merger = new SgfGameMerger();
+    for (SgfGame game : games) {
+      merger.add(game);
+    }
+    return merger.getGame();
+  }
+
+  /**
+   * Merges a copy of the game into the tree.
+   *
+   * @throws IllegalArgumentException if the board size is not the size of the
+   *           games merged before
+   */
+  public SgfGameMerger add(SgfGame source) {
+    if (source.getRootNode() == null) {
+      throw new IllegalArgumentException("The game has no root node");
+    }
+    if (gameCount == 0) {
+      width = source.getBoardWidth();
+      height = source.getBoardHeight();
+      game.setRootNode(new SgfGameNode(null));
+    } else if (source.getBoardWidth() != width || source.getBoardHeight() != height) {
+      throw new IllegalArgumentException("Board size " + source.getBoardWidth() + "x" + source.getBoardHeight()
+          + " instead of " + width + "x" + height);
+    }
+    gameCount++;
+    mergeProperties(game.getPropertyMap(), source.getPropertyMap());
+
+    // pairs of a node of the source and the merged node it was merged into,
+    // without recursion as lines of play may be very long
+    List<SgfGameNode> sources = new ArrayList<>();
+    List<SgfGameNode> targets = new ArrayList<>();
+    SgfGameNode root = game.getRootNode();
+    SgfGameNode sourceRoot = source.getRootNode();
+    if (sourceRoot.isMove()) {
+      // not post processed : the first move is the root
+      sources.add(sourceRoot);
+      targets.add(mergeChild(root, sourceRoot));
+    } else {
+      mergeProperties(root.getPropertyMap(), sourceRoot.getPropertyMap());
+      sources.add(sourceRoot);
+      targets.add(root);
+    }
+    while (!sources.isEmpty()) {
+      SgfGameNode node = sources.remove(sources.size() - 1);
+      SgfGameNode target = targets.remove(targets.size() - 1);
+      for (SgfGameNode child : node.getChildren()) {
+        sources.add(child);
+        targets.add(mergeChild(target, child));
+      }
+    }
+    return this;
+  }
+
+  /**
+   * @return the number of games merged
+   */
+  public int getGameCount() {
+    return gameCount;
+  }
+
+  /**
+   * @return the merged game, post processed, null if no game was merged
+   */
+  public SgfGame getGame() {
+    if (gameCount == 0) {
+      return null;
+    }
+    for (Map.Entry<SgfPropertyMap, Map<SgfProperty, Set<String>>> entry : comments.entrySet()) {
+      for (Map.Entry<SgfProperty, Set<String>> values : entry.getValue().entrySet()) {
+        if (values.getValue().size() > 1) {
+          entry.getKey().set(values.getKey(), String.join(COMMENT_SEPARATOR, values.getValue()));
+        }
+      }
+    }
+    game.postProcess();
+    return game;
+  }
+
+  /**
+   * Merges child into the child of parent playing the same move, a new child if
+   * there is none.
+   *
+   * @return the child of parent child was merged into
+   */
+  private SgfGameNode mergeChild(SgfGameNode parent, SgfGameNode child) {
+    Map<String, SgfGameNode> children = childIndex.get(parent);
+    if (children == null) {
+      children = new HashMap<>();
+      childIndex.put(parent, children);
+    }
+    String key = moveKey(child);
+    SgfGameNode rtrn = children.get(key);
+    if (rtrn == null) {
+      rtrn = new SgfGameNode(parent);
+      parent.addChild(rtrn);
+      children.put(key, rtrn);
+    }
+    mergeProperties(rtrn.getPropertyMap(), child.getPropertyMap());
+    return rtrn;
+  }
+
+  /**
+   * @return what identifies a node among its siblings : the color and point of
+   *         its move, the stones it sets up if it has no move
+   */
+  private String moveKey(SgfGameNode node) {
+    if (node.isMove()) {
+      String point = node.getMoveString();
+      if (CoordinateCodec.isSgfPass(point, Math.max(width, height))) {
+        point = "";
+      }
+      return node.getColor() + ":" + point;
+    }
+    StringBuilder rtrn = new StringBuilder("setup");
+    for (String key : new String[] { "AB", "AW", "AE" }) {
+      List<String> values = node.getPropertyValues(key);
+      if (!values.isEmpty()) {
+        rtrn.append(':').append(key);
+        try {
+          PointSet.parse(values, width, height).appendSgf(rtrn);
+        }
+        catch (IllegalArgumentException e) {
+          rtrn.append(values);
+        }
+      }
+    }
+    return rtrn.toString();
+  }
+
+  /**
+   * Combines the properties of source into target.
+   */
+  private void mergeProperties(SgfPropertyMap target, SgfPropertyMap source) {
+    for (int i = 0; i < source.size(); i++) {
+      SgfProperty property = source.propertyAt(i);
+      List<String> values = source.valuesAt(i);
+      if (property == SgfProperty.C || "GC".equals(property.getKey())) {
+        Set<String> distinct = comments.computeIfAbsent(target, key -> new HashMap<>())
+            .computeIfAbsent(property, key -> new LinkedHashSet<>());
+        if (distinct.add(source.joinedAt(i)) && distinct.size() == 1) {
+          target.setValues(property, values);
+        }
+      } else if (!target.contains(property)) {
+        target.setValues(property, values);
+      } else if (PointSet.isPointListProperty(property.getKey())) {
+        try {
+          PointSet points = PointSet.parse(target.getValues(property), width, height);
+          points.union(PointSet.parse(values, width, height));
+          target.setValues(property, points.toSgfValues());
+        }
+        catch (IllegalArgumentException e) {
+          // not understood (off board...) : the values are joined as found
+          target.setValues(property, union(target.getValues(property), values));
+        }
+      } else if ("LB".equals(property.getKey())) {
+        target.setValues(property, unionLabels(target.getValues(property), values));
+      }
+    }
+  }
+
+  private static List<String> union(List<String> values, List<String> added) {
+    Set<String> rtrn = new LinkedHashSet<>(values);
+    rtrn.addAll(added);
+    return new ArrayList<>(rtrn);
+  }
+
+  /**
+   * @return the labels (point:text) of values and the labels of added on the
+   *         points values have no label for
+   */
+  private static List<String> unionLabels(List<String> values, List<String> added) {
+    Map<String, String> labels = new LinkedHashMap<>();
+    for (String value : values) {
+      labels.putIfAbsent(labelPoint(value), value);
+    }
+    for (String value : added) {
+      labels.putIfAbsent(labelPoint(value), value);
+    }
+    return new ArrayList<>(labels.values());
+  }
+
+  private static String labelPoint(String label) {
+    int colon = label.indexOf(':');
+    return colon < 0 ? label : label.substring(0, colon);
+  }
+}
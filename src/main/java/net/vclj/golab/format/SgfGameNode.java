@@ -1,11 +1,10 @@
 package net.vclj.golab.format;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 
 /**
  * GameNode is any node of a game. This can be any SGF node, whether it is an
@@ -14,16 +13,30 @@ import java.util.NoSuchElementException;
  */
 public class SgfGameNode implements Comparable<SgfGameNode>, Cloneable {
   private final List<SgfGameNode> children = new ArrayList<>();
-  private final Map<String, String> properties = new HashMap<>();
+  // edits go through addChild, insertChild and removeChild, which count them
+  private final List<SgfGameNode> childrenView = Collections.unmodifiableList(children);
+  private final SgfPropertyMap properties = new SgfPropertyMap();
 
   private int moveNo = -1;
   private int nodeNo = -1;
   private int visualDepth = -1;
+  // set by the game, see SgfGame#isOnMainLine
+  private boolean mainLine;
 
   private SgfGameNode parentNode;
 
   private long id;
 
+  // shared by the nodes of a tree : counts the edits made to it, so that the
+  // game can tell when its cached moves are stale
+  private Edits edits;
+
+  private static final class Edits {
+    private int count;
+    // the edits of the children only
+    private int shapeCount;
+  }
+
   /**
    * Constructs a new node with the argument as the parent node. Besides a parent
    * node each node also has possibly a previous and next node. Branching is
@@ -43,24 +56,96 @@ public class SgfGameNode implements Comparable<SgfGameNode>, Cloneable {
    */
   public SgfGameNode(SgfGameNode parentNode) {
     this.parentNode = parentNode;
+    this.edits = parentNode == null ? new Edits() : parentNode.edits;
+  }
+
+  /**
+   * @return the number of edits made to the tree of the node, see
+   *         {@link SgfGame#getFirstMove()}
+   */
+  int getEditCount() {
+    return edits.count;
+  }
+
+  /**
+   * @return the number of edits made to the children of the nodes of the tree
+   *         of the node, see {@link SgfGame#getTreeIndex()}
+   */
+  int getShapeEditCount() {
+    return edits.shapeCount;
+  }
+
+  /**
+   * Makes node and its subtree count their edits with those of this tree.
+   */
+  private void adopt(SgfGameNode node) {
+    List<SgfGameNode> nodes = new ArrayList<>();
+    nodes.add(node);
+    while (!nodes.isEmpty()) {
+      SgfGameNode current = nodes.remove(nodes.size() - 1);
+      current.edits = edits;
+      nodes.addAll(current.children);
+    }
+  }
+
+  /**
+   * @return true if node was created in, or added to, the tree of this node
+   */
+  boolean isSameTree(SgfGameNode node) {
+    return edits == node.edits;
   }
 
   public void addChild(SgfGameNode node) {
-    if (children.contains(node)) {
+    insertChild(children.size(), node);
+  }
+
+  /**
+   * Inserts a child at index, 0 making it the next node. Prefer
+   * {@link SgfGame#insertChild(SgfGameNode, int, SgfGameNode)} on a post
+   * processed game, which keeps the numbering up to date.
+   */
+  public void insertChild(int index, SgfGameNode node) {
+    // identity : equals compares whole subtrees
+    if (indexOfChild(node) >= 0) {
       throw new RuntimeException("Node '" + node + "' already exists for " + this);
     }
 
-    children.add(node);
+    children.add(index, node);
+    edits.count++;
+    edits.shapeCount++;
+    if (node.edits != edits) {
+      adopt(node);
+    }
   }
 
-  public SgfGameNode getNextNode() {
-    SgfGameNode nextNode;
-    try {
-      nextNode = children.iterator().next();
-    } catch (NoSuchElementException e) {
-      nextNode = null;
+  /**
+   * @return true if node was a child of this node
+   */
+  public boolean removeChild(SgfGameNode node) {
+    int index = indexOfChild(node);
+    if (index < 0) {
+      return false;
+    }
+    children.remove(index);
+    edits.count++;
+    edits.shapeCount++;
+    return true;
+  }
+
+  /**
+   * @return the index of the child, -1 if node is not a child of this node
+   */
+  public int indexOfChild(SgfGameNode node) {
+    for (int i = 0; i < children.size(); i++) {
+      if (children.get(i) == node) {
+        return i;
+      }
     }
-    return nextNode;
+    return -1;
+  }
+
+  public SgfGameNode getNextNode() {
+    return children.isEmpty() ? null : children.get(0);
   }
 
   public SgfGameNode getParentNode() {
@@ -71,34 +156,141 @@ public class SgfGameNode implements Comparable<SgfGameNode>, Cloneable {
     parentNode = node;
   }
 
+  /**
+   * Appends a value to the property, see {@link #setProperty(String, String)}
+   * to replace it.
+   */
   public void addProperty(String key, String value) {
-    properties.put(key, value);
+    properties.add(SgfProperty.intern(key), value);
+    edits.count++;
   }
 
+  public void addProperty(SgfProperty property, String value) {
+    properties.add(property, value);
+    edits.count++;
+  }
+
+  /**
+   * Replaces all the values of the property by a single one.
+   */
+  public void setProperty(String key, String value) {
+    properties.set(SgfProperty.intern(key), value);
+    edits.count++;
+  }
+
+  public void removeProperty(String key) {
+    properties.remove(SgfProperty.get(key));
+    edits.count++;
+  }
+
+  /**
+   * @return the values of the property joined by commas, null if not defined
+   */
   public String getProperty(String key) {
-    return properties.get(key);
+    return properties.getJoined(SgfProperty.get(key));
   }
 
   public String getProperty(String key, String defaultValue) {
-    if (properties.get(key) == null)
-      return defaultValue;
-    else
-      return properties.get(key);
+    String value = getProperty(key);
+    return value == null ? defaultValue : value;
   }
 
+  /**
+   * @return a read-only view of the values of the property
+   */
+  public List<String> getPropertyValues(String key) {
+    return properties.getValues(SgfProperty.get(key));
+  }
+
+  /**
+   * @return a read-only view of the node properties, the values of each property
+   *         joined by commas
+   */
   public Map<String, String> getProperties() {
+    return properties.asMap();
+  }
+
+  /**
+   * @return the node properties themselves, read-only as far as the node is
+   *         concerned
+   */
+  SgfPropertyMap getPropertyMap() {
     return properties;
   }
 
+  /**
+   * Point list properties (AB, AW, AE, TR, SQ, CR, MA and SL) as a set of points.
+   * The node does not know the board, hence its dimensions as arguments (see
+   * {@link SgfGame#getBoardWidth()}).
+   *
+   * @return the points, an empty set if the property is not defined
+   */
+  public PointSet getPointSet(String key, int width, int height) {
+    checkPointListProperty(key);
+    return PointSet.parse(properties.getValues(SgfProperty.get(key)), width, height);
+  }
+
+  /**
+   * Stores a point list property, compressed in rectangles. An empty set removes
+   * the property.
+   */
+  public void setPointSet(String key, PointSet points) {
+    checkPointListProperty(key);
+    properties.setValues(SgfProperty.intern(key), points.toSgfValues());
+    edits.count++;
+  }
+
+  static void checkPointListProperty(String key) {
+    if (!PointSet.isPointListProperty(key)) {
+      throw new IllegalArgumentException("Not a point list property : " + key);
+    }
+  }
+
+  /**
+   * @return the time left to black in seconds after the move of the node (BL
+   *         property), NaN if not defined or invalid. Parsed once and cached.
+   */
+  public double getBlackTimeLeft() {
+    Double time = properties.getParsed(SgfProperty.BL, SgfValues.REAL);
+    return time == null ? Double.NaN : time;
+  }
+
+  /**
+   * @return the time left to white in seconds (WL property), NaN if not defined
+   *         or invalid
+   */
+  public double getWhiteTimeLeft() {
+    Double time = properties.getParsed(SgfProperty.WL, SgfValues.REAL);
+    return time == null ? Double.NaN : time;
+  }
+
+  /**
+   * @return the number of moves black has left to play in the current overtime
+   *         period (OB property), -1 if not defined or invalid
+   */
+  public int getBlackMovesLeft() {
+    Integer moves = properties.getParsed(SgfProperty.OB, SgfValues.NUMBER);
+    return moves == null ? -1 : moves;
+  }
+
+  /**
+   * @return the number of moves white has left to play in the current overtime
+   *         period (OW property), -1 if not defined or invalid
+   */
+  public int getWhiteMovesLeft() {
+    Integer moves = properties.getParsed(SgfProperty.OW, SgfValues.NUMBER);
+    return moves == null ? -1 : moves;
+  }
+
   public boolean isMove() {
-    return properties.get("W") != null || properties.get("B") != null;
+    return properties.contains(SgfProperty.W) || properties.contains(SgfProperty.B);
   }
 
   public String getMoveString() {
-    if (properties.get("W") != null) {
-      return properties.get("W");
-    } else if (properties.get("B") != null) {
-      return properties.get("B");
+    if (properties.getFirst(SgfProperty.W) != null) {
+      return properties.getFirst(SgfProperty.W);
+    } else if (properties.getFirst(SgfProperty.B) != null) {
+      return properties.getFirst(SgfProperty.B);
     } else {
       return null;
     }
@@ -110,16 +302,24 @@ public class SgfGameNode implements Comparable<SgfGameNode>, Cloneable {
     return moveCoords;
   }
 
+  /**
+   * @return the packed point of the move, see
+   *         {@link net.vclj.golab.entity.CoordinateCodec#point(int, int)}
+   */
+  public int getPoint() {
+    return SgfUtil.alphaToPoint(getMoveString());
+  }
+
   public boolean isWhite() {
-    return properties.get("W") != null;
+    return properties.contains(SgfProperty.W);
   }
 
   public boolean isBlack() {
-    return properties.get("B") != null;
+    return properties.contains(SgfProperty.B);
   }
 
   public String getColor() {
-    if (properties.get("W") != null)
+    if (properties.contains(SgfProperty.W))
       return "W";
     return "B";
   }
@@ -128,8 +328,11 @@ public class SgfGameNode implements Comparable<SgfGameNode>, Cloneable {
     return children.size() > 0;
   }
 
+  /**
+   * @return a read-only view of the children, the next node first
+   */
   public List<SgfGameNode> getChildren() {
-    return children;
+    return childrenView;
   }
 
   public void setMoveNo(int i) {
@@ -254,8 +457,8 @@ public class SgfGameNode implements Comparable<SgfGameNode>, Cloneable {
    * @return true if this is a placement move and not a game move
    */
   public boolean isPlacementMove() {
-    return properties.get("W") == null && properties.get("B") == null
-        && (properties.get("AB") != null || properties.get("AW") != null);
+    return !properties.contains(SgfProperty.W) && !properties.contains(SgfProperty.B)
+        && (properties.contains(SgfProperty.AB) || properties.contains(SgfProperty.AW));
   }
 
   public void setNodeNo(int nodeNo) {
@@ -266,16 +469,39 @@ public class SgfGameNode implements Comparable<SgfGameNode>, Cloneable {
     return this.nodeNo;
   }
 
+  void setMainLine(boolean mainLine) {
+    this.mainLine = mainLine;
+  }
+
+  /**
+   * @return true if the game numbering the node last found it on the main line
+   */
+  boolean isMainLine() {
+    return mainLine;
+  }
+
+  /**
+   * @return the comment of the node, unescaped, empty if there is none
+   */
   public String getSgfComment() {
-    return properties.getOrDefault("C", "");
+    String comment = properties.getJoined(SgfProperty.C);
+    return comment == null ? "" : comment;
   }
 
+  /**
+   * @return the preorder id of the node, set by the last {@link SgfTreeIndex}
+   *         built on its tree
+   */
   public long getId() {
     return this.id;
   }
 
+  void setId(long id) {
+    this.id = id;
+  }
+
   public String toString() {
-    return "Props: keys=" + properties.keySet().toString() + " all=" + properties.toString() + " moveNo: " + moveNo
+    return "Props: keys=" + properties.asMap().keySet().toString() + " all=" + properties.toString() + " moveNo: " + moveNo
         + " children: " + children.size() + " vdepth: " + visualDepth + " parentNode: " + getParentNode().hashCode();
   }
 
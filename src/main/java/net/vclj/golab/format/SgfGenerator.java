@@ -0,0 +1,357 @@
+package net.vclj.golab.format;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import net.vclj.golab.entity.CoordinateCodec;
+
+/**
+ * Deterministic generator of synthetic SGF games and collections. It is meant
+ * to feed benchmarks and soak tests with files shaped like the worst ones met in
+ * production (very long main lines, deep variation trees, huge comments full of
+ * escaped characters, large setup positions, unusual board sizes) without
+ * shipping any real game.
+ *
+ * Two generators built with the same seed and the same settings produce exactly
+ * the same output. Each game of a collection is derived from the seed and its
+ * index only, so game k can be regenerated on its own.
+ *
+ * The generated moves are random points of the board : they are syntactically
+ * valid SGF but are not legal go (no capture nor occupation is checked).
+ */
+public class SgfGenerator {
+  public static final int MAX_BOARD_SIZE = CoordinateCodec.MAX_SGF_BOARD_SIZE;
+
+  private static final String[] WORDS = new String[] { "black", "white", "ladder", "breaker", "ko", "threat", "tenuki",
+      "joseki", "sente", "gote", "aji", "moyo", "shape", "thickness", "overplay", "miai", "atari", "net", "snapback",
+      "seki", "life", "death", "eye", "invasion", "reduction", "framework", "territory", "influence", "cut", "hane" };
+
+  private static final String[] NAMES = new String[] { "Honinbo Shusaku", "Go Seigen", "Lee Sedol", "Cho Chikun",
+      "Takemiya Masaki", "Ke Jie", "Shin Jinseo", "Iyama Yuta", "Park Junghwan", "Otake Hideo" };
+
+  private static final String[] RULES = new String[] { "Japanese", "Chinese", "AGA", "Korean", "NZ" };
+
+  private final long seed;
+
+  private int[] boardSizes = new int[] { 19 };
+  private int minMoves = 150;
+  private int maxMoves = 300;
+  private double variationProbability = 0.0;
+  private int maxVariationLength = 10;
+  private int maxVariationDepth = 3;
+  private double commentProbability = 0.0;
+  private int commentLength = 200;
+  private double escapeProbability = 0.05;
+  private int setupStones = 0;
+  private double rangeProbability = 0.0;
+
+  /**
+   * Constructs a generator. The same seed always yields the same games.
+   *
+   * @param seed the seed of every pseudo random choice
+   */
+  public SgfGenerator(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Board sizes to pick from (one per game, uniformly).
+   *
+   * @param boardSizes sizes between 1 and {@link #MAX_BOARD_SIZE}
+   */
+  public void setBoardSizes(int... boardSizes) {
+    if (boardSizes.length == 0) {
+      throw new IllegalArgumentException("At least one board size is required");
+    }
+    for (int size : boardSizes) {
+      if (size < 1 || size > MAX_BOARD_SIZE) {
+        throw new IllegalArgumentException("Board size must be between 1 and " + MAX_BOARD_SIZE + " : " + size);
+      }
+    }
+    this.boardSizes = boardSizes.clone();
+  }
+
+  /**
+   * Number of moves of the main line, picked uniformly between both bounds
+   * (inclusive) for each game. Use the same value twice for a fixed length, e.g.
+   * 1 000 000 for a very deep main line.
+   */
+  public void setMoves(int minMoves, int maxMoves) {
+    if (minMoves < 0 || maxMoves < minMoves) {
+      throw new IllegalArgumentException("Invalid move count range : " + minMoves + ".." + maxMoves);
+    }
+    this.minMoves = minMoves;
+    this.maxMoves = maxMoves;
+  }
+
+  /**
+   * Probability for any node to start a variation, the length of which is picked
+   * between 1 and maxLength. Variations may themselves branch, up to maxDepth
+   * levels of nesting.
+   */
+  public void setVariations(double probability, int maxLength, int maxDepth) {
+    if (probability < 0 || probability > 1 || maxLength < 1 || maxDepth < 0) {
+      throw new IllegalArgumentException("Invalid variation settings");
+    }
+    this.variationProbability = probability;
+    this.maxVariationLength = maxLength;
+    this.maxVariationDepth = maxDepth;
+  }
+
+  /**
+   * Probability for a node to hold a comment of about length characters. Within
+   * comments, escapeProbability is the ratio of characters that need an SGF
+   * escape ('\]', '\\', '\:' or an escaped line break).
+   */
+  public void setComments(double probability, int length, double escapeProbability) {
+    if (probability < 0 || probability > 1 || length < 1 || escapeProbability < 0 || escapeProbability > 1) {
+      throw new IllegalArgumentException("Invalid comment settings");
+    }
+    this.commentProbability = probability;
+    this.commentLength = length;
+    this.escapeProbability = escapeProbability;
+  }
+
+  /**
+   * Number of stones set up in the root node through multi-valued AB / AW
+   * properties, and the probability for each value to be written as a compressed
+   * rectangle ("aa:cc") rather than a single point.
+   */
+  public void setSetup(int stones, double rangeProbability) {
+    if (stones < 0 || rangeProbability < 0 || rangeProbability > 1) {
+      throw new IllegalArgumentException("Invalid setup settings");
+    }
+    this.setupStones = stones;
+    this.rangeProbability = rangeProbability;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Generates game number index as a String.
+   */
+  public String generate(int index) {
+    StringBuilder rtrn = new StringBuilder();
+    try {
+      generate(index, rtrn);
+    }
+    catch (IOException e) {
+      // StringBuilder does not throw
+      throw new UncheckedIOException(e);
+    }
+    return rtrn.toString();
+  }
+
+  /**
+   * Generates game number index into out. Nothing is buffered, so very large
+   * games can be streamed to a file.
+   */
+  public void generate(int index, Appendable out) throws IOException {
+    new GameWriter(new Random(seed ^ (index * 0x9E3779B97F4A7C15L)), out).writeGame();
+  }
+
+  /**
+   * Generates a collection made of games number 0 to count - 1.
+   */
+  public void generateCollection(int count, Appendable out) throws IOException {
+    for (int i = 0; i < count; i++) {
+      generate(i, out);
+      out.append('\n');
+    }
+  }
+
+  /**
+   * Writes a collection of count games into a UTF-8 file.
+   */
+  public void writeCollection(Path destination, int count) {
+    try (Writer writer = new BufferedWriter(Files.newBufferedWriter(destination, StandardCharsets.UTF_8), 1 << 16)) {
+      generateCollection(count, writer);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Writes each generated game in its own file, named
+   * prefix-index.sgf, into directory.
+   */
+  public void writeFiles(Path directory, String prefix, int count) {
+    for (int i = 0; i < count; i++) {
+      Path destination = directory.resolve(prefix + "-" + i + ".sgf");
+      try (Writer writer = new BufferedWriter(Files.newBufferedWriter(destination, StandardCharsets.UTF_8), 1 << 16)) {
+        generate(i, writer);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * State of the generation of a single game.
+   */
+  private class GameWriter {
+    private final Random random;
+    private final Appendable out;
+    private int boardSize;
+
+    GameWriter(Random random, Appendable out) {
+      this.random = random;
+      this.out = out;
+    }
+
+    void writeGame() throws IOException {
+      boardSize = boardSizes[random.nextInt(boardSizes.length)];
+      int moves = minMoves + (maxMoves > minMoves ? random.nextInt(maxMoves - minMoves + 1) : 0);
+
+      out.append("(;GM[1]FF[4]CA[UTF-8]AP[golab:generator]");
+      out.append("SZ[").append(Integer.toString(boardSize)).append(']');
+      out.append("KM[").append(random.nextBoolean() ? "6.5" : "7.5").append(']');
+      out.append("RU[").append(RULES[random.nextInt(RULES.length)]).append(']');
+      out.append("PB[").append(NAMES[random.nextInt(NAMES.length)]).append(']');
+      out.append("PW[").append(NAMES[random.nextInt(NAMES.length)]).append(']');
+      out.append("DT[").append(Integer.toString(1900 + random.nextInt(125))).append('-');
+      appendTwoDigits(1 + random.nextInt(12));
+      out.append('-');
+      appendTwoDigits(1 + random.nextInt(28));
+      out.append(']');
+      out.append("RE[").append(random.nextBoolean() ? 'B' : 'W').append('+');
+      if (random.nextInt(3) == 0) {
+        out.append('R');
+      } else {
+        out.append(Integer.toString(random.nextInt(30))).append(".5");
+      }
+      out.append(']');
+      if (setupStones > 0) {
+        writeSetup("AB", setupStones - setupStones / 2);
+        writeSetup("AW", setupStones / 2);
+      }
+      if (random.nextDouble() < commentProbability) {
+        out.append("GC[");
+        writeText(random);
+        out.append(']');
+      }
+      out.append('\n');
+
+      writeSequence(random, setupStones == 0 || random.nextBoolean(), moves, 0);
+      out.append(")");
+    }
+
+    /**
+     * Writes a line of play. This is iterative whatever its length : a variation
+     * starting after a move only opens a parenthesis, the main continuation is
+     * written first (it is the first child in SGF) and the variation itself is
+     * generated from its own seed once the continuation is closed.
+     */
+    private void writeSequence(Random random, boolean black, int length, int depth) throws IOException {
+      long[] seeds = new long[4];
+      boolean[] colors = new boolean[4];
+      int pending = 0;
+
+      for (int i = 0; i < length; i++) {
+        writeMove(random, black);
+        black = !black;
+        if (i < length - 1 && depth < maxVariationDepth && random.nextDouble() < variationProbability) {
+          if (pending == seeds.length) {
+            seeds = Arrays.copyOf(seeds, pending * 2);
+            colors = Arrays.copyOf(colors, pending * 2);
+          }
+          seeds[pending] = random.nextLong();
+          colors[pending] = black;
+          pending++;
+          out.append('(');
+        }
+      }
+
+      while (pending-- > 0) {
+        out.append(")(");
+        Random variationRandom = new Random(seeds[pending]);
+        writeSequence(variationRandom, colors[pending], 1 + variationRandom.nextInt(maxVariationLength), depth + 1);
+        out.append(')');
+      }
+    }
+
+    private void writeMove(Random random, boolean black) throws IOException {
+      out.append(black ? ";B[" : ";W[");
+      out.append(CoordinateCodec.sgfLetter(random.nextInt(boardSize)));
+      out.append(CoordinateCodec.sgfLetter(random.nextInt(boardSize)));
+      out.append(']');
+      if (random.nextDouble() < commentProbability) {
+        out.append("C[");
+        writeText(random);
+        out.append(']');
+      }
+      out.append('\n');
+    }
+
+    private void writeSetup(String key, int stones) throws IOException {
+      if (stones == 0) {
+        return;
+      }
+      out.append(key);
+      int written = 0;
+      while (written < stones) {
+        int x = random.nextInt(boardSize);
+        int y = random.nextInt(boardSize);
+        out.append('[').append(CoordinateCodec.sgfLetter(x)).append(CoordinateCodec.sgfLetter(y));
+        if (random.nextDouble() < rangeProbability) {
+          int x2 = Math.min(boardSize - 1, x + random.nextInt(4));
+          int y2 = Math.min(boardSize - 1, y + random.nextInt(4));
+          out.append(':').append(CoordinateCodec.sgfLetter(x2)).append(CoordinateCodec.sgfLetter(y2));
+          written += (x2 - x + 1) * (y2 - y + 1);
+        } else {
+          written++;
+        }
+        out.append(']');
+      }
+    }
+
+    private void writeText(Random random) throws IOException {
+      int length = commentLength / 2 + random.nextInt(commentLength / 2 + 1);
+      int written = 0;
+      while (written < length) {
+        if (random.nextDouble() < escapeProbability) {
+          switch (random.nextInt(4)) {
+          case 0:
+            out.append("\\]");
+            break;
+          case 1:
+            // never directly followed by the closing bracket, see below
+            out.append("\\\\ ");
+            break;
+          case 2:
+            out.append("\\:");
+            break;
+          default:
+            out.append("\\\n");
+            break;
+          }
+          written += 2;
+        } else {
+          String word = WORDS[random.nextInt(WORDS.length)];
+          out.append(word);
+          written += word.length();
+          int separator = random.nextInt(20);
+          out.append(separator == 0 ? "\n" : separator == 1 ? ". " : separator == 2 ? ", " : " ");
+          written++;
+        }
+      }
+      // a value must not end with a backslash : it would escape the closing bracket
+      out.append('.');
+    }
+
+    private void appendTwoDigits(int value) throws IOException {
+      out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package net.vclj.golab.format;
+
+/**
+ * Receives the structure of an SGF input from {@link SgfScanner}, in the order
+ * it is found. Offsets are positions in the scanned String; property keys and
+ * values are given as slices of it so that nothing is copied unless the
+ * handler needs to.
+ *
+ * All the methods do nothing by default.
+ */
+public interface SgfHandler {
+
+  /**
+   * A '(' : start of a game tree or of a variation.
+   */
+  default void startTree(int offset) {
+  }
+
+  /**
+   * A ')' : end of a game tree or of a variation.
+   */
+  default void endTree(int offset) {
+  }
+
+  /**
+   * A ';' : start of a node, followed by its properties.
+   */
+  default void startNode(int offset) {
+  }
+
+  /**
+   * End of the properties of the current node.
+   */
+  default void endNode(int offset) {
+  }
+
+  /**
+   * One value of a property of the current node, called once per value for
+   * properties with several values. See
+   * {@link SgfProperty#get(CharSequence, int, int)} to look up the key.
+   *
+   * @param source the scanned input
+   * @param keyStart start of the key in source
+   * @param keyEnd end of the key (exclusive)
+   * @param valueStart start of the value, after '['
+   * @param valueEnd end of the value, the position of ']' : the value is still
+   *          escaped, see {@link SgfText}
+   */
+  default void property(String source, int keyStart, int keyEnd, int valueStart, int valueEnd) {
+  }
+}
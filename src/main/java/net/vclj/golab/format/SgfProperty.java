@@ -0,0 +1,400 @@
+package net.vclj.golab.format;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the SGF property keys. Each key is interned once in an
+ * SgfProperty holding a compact id, used by {@link SgfPropertyMap} to store the
+ * properties of the games and nodes, and the scope(s) the parser accepts the
+ * property in : game (root node) and/or node.
+ *
+ * Keys unknown to the registry are rejected by the parser but can be interned
+ * by code building games ({@link #intern(String)}), with no scope.
+ *
+ * See http://www.red-bean.com/sgf/properties.html
+ */
+public final class SgfProperty {
+  private static final Map<String, SgfProperty> byKey = new ConcurrentHashMap<>();
+
+  private static volatile SgfProperty[] byId = new SgfProperty[128];
+
+  // keys of one or two upper case letters, the vast majority, looked up without
+  // creating a String, see shortKeyIndex
+  private static final SgfProperty[] byShortKey = new SgfProperty[26 * 27];
+
+  private static int count = 0;
+
+  static {
+    // Application used to generate the SGF
+    registerGame("AP");
+    // Black's Rating
+    registerGame("BR");
+    // White's Rating
+    registerGame("WR");
+    // KOMI
+    registerGame("KM");
+    // weird alternative KOMI
+    registerGame("GKM");
+    // Black Player Extended information
+    registerGame("PBX");
+    // Black Player name
+    registerGame("PB");
+    // White Player name
+    registerGame("PW");
+    // I think - Black Player name
+    registerGame("PX");
+    // I think - White Player name
+    registerGame("PY");
+    // Charset
+    registerGame("CA");
+    // File format
+    registerGame("FF");
+    // Game type - 1 means Go
+    registerGame("GM");
+    // Size of the board
+    registerGame("SZ");
+    // Annotator
+    registerGame("AN");
+    // Name of the event
+    registerGame("EV");
+    // Name of the event extended
+    // Extended info about the event
+    registerGame("EVX");
+    // Round number
+    registerGame("RO");
+    // Rules
+    registerGame("RU");
+    // Time limit in seconds
+    registerGame("TM");
+    // How overtime is handled
+    registerGame("OT");
+    // Date of the game
+    registerGame("DT");
+    // Extended date
+    registerGame("DTX");
+    // Place of the game
+    registerGame("PC");
+    // Result of the game
+    registerGame("RE");
+    // I think - Result of the game
+    registerGame("ER");
+    // How to show comments
+    registerGame("ST");
+    /*
+     * Provides some extra information about the following game. The intend of GC is
+     * to provide some background information and/or to summarize the game itself.
+     */
+    registerGame("GC");
+    // Any copyright information
+    registerGame("CP");
+    // Provides name of the source
+    registerGame("SO");
+    // Name of the white team
+    registerGame("WT");
+    // Name of the black team
+    registerGame("BT");
+    // name of the user or program who entered the game
+    registerGame("US");
+    // How to print move numbers
+    registerGame("PM");
+    // Some more printing magic
+    registerGame("FG");
+    // Name of the game
+    registerGame("GN");
+    // Black territory or area
+    registerGame("TB");
+    // White territory or area
+    registerGame("TW");
+    // Sets the move number to the given value, i.e. a move
+    // specified in this node has exactly this move-number. This
+    // can be useful for variations or printing.
+    // SGF4J doesn't honour this atm
+    registerGame("MN");
+    // Handicap stones
+    registerGame("HA");
+    // "AB": add black stones AB[point list]
+    registerGame("AB");
+    // "AW": add white stones AW[point list]
+    registerGame("AW");
+    // add empty = remove stones
+    registerGame("AE");
+    // PL tells whose turn it is to play.
+    registerGame("PL");
+    // KGSDE - kgs scoring - marks all prisoner stones
+    // http://senseis.xmp.net/?CgobanProblemsAndSolutions
+    registerGame("KGSDE");
+    // KGS - score white
+    registerGame("KGSSW");
+    // KGS - score black
+    registerGame("KGSSB");
+    // Checkmark - ignored in FF4
+    // http://www.red-bean.com/sgf/ff1_3/ff3.html and
+    // http://www.red-bean.com/sgf/changes.html
+    registerGame("CH");
+    // I think this is White Country
+    registerGame("WC");
+    // "LT": enforces losing on time LT[]
+    // http://www.red-bean.com/sgf/ff1_3/ff3.html
+    // I don't get it but I'm parsing it
+    registerGame("LT");
+    // I think this is Black Country
+    registerGame("BC");
+    // I think this is just a game ID
+    registerGame("ID");
+    // I have no idea what these properties means
+    // but they are in many games of the collections
+    // I've downloaded from the interwebs
+    registerGame("OH");
+    registerGame("LC");
+    registerGame("RD"); // maybe release date?
+    registerGame("TL"); // something to do with time
+    registerGame("GK"); // something to do with the game
+
+    // These are also available for nodes!
+
+    // time left for white
+    registerGame("WL");
+    // time left for black
+    registerGame("BL");
+
+    // Multigo specific properties
+    registerGame("MULTIGOGM");
+    registerGame("MULTIGOBM");
+    // hotspot - no idea :)
+    registerGame("HO");
+    // some go program info probably
+    registerGame("GOGGPFF");
+    registerGame("GOGGPAP");
+    // these are actually node properties
+    // but there are games where they are
+    // part of the game properties - go figure!
+    registerGame("L");
+    registerGame("B");
+    // see problematic-013.sgf - I think this is white score and black score
+    registerGame("BS");
+    registerGame("WS");
+    // not sure what this is is but found it in a SGF file
+    registerGame("MU");
+  }
+
+  static {
+    // Move for Black
+    registerNode("B");
+    // Move for White
+    registerNode("W");
+    // marks given points with circle
+    registerNode("CR");
+    // marks given points with cross
+    registerNode("MA");
+    // marks given points with square
+    registerNode("SQ");
+    // selected points
+    registerNode("SL");
+    // labels on points
+    registerNode("LB");
+    // marks given points with triangle
+    registerNode("TR");
+    // Number of white stones to play in this byo-yomi period
+    registerNode("OW");
+    // Number of black stones to play in this byo-yomi period
+    registerNode("OB");
+    // time left for white
+    registerNode("WL");
+    // time left for black
+    registerNode("BL");
+    // Comment
+    registerNode("C");
+    /*
+     * Provides a name for the node. For more info have a look at the C-property.
+     */
+    registerNode("N");
+    /*
+     * List of points - http://www.red-bean.com/sgf/proplist_ff.html Label the given
+     * points with uppercase letters. Not used in FF 3 and FF 4!
+     *
+     * Replaced by LB which defines the letters also: Example: L[fg][es][jk] ->
+     * LB[fg:A][es:B][jk:C]
+     */
+    registerNode("L");
+
+    // don't quite get it what it means
+    // but lets parse this out
+    registerNode("WV");
+    // dimmed stones - see http://www.red-bean.com/sgf/DD_VW.html
+    registerNode("VW");
+    // Tesuji - don't know what to do with it though
+    registerNode("TE");
+  }
+
+  static {
+    // setup stones and comments are found in the root node as well as in any
+    // other node
+    registerNode("AB");
+    registerNode("AW");
+    registerNode("AE");
+    registerGame("C");
+    registerGame("N");
+    // territories and dead stones are marked in the last node at the end of
+    // the game
+    registerNode("TB");
+    registerNode("TW");
+    registerNode("KGSDE");
+  }
+
+  // the properties used by the library itself
+  public static final SgfProperty B = get("B");
+  public static final SgfProperty W = get("W");
+  public static final SgfProperty C = get("C");
+  public static final SgfProperty AB = get("AB");
+  public static final SgfProperty AW = get("AW");
+  public static final SgfProperty SZ = get("SZ");
+  public static final SgfProperty KM = get("KM");
+  public static final SgfProperty HA = get("HA");
+  public static final SgfProperty RE = get("RE");
+  public static final SgfProperty DT = get("DT");
+  public static final SgfProperty TM = get("TM");
+  public static final SgfProperty BL = get("BL");
+  public static final SgfProperty WL = get("WL");
+  public static final SgfProperty OB = get("OB");
+  public static final SgfProperty OW = get("OW");
+
+  private final int id;
+  private final String key;
+  private volatile boolean game;
+  private volatile boolean node;
+
+  private SgfProperty(int id, String key) {
+    this.id = id;
+    this.key = key;
+  }
+
+  /**
+   * @return the property of the key, null if the key is unknown
+   */
+  public static SgfProperty get(String key) {
+    return byKey.get(key);
+  }
+
+  /**
+   * Looks up the key found at source[start, end) without copying it when the
+   * key is one or two upper case letters.
+   *
+   * @return the property of the key, null if the key is unknown
+   */
+  public static SgfProperty get(CharSequence source, int start, int end) {
+    int index = shortKeyIndex(source, start, end);
+    if (index >= 0) {
+      return byShortKey[index];
+    }
+    return end > start ? byKey.get(source.subSequence(start, end).toString()) : null;
+  }
+
+  /**
+   * @return the index of the key in byShortKey, -1 if it is not one or two upper
+   *         case letters
+   */
+  private static int shortKeyIndex(CharSequence source, int start, int end) {
+    int length = end - start;
+    if (length < 1 || length > 2) {
+      return -1;
+    }
+    char first = source.charAt(start);
+    if (first < 'A' || first > 'Z') {
+      return -1;
+    }
+    if (length == 1) {
+      return (first - 'A') * 27;
+    }
+    char second = source.charAt(start + 1);
+    if (second < 'A' || second > 'Z') {
+      return -1;
+    }
+    return (first - 'A') * 27 + second - 'A' + 1;
+  }
+
+  /**
+   * @return the property of the id, null if the id is unknown
+   */
+  public static SgfProperty get(int id) {
+    SgfProperty[] properties = byId;
+    return id >= 0 && id < properties.length ? properties[id] : null;
+  }
+
+  /**
+   * @return the property of the key, registered without scope if unknown
+   */
+  public static SgfProperty intern(String key) {
+    SgfProperty rtrn = byKey.get(key);
+    return rtrn != null ? rtrn : register(key);
+  }
+
+  /**
+   * @return the number of properties registered, ids are below this number
+   */
+  public static synchronized int count() {
+    return count;
+  }
+
+  private static synchronized SgfProperty register(String key) {
+    SgfProperty rtrn = byKey.get(key);
+    if (rtrn == null) {
+      if (key.isEmpty()) {
+        throw new IllegalArgumentException("A property key can't be empty");
+      }
+      if (count == Short.MAX_VALUE) {
+        throw new IllegalStateException("Too many SGF properties registered");
+      }
+      rtrn = new SgfProperty(count, key);
+      SgfProperty[] properties = byId;
+      if (count == properties.length) {
+        properties = Arrays.copyOf(properties, count * 2);
+      }
+      properties[count++] = rtrn;
+      byId = properties;
+      int shortIndex = shortKeyIndex(key, 0, key.length());
+      if (shortIndex >= 0) {
+        byShortKey[shortIndex] = rtrn;
+      }
+      byKey.put(key, rtrn);
+    }
+    return rtrn;
+  }
+
+  private static void registerGame(String key) {
+    register(key).game = true;
+  }
+
+  private static void registerNode(String key) {
+    register(key).node = true;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * @return true if the property is accepted in the root node, as a game
+   *         property
+   */
+  public boolean isGame() {
+    return game;
+  }
+
+  /**
+   * @return true if the property is accepted in the nodes
+   */
+  public boolean isNode() {
+    return node;
+  }
+
+  @Override
+  public String toString() {
+    return key;
+  }
+}
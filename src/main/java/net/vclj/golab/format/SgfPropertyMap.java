@@ -0,0 +1,513 @@
+package net.vclj.golab.format;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Function;
+
+import net.vclj.golab.entity.CoordinateCodec;
+
+/**
+ * Properties of a game or a node. Properties are keyed by the id of their
+ * {@link SgfProperty} and every property holds a list of values (SGF allows
+ * several values, e.g. AB[aa][bb], and some files repeat properties).
+ *
+ * Nodes usually hold one to three properties, so they are stored in two small
+ * parallel arrays searched linearly : ids and values, a value being a single
+ * value (the common case) or an ArrayList otherwise. Lists of values are only
+ * handed out as read-only views.
+ *
+ * Values are plain text. The parser stores them as raw slices of the SGF input
+ * instead, still escaped : they are unescaped on first access only, and written
+ * back verbatim as long as they are not changed, see
+ * {@link #appendSgfAt(int, StringBuilder)}.
+ *
+ * For code that works with plain key / value pairs, {@link #asMap()} gives a
+ * read-only view where the values of each property are joined by commas.
+ *
+ * Typed values (komi, result, dates...) are parsed once and cached next to the
+ * values, see {@link #getParsed(SgfProperty, Function)}. Any change of a
+ * property drops its cached value.
+ */
+public class SgfPropertyMap {
+  private static final short[] NO_IDS = new short[0];
+  private static final Object[] NO_VALUES = new Object[0];
+  // cached parser result that was null
+  private static final Object NULL_PARSED = new Object();
+
+  private short[] ids = NO_IDS;
+  private Object[] values = NO_VALUES;
+  // parsed values, same indices as values, allocated on first use
+  private Object[] parsed = null;
+  private int size = 0;
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(SgfProperty property) {
+    return indexOf(property) >= 0;
+  }
+
+  /**
+   * @return the first value of the property, null if not defined
+   */
+  public String getFirst(SgfProperty property) {
+    int index = indexOf(property);
+    return index < 0 ? null : firstAt(index);
+  }
+
+  /**
+   * @return the values of the property joined by commas, null if not defined
+   */
+  public String getJoined(SgfProperty property) {
+    int index = indexOf(property);
+    return index < 0 ? null : joinedAt(index);
+  }
+
+  /**
+   * @return a read-only view of the values of the property, empty if not
+   *         defined
+   */
+  public List<String> getValues(SgfProperty property) {
+    int index = indexOf(property);
+    return index < 0 ? Collections.<String>emptyList() : valuesAt(index);
+  }
+
+  /**
+   * Appends a value to the property.
+   */
+  public void add(SgfProperty property, String value) {
+    addValue(property, value);
+  }
+
+  /**
+   * Appends the still escaped value source[start, end), as found in the SGF
+   * input.
+   */
+  void addRaw(SgfProperty property, String source, int start, int end) {
+    addValue(property, new RawValue(source, start, end));
+  }
+
+  @SuppressWarnings("unchecked")
+  private void addValue(SgfProperty property, Object value) {
+    int index = indexOf(property);
+    if (index < 0) {
+      append(property, value);
+    } else if (values[index] instanceof List) {
+      ((List<Object>) values[index]).add(value);
+      invalidate(index);
+    } else {
+      List<Object> list = new ArrayList<>(4);
+      list.add(values[index]);
+      list.add(value);
+      values[index] = list;
+      invalidate(index);
+    }
+  }
+
+  /**
+   * Replaces the values of the property by a single value.
+   */
+  public void set(SgfProperty property, String value) {
+    int index = indexOf(property);
+    if (index < 0) {
+      append(property, value);
+    } else {
+      values[index] = value;
+      invalidate(index);
+    }
+  }
+
+  /**
+   * Replaces the values of the property, removes it if values is empty.
+   */
+  public void setValues(SgfProperty property, Collection<String> newValues) {
+    if (newValues.isEmpty()) {
+      remove(property);
+      return;
+    }
+    Object value = newValues.size() == 1 ? newValues.iterator().next() : new ArrayList<Object>(newValues);
+    int index = indexOf(property);
+    if (index < 0) {
+      append(property, value);
+    } else {
+      values[index] = value;
+      invalidate(index);
+    }
+  }
+
+  /**
+   * @return true if the property was defined
+   */
+  public boolean remove(SgfProperty property) {
+    int index = indexOf(property);
+    if (index < 0) {
+      return false;
+    }
+    size--;
+    // keep the order of the other properties
+    System.arraycopy(ids, index + 1, ids, index, size - index);
+    System.arraycopy(values, index + 1, values, index, size - index);
+    values[size] = null;
+    if (parsed != null) {
+      System.arraycopy(parsed, index + 1, parsed, index, size - index);
+      parsed[size] = null;
+    }
+    return true;
+  }
+
+  /**
+   * Typed value of the property, parsed on first access and cached until the
+   * property changes. A given property must always be parsed by the same parser,
+   * typically a constant : the cache does not know which parser filled it.
+   *
+   * Concurrent calls are safe as long as the map is not changed meanwhile : the
+   * parsed values must be immutable, a value cached by another thread and not
+   * seen yet being parsed again.
+   *
+   * @param parser called with the (non empty) values of the property, may return
+   *          null for invalid values, which is cached as well
+   * @return the parsed value, null if the property is not defined
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T getParsed(SgfProperty property, Function<List<String>, T> parser) {
+    int index = indexOf(property);
+    if (index < 0) {
+      return null;
+    }
+    // read once : another thread may allocate its own array meanwhile
+    Object[] cache = parsed;
+    if (cache == null) {
+      cache = new Object[values.length];
+      parsed = cache;
+    }
+    Object rtrn = cache[index];
+    if (rtrn == null) {
+      rtrn = parser.apply(valuesAt(index));
+      cache[index] = rtrn == null ? NULL_PARSED : rtrn;
+    }
+    return rtrn == NULL_PARSED ? null : (T) rtrn;
+  }
+
+  /**
+   * Properties are kept in insertion order : propertyAt(0) to
+   * propertyAt(size() - 1) iterate over them without allocation.
+   */
+  public SgfProperty propertyAt(int index) {
+    checkIndex(index);
+    return SgfProperty.get(ids[index]);
+  }
+
+  @SuppressWarnings("unchecked")
+  public List<String> valuesAt(int index) {
+    checkIndex(index);
+    Object value = values[index];
+    return value instanceof List ? new DecodedList((List<Object>) value)
+        : Collections.singletonList(decode(value));
+  }
+
+  @SuppressWarnings("unchecked")
+  public String firstAt(int index) {
+    checkIndex(index);
+    Object value = values[index];
+    return decode(value instanceof List ? ((List<Object>) value).get(0) : value);
+  }
+
+  @SuppressWarnings("unchecked")
+  public String joinedAt(int index) {
+    checkIndex(index);
+    Object value = values[index];
+    return value instanceof List ? String.join(",", new DecodedList((List<Object>) value)) : decode(value);
+  }
+
+  public int valueCountAt(int index) {
+    checkIndex(index);
+    Object value = values[index];
+    return value instanceof List ? ((List<?>) value).size() : 1;
+  }
+
+  /**
+   * Writes the values of the property at index in SGF syntax ("[aa][bb]", "[]"
+   * if there is none) : values from the parser that were not changed are copied
+   * as found in the input, others are escaped.
+   */
+  @SuppressWarnings("unchecked")
+  public StringBuilder appendSgfAt(int index, StringBuilder out) {
+    checkIndex(index);
+    Object value = values[index];
+    if (value instanceof List) {
+      List<Object> list = (List<Object>) value;
+      if (list.isEmpty()) {
+        out.append("[]");
+      }
+      for (Object single : list) {
+        appendSgf(single, out);
+      }
+    } else {
+      appendSgf(value, out);
+    }
+    return out;
+  }
+
+  private static void appendSgf(Object value, StringBuilder out) {
+    out.append('[');
+    if (value instanceof RawValue) {
+      ((RawValue) value).appendTo(out);
+    } else {
+      SgfText.escape((String) value, false, out);
+    }
+    out.append(']');
+  }
+
+  private static String decode(Object value) {
+    return value instanceof RawValue ? ((RawValue) value).get() : (String) value;
+  }
+
+  /**
+   * @return a read-only view of the properties, keyed by property key, the
+   *         values of each property joined by commas
+   */
+  public Map<String, String> asMap() {
+    return new MapView();
+  }
+
+  private int indexOf(SgfProperty property) {
+    if (property == null) {
+      return -1;
+    }
+    short id = (short) property.getId();
+    for (int i = 0; i < size; i++) {
+      if (ids[i] == id) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void append(SgfProperty property, Object value) {
+    if (size == ids.length) {
+      int capacity = size == 0 ? 2 : size * 2;
+      short[] newIds = new short[capacity];
+      Object[] newValues = new Object[capacity];
+      System.arraycopy(ids, 0, newIds, 0, size);
+      System.arraycopy(values, 0, newValues, 0, size);
+      ids = newIds;
+      values = newValues;
+      if (parsed != null) {
+        parsed = Arrays.copyOf(parsed, capacity);
+      }
+    }
+    ids[size] = (short) property.getId();
+    values[size] = value;
+    size++;
+  }
+
+  private void invalidate(int index) {
+    if (parsed != null) {
+      parsed[index] = null;
+    }
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Property index " + index + " out of " + size);
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    // order independent
+    int rtrn = 0;
+    for (int i = 0; i < size; i++) {
+      rtrn += ids[i] ^ valuesAt(i).hashCode();
+    }
+    return rtrn;
+  }
+
+  /**
+   * Two maps are equal if they hold the same values for the same properties,
+   * whatever the order of the properties.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null || getClass() != obj.getClass())
+      return false;
+    SgfPropertyMap other = (SgfPropertyMap) obj;
+    if (size != other.size)
+      return false;
+    for (int i = 0; i < size; i++) {
+      int otherIndex = other.indexOf(SgfProperty.get(ids[i]));
+      if (otherIndex < 0 || !valuesAt(i).equals(other.valuesAt(otherIndex)))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return asMap().toString();
+  }
+
+  /**
+   * Escaped value, a slice of the SGF input, unescaped on first access. The
+   * input is dropped once the value is decoded, so that the nodes kept do not
+   * keep the whole file they were parsed from : values with escapes keep a copy
+   * of their slice to be written as found, the others are written the same
+   * when escaped again.
+   *
+   * Values can be decoded from several threads : the first one decodes under
+   * the lock of the value, the others read the volatile decoded value.
+   */
+  private static final class RawValue {
+    // null once decoded
+    private String source;
+    private final int start;
+    private final int end;
+    private volatile String decoded;
+    // the escaped slice once decoded, null if it has no escape
+    private String escaped;
+
+    RawValue(String source, int start, int end) {
+      this.source = source;
+      this.start = start;
+      this.end = end;
+    }
+
+    String get() {
+      String rtrn = decoded;
+      if (rtrn == null) {
+        synchronized (this) {
+          rtrn = decoded;
+          if (rtrn == null) {
+            rtrn = decodeRaw(source, start, end);
+            if (SgfText.hasEscape(source, start, end)) {
+              escaped = source.substring(start, end);
+            }
+            decoded = rtrn;
+            source = null;
+          }
+        }
+      }
+      return rtrn;
+    }
+
+    /**
+     * Appends the value escaped as found in the input.
+     */
+    synchronized void appendTo(StringBuilder out) {
+      if (source != null) {
+        out.append(source, start, end);
+      } else if (escaped != null) {
+        out.append(escaped);
+      } else {
+        SgfText.escape(decoded, false, out);
+      }
+    }
+
+    /**
+     * Unescapes the value sharing the instances of repeated values : points use
+     * the strings cached by {@link CoordinateCodec}, other short values without
+     * escape go through the default {@link StringPool} if there is one.
+     */
+    private static String decodeRaw(String source, int start, int end) {
+      if (end - start == 2) {
+        int x = CoordinateCodec.sgfIndex(source.charAt(start));
+        int y = CoordinateCodec.sgfIndex(source.charAt(start + 1));
+        if (x >= 0 && y >= 0) {
+          return CoordinateCodec.pointToSgf(CoordinateCodec.point(x, y));
+        }
+      }
+      if (SgfText.hasEscape(source, start, end)) {
+        return SgfText.unescape(source, start, end, new StringBuilder(end - start)).toString();
+      }
+      StringPool pool = StringPool.getDefault();
+      return pool == null ? source.substring(start, end) : pool.intern(source, start, end);
+    }
+  }
+
+  /**
+   * Read-only view of a list of values, unescaped on access.
+   */
+  private static final class DecodedList extends AbstractList<String> implements RandomAccess {
+    private final List<Object> values;
+
+    DecodedList(List<Object> values) {
+      this.values = values;
+    }
+
+    @Override
+    public String get(int index) {
+      return decode(values.get(index));
+    }
+
+    @Override
+    public int size() {
+      return values.size();
+    }
+  }
+
+  private class MapView extends AbstractMap<String, String> {
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return key instanceof String && contains(SgfProperty.get((String) key));
+    }
+
+    @Override
+    public String get(Object key) {
+      return key instanceof String ? getJoined(SgfProperty.get((String) key)) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      return new AbstractSet<Map.Entry<String, String>>() {
+        @Override
+        public int size() {
+          return size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+          return new Iterator<Map.Entry<String, String>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+              return next < size;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+              if (next >= size) {
+                throw new NoSuchElementException();
+              }
+              int index = next++;
+              return new SimpleImmutableEntry<>(propertyAt(index).getKey(), joinedAt(index));
+            }
+          };
+        }
+      };
+    }
+  }
+}
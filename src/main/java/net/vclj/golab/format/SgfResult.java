@@ -0,0 +1,155 @@
+package net.vclj.golab.format;
+
+/**
+ * Result of a game, parsed from the RE property. SGF writes it as "B+3.5" /
+ * "W+R" (Resign), "W+T" (Time), "B+F" (Forfeit), "0" or "Draw", "Void" for no
+ * result and "?" for unknown. Files in the wild also use lower case, "Jigo",
+ * and trailing text ("B+12.5 after extension"), which are accepted.
+ *
+ * Instances are immutable; anything not understood gives an UNKNOWN winner and
+ * the original text is kept, see {@link #getText()}.
+ */
+public final class SgfResult {
+  public enum Winner {
+    BLACK, WHITE, DRAW,
+    /**
+     * Void : the game was not finished or not counted.
+     */
+    NONE, UNKNOWN
+  }
+
+  public enum Reason {
+    SCORE, RESIGN, TIME, FORFEIT,
+    /**
+     * A winner without reason ("B+"), or no winner.
+     */
+    UNKNOWN
+  }
+
+  private final String text;
+  private final Winner winner;
+  private final Reason reason;
+  private final double margin;
+
+  private SgfResult(String text, Winner winner, Reason reason, double margin) {
+    this.text = text;
+    this.winner = winner;
+    this.reason = reason;
+    this.margin = margin;
+  }
+
+  /**
+   * @return the result, never null : UNKNOWN winner if text is not a result
+   */
+  public static SgfResult parse(String text) {
+    if (text == null) {
+      return new SgfResult(null, Winner.UNKNOWN, Reason.UNKNOWN, Double.NaN);
+    }
+    String value = text.trim();
+    if (value.isEmpty() || value.equals("?")) {
+      return new SgfResult(text, Winner.UNKNOWN, Reason.UNKNOWN, Double.NaN);
+    }
+    if (value.equals("0") || startsWithIgnoreCase(value, "draw") || startsWithIgnoreCase(value, "jigo")) {
+      return new SgfResult(text, Winner.DRAW, Reason.SCORE, 0);
+    }
+    if (startsWithIgnoreCase(value, "void")) {
+      return new SgfResult(text, Winner.NONE, Reason.UNKNOWN, Double.NaN);
+    }
+    Winner winner;
+    char color = Character.toUpperCase(value.charAt(0));
+    if (color == 'B') {
+      winner = Winner.BLACK;
+    } else if (color == 'W') {
+      winner = Winner.WHITE;
+    } else {
+      return new SgfResult(text, Winner.UNKNOWN, Reason.UNKNOWN, Double.NaN);
+    }
+    if (value.length() < 2 || value.charAt(1) != '+') {
+      return new SgfResult(text, Winner.UNKNOWN, Reason.UNKNOWN, Double.NaN);
+    }
+    // reason or score up to the first space
+    int end = 2;
+    while (end < value.length() && value.charAt(end) > ' ') {
+      end++;
+    }
+    if (end == 2) {
+      return new SgfResult(text, winner, Reason.UNKNOWN, Double.NaN);
+    }
+    char first = Character.toUpperCase(value.charAt(2));
+    if (first == 'R') {
+      return new SgfResult(text, winner, Reason.RESIGN, Double.NaN);
+    } else if (first == 'T') {
+      return new SgfResult(text, winner, Reason.TIME, Double.NaN);
+    } else if (first == 'F') {
+      return new SgfResult(text, winner, Reason.FORFEIT, Double.NaN);
+    }
+    double margin = SgfValues.parseReal(value.subSequence(2, end));
+    if (Double.isNaN(margin)) {
+      return new SgfResult(text, winner, Reason.UNKNOWN, Double.NaN);
+    }
+    return new SgfResult(text, winner, Reason.SCORE, margin);
+  }
+
+  private static boolean startsWithIgnoreCase(String value, String prefix) {
+    return value.regionMatches(true, 0, prefix, 0, prefix.length());
+  }
+
+  /**
+   * @return the RE value as found in the game
+   */
+  public String getText() {
+    return text;
+  }
+
+  public Winner getWinner() {
+    return winner;
+  }
+
+  public Reason getReason() {
+    return reason;
+  }
+
+  /**
+   * @return the score difference, 0 for a draw, NaN when the game was not won by
+   *         score
+   */
+  public double getMargin() {
+    return margin;
+  }
+
+  public boolean isBlackWin() {
+    return winner == Winner.BLACK;
+  }
+
+  public boolean isWhiteWin() {
+    return winner == Winner.WHITE;
+  }
+
+  public boolean isDraw() {
+    return winner == Winner.DRAW;
+  }
+
+  public boolean isResign() {
+    return reason == Reason.RESIGN;
+  }
+
+  public boolean isTime() {
+    return reason == Reason.TIME;
+  }
+
+  public boolean isForfeit() {
+    return reason == Reason.FORFEIT;
+  }
+
+  /**
+   * @return true if the winner and the margin are known
+   */
+  public boolean hasMargin() {
+    return !Double.isNaN(margin);
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+}
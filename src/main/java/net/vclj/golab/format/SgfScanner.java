@@ -0,0 +1,113 @@
+package net.vclj.golab.format;
+
+/**
+ * Single pass scanner of SGF text, see http://www.red-bean.com/sgf/sgf4.html
+ *
+ * The scanner only knows the syntax : it reports game trees, nodes and property
+ * values to an {@link SgfHandler} without building anything, which is what
+ * {@link SgfParser} builds the games from and what jobs that only need a few
+ * properties can use directly.
+ *
+ * Inside a value everything up to the first unescaped ']' belongs to the value,
+ * including ';', '(' and ')' and line breaks. Outside values, anything that is
+ * neither a property nor a tree or node delimiter is skipped, as are keys not
+ * followed by a value.
+ */
+public final class SgfScanner {
+
+  private SgfScanner() {
+  }
+
+  /**
+   * Scans the whole input.
+   *
+   * @throws SgfParseException if a value is not terminated
+   */
+  public static void scan(String sgf, SgfHandler handler) {
+    scan(sgf, 0, sgf.length(), handler);
+  }
+
+  /**
+   * Scans sgf[start, end), offsets given to the handler are positions in sgf.
+   *
+   * @throws SgfParseException if a value is not terminated
+   */
+  public static void scan(String sgf, int start, int end, SgfHandler handler) {
+    int i = start;
+    while (i < end) {
+      char chr = sgf.charAt(i);
+      if (chr == '(') {
+        handler.startTree(i);
+        i++;
+      } else if (chr == ')') {
+        handler.endTree(i);
+        i++;
+      } else if (chr == ';') {
+        handler.startNode(i);
+        i = scanProperties(sgf, i + 1, end, handler);
+        handler.endNode(i);
+      } else {
+        i++;
+      }
+    }
+  }
+
+  /**
+   * @return the position of the first character after the properties of the
+   *         node
+   */
+  private static int scanProperties(String sgf, int start, int end, SgfHandler handler) {
+    int i = start;
+    while (i < end) {
+      char chr = sgf.charAt(i);
+      if (isLetter(chr)) {
+        int keyStart = i;
+        while (i < end && isLetter(sgf.charAt(i))) {
+          i++;
+        }
+        int keyEnd = i;
+        i = skipWhitespace(sgf, i, end);
+        while (i < end && sgf.charAt(i) == '[') {
+          int valueEnd = valueEnd(sgf, i + 1, end);
+          handler.property(sgf, keyStart, keyEnd, i + 1, valueEnd);
+          i = skipWhitespace(sgf, valueEnd + 1, end);
+        }
+      } else if (chr == '[') {
+        // value without key
+        i = valueEnd(sgf, i + 1, end) + 1;
+      } else if (chr == ';' || chr == '(' || chr == ')') {
+        return i;
+      } else {
+        i++;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * @return the position of the ']' closing the value starting at start
+   */
+  private static int valueEnd(String sgf, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char chr = sgf.charAt(i);
+      if (chr == '\\') {
+        i++;
+      } else if (chr == ']') {
+        return i;
+      }
+    }
+    throw new SgfParseException("Value starting at offset " + start + " is not terminated");
+  }
+
+  private static int skipWhitespace(String sgf, int start, int end) {
+    int i = start;
+    while (i < end && Character.isWhitespace(sgf.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isLetter(char chr) {
+    return (chr >= 'A' && chr <= 'Z') || (chr >= 'a' && chr <= 'z');
+  }
+}
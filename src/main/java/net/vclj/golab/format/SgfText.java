@@ -0,0 +1,158 @@
+package net.vclj.golab.format;
+
+import java.io.IOException;
+
+/**
+ * Escaping of SGF values, see http://www.red-bean.com/sgf/sgf4.html#text
+ *
+ * In a value '\' escapes the character that follows it, which is how ']' and
+ * '\' itself are written, and a '\' followed by a line break is a soft line
+ * break that is removed. Values are unescaped and escaped in a single pass,
+ * written into an {@link Appendable}; the String variants return the input
+ * itself when there is nothing to change, the usual case for everything but
+ * comments.
+ *
+ * Unescaping is the same for every value type. Escaping only escapes '\' and
+ * ']' unless asked to escape ':' as well, which is needed for the text part of
+ * composed values (LB[dd:A] and the like).
+ */
+public final class SgfText {
+  private static final char ESCAPE = '\\';
+
+  private SgfText() {
+  }
+
+  /**
+   * Unescapes value[start, end) into out.
+   */
+  public static <A extends Appendable> A unescape(CharSequence value, int start, int end, A out) throws IOException {
+    int copyFrom = start;
+    for (int i = start; i < end; i++) {
+      if (value.charAt(i) != ESCAPE) {
+        continue;
+      }
+      out.append(value, copyFrom, i);
+      i++;
+      if (i == end) {
+        // trailing escape, nothing to escape
+        copyFrom = end;
+        break;
+      }
+      char next = value.charAt(i);
+      if (next == '\n' || next == '\r') {
+        // soft line break : \n, \r, \r\n or \n\r
+        if (i + 1 < end) {
+          char after = value.charAt(i + 1);
+          if ((after == '\n' || after == '\r') && after != next) {
+            i++;
+          }
+        }
+        copyFrom = i + 1;
+      } else {
+        // the escaped character is copied with the next run
+        copyFrom = i;
+      }
+    }
+    out.append(value, copyFrom, end);
+    return out;
+  }
+
+  /**
+   * @return the unescaped value, value itself if it has no escape
+   */
+  public static String unescape(String value) {
+    if (value == null || value.indexOf(ESCAPE) < 0) {
+      return value;
+    }
+    return unescape(value, 0, value.length(), new StringBuilder(value.length())).toString();
+  }
+
+  /**
+   * @return the unescaped value of the slice, a plain substring if it has no
+   *         escape
+   */
+  public static String unescape(String value, int start, int end) {
+    if (!hasEscape(value, start, end)) {
+      return value.substring(start, end);
+    }
+    return unescape(value, start, end, new StringBuilder(end - start)).toString();
+  }
+
+  /**
+   * @return true if value[start, end) holds an escape, looking no further than
+   *         end
+   */
+  static boolean hasEscape(CharSequence value, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (value.charAt(i) == ESCAPE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Same as {@link #unescape(CharSequence, int, int, Appendable)} for a
+   * StringBuilder, which does not throw IOException.
+   */
+  public static StringBuilder unescape(CharSequence value, int start, int end, StringBuilder out) {
+    try {
+      unescape(value, start, end, (Appendable) out);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return out;
+  }
+
+  /**
+   * Escapes value into out, without the surrounding brackets.
+   *
+   * @param escapeColon true for the text part of composed values
+   */
+  public static <A extends Appendable> A escape(CharSequence value, boolean escapeColon, A out) throws IOException {
+    int copyFrom = 0;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c == ESCAPE || c == ']' || (escapeColon && c == ':')) {
+        out.append(value, copyFrom, i).append(ESCAPE);
+        copyFrom = i;
+      }
+    }
+    out.append(value, copyFrom, length);
+    return out;
+  }
+
+  /**
+   * Same as {@link #escape(CharSequence, boolean, Appendable)} for a
+   * StringBuilder, which does not throw IOException.
+   */
+  public static StringBuilder escape(CharSequence value, boolean escapeColon, StringBuilder out) {
+    try {
+      escape(value, escapeColon, (Appendable) out);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return out;
+  }
+
+  /**
+   * @return the escaped value, value itself if nothing needs escaping
+   */
+  public static String escape(String value, boolean escapeColon) {
+    if (value == null || !needsEscape(value, escapeColon)) {
+      return value;
+    }
+    return escape(value, escapeColon, new StringBuilder(value.length() + 8)).toString();
+  }
+
+  private static boolean needsEscape(CharSequence value, boolean escapeColon) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == ESCAPE || c == ']' || (escapeColon && c == ':')) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
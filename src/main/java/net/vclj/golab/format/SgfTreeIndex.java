@@ -0,0 +1,258 @@
+package net.vclj.golab.format;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.vclj.golab.entity.CoordinateCodec;
+
+/**
+ * Navigation index of a game tree.
+ *
+ * Nodes are numbered in preorder, the root being 0 : a node is followed by its
+ * first variation, which is followed by the second one, and so on. The subtree
+ * of a node is then the interval of ids from the node to {@link #getEnd(int)},
+ * which answers ancestor queries in constant time. Binary lifting tables find
+ * the lowest common ancestor of two nodes in logarithmic time.
+ *
+ * The index reflects the tree when it was built : {@link SgfGame#getTreeIndex()}
+ * builds a new one once the children of a node changed.
+ */
+public final class SgfTreeIndex {
+  private final SgfGameNode[] nodes;
+  private final int[] parents;
+  private final int[] ends;
+  private final int[] depths;
+  private final int[] childIndexes;
+  // ancestors[k][id] : the ancestor 2^k levels above id, the root above the root
+  private final int[][] ancestors;
+  private final int boardSize;
+
+  private SgfTreeIndex(SgfGameNode[] nodes, int[] parents, int[] ends, int[] depths, int[] childIndexes,
+      int[][] ancestors, int boardSize) {
+    this.nodes = nodes;
+    this.parents = parents;
+    this.ends = ends;
+    this.depths = depths;
+    this.childIndexes = childIndexes;
+    this.ancestors = ancestors;
+    this.boardSize = boardSize;
+  }
+
+  /**
+   * Indexes the tree of a game, setting the id of every node.
+   */
+  public static SgfTreeIndex build(SgfGame game) {
+    if (game.getRootNode() == null) {
+      throw new IllegalArgumentException("The game has no root node");
+    }
+    return build(game.getRootNode(), Math.max(game.getBoardWidth(), game.getBoardHeight()));
+  }
+
+  static SgfTreeIndex build(SgfGameNode root, int boardSize) {
+    // preorder without recursion, lines of play may be very long
+    List<SgfGameNode> order = new ArrayList<>();
+    List<Integer> orderParents = new ArrayList<>();
+    List<SgfGameNode> stack = new ArrayList<>();
+    List<Integer> stackParents = new ArrayList<>();
+    stack.add(root);
+    stackParents.add(0);
+    while (!stack.isEmpty()) {
+      SgfGameNode node = stack.remove(stack.size() - 1);
+      int id = order.size();
+      node.setId(id);
+      order.add(node);
+      orderParents.add(stackParents.remove(stackParents.size() - 1));
+      List<SgfGameNode> children = node.getChildren();
+      for (int i = children.size() - 1; i >= 0; i--) {
+        stack.add(children.get(i));
+        stackParents.add(id);
+      }
+    }
+
+    int size = order.size();
+    SgfGameNode[] nodes = order.toArray(new SgfGameNode[size]);
+    int[] parents = new int[size];
+    int[] depths = new int[size];
+    int[] childIndexes = new int[size];
+    int maxDepth = 0;
+    for (int id = 1; id < size; id++) {
+      parents[id] = orderParents.get(id);
+      depths[id] = depths[parents[id]] + 1;
+      maxDepth = Math.max(maxDepth, depths[id]);
+    }
+    // a node is followed by its subtree : the ends are known in reverse order
+    int[] ends = new int[size];
+    for (int id = size - 1; id >= 0; id--) {
+      ends[id] = Math.max(ends[id], id + 1);
+      if (id > 0) {
+        ends[parents[id]] = Math.max(ends[parents[id]], ends[id]);
+      }
+    }
+    for (int id = 0; id < size; id++) {
+      List<SgfGameNode> children = nodes[id].getChildren();
+      int child = id + 1;
+      for (int i = 0; i < children.size(); i++) {
+        childIndexes[child] = i;
+        child = ends[child];
+      }
+    }
+
+    int levels = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxDepth));
+    int[][] ancestors = new int[levels][];
+    ancestors[0] = parents;
+    for (int k = 1; k < levels; k++) {
+      int[] below = ancestors[k - 1];
+      int[] level = new int[size];
+      for (int id = 0; id < size; id++) {
+        level[id] = below[below[id]];
+      }
+      ancestors[k] = level;
+    }
+    return new SgfTreeIndex(nodes, parents, ends, depths, childIndexes, ancestors, boardSize);
+  }
+
+  /**
+   * @return the number of nodes
+   */
+  public int size() {
+    return nodes.length;
+  }
+
+  public SgfGameNode getNode(int id) {
+    return nodes[id];
+  }
+
+  /**
+   * @return the id of node
+   * @throws IllegalArgumentException if node is not indexed here
+   */
+  public int getId(SgfGameNode node) {
+    long id = node.getId();
+    if (id < 0 || id >= nodes.length || nodes[(int) id] != node) {
+      throw new IllegalArgumentException("Node not indexed, id " + id);
+    }
+    return (int) id;
+  }
+
+  /**
+   * @return the id of the parent, -1 for the root
+   */
+  public int getParent(int id) {
+    return id == 0 ? -1 : parents[id];
+  }
+
+  /**
+   * @return the number of nodes between the root and the node, 0 for the root
+   */
+  public int getDepth(int id) {
+    return depths[id];
+  }
+
+  /**
+   * @return the id following the last node of the subtree of the node
+   */
+  public int getEnd(int id) {
+    return ends[id];
+  }
+
+  /**
+   * @return the number of nodes of the subtree of the node, the node included
+   */
+  public int getSubtreeSize(int id) {
+    return ends[id] - id;
+  }
+
+  /**
+   * @return true if ancestor is descendant or one of its ancestors
+   */
+  public boolean isAncestor(int ancestor, int descendant) {
+    return ancestor <= descendant && descendant < ends[ancestor];
+  }
+
+  /**
+   * @return the deepest node that is an ancestor of both nodes
+   */
+  public int getCommonAncestor(int a, int b) {
+    if (isAncestor(a, b)) {
+      return a;
+    }
+    if (isAncestor(b, a)) {
+      return b;
+    }
+    int rtrn = a;
+    for (int k = ancestors.length - 1; k >= 0; k--) {
+      int ancestor = ancestors[k][rtrn];
+      if (!isAncestor(ancestor, b)) {
+        rtrn = ancestor;
+      }
+    }
+    return parents[rtrn];
+  }
+
+  /**
+   * @return the ancestor of the node at depth, the node itself at its depth
+   */
+  public int getAncestorAt(int id, int depth) {
+    if (depth < 0 || depth > depths[id]) {
+      throw new IndexOutOfBoundsException("Depth " + depth + " out of 0-" + depths[id]);
+    }
+    int rtrn = id;
+    int up = depths[id] - depth;
+    for (int k = 0; up != 0; k++, up >>>= 1) {
+      if ((up & 1) != 0) {
+        rtrn = ancestors[k][rtrn];
+      }
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the ids of the nodes from the root to the node, both included
+   */
+  public int[] getPath(int id) {
+    int[] rtrn = new int[depths[id] + 1];
+    for (int i = rtrn.length - 1, current = id; i >= 0; i--, current = parents[current]) {
+      rtrn[i] = current;
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the indexes of the children to follow from the root to reach the
+   *         node, as used by {@link PersistentSgfGame#getNode(int...)}
+   */
+  public int[] getChildPath(int id) {
+    int[] rtrn = new int[depths[id]];
+    for (int i = rtrn.length - 1, current = id; i >= 0; i--, current = parents[current]) {
+      rtrn[i] = childIndexes[current];
+    }
+    return rtrn;
+  }
+
+  /**
+   * @return the packed points of the moves played from the root to the node,
+   *         {@link CoordinateCodec#PASS} for a pass, see
+   *         {@link CoordinateCodec#point(int, int)}
+   */
+  public int[] getMovePath(int id) {
+    int count = 0;
+    for (int current = id; ; current = parents[current]) {
+      if (nodes[current].isMove()) {
+        count++;
+      }
+      if (current == 0) {
+        break;
+      }
+    }
+    int[] rtrn = new int[count];
+    for (int current = id; count > 0; current = parents[current]) {
+      SgfGameNode node = nodes[current];
+      if (node.isMove()) {
+        String move = node.getMoveString();
+        rtrn[--count] = CoordinateCodec.isSgfPass(move, boardSize) ? CoordinateCodec.PASS
+            : CoordinateCodec.sgfToPoint(move);
+      }
+    }
+    return rtrn;
+  }
+}
@@ -0,0 +1,208 @@
+package net.vclj.golab.format;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy preorder traversal of a game tree, which splits on variation boundaries
+ * for parallel streams.
+ *
+ * The nodes left to visit are a line of play, walked from node to next node,
+ * followed by a stack of subtrees. Splitting gives away the first half of the
+ * stack, or when there is only one subtree left, the line of play down to its
+ * first variation with all the variations but the last one : the spliterator
+ * returned always covers the nodes that come first in preorder.
+ *
+ * Only the root of the traversal and the pending variations are held, never a
+ * list of nodes. The tree must not be changed during the traversal.
+ */
+public class SgfTreeSpliterator implements Spliterator<SgfGameNode> {
+  private static final int ALL_DEPTHS = Integer.MAX_VALUE;
+
+  // the line of play : chainLength nodes from chain, the first one at chainDepth
+  private SgfGameNode chain;
+  private int chainLength;
+  private int chainDepth;
+
+  // the subtrees after the line of play, the next one on top
+  private SgfGameNode[] stack;
+  private int[] depths;
+  private int size;
+
+  private final int maxDepth;
+  private final boolean onlyMaxDepth;
+  private long estimate;
+
+  private SgfTreeSpliterator(int maxDepth, boolean onlyMaxDepth, long estimate) {
+    this.maxDepth = maxDepth;
+    this.onlyMaxDepth = onlyMaxDepth;
+    this.estimate = estimate;
+    this.stack = new SgfGameNode[8];
+    this.depths = new int[8];
+  }
+
+  /**
+   * @return the nodes of the subtree of root, root included, in preorder
+   */
+  public static SgfTreeSpliterator preorder(SgfGameNode root) {
+    return preorder(root, Long.MAX_VALUE);
+  }
+
+  /**
+   * @param estimate the number of nodes, Long.MAX_VALUE if unknown
+   */
+  static SgfTreeSpliterator preorder(SgfGameNode root, long estimate) {
+    SgfTreeSpliterator rtrn = new SgfTreeSpliterator(ALL_DEPTHS, false, estimate);
+    rtrn.push(root, 0);
+    return rtrn;
+  }
+
+  /**
+   * @return the nodes depth nodes below root, root being at depth 0, in
+   *         preorder
+   */
+  public static SgfTreeSpliterator atDepth(SgfGameNode root, int depth) {
+    if (depth < 0) {
+      throw new IllegalArgumentException("Negative depth : " + depth);
+    }
+    SgfTreeSpliterator rtrn = new SgfTreeSpliterator(depth, true, Long.MAX_VALUE);
+    rtrn.push(root, 0);
+    return rtrn;
+  }
+
+  public static Stream<SgfGameNode> stream(SgfGameNode root, boolean parallel) {
+    return StreamSupport.stream(preorder(root), parallel);
+  }
+
+  private void push(SgfGameNode node, int depth) {
+    if (size == stack.length) {
+      stack = Arrays.copyOf(stack, size * 2);
+      depths = Arrays.copyOf(depths, size * 2);
+    }
+    stack[size] = node;
+    depths[size] = depth;
+    size++;
+  }
+
+  /**
+   * Pushes the children of node, the first one on top.
+   */
+  private void pushChildren(SgfGameNode node, int depth) {
+    if (depth >= maxDepth) {
+      return;
+    }
+    List<SgfGameNode> children = node.getChildren();
+    for (int i = children.size() - 1; i >= 0; i--) {
+      push(children.get(i), depth + 1);
+    }
+  }
+
+  private boolean accepts(int depth) {
+    return !onlyMaxDepth || depth == maxDepth;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super SgfGameNode> action) {
+    while (true) {
+      if (chainLength > 0) {
+        SgfGameNode node = chain;
+        int depth = chainDepth;
+        chain = node.getNextNode();
+        chainDepth++;
+        chainLength--;
+        if (accepts(depth)) {
+          action.accept(node);
+          return true;
+        }
+        continue;
+      }
+      if (size == 0) {
+        return false;
+      }
+      size--;
+      SgfGameNode node = stack[size];
+      int depth = depths[size];
+      stack[size] = null;
+      pushChildren(node, depth);
+      if (accepts(depth)) {
+        action.accept(node);
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public void forEachRemaining(Consumer<? super SgfGameNode> action) {
+    while (tryAdvance(action)) {
+      // all done by tryAdvance
+    }
+  }
+
+  @Override
+  public Spliterator<SgfGameNode> trySplit() {
+    if (chainLength > 0) {
+      // the line of play comes first : not split further
+      return null;
+    }
+    if (size >= 2) {
+      // the first half of the subtrees, on top of the stack
+      int half = size / 2;
+      SgfTreeSpliterator rtrn = new SgfTreeSpliterator(maxDepth, onlyMaxDepth, splitEstimate());
+      for (int i = size - half; i < size; i++) {
+        rtrn.push(stack[i], depths[i]);
+        stack[i] = null;
+      }
+      size -= half;
+      return rtrn;
+    }
+    if (size == 1) {
+      // the line of play of the last subtree, down to its first variation
+      SgfGameNode start = stack[0];
+      int depth = depths[0];
+      SgfGameNode branch = start;
+      int length = 1;
+      while (branch.getChildren().size() == 1 && depth + length - 1 < maxDepth) {
+        branch = branch.getNextNode();
+        length++;
+      }
+      int branchDepth = depth + length - 1;
+      List<SgfGameNode> children = branch.getChildren();
+      if (children.size() < 2 || branchDepth >= maxDepth) {
+        return null;
+      }
+      SgfTreeSpliterator rtrn = new SgfTreeSpliterator(maxDepth, onlyMaxDepth, splitEstimate());
+      rtrn.chain = start;
+      rtrn.chainLength = length;
+      rtrn.chainDepth = depth;
+      for (int i = children.size() - 2; i >= 0; i--) {
+        rtrn.push(children.get(i), branchDepth + 1);
+      }
+      stack[0] = children.get(children.size() - 1);
+      depths[0] = branchDepth + 1;
+      return rtrn;
+    }
+    return null;
+  }
+
+  private long splitEstimate() {
+    if (estimate != Long.MAX_VALUE) {
+      estimate -= estimate / 2;
+      return estimate;
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public long estimateSize() {
+    return estimate;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+}
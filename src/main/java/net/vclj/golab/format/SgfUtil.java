@@ -1,15 +1,26 @@
 package net.vclj.golab.format;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.vclj.golab.entity.CoordinateCodec;
+
 public class SgfUtil {
+  private static final Logger log = LoggerFactory.getLogger(SgfUtil.class);
+
   public static final String[] alphabet = new String[] { "A", "B", "C", "D", "E", "F", "G", "H", "J", "K", "L", "M",
       "N", "O", "P", "Q", "R", "S", "T" };
 
+  /**
+   * @deprecated boxed lookups, use {@link CoordinateCodec#sgfIndex(char)}
+   */
+  @Deprecated
   @SuppressWarnings("serial")
   public static final Map<String, Integer> alphaToCoord = new HashMap<String, Integer>() {
     {
@@ -36,6 +47,10 @@ public class SgfUtil {
     }
   };
 
+  /**
+   * @deprecated boxed lookups, use {@link CoordinateCodec#sgfLetter(int)}
+   */
+  @Deprecated
   @SuppressWarnings("serial")
   public static final Map<Integer, String> coordToAlpha = new HashMap<Integer, String>() {
     {
@@ -66,13 +81,12 @@ public class SgfUtil {
   private SgfUtil() {
   }
 
+  /**
+   * Logs the properties of the nodes of a tree, in preorder, at debug level.
+   */
   public static void printNodeTree(SgfGameNode rootNode) {
-    if (rootNode.hasChildren()) {
-      List<SgfGameNode> children = rootNode.getChildren();
-      for (Iterator<SgfGameNode> ite = children.iterator(); ite.hasNext();) {
-        SgfGameNode node = ite.next();
-        printNodeTree(node);
-      }
+    if (log.isDebugEnabled()) {
+      SgfTreeSpliterator.stream(rootNode, false).forEachOrdered(node -> log.debug("Node : {}", node.getProperties()));
     }
   }
 
@@ -80,37 +94,80 @@ public class SgfUtil {
     if (input == null || input.length() < 2) {
       throw new RuntimeException("Coordinate cannot be less than 2 characters. Input '" + input + "'");
     }
-    return new int[] { alphaToCoord.get(input.charAt(0) + ""), alphaToCoord.get(input.charAt(1) + "") };
+    int point = CoordinateCodec.sgfToPoint(input);
+    return new int[] { CoordinateCodec.pointX(point), CoordinateCodec.pointY(point) };
   }
 
-  public static Map<String, String> extractLabels(String str) {
+  /**
+   * Same as {@link #alphaToCoords(String)} without allocation.
+   *
+   * @return the packed point, see {@link CoordinateCodec#point(int, int)}
+   */
+  public static int alphaToPoint(String input) {
+    if (input == null || input.length() < 2) {
+      throw new RuntimeException("Coordinate cannot be less than 2 characters. Input '" + input + "'");
+    }
+    return CoordinateCodec.sgfToPoint(input);
+  }
+
+  /**
+   * Labels of a node, from the values of its LB property.
+   *
+   * @return the texts by point, empty if the node has no label
+   */
+  public static Map<String, String> extractLabels(SgfGameNode node) {
+    return extractLabels(node.getPropertyValues("LB"));
+  }
+
+  /**
+   * @param values the values of an LB property, "fb:A" : point and text
+   * @return the texts by point
+   */
+  public static Map<String, String> extractLabels(List<String> values) {
     HashMap<String, String> rtrn = new HashMap<String, String>();
-    // the LB property comes like 'fb:A][gb:C][jd:B
-    if (str == null)
+    if (values == null)
       return rtrn;
-    String[] labels = str.split("\\]\\[");
-    for (int i = 0; i < labels.length; i++) {
-      String[] label = labels[i].split(":");
-      rtrn.put(label[0], label[1]);
+    for (String value : values) {
+      int colon = value.indexOf(':');
+      if (colon > 0) {
+        rtrn.put(value.substring(0, colon), value.substring(colon + 1));
+      }
     }
     return rtrn;
   }
 
+  /**
+   * Labels of an LB property given as one string : 'fb:A,gb:C,jd:B' (comma
+   * joined) or 'fb:A][gb:C][jd:B' (raw SGF values). A comma joined string is
+   * ambiguous when a text holds a comma, see
+   * {@link #extractLabels(SgfGameNode)}.
+   */
+  public static Map<String, String> extractLabels(String str) {
+    if (str == null)
+      return new HashMap<String, String>();
+    return extractLabels(Arrays.asList(str.split(str.contains("][") ? "\\]\\[" : ",")));
+  }
+
+  /**
+   * Expands comma-joined point list values ("aa,bb:cd") into single points.
+   * Ranges are rectangles given by two opposite corners, expanded column by
+   * column.
+   */
   public static String[] coordSequencesToSingle(String addBlack) {
     List<String> rtrn = new ArrayList<>();
     String[] blackStones = addBlack.split(",");
     for (int i = 0; i < blackStones.length; i++) {
       if (blackStones[i].contains(":")) {
         String[] seq = blackStones[i].split(":");
-        if (seq[0].charAt(0) == seq[1].charAt(0)) {
-          for (int j = SgfUtil.alphaToCoord.get(seq[0].charAt(1) + ""); j <= SgfUtil.alphaToCoord
-              .get(seq[1].charAt(1) + ""); j++) {
-            rtrn.add(seq[0].charAt(0) + coordToAlpha.get(j));
-          }
-        } else {
-          for (int j = SgfUtil.alphaToCoord.get(seq[0].charAt(0) + ""); j <= SgfUtil.alphaToCoord
-              .get(seq[1].charAt(0) + ""); j++) {
-            rtrn.add(coordToAlpha.get(j) + seq[0].charAt(1));
+        int from = CoordinateCodec.sgfToPoint(seq[0]);
+        int to = CoordinateCodec.sgfToPoint(seq[1]);
+        int left = Math.min(CoordinateCodec.pointX(from), CoordinateCodec.pointX(to));
+        int right = Math.max(CoordinateCodec.pointX(from), CoordinateCodec.pointX(to));
+        int top = Math.min(CoordinateCodec.pointY(from), CoordinateCodec.pointY(to));
+        int bottom = Math.max(CoordinateCodec.pointY(from), CoordinateCodec.pointY(to));
+        for (int x = left; x <= right; x++) {
+          for (int y = top; y <= bottom; y++) {
+            rtrn.add(CoordinateCodec.pointToSgf(CoordinateCodec.point(x, y)));
           }
         }
       } else {
@@ -125,19 +182,12 @@ public class SgfUtil {
    *
    * @param input normal text from user
    * @return SGF escaped text
+   * @deprecated use {@link SgfText#escape(String, boolean)}, this one escapes ':'
+   *             as needed in composed values only
    */
+  @Deprecated
   public static String sgfEscapeText(String input) {
-    // some helpers I used for parsing needs to be undone - see the Parser.java
-    // in sgf4j project
-    input = input.replaceAll("\\\\\\[", "@@@@@");
-    input = input.replaceAll("\\\\\\]", "#####");
-
-    // lets do some replacing - see http://www.red-bean.com/sgf/sgf4.html#text
-    input = input.replaceAll(":", "\\\\:");
-    input = input.replaceAll("\\]", "\\\\]");
-    input = input.replaceAll("\\[", "\\\\[");
-
-    return input;
+    return SgfText.escape(input, true);
   }
 
   /**
@@ -145,19 +195,11 @@ public class SgfUtil {
    *
    * @param input text from SGF
    * @return text to show for end user
+   * @deprecated values are unescaped when read from the games, see
+   *             {@link SgfText#unescape(String)}
    */
+  @Deprecated
   public static String sgfUnescapeText(String input) {
-    // some helpers I used for parsing needs to be undone - see the Parser.java
-    // in sgf4j project
-    input = input.replaceAll("@@@@@", "\\\\\\[");
-    input = input.replaceAll("#####", "\\\\\\]");
-
-    // lets do some replacing - see http://www.red-bean.com/sgf/sgf4.html#text
-    input = input.replaceAll("\\\\\n", "");
-    input = input.replaceAll("\\\\:", ":");
-    input = input.replaceAll("\\\\\\]", "]");
-    input = input.replaceAll("\\\\\\[", "[");
-
-    return input;
+    return SgfText.unescape(input);
   }
 }
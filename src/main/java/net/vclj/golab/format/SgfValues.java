@@ -0,0 +1,195 @@
+package net.vclj.golab.format;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Parsing of the typed SGF values (numbers, reals, board sizes) without regular
+ * expressions nor intermediate strings. Values found in the wild are often
+ * padded with spaces or use a comma as decimal separator ("6,5"), both are
+ * accepted.
+ *
+ * The parsers used by the typed accessors of {@link SgfGame} and
+ * {@link SgfGameNode} are kept as constants so that their results can be cached
+ * by {@link SgfPropertyMap#getParsed(SgfProperty, Function)}.
+ */
+public final class SgfValues {
+  private static final double[] POWERS_OF_TEN = new double[] { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+      1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+  // mantissas up to 2^53 divided by exact powers of ten are correctly rounded
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  static final Function<List<String>, Double> REAL = values -> {
+    double value = parseReal(values.get(0));
+    return Double.isNaN(value) ? null : value;
+  };
+
+  static final Function<List<String>, Integer> NUMBER = values -> {
+    String value = values.get(0);
+    return isNumber(value) ? parseNumber(value, 0) : null;
+  };
+
+  static final int INVALID_BOARD_SIZE = -1;
+
+  /**
+   * Board size packed as width << 8 | height, {@link #INVALID_BOARD_SIZE} if the
+   * value is not a size, so that the failure is cached too.
+   */
+  static final Function<List<String>, Integer> BOARD_SIZE = values -> {
+    try {
+      return parseBoardSize(values.get(0));
+    } catch (IllegalArgumentException e) {
+      return INVALID_BOARD_SIZE;
+    }
+  };
+
+
+  static final Function<List<String>, SgfResult> RESULT = values -> SgfResult.parse(values.get(0));
+
+  static final Function<List<String>, SgfDateRange> DATE_RANGE = SgfDateRange::parse;
+
+  private SgfValues() {
+  }
+
+  /**
+   * Parses an SGF real ("6.5", "-3", "+0.5"), a comma being accepted as decimal
+   * separator.
+   *
+   * @return the value, NaN if value is null or not a real
+   */
+  public static double parseReal(CharSequence value) {
+    if (value == null) {
+      return Double.NaN;
+    }
+    int start = 0;
+    int end = value.length();
+    while (start < end && value.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && value.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    int i = start;
+    boolean negative = false;
+    if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+      negative = value.charAt(i) == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int decimals = -1;
+    for (; i < end; i++) {
+      char c = value.charAt(i);
+      if (c >= '0' && c <= '9') {
+        mantissa = mantissa * 10 + c - '0';
+        digits++;
+        if (decimals >= 0) {
+          decimals++;
+        }
+        if (mantissa >= MAX_EXACT_MANTISSA || decimals >= POWERS_OF_TEN.length) {
+          return parseSlow(value, start, end);
+        }
+      } else if ((c == '.' || c == ',') && decimals < 0) {
+        decimals = 0;
+      } else {
+        return parseSlow(value, start, end);
+      }
+    }
+    if (digits == 0) {
+      return Double.NaN;
+    }
+    double rtrn = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+    return negative ? -rtrn : rtrn;
+  }
+
+  private static double parseSlow(CharSequence value, int start, int end) {
+    // exponents and very long values, rare enough for the JDK parser, which
+    // also accepts "NaN", "Infinity", hex floats and type suffixes : only
+    // digits, signs, separators and exponents are let through
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if ((c < '0' || c > '9') && c != '+' && c != '-' && c != '.' && c != ',' && c != 'e' && c != 'E') {
+        return Double.NaN;
+      }
+    }
+    try {
+      return Double.parseDouble(value.subSequence(start, end).toString().replace(',', '.'));
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * @return true if value is an SGF number : optional sign then digits, spaces
+   *         around allowed
+   */
+  public static boolean isNumber(CharSequence value) {
+    if (value == null) {
+      return false;
+    }
+    int digits = 0;
+    int i = 0;
+    int end = value.length();
+    while (i < end && value.charAt(i) <= ' ') {
+      i++;
+    }
+    while (end > i && value.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+      i++;
+    }
+    for (; i < end; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+      digits++;
+    }
+    return digits > 0 && digits < 10;
+  }
+
+  /**
+   * Parses an SGF number ("3", "-1").
+   *
+   * @return the number, defaultValue if value is not a number
+   */
+  public static int parseNumber(CharSequence value, int defaultValue) {
+    if (!isNumber(value)) {
+      return defaultValue;
+    }
+    int i = 0;
+    while (value.charAt(i) <= ' ') {
+      i++;
+    }
+    boolean negative = false;
+    if (value.charAt(i) == '-' || value.charAt(i) == '+') {
+      negative = value.charAt(i) == '-';
+      i++;
+    }
+    int rtrn = 0;
+    for (; i < value.length() && value.charAt(i) > ' '; i++) {
+      rtrn = rtrn * 10 + value.charAt(i) - '0';
+    }
+    return negative ? -rtrn : rtrn;
+  }
+
+  /**
+   * Parses an SZ value, "19" or "19:13" for rectangular boards.
+   *
+   * @return the packed size, width << 8 | height
+   * @throws IllegalArgumentException if the size is not valid
+   */
+  public static int parseBoardSize(String size) {
+    int colon = size.indexOf(':');
+    CharSequence width = colon < 0 ? size : size.subSequence(0, colon);
+    CharSequence height = colon < 0 ? size : size.subSequence(colon + 1, size.length());
+    int w = parseNumber(width, -1);
+    int h = parseNumber(height, -1);
+    if (w < 1 || h < 1 || w > 255 || h > 255) {
+      throw new IllegalArgumentException("Invalid board size : '" + size + "'");
+    }
+    return w << 8 | h;
+  }
+}
@@ -0,0 +1,209 @@
+package net.vclj.golab.format;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deduplication of the strings repeated from game to game (player and event
+ * names, rules, dates...) when many games are kept in memory.
+ *
+ * The pool is a fixed size hash table of weak references : it never holds more
+ * than its capacity, never keeps a string alive on its own and needs no lock.
+ * A string whose slot is taken by another one replaces it, so the pool is lossy
+ * and two equal strings are not guaranteed to be the same instance : it trades
+ * exactness for a bounded footprint, which is what a cache of repeated values
+ * needs. Strings longer than maxLength are not pooled, comments and the like
+ * being unique anyway.
+ *
+ * Pooling is off by default. Once a default pool is set (see
+ * {@link #setDefault(StringPool)}) it is used by the values of the parsed games,
+ * when they are decoded, and by {@link net.vclj.golab.service.GameMapper}.
+ */
+public final class StringPool {
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+  public static final int DEFAULT_MAX_LENGTH = 64;
+
+  private static volatile StringPool defaultPool = null;
+
+  private final AtomicReferenceArray<WeakReference<String>> slots;
+  private final int mask;
+  private final int maxLength;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+
+  public StringPool() {
+    this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+  }
+
+  /**
+   * @param capacity number of slots, rounded up to a power of 2
+   * @param maxLength longest string pooled
+   */
+  public StringPool(int capacity, int maxLength) {
+    if (capacity < 1 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("Capacity must be between 1 and 2^30 : " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * @return the pool used by the parsed games and the mappers, null when
+   *         pooling is off (the default)
+   */
+  public static StringPool getDefault() {
+    return defaultPool;
+  }
+
+  /**
+   * Sets the pool used by the parsed games and the mappers, null to turn pooling
+   * off. Games already loaded use the new pool for the values not decoded yet.
+   */
+  public static void setDefault(StringPool pool) {
+    defaultPool = pool;
+  }
+
+  /**
+   * @return the pooled instance equal to value, value itself if there is none
+   *         (it is then pooled)
+   */
+  public String intern(String value) {
+    if (value == null) {
+      return null;
+    }
+    if (value.length() > maxLength) {
+      skipped.increment();
+      return value;
+    }
+    int index = spread(value.hashCode()) & mask;
+    String pooled = get(index);
+    if (value.equals(pooled)) {
+      hits.increment();
+      return pooled;
+    }
+    misses.increment();
+    slots.lazySet(index, new WeakReference<>(value));
+    return value;
+  }
+
+  /**
+   * Same as {@link #intern(String)} for source[start, end) : no String is
+   * created when the slice is in the pool.
+   */
+  public String intern(CharSequence source, int start, int end) {
+    int length = end - start;
+    if (length > maxLength) {
+      skipped.increment();
+      return source.subSequence(start, end).toString();
+    }
+    // same hash as String.hashCode()
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + source.charAt(i);
+    }
+    int index = spread(hash) & mask;
+    String pooled = get(index);
+    if (pooled != null && contentEquals(pooled, source, start, end)) {
+      hits.increment();
+      return pooled;
+    }
+    misses.increment();
+    String value = source.subSequence(start, end).toString();
+    slots.lazySet(index, new WeakReference<>(value));
+    return value;
+  }
+
+  private String get(int index) {
+    WeakReference<String> ref = slots.get(index);
+    return ref == null ? null : ref.get();
+  }
+
+  private static boolean contentEquals(String pooled, CharSequence source, int start, int end) {
+    if (pooled.length() != end - start) {
+      return false;
+    }
+    for (int i = 0; i < pooled.length(); i++) {
+      if (pooled.charAt(i) != source.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int spread(int hash) {
+    // String hashes of short values differ mostly in the low bits
+    return hash ^ (hash >>> 16);
+  }
+
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * @return the number of lookups that returned a pooled instance
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of lookups of a value not in the pool
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the number of values too long to be pooled
+   */
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  /**
+   * @return hits / (hits + misses), 0 before the first lookup
+   */
+  public double getHitRate() {
+    long hit = getHits();
+    long total = hit + getMisses();
+    return total == 0 ? 0 : (double) hit / total;
+  }
+
+  /**
+   * @return the number of slots holding a string still alive, counted slot by
+   *         slot
+   */
+  public int size() {
+    int rtrn = 0;
+    for (int i = 0; i <= mask; i++) {
+      if (get(i) != null) {
+        rtrn++;
+      }
+    }
+    return rtrn;
+  }
+
+  public void resetStatistics() {
+    hits.reset();
+    misses.reset();
+    skipped.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "StringPool capacity=" + getCapacity() + " hits=" + getHits() + " misses=" + getMisses() + " skipped="
+        + getSkipped();
+  }
+}
@@ -0,0 +1,147 @@
+package net.vclj.golab.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import net.vclj.golab.format.StringPool;
+
+/**
+ * Micrometer instrumentation of the SGF import pipeline : file reads, parsing,
+ * post processing and game persistence.
+ *
+ * The format classes are static tool sets that know nothing of Spring, so the
+ * meters are registered in the Micrometer global registry. Spring Boot adds its
+ * own registries to the global one (management.metrics.use-global-registry is
+ * true by default), hence everything recorded here is exposed through the
+ * actuator metrics endpoint.
+ *
+ * Meters are looked up once per tag combination and cached, so recording only
+ * costs a map lookup.
+ */
+public final class SgfMetrics {
+  public static final String SOURCE_FILE = "file";
+  public static final String SOURCE_STRING = "string";
+  public static final String SOURCE_STREAM = "stream";
+
+  public static final String OUTCOME_SUCCESS = "success";
+  public static final String OUTCOME_FAILURE = "failure";
+
+  private static final double[] PERCENTILES = new double[] { 0.5, 0.95, 0.99 };
+
+  private static volatile MeterRegistry registry = Metrics.globalRegistry;
+
+  private static final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+  private SgfMetrics() {
+  }
+
+  /**
+   * Replaces the registry the meters are recorded into (the global registry by
+   * default). Meant for tests and for applications without Spring Boot.
+   */
+  public static void setRegistry(MeterRegistry meterRegistry) {
+    registry = meterRegistry;
+    timers.clear();
+    counters.clear();
+  }
+
+  public static MeterRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Records the loading of a game (read, parse and post process).
+   *
+   * @param source where the game comes from : file, string or stream
+   * @param outcome success or failure
+   * @param bytes size of the input, in bytes for files and characters otherwise
+   * @param nanos elapsed time
+   */
+  public static void recordRead(String source, String outcome, long bytes, long nanos) {
+    timer("golab.sgf.read", "Loading of SGF games", source, outcome).record(nanos, TimeUnit.NANOSECONDS);
+    counter("golab.sgf.games", "SGF games loaded", source, outcome).increment();
+    if (bytes > 0) {
+      counter("golab.sgf.bytes", "SGF input processed", source, outcome).increment(bytes);
+    }
+  }
+
+  /**
+   * Records the parsing of an SGF string into a game tree.
+   */
+  public static void recordParse(String outcome, long nodes, long nanos) {
+    timer("golab.sgf.parse", "Parsing of SGF text", null, outcome).record(nanos, TimeUnit.NANOSECONDS);
+    if (nodes > 0) {
+      counter("golab.sgf.nodes", "SGF nodes parsed", null, outcome).increment(nodes);
+    }
+  }
+
+  /**
+   * Records the post processing (move numbering and counting) of a game.
+   */
+  public static void recordPostProcess(long nanos) {
+    timer("golab.sgf.postprocess", "Post processing of parsed games", null, OUTCOME_SUCCESS).record(nanos,
+        TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the persistence of a game through the game repository.
+   */
+  public static void recordSave(String source, String outcome, long nanos) {
+    timer("golab.game.save", "Persistence of games", source, outcome).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Registers a gauge following the size of an import queue.
+   *
+   * @return the queue itself, the gauge only keeps a weak reference to it
+   */
+  public static <T extends Collection<?>> T gaugeQueue(String queueName, T queue) {
+    return registry.gaugeCollectionSize("golab.import.queue", Tags.of("queue", queueName), queue);
+  }
+
+  /**
+   * Registers the statistics of a string pool : lookups by result (hit, miss,
+   * skipped for values too long) and the hit rate.
+   */
+  public static void monitorStringPool(String poolName, StringPool pool) {
+    Tags tags = Tags.of("pool", poolName);
+    FunctionCounter.builder("golab.stringpool.lookups", pool, StringPool::getHits).tags(tags).tag("result", "hit")
+        .description("String pool lookups").register(registry);
+    FunctionCounter.builder("golab.stringpool.lookups", pool, StringPool::getMisses).tags(tags).tag("result", "miss")
+        .description("String pool lookups").register(registry);
+    FunctionCounter.builder("golab.stringpool.lookups", pool, StringPool::getSkipped).tags(tags)
+        .tag("result", "skipped").description("String pool lookups").register(registry);
+    Gauge.builder("golab.stringpool.hitrate", pool, StringPool::getHitRate).tags(tags)
+        .description("Ratio of string pool lookups returning a pooled instance").register(registry);
+  }
+
+  private static Timer timer(String name, String description, String source, String outcome) {
+    return timers.computeIfAbsent(name + '|' + source + '|' + outcome,
+        key -> Timer.builder(name).description(description).tags(tags(source, outcome))
+            .publishPercentiles(PERCENTILES).register(registry));
+  }
+
+  private static Counter counter(String name, String description, String source, String outcome) {
+    return counters.computeIfAbsent(name + '|' + source + '|' + outcome,
+        key -> Counter.builder(name).description(description).tags(tags(source, outcome)).register(registry));
+  }
+
+  private static Tags tags(String source, String outcome) {
+    Tags tags = Tags.of("outcome", outcome);
+    if (source != null) {
+      tags = tags.and("source", source);
+    }
+    return tags;
+  }
+}
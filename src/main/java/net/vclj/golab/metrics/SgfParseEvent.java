@@ -0,0 +1,37 @@
+package net.vclj.golab.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering SgfParser.parse. Disabled by default, see
+ * golab.jfc.
+ */
+@Name("net.vclj.golab.SgfParse")
+@Label("SGF Parse")
+@Description("Parsing of SGF text into a game tree")
+@Category({ "Golab", "SGF" })
+@Enabled(false)
+@StackTrace(false)
+public class SgfParseEvent extends jdk.jfr.Event {
+  @Label("File Name")
+  public String fileName;
+
+  @Label("Characters")
+  @Description("UTF-16 characters parsed, the bytes are counted by the read event")
+  public long charCount;
+
+  @Label("Node Count")
+  public int nodeCount;
+
+  @Label("Maximum Depth")
+  @Description("Number of nodes of the longest line of play")
+  public int maxDepth;
+
+  @Label("Failed")
+  public boolean failed;
+}
@@ -0,0 +1,28 @@
+package net.vclj.golab.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering SgfGame.postProcess. Disabled by default, see
+ * golab.jfc.
+ */
+@Name("net.vclj.golab.SgfPostProcess")
+@Label("SGF Post Process")
+@Description("Move numbering and counting of a parsed game")
+@Category({ "Golab", "SGF" })
+@Enabled(false)
+@StackTrace(false)
+public class SgfPostProcessEvent extends jdk.jfr.Event {
+  @Label("Node Count")
+  @Description("Nodes of the main line")
+  public int nodeCount;
+
+  @Label("Move Count")
+  @Description("Moves of the main line")
+  public int moveCount;
+}
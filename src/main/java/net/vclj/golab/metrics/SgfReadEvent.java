@@ -0,0 +1,56 @@
+package net.vclj.golab.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event covering the loading of a game by SgfFileManager :
+ * read, parse and post process. Disabled by default, see golab.jfc.
+ */
+@Name("net.vclj.golab.SgfRead")
+@Label("SGF Read")
+@Description("Loading of an SGF game : read, parse and post process")
+@Category({ "Golab", "SGF" })
+@Enabled(false)
+@StackTrace(false)
+public class SgfReadEvent extends jdk.jfr.Event {
+  @Label("File Name")
+  public String fileName;
+
+  @Label("Source")
+  @Description("file, string or stream")
+  public String source;
+
+  @Label("Size")
+  @Description("Bytes for files, characters for other sources")
+  @DataAmount
+  public long byteSize;
+
+  @Label("Node Count")
+  public int nodeCount;
+
+  @Label("Maximum Depth")
+  @Description("Number of nodes of the longest line of play")
+  public int maxDepth;
+
+  @Label("Read Duration")
+  @Timespan
+  public long readDuration;
+
+  @Label("Parse Duration")
+  @Timespan
+  public long parseDuration;
+
+  @Label("Post Process Duration")
+  @Timespan
+  public long postProcessDuration;
+
+  @Label("Failed")
+  public boolean failed;
+}
@@ -0,0 +1,38 @@
+package net.vclj.golab.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event covering the writing of a game by SgfFileManager.
+ * Disabled by default, see golab.jfc.
+ */
+@Name("net.vclj.golab.SgfWrite")
+@Label("SGF Write")
+@Description("Serialisation of a game to an SGF file")
+@Category({ "Golab", "SGF" })
+@Enabled(false)
+@StackTrace(false)
+public class SgfWriteEvent extends jdk.jfr.Event {
+  @Label("File Name")
+  public String fileName;
+
+  @Label("Size")
+  @Description("Bytes written")
+  @DataAmount
+  public long byteSize;
+
+  @Label("Node Count")
+  @Description("Nodes of the main line")
+  public int nodeCount;
+
+  @Label("Serialisation Duration")
+  @Timespan
+  public long serialisationDuration;
+}
@@ -1,5 +1,8 @@
 package net.vclj.golab.repository;
 
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -8,4 +11,9 @@ import net.vclj.golab.entity.Game;
 @Repository
 public interface GameRepository extends JpaRepository<Game, Long> {
 
+  /**
+   * @return a page of the games of id greater than id : reading the games by
+   *         increasing id, each page after the last id of the previous one
+   */
+  List<Game> findByIdGreaterThan(long id, Pageable pageable);
 }
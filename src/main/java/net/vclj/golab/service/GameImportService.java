@@ -0,0 +1,108 @@
+package net.vclj.golab.service;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.format.SgfFileManager;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.metrics.SgfMetrics;
+import net.vclj.golab.repository.GameRepository;
+
+/**
+ * Imports SGF games into the database, either directly or through a queue of
+ * files waiting to be imported. Saves and queue depth are instrumented by
+ * {@link SgfMetrics}. Listeners are told about each game saved, to keep derived
+ * data up to date.
+ */
+@Service
+public class GameImportService {
+  private static final Logger log = LoggerFactory.getLogger(GameImportService.class);
+
+  private final GameRepository repository;
+
+  private final BlockingQueue<Path> queue = SgfMetrics.gaugeQueue("files", new LinkedBlockingQueue<>());
+
+  private final List<Consumer<Game>> listeners = new CopyOnWriteArrayList<>();
+
+  public GameImportService(GameRepository repository) {
+    this.repository = repository;
+  }
+
+  /**
+   * Registers a listener called with each game saved, in the thread that saved
+   * it. A listener failing is logged and does not fail the import.
+   */
+  public void addListener(Consumer<Game> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Adds a file to the import queue, see {@link #importQueued()}.
+   */
+  public void enqueue(Path path) {
+    queue.add(path);
+  }
+
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /**
+   * Imports every file of the queue. A file that fails to import is logged and
+   * skipped.
+   *
+   * @return the number of games imported
+   */
+  public int importQueued() {
+    int imported = 0;
+    Path path;
+    while ((path = queue.poll()) != null) {
+      try {
+        importFile(path);
+        imported++;
+      } catch (RuntimeException e) {
+        log.error("Import of {} failed", path, e);
+      }
+    }
+    return imported;
+  }
+
+  public Game importFile(Path path) {
+    return save(SgfFileManager.createFromPath(path), SgfMetrics.SOURCE_FILE);
+  }
+
+  /**
+   * Maps a game to its entity and saves it.
+   *
+   * @param source where the game comes from, used to tag metrics
+   * @return the saved entity
+   */
+  public Game save(SgfGame sgfGame, String source) {
+    long start = System.nanoTime();
+    Game saved;
+    try {
+      saved = repository.save(GameMapper.toEntity(sgfGame));
+    } catch (RuntimeException e) {
+      SgfMetrics.recordSave(source, SgfMetrics.OUTCOME_FAILURE, System.nanoTime() - start);
+      throw e;
+    }
+    SgfMetrics.recordSave(source, SgfMetrics.OUTCOME_SUCCESS, System.nanoTime() - start);
+    for (Consumer<Game> listener : listeners) {
+      try {
+        listener.accept(saved);
+      } catch (RuntimeException e) {
+        log.error("Listener {} failed on game {}", listener, saved.getId(), e);
+      }
+    }
+    return saved;
+  }
+}
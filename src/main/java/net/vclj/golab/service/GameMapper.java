@@ -0,0 +1,118 @@
+package net.vclj.golab.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+import net.vclj.golab.analysis.DuplicateDetector;
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.entity.Move;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.StringPool;
+
+/**
+ * Maps parsed SGF games to persistent entities.
+ *
+ * Only actual moves become Move entities : the properties of the other nodes
+ * (setup, markup...) are dropped and their children are attached to the last
+ * move played before them. The root properties of the game are copied as is,
+ * their values deduplicated by the default {@link StringPool} if there is one.
+ * The MinHash signature of the main line is computed on the way, see
+ * {@link DuplicateDetector}.
+ */
+public class GameMapper {
+
+  private static final int MAX_COMMENT_LENGTH = 10000;
+
+  /**
+   * Marker of the absence of a previous move (ArrayDeque does not accept null).
+   */
+  private static final Move NO_MOVE = new Move();
+
+  private GameMapper() {
+  }
+
+  public static Game toEntity(SgfGame sgfGame) {
+    Game game = new Game();
+    StringPool pool = StringPool.getDefault();
+    for (Map.Entry<String, String> property : sgfGame.getProperties().entrySet()) {
+      // keys are shared by SgfProperty, values by the pool if there is one
+      String value = pool == null ? property.getValue() : pool.intern(property.getValue());
+      game.getProperties().put(property.getKey(), value);
+    }
+
+    int boardSize = getBoardSize(sgfGame);
+
+    // iterative walk : main lines may be very long
+    Deque<SgfGameNode> nodes = new ArrayDeque<>();
+    Deque<Move> parents = new ArrayDeque<>();
+    for (SgfGameNode child : sgfGame.getRootNode().getChildren()) {
+      nodes.push(child);
+      parents.push(NO_MOVE);
+    }
+    if (sgfGame.getRootNode().isMove()) {
+      nodes.push(sgfGame.getRootNode());
+      parents.push(NO_MOVE);
+    }
+
+    while (!nodes.isEmpty()) {
+      SgfGameNode node = nodes.pop();
+      Move parent = parents.pop();
+      Move current = parent;
+
+      if (node.isMove()) {
+        current = toMove(node, parent == NO_MOVE ? null : parent, boardSize);
+        if (parent == NO_MOVE) {
+          // only one first move can be stored, the first one met wins
+          if (game.getFirstMove() == null) {
+            game.setFirstMove(current);
+          } else {
+            continue;
+          }
+        } else {
+          parent.getNextMoves().add(current);
+        }
+      }
+
+      // pushed in reverse order so that the main line is processed first
+      for (int i = node.getChildren().size() - 1; i >= 0; i--) {
+        nodes.push(node.getChildren().get(i));
+        parents.push(current);
+      }
+    }
+    game.setSignature(DuplicateDetector.toBytes(DuplicateDetector.signature(DuplicateDetector.moves(sgfGame))));
+    return game;
+  }
+
+  private static Move toMove(SgfGameNode node, Move previousMove, int boardSize) {
+    Move move = new Move();
+    move.setPlayer(node.getColor());
+    move.setMoveNumber(previousMove == null ? 1 : previousMove.getMoveNumber() + 1);
+    move.setPreviousMove(previousMove);
+    move.setLocation(toLocation(node.getMoveString(), boardSize));
+    String comment = node.getProperty("C");
+    if (comment != null) {
+      move.setComment(comment.length() > MAX_COMMENT_LENGTH ? comment.substring(0, MAX_COMMENT_LENGTH) : comment);
+    }
+    return move;
+  }
+
+  /**
+   * Converts SGF coordinates to a Location.
+   *
+   * @return the location, 0 for a pass
+   */
+  static int toLocation(String sgfPoint, int boardSize) {
+    return CoordinateCodec.sgfToLocation(sgfPoint, boardSize);
+  }
+
+  /**
+   * @return the board size of the game (SZ property, the width for rectangular
+   *         boards), 19 by default
+   */
+  public static int getBoardSize(SgfGame sgfGame) {
+    return sgfGame.getBoardWidth();
+  }
+}
@@ -0,0 +1,294 @@
+package net.vclj.golab.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+
+/**
+ * View of one game of a {@link GameStore}, read in place from the mapped file.
+ *
+ * A record is a flyweight : {@link GameStore#get(int, GameRecord)} and the
+ * scans of the store move it from game to game, so that going through the
+ * whole store allocates nothing as long as only the counts, the moves
+ * ({@link #forEachNode(NodeVisitor)}) and the key tests are used. Strings are
+ * only created by {@link #getProperty(String)} and {@link #toSgfGame()}.
+ *
+ * A record is not thread safe : each reader thread uses its own.
+ */
+public class GameRecord {
+  public static final int NONE = 0;
+  public static final int BLACK = 1;
+  public static final int WHITE = 2;
+
+  /**
+   * Receives the nodes of a game in preorder.
+   */
+  @FunctionalInterface
+  public interface NodeVisitor {
+    /**
+     * @param node index of the node in preorder, 0 for the root
+     * @param parent index of the parent node, -1 for the root
+     * @param color NONE, BLACK or WHITE
+     * @param point packed point of the move (see {@link CoordinateCodec}),
+     *          {@link CoordinateCodec#PASS} for a pass or a node without move
+     */
+    void node(int node, int parent, int color, int point);
+  }
+
+  private ByteBuffer buffer;
+  private int start;
+  private int index = -1;
+
+  // read position, and the stacks of forEachNode reused from game to game
+  private int pos;
+  private int[] parents = new int[64];
+  private int[] remaining = new int[64];
+
+  void reset(ByteBuffer buffer, int start, int index) {
+    this.buffer = buffer;
+    this.start = start;
+    this.index = index;
+  }
+
+  /**
+   * @return the index of the game in the store
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * @return the size of the record in bytes
+   */
+  public int getByteSize() {
+    return buffer.getInt(start) + 4;
+  }
+
+  public int getNodeCount() {
+    return buffer.getInt(start + 4);
+  }
+
+  public int getMoveCount() {
+    return buffer.getInt(start + 8);
+  }
+
+  /**
+   * @return true if the game has the property
+   */
+  public boolean hasProperty(String key) {
+    return findProperty(key) >= 0;
+  }
+
+  /**
+   * @return the values of a game property joined by commas, null if not defined
+   */
+  public String getProperty(String key) {
+    int at = findProperty(key);
+    if (at < 0) {
+      return null;
+    }
+    pos = at;
+    int count = readVarint();
+    StringBuilder rtrn = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        rtrn.append(',');
+      }
+      rtrn.append(readString());
+    }
+    return rtrn.toString();
+  }
+
+  /**
+   * @return the position of the value count of the game property, -1 if not
+   *         defined
+   */
+  private int findProperty(String key) {
+    pos = start + GameStoreFormat.RECORD_HEADER_SIZE;
+    int count = readVarint();
+    for (int i = 0; i < count; i++) {
+      boolean found = keyEquals(key);
+      if (found) {
+        return pos;
+      }
+      skipValues();
+    }
+    return -1;
+  }
+
+  /**
+   * Compares the key at the read position to key and moves past it.
+   */
+  private boolean keyEquals(String key) {
+    int length = readVarint();
+    boolean rtrn = length == key.length();
+    for (int i = 0; i < length; i++) {
+      byte b = buffer.get(pos + i);
+      if (rtrn && b != key.charAt(i)) {
+        rtrn = false;
+      }
+    }
+    pos += length;
+    return rtrn;
+  }
+
+  /**
+   * Calls visitor with every node of the game, in preorder, without allocation
+   * once the stacks are large enough for the depth of the variations.
+   */
+  public void forEachNode(NodeVisitor visitor) {
+    pos = start + GameStoreFormat.RECORD_HEADER_SIZE;
+    skipProperties();
+    int nodes = getNodeCount();
+    // open nodes : their index and the number of children not visited yet
+    int depth = 0;
+    for (int node = 0; node < nodes; node++) {
+      while (depth > 0 && remaining[depth - 1] == 0) {
+        depth--;
+      }
+      int parent = -1;
+      if (depth > 0) {
+        parent = parents[depth - 1];
+        remaining[depth - 1]--;
+      }
+      int flags = buffer.get(pos++);
+      int color = flags & GameStoreFormat.COLOR_MASK;
+      int point = CoordinateCodec.PASS;
+      if (color != NONE) {
+        point = readPoint();
+      }
+      if ((flags & GameStoreFormat.HAS_PROPERTIES) != 0) {
+        skipProperties();
+      }
+      int children = readVarint();
+      visitor.node(node, parent, color, point);
+      if (children > 0) {
+        if (depth == parents.length) {
+          parents = Arrays.copyOf(parents, depth * 2);
+          remaining = Arrays.copyOf(remaining, depth * 2);
+        }
+        parents[depth] = node;
+        remaining[depth] = children;
+        depth++;
+      }
+    }
+  }
+
+  /**
+   * Decodes the whole game into an SgfGame, as it was appended. The game is not
+   * post processed.
+   */
+  public SgfGame toSgfGame() {
+    SgfGame game = new SgfGame(null);
+    pos = start + GameStoreFormat.RECORD_HEADER_SIZE;
+    int count = readVarint();
+    for (int i = 0; i < count; i++) {
+      String key = readString();
+      int values = readVarint();
+      for (int j = 0; j < values; j++) {
+        game.addProperty(key, readString());
+      }
+    }
+
+    int nodes = getNodeCount();
+    SgfGameNode[] open = new SgfGameNode[16];
+    int[] childrenLeft = new int[16];
+    int depth = 0;
+    for (int n = 0; n < nodes; n++) {
+      while (depth > 0 && childrenLeft[depth - 1] == 0) {
+        depth--;
+      }
+      SgfGameNode parent = depth > 0 ? open[depth - 1] : null;
+      SgfGameNode node = new SgfGameNode(parent);
+      if (parent == null) {
+        game.setRootNode(node);
+      } else {
+        parent.addChild(node);
+        childrenLeft[depth - 1]--;
+      }
+      int flags = buffer.get(pos++);
+      int color = flags & GameStoreFormat.COLOR_MASK;
+      if (color != NONE) {
+        int point = readPoint();
+        node.addProperty(color == BLACK ? "B" : "W",
+            point == CoordinateCodec.PASS ? "" : CoordinateCodec.pointToSgf(point));
+      }
+      if ((flags & GameStoreFormat.HAS_PROPERTIES) != 0) {
+        int properties = readVarint();
+        for (int i = 0; i < properties; i++) {
+          String key = readString();
+          int values = readVarint();
+          for (int j = 0; j < values; j++) {
+            node.addProperty(key, readString());
+          }
+        }
+      }
+      int children = readVarint();
+      if (children > 0) {
+        if (depth == open.length) {
+          open = Arrays.copyOf(open, depth * 2);
+          childrenLeft = Arrays.copyOf(childrenLeft, depth * 2);
+        }
+        open[depth] = node;
+        childrenLeft[depth] = children;
+        depth++;
+      }
+    }
+    return game;
+  }
+
+  private int readPoint() {
+    int x = buffer.get(pos++) & 0xFF;
+    int y = buffer.get(pos++) & 0xFF;
+    return x == GameStoreFormat.PASS_COORDINATE ? CoordinateCodec.PASS : CoordinateCodec.point(x, y);
+  }
+
+  private void skipProperties() {
+    int count = readVarint();
+    for (int i = 0; i < count; i++) {
+      int keyLength = readVarint();
+      pos += keyLength;
+      skipValues();
+    }
+  }
+
+  private void skipValues() {
+    int values = readVarint();
+    for (int j = 0; j < values; j++) {
+      // not pos += readVarint() : pos would be read before the varint
+      int length = readVarint();
+      pos += length;
+    }
+  }
+
+  private String readString() {
+    int length = readVarint();
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(pos + i);
+    }
+    pos += length;
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private int readVarint() {
+    int rtrn = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get(pos++);
+      rtrn |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return rtrn;
+  }
+
+  @Override
+  public String toString() {
+    return "GameRecord " + index + " nodes=" + getNodeCount() + " moves=" + getMoveCount();
+  }
+}
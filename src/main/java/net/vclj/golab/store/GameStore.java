@@ -0,0 +1,174 @@
+package net.vclj.golab.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * Read access to a binary game store written by {@link GameStoreWriter}.
+ *
+ * The data file is mapped in memory by regions and the index in one piece :
+ * opening a store reads nothing but the headers, access to game k is a lookup
+ * in the index, and the games are read in place through {@link GameRecord}
+ * flyweights. The mapped buffers are only read with absolute accessors, so a
+ * store can be shared by any number of reader threads, each with its own
+ * records.
+ *
+ * The games are the ones present when the store was opened. The index is
+ * limited to 2^28 games (a single 2 GB mapping).
+ */
+public class GameStore implements Closeable {
+  private final Path base;
+  private final ByteBuffer index;
+  private final MappedByteBuffer[] regions;
+  private final int regionBits;
+  private final int count;
+
+  private GameStore(Path base) throws IOException {
+    this.base = base;
+    try (FileChannel indexChannel = FileChannel.open(GameStoreFormat.indexPath(base), StandardOpenOption.READ);
+        FileChannel dataChannel = FileChannel.open(GameStoreFormat.dataPath(base), StandardOpenOption.READ)) {
+      long indexSize = indexChannel.size();
+      if (indexSize > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Game store index too large : " + indexSize);
+      }
+      index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexSize);
+      if (indexSize < GameStoreFormat.HEADER_SIZE || index.getInt(0) != GameStoreFormat.INDEX_MAGIC
+          || index.getInt(4) != GameStoreFormat.VERSION) {
+        throw new IllegalStateException("Not a game store index : " + GameStoreFormat.indexPath(base));
+      }
+      count = (int) ((indexSize - GameStoreFormat.HEADER_SIZE) / 8);
+
+      long dataSize = dataChannel.size();
+      ByteBuffer header = ByteBuffer.allocate(GameStoreFormat.HEADER_SIZE);
+      dataChannel.read(header, 0);
+      if (dataSize < GameStoreFormat.HEADER_SIZE || header.getInt(0) != GameStoreFormat.DATA_MAGIC
+          || header.getInt(4) != GameStoreFormat.VERSION) {
+        throw new IllegalStateException("Not a game store : " + GameStoreFormat.dataPath(base));
+      }
+      regionBits = header.getInt(8);
+      long regionSize = 1L << regionBits;
+      // only the part of the data file covered by the index, up to the end of
+      // the last record : a writer may be appending
+      long mapped = GameStoreFormat.HEADER_SIZE;
+      if (count > 0) {
+        long last = index.getLong(GameStoreFormat.HEADER_SIZE + 8 * (count - 1));
+        ByteBuffer length = ByteBuffer.allocate(4);
+        dataChannel.read(length, last);
+        mapped = last + 4 + length.getInt(0);
+        if (mapped > dataSize) {
+          throw new IllegalStateException("Game store truncated : " + GameStoreFormat.dataPath(base));
+        }
+      }
+      int regionCount = (int) ((mapped + regionSize - 1) >>> regionBits);
+      regions = new MappedByteBuffer[regionCount];
+      for (int i = 0; i < regionCount; i++) {
+        long start = (long) i << regionBits;
+        regions[i] = dataChannel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, mapped - start));
+      }
+    }
+  }
+
+  /**
+   * Opens the store of base path (files base.games and base.index).
+   */
+  public static GameStore open(Path base) {
+    try {
+      return new GameStore(base);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public Path getBase() {
+    return base;
+  }
+
+  /**
+   * @return the number of games
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return a new record on game k
+   */
+  public GameRecord get(int k) {
+    return get(k, new GameRecord());
+  }
+
+  /**
+   * Moves record to game k.
+   *
+   * @return record
+   */
+  public GameRecord get(int k, GameRecord record) {
+    if (k < 0 || k >= count) {
+      throw new IndexOutOfBoundsException("Game " + k + " out of " + count);
+    }
+    long offset = index.getLong(GameStoreFormat.HEADER_SIZE + 8 * k);
+    record.reset(regions[(int) (offset >>> regionBits)], (int) (offset & ((1L << regionBits) - 1)), k);
+    return record;
+  }
+
+  /**
+   * Receives the games of a scan. The record is reused from game to game : it
+   * must not be kept.
+   */
+  @FunctionalInterface
+  public interface GameVisitor {
+    void visit(GameRecord record);
+  }
+
+  /**
+   * Visits every game in order with a single record.
+   */
+  public void forEach(GameVisitor visitor) {
+    forEach(0, count, visitor);
+  }
+
+  /**
+   * Visits the games from (inclusive) to to (exclusive) in order with a single
+   * record.
+   */
+  public void forEach(int from, int to, GameVisitor visitor) {
+    GameRecord record = new GameRecord();
+    for (int k = from; k < to; k++) {
+      visitor.visit(get(k, record));
+    }
+  }
+
+  /**
+   * Visits every game from several threads of the common pool, in no
+   * particular order, each thread with its own record. The visitor must be
+   * thread safe.
+   */
+  public void parallelForEach(GameVisitor visitor) {
+    int chunks = Math.max(1, Math.min(count / 64, Runtime.getRuntime().availableProcessors() * 4));
+    IntStream.range(0, chunks).parallel()
+        .forEach(chunk -> forEach((int) ((long) count * chunk / chunks), (int) ((long) count * (chunk + 1) / chunks),
+            visitor));
+  }
+
+  /**
+   * Drops the mappings, they are released when garbage collected.
+   */
+  @Override
+  public void close() {
+    for (int i = 0; i < regions.length; i++) {
+      regions[i] = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "GameStore " + base + " games=" + count;
+  }
+}
@@ -0,0 +1,60 @@
+package net.vclj.golab.store;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Layout of the binary game store, shared by {@link GameStoreWriter} and
+ * {@link GameStore}.
+ *
+ * <pre>
+ * data file  (name.games) : header, then one record per game
+ *   header   : int magic "GLBS", int version, int log2(region size), int 0
+ *   record   : int body length, int node count, int move count,
+ *              properties (game properties), nodes in preorder
+ *   node     : byte flags (bits 0-1 move color, bit 2 has properties),
+ *              [byte x, byte y if move, 0xFF 0xFF for a pass],
+ *              [properties if flagged], varint child count
+ *   properties : varint count, then for each : string key,
+ *                varint value count, string values
+ *   string   : varint byte length, UTF-8 bytes
+ *
+ * index file (name.index) : header, then the long offset of each record
+ *   header   : int magic "GLBI", int version, long 0
+ * </pre>
+ *
+ * The data file is mapped by regions (1 GB by default) and a record never
+ * crosses a region boundary : the writer pads up to the next region when
+ * needed. Varints are unsigned LEB128 (7 bits per byte, low bits first).
+ * Numbers are big endian, the ByteBuffer default.
+ */
+final class GameStoreFormat {
+  static final int DATA_MAGIC = 0x474C4253;
+  static final int INDEX_MAGIC = 0x474C4249;
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 16;
+  static final int RECORD_HEADER_SIZE = 12;
+
+  static final int DEFAULT_REGION_BITS = 30;
+
+  static final int COLOR_MASK = 0x3;
+  static final int HAS_PROPERTIES = 0x4;
+
+  // coordinate bytes of a pass
+  static final int PASS_COORDINATE = 0xFF;
+
+  static final String DATA_SUFFIX = ".games";
+  static final String INDEX_SUFFIX = ".index";
+
+  private GameStoreFormat() {
+  }
+
+  static Path dataPath(Path base) {
+    return Paths.get(base.toString() + DATA_SUFFIX);
+  }
+
+  static Path indexPath(Path base) {
+    return Paths.get(base.toString() + INDEX_SUFFIX);
+  }
+}
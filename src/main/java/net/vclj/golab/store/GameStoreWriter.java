@@ -0,0 +1,450 @@
+package net.vclj.golab.store;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.entity.Move;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.SgfValues;
+
+/**
+ * Appends games to a binary store, see {@link GameStoreFormat} for the layout
+ * and {@link GameStore} to read it. Games come from parsed SGF games, SGF files
+ * or Game entities.
+ *
+ * The store is append-only : opening an existing store adds the games after
+ * the ones already there. A writer is not thread safe and there must be only
+ * one writer per store; readers opened meanwhile see the games present when
+ * they were opened. The index entries are kept by the writer and written once
+ * the records they point to are in the data file.
+ */
+public class GameStoreWriter implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(GameStoreWriter.class);
+
+  private static final String[] COLORS = new String[] { null, "B", "W" };
+
+  private final DataOutputStream data;
+  // unbuffered : the entries wait in pendingIndex, see writeIndex
+  private final OutputStream index;
+  private final ByteBuffer pendingIndex = ByteBuffer.allocate(1 << 16);
+  private final long regionSize;
+  private long position;
+  private int count;
+
+  // the record being encoded, reused from game to game
+  private byte[] buffer = new byte[4096];
+  private int length;
+
+  private GameStoreWriter(Path base, int regionBits) throws IOException {
+    Path dataPath = GameStoreFormat.dataPath(base);
+    Path indexPath = GameStoreFormat.indexPath(base);
+    boolean exists = Files.exists(dataPath);
+    if (exists) {
+      regionBits = checkHeaders(dataPath, indexPath);
+      position = Files.size(dataPath);
+      count = (int) ((Files.size(indexPath) - GameStoreFormat.HEADER_SIZE) / 8);
+    }
+    this.regionSize = 1L << regionBits;
+    data = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(dataPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16));
+    index = Files.newOutputStream(indexPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    if (!exists) {
+      data.writeInt(GameStoreFormat.DATA_MAGIC);
+      data.writeInt(GameStoreFormat.VERSION);
+      data.writeInt(regionBits);
+      data.writeInt(0);
+      pendingIndex.putInt(GameStoreFormat.INDEX_MAGIC);
+      pendingIndex.putInt(GameStoreFormat.VERSION);
+      pendingIndex.putLong(0);
+      position = GameStoreFormat.HEADER_SIZE;
+      // an empty store for the readers
+      writeIndex();
+    }
+  }
+
+  /**
+   * Writes the pending index entries, after the records they point to : a
+   * reader never finds an entry whose record is not in the data file.
+   */
+  private void writeIndex() throws IOException {
+    data.flush();
+    index.write(pendingIndex.array(), 0, pendingIndex.position());
+    pendingIndex.clear();
+  }
+
+  /**
+   * Opens the store of base path (files base.games and base.index), creating it
+   * if needed.
+   */
+  public static GameStoreWriter open(Path base) {
+    return open(base, GameStoreFormat.DEFAULT_REGION_BITS);
+  }
+
+  /**
+   * Same as {@link #open(Path)} with a region size of 2^regionBits bytes for a
+   * new store, games being limited to this size. Existing stores keep theirs.
+   */
+  public static GameStoreWriter open(Path base, int regionBits) {
+    if (regionBits < 10 || regionBits > GameStoreFormat.DEFAULT_REGION_BITS) {
+      throw new IllegalArgumentException(
+          "Region bits must be between 10 and " + GameStoreFormat.DEFAULT_REGION_BITS + " : " + regionBits);
+    }
+    try {
+      return new GameStoreWriter(base, regionBits);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return the region bits of the existing store
+   */
+  private static int checkHeaders(Path dataPath, Path indexPath) throws IOException {
+    int regionBits;
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(dataPath))) {
+      if (in.readInt() != GameStoreFormat.DATA_MAGIC || in.readInt() != GameStoreFormat.VERSION) {
+        throw new IllegalStateException("Not a game store : " + dataPath);
+      }
+      regionBits = in.readInt();
+    }
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(indexPath))) {
+      if (in.readInt() != GameStoreFormat.INDEX_MAGIC || in.readInt() != GameStoreFormat.VERSION) {
+        throw new IllegalStateException("Not a game store index : " + indexPath);
+      }
+    }
+    return regionBits;
+  }
+
+  /**
+   * @return the number of games in the store
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Appends a parsed game, its tree and all its properties.
+   *
+   * @return the index of the game in the store
+   */
+  public int append(SgfGame game) {
+    length = GameStoreFormat.RECORD_HEADER_SIZE;
+    writeProperties(game);
+    int nodes = 0;
+    int moves = 0;
+    // iterative preorder : lines of play may be very long
+    Deque<SgfGameNode> stack = new ArrayDeque<>();
+    if (game.getRootNode() != null) {
+      stack.push(game.getRootNode());
+    }
+    while (!stack.isEmpty()) {
+      SgfGameNode node = stack.pop();
+      nodes++;
+      if (writeNode(node)) {
+        moves++;
+      }
+      List<SgfGameNode> children = node.getChildren();
+      writeVarint(children.size());
+      for (int i = children.size() - 1; i >= 0; i--) {
+        stack.push(children.get(i));
+      }
+    }
+    return writeRecord(nodes, moves);
+  }
+
+  /**
+   * Appends a game entity : its properties, then its moves and their comments.
+   *
+   * @return the index of the game in the store
+   * @throws IllegalArgumentException if its SZ property is not a board size :
+   *           the moves cannot be decoded, nothing is written
+   */
+  public int append(Game game) {
+    Map<String, String> properties = game.getProperties();
+    String size = properties.get("SZ");
+    int boardSize = size == null ? 19 : SgfValues.parseBoardSize(size) >>> 8;
+
+    length = GameStoreFormat.RECORD_HEADER_SIZE;
+    writeVarint(properties.size());
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      writeString(property.getKey());
+      writeVarint(1);
+      writeString(property.getValue());
+    }
+
+    // root node, then the moves
+    writeByte(0);
+    writeVarint(game.getFirstMove() == null ? 0 : 1);
+    int nodes = 1;
+    int moves = 0;
+    Deque<Move> stack = new ArrayDeque<>();
+    if (game.getFirstMove() != null) {
+      stack.push(game.getFirstMove());
+    }
+    while (!stack.isEmpty()) {
+      Move move = stack.pop();
+      nodes++;
+      moves++;
+      int color = "W".equals(move.getPlayer()) ? 2 : 1;
+      String comment = move.getComment();
+      writeByte(color | (comment != null ? GameStoreFormat.HAS_PROPERTIES : 0));
+      if (move.getLocation() == 0) {
+        writePoint(CoordinateCodec.PASS);
+      } else {
+        writePoint(CoordinateCodec.locationToPoint(move.getLocation(), boardSize));
+      }
+      if (comment != null) {
+        writeVarint(1);
+        writeString("C");
+        writeVarint(1);
+        writeString(comment);
+      }
+      List<Move> nextMoves = move.getNextMoves();
+      writeVarint(nextMoves.size());
+      for (int i = nextMoves.size() - 1; i >= 0; i--) {
+        stack.push(nextMoves.get(i));
+      }
+    }
+    return writeRecord(nodes, moves);
+  }
+
+  /**
+   * Parses an SGF file and appends its game.
+   *
+   * @return the index of the game in the store
+   */
+  public int appendFile(Path sgfFile) {
+    try {
+      return append(SgfParser.parse(new String(Files.readAllBytes(sgfFile), StandardCharsets.UTF_8)));
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Appends the games of the entities, typically all the games of the
+   * repository. The games with an invalid board size are skipped and logged.
+   *
+   * @return the number of games appended
+   */
+  public int appendAll(Iterable<Game> games) {
+    int rtrn = 0;
+    for (Game game : games) {
+      try {
+        append(game);
+        rtrn++;
+      }
+      catch (IllegalArgumentException e) {
+        log.warn("Game {} not stored : {}", game.getId(), e.getMessage());
+      }
+    }
+    return rtrn;
+  }
+
+  /**
+   * Writes the node without its child count.
+   *
+   * @return true if the node is a move
+   */
+  private boolean writeNode(SgfGameNode node) {
+    int color = 0;
+    int point = 0;
+    List<String> moveValues = null;
+    if (node.isBlack() != node.isWhite()) {
+      moveValues = node.getPropertyValues(node.isBlack() ? "B" : "W");
+      if (moveValues.size() == 1) {
+        point = encodablePoint(moveValues.get(0));
+        if (point != Integer.MIN_VALUE) {
+          color = node.isBlack() ? 1 : 2;
+        }
+      }
+    }
+    Map<String, String> properties = node.getProperties();
+    int propertyCount = properties.size() - (color != 0 ? 1 : 0);
+    writeByte(color | (propertyCount > 0 ? GameStoreFormat.HAS_PROPERTIES : 0));
+    if (color != 0) {
+      writePoint(point);
+    }
+    if (propertyCount > 0) {
+      writeVarint(propertyCount);
+      for (String key : properties.keySet()) {
+        if (color != 0 && key.equals(COLORS[color])) {
+          continue;
+        }
+        List<String> values = node.getPropertyValues(key);
+        writeString(key);
+        writeVarint(values.size());
+        for (String value : values) {
+          writeString(value);
+        }
+      }
+    }
+    return node.isMove();
+  }
+
+  /**
+   * @return the packed point of a move value, PASS for an empty value,
+   *         Integer.MIN_VALUE if it is not a point
+   */
+  private static int encodablePoint(String value) {
+    if (value.isEmpty()) {
+      return CoordinateCodec.PASS;
+    }
+    if (value.length() != 2 || CoordinateCodec.sgfIndex(value.charAt(0)) < 0
+        || CoordinateCodec.sgfIndex(value.charAt(1)) < 0) {
+      return Integer.MIN_VALUE;
+    }
+    return CoordinateCodec.sgfToPoint(value);
+  }
+
+  private void writeProperties(SgfGame game) {
+    Map<String, String> properties = game.getProperties();
+    writeVarint(properties.size());
+    for (String key : properties.keySet()) {
+      List<String> values = game.getPropertyValues(key);
+      writeString(key);
+      writeVarint(values.size());
+      for (String value : values) {
+        writeString(value);
+      }
+    }
+  }
+
+  private int writeRecord(int nodes, int moves) {
+    int bodyLength = length - 4;
+    putInt(0, bodyLength);
+    putInt(4, nodes);
+    putInt(8, moves);
+    try {
+      long inRegion = position & (regionSize - 1);
+      if (length > regionSize - GameStoreFormat.HEADER_SIZE) {
+        throw new IllegalArgumentException("Game of " + length + " bytes larger than the store regions");
+      }
+      if (inRegion + length > regionSize) {
+        // records never cross regions
+        pad(data, (int) (regionSize - inRegion));
+        position += regionSize - inRegion;
+      }
+      data.write(buffer, 0, length);
+      if (!pendingIndex.hasRemaining()) {
+        writeIndex();
+      }
+      pendingIndex.putLong(position);
+      position += length;
+      return count++;
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void pad(OutputStream out, int bytes) throws IOException {
+    byte[] zeros = new byte[Math.min(bytes, 1 << 16)];
+    for (int remaining = bytes; remaining > 0; remaining -= zeros.length) {
+      out.write(zeros, 0, Math.min(remaining, zeros.length));
+    }
+  }
+
+  private void writePoint(int point) {
+    if (point == CoordinateCodec.PASS) {
+      writeByte(GameStoreFormat.PASS_COORDINATE);
+      writeByte(GameStoreFormat.PASS_COORDINATE);
+    } else {
+      writeByte(CoordinateCodec.pointX(point));
+      writeByte(CoordinateCodec.pointY(point));
+    }
+  }
+
+  private void writeString(String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarint(bytes.length);
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, length, bytes.length);
+    length += bytes.length;
+  }
+
+  private void writeVarint(int value) {
+    ensureCapacity(5);
+    while ((value & ~0x7F) != 0) {
+      buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[length++] = (byte) value;
+  }
+
+  private void writeByte(int value) {
+    ensureCapacity(1);
+    buffer[length++] = (byte) value;
+  }
+
+  private void putInt(int at, int value) {
+    buffer[at] = (byte) (value >>> 24);
+    buffer[at + 1] = (byte) (value >>> 16);
+    buffer[at + 2] = (byte) (value >>> 8);
+    buffer[at + 3] = (byte) value;
+  }
+
+  private void ensureCapacity(int bytes) {
+    if (length + bytes > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+    }
+  }
+
+  /**
+   * Writes the buffered games to disk.
+   */
+  public void flush() {
+    try {
+      writeIndex();
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      try {
+        writeIndex();
+      }
+      finally {
+        data.close();
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    finally {
+      try {
+        index.close();
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package net.vclj.golab.test.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.analysis.AreaScorer;
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.store.GameStore;
+import net.vclj.golab.store.GameStoreWriter;
+
+public class TestAreaScorer {
+  private Path dir;
+
+  @BeforeEach
+  public void createDirectory() throws IOException {
+    dir = Files.createTempDirectory("golab-score-");
+  }
+
+  @AfterEach
+  public void deleteDirectory() throws IOException {
+    Files.walk(dir).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+  }
+
+  private static AreaScorer.Score score(String sgf) {
+    return new AreaScorer().score(SgfParser.parse(sgf));
+  }
+
+  @Test
+  public void testScores() {
+    // white aa captured in the corner, the whole board is black
+    AreaScorer.Score score = score("(;GM[1]SZ[5]KM[0.5]RE[B+24.5];B[ba];W[aa];B[ab])");
+    assertEquals(25, score.getBlackArea());
+    assertEquals(0, score.getWhiteArea());
+    assertEquals("B+24.5", score.toResult());
+    assertEquals(AreaScorer.Check.MATCH, score.check());
+    assertEquals(0, score.getMarginDifference(), 1e-9);
+
+    // two walls, the column between them is neutral
+    String walls = "AB[ba][bb][bc][bd][be]AW[da][db][dc][dd][de]";
+    score = score("(;GM[1]SZ[5]KM[0.5]RE[B+R]" + walls + ";B[])");
+    assertEquals(10, score.getBlackArea());
+    assertEquals(10, score.getWhiteArea());
+    assertEquals("W+0.5", score.toResult());
+    assertEquals(AreaScorer.Check.NOT_SCORED, score.check());
+    assertEquals(AreaScorer.Check.MISMATCH, score("(;GM[1]SZ[5]KM[0.5]RE[B+3]" + walls + ")").check());
+    assertEquals(AreaScorer.Check.MISSING, score("(;GM[1]SZ[5]KM[0.5]" + walls + ")").check());
+
+    // a dead white stone in black territory, marked in the last node
+    score = score("(;GM[1]SZ[5]" + walls + ";W[aa];B[tt];W[tt]TB[aa][ab][ac][ad][ae]TW[ea][eb][ec][ed][ee])");
+    assertEquals(1, score.getDeadStones());
+    assertEquals(10, score.getBlackArea());
+    assertEquals("0", score.toResult());
+
+    // suicide removes the stone played
+    score = score("(;GM[1]SZ[5]AB[ba][ab];W[aa])");
+    assertEquals(25, score.getBlackArea());
+
+    // capture of a group by filling its last liberty
+    score = score("(;GM[1]SZ[5]AW[aa][ba]AB[ca][ab];B[bb])");
+    assertEquals(25, score.getBlackArea());
+    assertThrows(IllegalArgumentException.class, () -> score("(;GM[1]SZ[5];B[ff])"));
+  }
+
+  /**
+   * Random games scored by the bitboards and by plain arrays.
+   */
+  @Test
+  public void testRandomGames() {
+    Random random = new Random(46);
+    AreaScorer scorer = new AreaScorer();
+    int[][] sizes = { { 19, 19 }, { 7, 5 }, { 13, 9 }, { 9, 9 } };
+    for (int g = 0; g < 80; g++) {
+      int width = sizes[g % sizes.length][0];
+      int height = sizes[g % sizes.length][1];
+      StringBuilder sgf = new StringBuilder("(;GM[1]SZ[");
+      sgf.append(width == height ? "" + width : width + ":" + height).append("]");
+      Reference reference = new Reference(width, height);
+      int moves = random.nextInt(width * height * 2);
+      for (int m = 0; m < moves; m++) {
+        int x = random.nextInt(width);
+        int y = random.nextInt(height);
+        if (reference.colors[y * width + x] != 0) {
+          continue;
+        }
+        boolean black = m % 2 == 0;
+        reference.play(x, y, black ? 1 : 2);
+        sgf.append(black ? ";B[" : ";W[").append(CoordinateCodec.pointToSgf(CoordinateCodec.point(x, y)))
+            .append(']');
+      }
+      AreaScorer.Score score = scorer.score(SgfParser.parse(sgf.append(')').toString()));
+      int[] areas = reference.areas();
+      assertEquals(areas[0], score.getBlackArea(), sgf.toString());
+      assertEquals(areas[1], score.getWhiteArea(), sgf.toString());
+    }
+  }
+
+  private static final class Reference {
+    final int width;
+    final int height;
+    final int[] colors;
+
+    Reference(int width, int height) {
+      this.width = width;
+      this.height = height;
+      this.colors = new int[width * height];
+    }
+
+    int[] neighbors(int i) {
+      int x = i % width;
+      int y = i / width;
+      int[] rtrn = new int[4];
+      int n = 0;
+      if (x > 0) {
+        rtrn[n++] = i - 1;
+      }
+      if (x < width - 1) {
+        rtrn[n++] = i + 1;
+      }
+      if (y > 0) {
+        rtrn[n++] = i - width;
+      }
+      if (y < height - 1) {
+        rtrn[n++] = i + width;
+      }
+      return java.util.Arrays.copyOf(rtrn, n);
+    }
+
+    void play(int x, int y, int color) {
+      int i = y * width + x;
+      colors[i] = color;
+      for (int n : neighbors(i)) {
+        if (colors[n] == 3 - color) {
+          captureIfDead(n);
+        }
+      }
+      captureIfDead(i);
+    }
+
+    void captureIfDead(int start) {
+      int color = colors[start];
+      boolean[] seen = new boolean[colors.length];
+      Deque<Integer> todo = new ArrayDeque<>();
+      todo.add(start);
+      seen[start] = true;
+      java.util.List<Integer> group = new java.util.ArrayList<>();
+      while (!todo.isEmpty()) {
+        int i = todo.poll();
+        group.add(i);
+        for (int n : neighbors(i)) {
+          if (colors[n] == 0) {
+            return;
+          }
+          if (colors[n] == color && !seen[n]) {
+            seen[n] = true;
+            todo.add(n);
+          }
+        }
+      }
+      for (int i : group) {
+        colors[i] = 0;
+      }
+    }
+
+    int[] areas() {
+      int[] rtrn = new int[2];
+      boolean[] seen = new boolean[colors.length];
+      for (int start = 0; start < colors.length; start++) {
+        if (colors[start] != 0) {
+          rtrn[colors[start] - 1]++;
+          continue;
+        }
+        if (seen[start]) {
+          continue;
+        }
+        // an empty region, and the colors it touches
+        int size = 0;
+        int touched = 0;
+        Deque<Integer> todo = new ArrayDeque<>();
+        todo.add(start);
+        seen[start] = true;
+        while (!todo.isEmpty()) {
+          int i = todo.poll();
+          size++;
+          for (int n : neighbors(i)) {
+            if (colors[n] != 0) {
+              touched |= colors[n];
+            } else if (!seen[n]) {
+              seen[n] = true;
+              todo.add(n);
+            }
+          }
+        }
+        if (touched == 1 || touched == 2) {
+          rtrn[touched - 1] += size;
+        }
+      }
+      return rtrn;
+    }
+  }
+
+  @Test
+  public void testScoreAll() {
+    Path base = dir.resolve("games");
+    try (GameStoreWriter writer = GameStoreWriter.open(base)) {
+      writer.append(SgfParser.parse("(;GM[1]SZ[5]KM[0.5]RE[B+24.5];B[ba];W[aa];B[ab])"));
+      writer.append(SgfParser.parse("(;GM[1]SZ[5]KM[0.5]RE[W+10];B[ba])"));
+      writer.append(SgfParser.parse("(;GM[1]SZ[5];B[ba];W[zz])"));
+    }
+    try (GameStore store = GameStore.open(base)) {
+      AreaScorer.Score[] scores = AreaScorer.scoreAll(store);
+      assertEquals(3, scores.length);
+      assertEquals(AreaScorer.Check.MATCH, scores[0].check());
+      assertEquals(AreaScorer.Check.MISMATCH, scores[1].check());
+      assertNull(scores[2]);
+    }
+  }
+}
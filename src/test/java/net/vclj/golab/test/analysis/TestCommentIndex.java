@@ -0,0 +1,96 @@
+package net.vclj.golab.test.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.analysis.CommentIndex;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.SgfTreeIndex;
+import net.vclj.golab.service.GameMapper;
+
+public class TestCommentIndex {
+  private static final String SGF = "(;GM[1]SZ[9]GC[Final of the Ladder Cup]C[Welcome];B[ee];W[cc]"
+      + "C[A ladder breaker, then a ladder.](;B[gg]N[Breaker ladder];W[gc]C[The ladder works])"
+      + "(;B[cg]C[Ladder-breaker again : LADDER BREAKER]))";
+
+  @Test
+  public void testSearch() {
+    SgfGame game = SgfParser.parse(SGF);
+    CommentIndex index = new CommentIndex();
+    index.add(7, game);
+    assertEquals(5, index.getDocumentCount());
+
+    List<CommentIndex.Hit> hits = index.search("\"ladder breaker\"", 10);
+    assertEquals("[7/2, 7/5]", hits.toString());
+    // jump to the node
+    SgfTreeIndex tree = game.getTreeIndex();
+    assertEquals("cc", tree.getNode((int) hits.get(0).getNode()).getMoveString());
+    assertEquals("cg", tree.getNode((int) hits.get(1).getNode()).getMoveString());
+
+    assertEquals("[7/0, 7/2, 7/3, 7/4, 7/5]", index.search("ladder", 10).toString());
+    assertEquals("[7/2, 7/3, 7/5]", index.search("LADDER breaker", 10).toString());
+    assertEquals("[7/0, 7/2]", index.search("ladder", 2).toString());
+    // the game comment and the root comment do not make a phrase
+    assertTrue(index.search("\"cup welcome\"", 10).isEmpty());
+    assertEquals("[7/0]", index.search("cup welcome", 10).toString());
+    assertTrue(index.search("ladder ko", 10).isEmpty());
+    assertTrue(index.search("", 10).isEmpty());
+
+    // games of the database : the moves are not saved, their ids are 0, and
+    // the moves keep their comment only (no N)
+    index.add(GameMapper.toEntity(game));
+    assertEquals(9, index.getDocumentCount());
+    assertEquals(4, index.search("\"ladder breaker\"", 10).size());
+  }
+
+  @Test
+  public void testRandomComments() {
+    String[] vocabulary = { "ladder", "breaker", "ko", "threat", "joseki", "tesuji", "atari", "net", "shape",
+        "aji", "sente", "gote", "miai", "moyo", "seki" };
+    Random random = new Random(48);
+    CommentIndex index = new CommentIndex();
+    List<List<String>> comments = new ArrayList<>();
+    for (int g = 0; g < 2000; g++) {
+      StringBuilder sgf = new StringBuilder("(;GM[1]SZ[19]");
+      for (int m = 0; m < 10; m++) {
+        sgf.append(m % 2 == 0 ? ";B[" : ";W[").append((char) ('a' + m)).append("a]");
+        List<String> words = new ArrayList<>();
+        for (int w = random.nextInt(8); w > 0; w--) {
+          words.add(vocabulary[random.nextInt(vocabulary.length)]);
+        }
+        if (!words.isEmpty()) {
+          sgf.append("C[").append(String.join(" ", words)).append(']');
+        }
+        comments.add(words);
+      }
+      index.add(g, SgfParser.parse(sgf.append(')').toString()));
+    }
+
+    String[][] queries = { { "ladder" }, { "ladder", "breaker" }, { "ko", "threat", "aji" }, { "seki", "miai" } };
+    for (String[] query : queries) {
+      // phrase and all words, counted by brute force
+      int phrases = 0;
+      int all = 0;
+      for (List<String> words : comments) {
+        boolean hasAll = true;
+        for (String word : query) {
+          hasAll &= words.contains(word);
+        }
+        all += hasAll ? 1 : 0;
+        boolean hasPhrase = false;
+        for (int i = 0; i + query.length <= words.size() && !hasPhrase; i++) {
+          hasPhrase = words.subList(i, i + query.length).equals(java.util.Arrays.asList(query));
+        }
+        phrases += hasPhrase ? 1 : 0;
+      }
+      assertEquals(all, index.search(String.join(" ", query), Integer.MAX_VALUE).size());
+      assertEquals(phrases, index.search("\"" + String.join(" ", query) + "\"", Integer.MAX_VALUE).size());
+    }
+  }
+}
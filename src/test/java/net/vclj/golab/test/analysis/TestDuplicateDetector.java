@@ -0,0 +1,136 @@
+package net.vclj.golab.test.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.analysis.DuplicateDetector;
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.service.GameMapper;
+
+public class TestDuplicateDetector {
+  private static List<String> randomMoves(Random random, int count) {
+    List<String> rtrn = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      rtrn.add(CoordinateCodec.pointToSgf(CoordinateCodec.point(random.nextInt(19), random.nextInt(19))));
+    }
+    return rtrn;
+  }
+
+  private static Game game(List<String> moves, String comment) {
+    StringBuilder sgf = new StringBuilder("(;GM[1]SZ[19]");
+    for (int i = 0; i < moves.size(); i++) {
+      sgf.append(i % 2 == 0 ? ";B[" : ";W[").append(moves.get(i)).append(']');
+      if (comment != null && i % 10 == 0) {
+        sgf.append("C[").append(comment).append(i).append(']');
+      }
+    }
+    return GameMapper.toEntity(SgfParser.parse(sgf.append(')').toString()));
+  }
+
+  @Test
+  public void testClusters() {
+    Random random = new Random(47);
+    List<String> original = randomMoves(random, 150);
+    List<Game> games = new ArrayList<>();
+    games.add(game(original, null));
+    // republished with an extra move, truncated, commented, transposed
+    List<String> extra = new ArrayList<>(original);
+    extra.add("tt");
+    games.add(game(extra, null));
+    games.add(game(original.subList(0, 145), null));
+    games.add(game(original, "a comment "));
+    List<String> transposed = new ArrayList<>(original);
+    transposed.set(0, original.get(2));
+    transposed.set(2, original.get(0));
+    games.add(game(transposed, null));
+    for (int i = 0; i < 300; i++) {
+      games.add(game(randomMoves(random, 50 + random.nextInt(200)), null));
+    }
+    // too short to be compared
+    assertNull(game(original.subList(0, 2), null).getSignature());
+
+    DuplicateDetector detector = new DuplicateDetector();
+    for (int i = 0; i < games.size(); i++) {
+      Game game = games.get(i);
+      assertNotNull(game.getSignature());
+      assertArrayEquals(DuplicateDetector.signature(DuplicateDetector.moves(game)),
+          DuplicateDetector.fromBytes(game.getSignature()));
+      assertTrue(detector.add(i, DuplicateDetector.signature(game)));
+    }
+    assertEquals(games.size(), detector.size());
+
+    List<DuplicateDetector.Cluster> clusters = detector.findClusters(DuplicateDetector.DEFAULT_THRESHOLD);
+    assertEquals(1, clusters.size());
+    assertArrayEquals(new long[] { 0, 1, 2, 3, 4 }, clusters.get(0).getIds());
+    assertTrue(clusters.get(0).getMinSimilarity() >= DuplicateDetector.DEFAULT_THRESHOLD);
+    for (DuplicateDetector.Match match : clusters.get(0).getMatches()) {
+      if (match.getId() == 0 && match.getOtherId() == 3) {
+        // only the comments differ
+        assertEquals(1.0, match.getSimilarity(), 1e-9);
+      }
+    }
+
+    // incremental insertion of an import
+    List<String> reimport = new ArrayList<>(original.subList(0, 148));
+    int[] signature = DuplicateDetector.signature(DuplicateDetector.moves(game(reimport, "again")));
+    List<DuplicateDetector.Match> matches = detector.findSimilar(1000, signature, 0.9);
+    assertEquals(5, matches.size());
+    assertEquals(1000, matches.get(0).getId());
+    detector.add(1000, signature);
+    assertEquals(6, detector.findClusters(DuplicateDetector.DEFAULT_THRESHOLD).get(0).size());
+  }
+
+  @Test
+  public void testRecall() {
+    Random random = new Random(247);
+    DuplicateDetector detector = new DuplicateDetector();
+    int above = 0;
+    for (int i = 0; i < 300; i++) {
+      // a few moves changed : similarities around the threshold
+      int[] moves = new int[120];
+      for (int m = 0; m < moves.length; m++) {
+        moves[m] = random.nextInt(722);
+      }
+      int[] changed = moves.clone();
+      int changes = 5 + random.nextInt(5);
+      for (int c = 0; c < changes; c++) {
+        changed[random.nextInt(changed.length)] = 722 + c;
+      }
+      int[] signature = DuplicateDetector.signature(moves);
+      int[] other = DuplicateDetector.signature(changed);
+      detector.add(i, signature);
+      if (DuplicateDetector.similarity(signature, other) >= DuplicateDetector.DEFAULT_THRESHOLD) {
+        above++;
+        List<DuplicateDetector.Match> matches = detector.findSimilar(-1, other, DuplicateDetector.DEFAULT_THRESHOLD);
+        assertEquals(1, matches.size());
+        assertEquals(i, matches.get(0).getOtherId());
+      }
+    }
+    // all the pairs above the threshold found
+    assertTrue(above > 100, "pairs above the threshold : " + above);
+  }
+
+  @Test
+  public void testBuild() {
+    Random random = new Random(147);
+    List<Game> games = new ArrayList<>();
+    List<String> first = randomMoves(random, 100);
+    games.add(game(first, null));
+    for (int i = 1; i < 2000; i++) {
+      games.add(game(randomMoves(random, 30 + random.nextInt(100)), null));
+    }
+    games.add(game(first, "copy"));
+    DuplicateDetector detector = DuplicateDetector.build(games);
+    assertEquals(2001, detector.size());
+    List<DuplicateDetector.Match> pairs = detector.findPairs(DuplicateDetector.DEFAULT_THRESHOLD);
+    assertEquals(1, pairs.size());
+    assertEquals(1.0, pairs.get(0).getSimilarity(), 1e-9);
+  }
+}
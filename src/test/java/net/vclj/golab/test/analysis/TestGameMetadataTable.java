@@ -0,0 +1,106 @@
+package net.vclj.golab.test.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.analysis.GameMetadataTable;
+import net.vclj.golab.analysis.GameMetadataTable.Column;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.SgfResult;
+import net.vclj.golab.service.GameMapper;
+
+public class TestGameMetadataTable {
+  private static Map<String, String> header(String black, String white, String date, String komi, String result) {
+    Map<String, String> rtrn = new HashMap<>();
+    rtrn.put("PB", black);
+    rtrn.put("PW", white);
+    rtrn.put("DT", date);
+    rtrn.put("KM", komi);
+    rtrn.put("RE", result);
+    rtrn.put("EV", "Kisei");
+    return rtrn;
+  }
+
+  @Test
+  public void testQueries() {
+    GameMetadataTable.Builder builder = new GameMetadataTable.Builder();
+    builder.add(header("Honinbo Shusaku", "Gennan Inseki", "1846-09-11", null, "B+2"), 325, 1);
+    builder.add(header("Honinbo Shusaku", "Ota Yuzo", "1853", null, "W+R"), 200, 2);
+    builder.add(header("Go Seigen", "Honinbo Shusaku", "1933-10-16", "6.5", "W+R"), 250, 3);
+    builder.add(header("Go Seigen", "Kitani Minoru", "1933-10-16,17", "6.5", "B+R"), 150, 4);
+    builder.add(GameMapper.toEntity(SgfParser.parse("(;GM[1]SZ[9]KM[7]RE[0];B[ee];W[cc];B[gg])")));
+    GameMetadataTable table = builder.build();
+    assertEquals(5, table.size());
+
+    assertEquals(3, table.query().whereEquals(Column.PLAYER, "Honinbo Shusaku").count());
+    assertEquals(0, table.query().whereEquals(Column.PLAYER, "Cho Chikun").count());
+    assertEquals(2, table.query().where(Column.YEAR, year -> year == 1933).count());
+    assertEquals(3, table.query().whereKomi(komi -> komi > 6).count());
+    assertEquals(1, table.query().where(Column.BOARD_SIZE, size -> size == 9).count());
+
+    List<GameMetadataTable.Group> all = table.query().run();
+    assertEquals(1, all.size());
+    assertEquals(5, all.get(0).getCount());
+    assertEquals(1, all.get(0).getDraws());
+    assertEquals(0.5, all.get(0).getBlackWinRate(), 1e-9);
+    assertEquals((325 + 200 + 250 + 150 + 3) / 5.0, all.get(0).getAverageMoves(), 1e-9);
+
+    List<GameMetadataTable.Group> byPlayer = table.query().where(Column.BOARD_SIZE, size -> size == 19)
+        .groupBy(Column.PLAYER).run();
+    assertEquals("Honinbo Shusaku", byPlayer.get(0).getKey(0));
+    assertEquals(3, byPlayer.get(0).getCount());
+    assertEquals("Go Seigen", byPlayer.get(1).getKey(0));
+    assertEquals(2, byPlayer.get(1).getCount());
+    assertEquals(5, byPlayer.size());
+
+    List<GameMetadataTable.Group> byKomi = table.query().groupBy(Column.KOMI, Column.WINNER).run();
+    assertEquals(5, byKomi.size());
+    int unknownKomi = 0;
+    for (GameMetadataTable.Group group : byKomi) {
+      if (Double.isNaN((Double) group.getKey(0))) {
+        unknownKomi++;
+      } else if (group.getKey(0).equals(7.0)) {
+        assertEquals(SgfResult.Winner.DRAW, group.getKey(1));
+      }
+    }
+    assertEquals(2, unknownKomi);
+    assertThrows(IllegalArgumentException.class, () -> table.query().where(Column.KOMI, komi -> true));
+    assertThrows(IllegalArgumentException.class, () -> table.query().groupBy(Column.PLAYER, Column.PLAYER));
+    assertThrows(IllegalArgumentException.class,
+        () -> table.query().groupBy(Column.MONTH, Column.MONTH, Column.MONTH, Column.MONTH));
+  }
+
+  @Test
+  public void testParallelChunks() {
+    // more rows than a chunk, and builders merged with their own dictionaries
+    GameMetadataTable.Builder first = new GameMetadataTable.Builder();
+    GameMetadataTable.Builder second = new GameMetadataTable.Builder();
+    for (int i = 0; i < 200000; i++) {
+      GameMetadataTable.Builder builder = i % 3 == 0 ? first : second;
+      builder.add(header("P" + (i % 100), "P" + (i % 7), (1990 + i % 30) + "-01-01", "6.5",
+          i % 2 == 0 ? "B+R" : "W+R"), i % 300, i);
+    }
+    GameMetadataTable table = first.addAll(second).build();
+    assertEquals(200000, table.size());
+    List<GameMetadataTable.Group> byYear = table.query().groupBy(Column.YEAR).run();
+    assertEquals(30, byYear.size());
+    long total = 0;
+    for (GameMetadataTable.Group group : byYear) {
+      total += group.getCount();
+      assertEquals(group.getCount(), group.getBlackWins() + group.getWhiteWins());
+    }
+    assertEquals(200000, total);
+
+    // the games of P5 have odd numbers, all won by white
+    List<GameMetadataTable.Group> p5 = table.query().whereEquals(Column.BLACK_PLAYER, "P5")
+        .groupBy(Column.BLACK_PLAYER, Column.WINNER).run();
+    assertEquals(1, p5.size());
+    assertEquals(SgfResult.Winner.WHITE, p5.get(0).getKey(1));
+    assertEquals(2000, p5.get(0).getCount());
+  }
+}
@@ -0,0 +1,140 @@
+package net.vclj.golab.test.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.analysis.OpeningTrie;
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.service.GameMapper;
+
+public class TestOpeningTrie {
+  private Path dir;
+
+  @BeforeEach
+  public void createDir() throws IOException {
+    dir = Files.createTempDirectory("trie");
+  }
+
+  @AfterEach
+  public void deleteDir() throws IOException {
+    Files.deleteIfExists(dir.resolve("openings.trie"));
+    Files.deleteIfExists(dir);
+  }
+
+  private static Game game(String moves, String result) {
+    return GameMapper.toEntity(SgfParser.parse("(;GM[1]SZ[19]RE[" + result + "]" + moves + ")"));
+  }
+
+  private static int move(String color, String point) {
+    return OpeningTrie.move(color, CoordinateCodec.sgfToLocation(point, 19));
+  }
+
+  @Test
+  public void testQueries() {
+    OpeningTrie trie = new OpeningTrie(19, 4, false);
+    assertTrue(trie.add(game(";B[pd];W[dp];B[pq];W[dd]", "B+R")));
+    assertTrue(trie.add(game(";B[pd];W[dp];B[qp];W[dd]", "W+2.5")));
+    assertTrue(trie.add(game(";B[pd];W[dd];B[pq]", "B+T")));
+    assertTrue(trie.add(game(";B[pd];W[dp];B[pq];W[dc];B[ce]", "?")));
+    assertFalse(trie.add(game("", "B+R")));
+    assertFalse(trie.add(GameMapper.toEntity(SgfParser.parse("(;GM[1]SZ[9];B[ee])"))));
+    assertFalse(trie.add(GameMapper.toEntity(SgfParser.parse("(;GM[1]SZ[19]AB[dd][pp];W[pd])"))));
+
+    assertEquals(4, trie.getGameCount());
+    assertEquals(4, trie.getCount(move("B", "pd")));
+    assertEquals(0, trie.getCount(move("B", "dd")));
+
+    List<OpeningTrie.Continuation> next = trie.getContinuations(move("B", "pd"));
+    assertEquals(2, next.size());
+    assertEquals(move("W", "dp"), next.get(0).getMove());
+    assertEquals(3, next.get(0).getCount());
+    assertEquals(1, next.get(0).getBlackWins());
+    assertEquals(1, next.get(0).getWhiteWins());
+    assertEquals(0.5, next.get(0).getBlackWinRate(), 1e-9);
+    assertEquals("W", next.get(1).getColor());
+    assertEquals(1.0, next.get(1).getBlackWinRate(), 1e-9);
+
+    // the sequences are cut at 4 moves
+    assertEquals(1, trie.getCount(move("B", "pd"), move("W", "dp"), move("B", "pq"), move("W", "dc")));
+    assertTrue(trie.getContinuations(move("B", "pd"), move("W", "dp"), move("B", "pq"), move("W", "dc")).isEmpty());
+    assertArrayEquals(new long[] { 0 }, trie.getExamples(5, move("B", "pd")));
+  }
+
+  @Test
+  public void testSymmetries() {
+    OpeningTrie trie = new OpeningTrie(19, 10, true);
+    // the same opening in the four corners, and mirrored
+    trie.add(game(";B[pd];W[dp]", "B+R"));
+    trie.add(game(";B[dp];W[pd]", "B+R"));
+    trie.add(game(";B[pp];W[dd]", "W+R"));
+    trie.add(game(";B[dp];W[dd]", "W+R"));
+    assertEquals(4, trie.getCount(move("B", "dd")));
+
+    // continuations are given in the orientation of the query : three games
+    // played the diagonal corner, one an adjacent corner
+    List<OpeningTrie.Continuation> next = trie.getContinuations(move("B", "pd"));
+    assertEquals(2, next.size());
+    assertEquals(move("W", "dp"), next.get(0).getMove());
+    assertEquals(3, next.get(0).getCount());
+    assertEquals(2, next.get(0).getBlackWins());
+    assertEquals(1, next.get(1).getCount());
+    assertTrue(next.get(1).getMove() == move("W", "dd") || next.get(1).getMove() == move("W", "pp"));
+    assertEquals(3, trie.getCount(move("B", "pd"), move("W", "dp")));
+    assertEquals(3, trie.getCount(move("B", "dd"), move("W", "pp")));
+    assertEquals(1, trie.getCount(move("B", "dd"), move("W", "dp")));
+  }
+
+  @Test
+  public void testParallelBuildAndSave() {
+    Random random = new Random(43);
+    String[] points = { "pd", "dp", "pp", "dd", "qc", "cq", "qq", "cc", "pq", "qp", "dq", "qd" };
+    List<Game> games = new ArrayList<>();
+    for (int g = 0; g < 2000; g++) {
+      StringBuilder moves = new StringBuilder();
+      for (int m = 0; m < 6; m++) {
+        moves.append(m % 2 == 0 ? ";B[" : ";W[").append(points[random.nextInt(points.length)]).append(']');
+      }
+      games.add(game(moves.toString(), random.nextBoolean() ? "B+R" : "W+R"));
+    }
+    OpeningTrie sequential = new OpeningTrie(19, 6, true);
+    for (Game game : games) {
+      sequential.add(game);
+    }
+    OpeningTrie parallel = OpeningTrie.build(games, 19, 6, true);
+    assertEquals(2000, parallel.getGameCount());
+    assertEquals(sequential.size(), parallel.size());
+    int[] query = { move("B", "pd"), move("W", "dd") };
+    assertEquals(sequential.getCount(query), parallel.getCount(query));
+    assertEquals(sequential.getContinuations(query).toString(), parallel.getContinuations(query).toString());
+
+    // the openings copied out of the games
+    OpeningTrie.Opening opening = OpeningTrie.opening(games.get(0), 19, 6);
+    assertEquals(6, opening.getLength());
+    assertNull(OpeningTrie.opening(games.get(0), 9, 6));
+    assertThrows(IllegalArgumentException.class, () -> new OpeningTrie(19, 4, true).add(opening));
+
+    Path path = dir.resolve("openings.trie");
+    parallel.save(path);
+    OpeningTrie loaded = OpeningTrie.load(path);
+    assertTrue(loaded.isCanonical());
+    assertEquals(parallel.size(), loaded.size());
+    assertEquals(parallel.getContinuations(query).toString(), loaded.getContinuations(query).toString());
+    assertNull(OpeningTrie.load(dir.resolve("none")));
+
+    // incremental updates after loading
+    loaded.add(games.get(0));
+    assertEquals(2001, loaded.getGameCount());
+  }
+}
@@ -0,0 +1,94 @@
+package net.vclj.golab.test.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.analysis.RatingEngine;
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.service.GameMapper;
+
+public class TestRatingEngine {
+  private static Game game(String black, String white, LocalDate date, String result) {
+    return GameMapper.toEntity(SgfParser.parse("(;GM[1]SZ[19]PB[" + black + "]PW[" + white + "]DT[" + date + "]RE["
+        + result + "];B[pd])"));
+  }
+
+  @Test
+  public void testRatings() {
+    RatingEngine engine = new RatingEngine(20, 30);
+    LocalDate day = LocalDate.of(2020, 3, 1);
+    assertTrue(engine.add(game("Alice", "Bob", day, "B+R")));
+    assertEquals(1510, engine.getRating("Alice"), 1e-9);
+    assertEquals(1490, engine.getRating("Bob"), 1e-9);
+    assertFalse(engine.add(game("Alice", "Bob", day, "?")));
+    assertFalse(engine.add(game("Alice", "Alice", day, "B+R")));
+    assertTrue(Double.isNaN(engine.getRating("Carol")));
+
+    assertTrue(engine.add(game("Bob", "Alice", day.plusDays(10), "B+3.5")));
+    assertEquals(1500, engine.getRating("Alice", day.minusDays(1)), 1e-9);
+    assertEquals(1510, engine.getRating("Alice", day), 1e-9);
+    assertEquals(1510, engine.getRating("Alice", day.plusDays(9)), 1e-9);
+    double alice = engine.getRating("Alice");
+    assertTrue(alice < 1510);
+    assertEquals(2, engine.getGameCount("Alice"));
+
+    // a late game within the window : Bob's win is replayed before his second
+    assertTrue(engine.add(game("Bob", "Alice", day.plusDays(5), "B+R")));
+    assertEquals(3, engine.getGameCount());
+    assertEquals(1510, engine.getRating("Alice", day.plusDays(4)), 1e-6);
+    assertTrue(engine.getRating("Alice", day.plusDays(5)) < 1510);
+    assertTrue(engine.getRating("Alice") < alice);
+
+    // too old : pending until recomputed
+    double bob = engine.getRating("Bob");
+    assertTrue(engine.add(game("Bob", "Alice", day.minusDays(100), "B+R")));
+    assertEquals(1, engine.getPendingCount());
+    assertEquals(bob, engine.getRating("Bob"), 1e-9);
+    engine.recompute();
+    assertEquals(0, engine.getPendingCount());
+    assertEquals(4, engine.getGameCount());
+    assertEquals(4, engine.getGameCount("Bob"));
+    assertEquals(1510, engine.getRating("Bob", day.minusDays(100)), 1e-6);
+  }
+
+  @Test
+  public void testIncrementalMatchesRecompute() {
+    Random random = new Random(45);
+    List<Game> games = new ArrayList<>();
+    LocalDate start = LocalDate.of(2000, 1, 1);
+    for (int i = 0; i < 2000; i++) {
+      int black = random.nextInt(50);
+      int white = (black + 1 + random.nextInt(49)) % 50;
+      games.add(game("P" + black, "P" + white, start.plusDays(i), random.nextInt(3) == 0 ? "W+R" : "B+R"));
+    }
+    RatingEngine full = RatingEngine.build(games, 16, 10000);
+    assertEquals(2000, full.getGameCount());
+    assertEquals(50, full.getPlayerCount());
+
+    // arrival out of order, by a few days at most
+    List<Game> shuffled = new ArrayList<>(games);
+    for (int i = 0; i + 10 <= shuffled.size(); i += 10) {
+      Collections.shuffle(shuffled.subList(i, i + 10), random);
+    }
+    RatingEngine incremental = new RatingEngine(16, 20);
+    for (Game game : shuffled) {
+      incremental.add(game);
+    }
+    assertEquals(0, incremental.getPendingCount());
+    for (int p = 0; p < 50; p++) {
+      String player = "P" + p;
+      assertEquals(full.getRating(player), incremental.getRating(player), 1e-2);
+      assertEquals(full.getRating(player, start.plusDays(1000)), incremental.getRating(player, start.plusDays(1000)),
+          1e-2);
+      assertEquals(full.getGameCount(player), incremental.getGameCount(player));
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package net.vclj.golab.test.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import net.vclj.golab.analysis.CommentSearch;
+import net.vclj.golab.analysis.RepositoryIndex;
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.repository.GameRepository;
+import net.vclj.golab.service.GameImportService;
+
+public class TestRepositoryIndex {
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRebuild() {
+    GameRepository repository = mock(GameRepository.class);
+    GameImportService importService = mock(GameImportService.class);
+    PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+    CommentSearch search = new CommentSearch(repository, importService, transactionManager);
+    ArgumentCaptor<Consumer<Game>> listener = ArgumentCaptor.forClass(Consumer.class);
+    verify(importService).addListener(listener.capture());
+
+    Game first = game(1, "first ladder");
+    Game second = game(2, "second ladder");
+    Game imported = game(3, "imported ladder");
+    listener.getValue().accept(first);
+    assertEquals("[1/0]", search.search("ladder").toString());
+
+    // two pages, a game imported while the first is read, another one read
+    // and imported
+    when(repository.findByIdGreaterThan(eq(Long.MIN_VALUE), any(Pageable.class))).thenAnswer(invocation -> {
+      listener.getValue().accept(imported);
+      listener.getValue().accept(second);
+      return Arrays.asList(first);
+    });
+    when(repository.findByIdGreaterThan(eq(1L), any(Pageable.class))).thenReturn(Arrays.asList(second));
+    when(repository.findByIdGreaterThan(eq(2L), any(Pageable.class))).thenReturn(Collections.emptyList());
+    search.rebuild();
+    assertEquals("[1/0, 2/0, 3/0]", search.search("ladder").toString());
+    assertEquals(3, search.getIndex().getDocumentCount());
+
+    // each page read in its own read-only transaction
+    ArgumentCaptor<TransactionDefinition> definitions = ArgumentCaptor.forClass(TransactionDefinition.class);
+    verify(transactionManager, times(3)).getTransaction(definitions.capture());
+    for (TransactionDefinition definition : definitions.getAllValues()) {
+      assertTrue(definition.isReadOnly());
+    }
+    ArgumentCaptor<Pageable> pages = ArgumentCaptor.forClass(Pageable.class);
+    verify(repository, times(3)).findByIdGreaterThan(anyLong(), pages.capture());
+    assertEquals(RepositoryIndex.PAGE_SIZE, pages.getValue().getPageSize());
+
+    // a failed rebuild keeps the index
+    when(repository.findByIdGreaterThan(eq(Long.MIN_VALUE), any(Pageable.class)))
+        .thenThrow(new IllegalStateException("down"));
+    assertThrows(IllegalStateException.class, search::rebuild);
+    assertEquals(3, search.getIndex().getDocumentCount());
+    listener.getValue().accept(game(4, "after the failure"));
+    assertEquals(4, search.getIndex().getDocumentCount());
+  }
+
+  @Test
+  public void testRebuildOrder() {
+    GameRepository repository = mock(GameRepository.class);
+    PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+    List<Game> games = new ArrayList<>();
+    StringBuilder expected = new StringBuilder();
+    for (int id = 1; id <= 2000; id++) {
+      games.add(game(id, "ladder " + id));
+      if (id <= CommentSearch.DEFAULT_LIMIT) {
+        expected.append(expected.length() == 0 ? "[" : ", ").append(id).append("/0");
+      }
+    }
+    when(repository.findByIdGreaterThan(eq(Long.MIN_VALUE), any(Pageable.class))).thenReturn(games);
+    when(repository.findByIdGreaterThan(eq(2000L), any(Pageable.class))).thenReturn(Collections.emptyList());
+    CommentSearch search = new CommentSearch(repository, mock(GameImportService.class), transactionManager);
+    search.rebuild();
+    // the hits in the order of the games read, as for games added in turn
+    assertEquals(expected.append(']').toString(), search.search("ladder").toString());
+  }
+
+  private static Game game(long id, String comment) {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("C", comment);
+    Game rtrn = mock(Game.class);
+    when(rtrn.getId()).thenReturn(id);
+    when(rtrn.getProperties()).thenReturn(properties);
+    return rtrn;
+  }
+}
@@ -0,0 +1,134 @@
+package net.vclj.golab.test.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.analysis.TimeUsage;
+import net.vclj.golab.format.SgfArchive;
+import net.vclj.golab.format.SgfArchiveWriter;
+import net.vclj.golab.format.SgfCollectionIndex;
+
+public class TestTimeUsage {
+  // the clocks of the variation are not those of the game
+  private static final String BYO_YOMI = "(;GM[1]SZ[19]TM[60]OT[5x30 byo-yomi]BR[3d?]WR[2k]RE[B+T]"
+      + ";B[pd]BL[55];W[dp]WL[50];B[pp]BL[5];W[dd]WL[28]OW[5];B[qc]BL[25]OB[4];W[cc]WL[3]OW[1]"
+      + "(;B[qd]BL[20]OB[4];W[dc]WL[2]OW[1])(;B[aa]BL[1]OB[1]))";
+  private static final String CANADIAN = "(;GM[1]SZ[19]TM[0]OT[25/300 Canadian]BR[2k]WR[3d]RE[W+R]"
+      + ";B[aa]BL[290]OB[24];W[bb]WL[280]OW[24];B[cc]BL[250]OB[23];W[dd]WL[30]OW[23];B[ee]BL[295]OB[25])";
+  private static final String NO_CLOCK = "(;GM[1]SZ[19]BR[1d]WR[1d];B[aa];W[bb])";
+
+  private Path dir;
+
+  @BeforeEach
+  public void createDirectory() throws IOException {
+    dir = Files.createTempDirectory("golab-time");
+  }
+
+  @AfterEach
+  public void deleteDirectory() throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void testExtract() {
+    List<TimeUsage> games = TimeUsage.extract(BYO_YOMI + "\n" + CANADIAN + NO_CLOCK);
+    assertEquals(3, games.size());
+
+    TimeUsage byoYomi = games.get(0);
+    assertEquals(8, byoYomi.getMoveCount());
+    assertEquals(60.0, byoYomi.getMainTime());
+    assertEquals(TimeUsage.Overtime.BYO_YOMI, byoYomi.getOvertime());
+    assertEquals(5, byoYomi.getPeriods());
+    assertEquals(30.0, byoYomi.getPeriodTime());
+    assertEquals("3d?", byoYomi.getBlackRank());
+    TimeUsage.Series black = byoYomi.getBlack();
+    assertArrayEquals(new int[] { 0, 2, 4, 6 }, black.getMoves());
+    assertArrayEquals(new float[] { 55, 5, 25, 20 }, black.getTimeLeft());
+    // into byo-yomi with one period used
+    assertArrayEquals(new float[] { 5, 50, 40, 10 }, black.getTimeSpent());
+    assertArrayEquals(new int[] { -1, -1, 4, 4 }, black.getPeriodsLeft());
+    assertFalse(black.isByoYomi(1));
+    assertTrue(black.isByoYomi(2));
+    // 5 seconds left of main time, but the periods are still there
+    assertEquals(0, byoYomi.getTroubleCount(black, TimeUsage.DEFAULT_TROUBLE_SECONDS));
+    TimeUsage.Series white = byoYomi.getWhite();
+    assertArrayEquals(new float[] { 10, 52, 147, 28 }, white.getTimeSpent());
+    assertArrayEquals(new int[] { -1, 5, 1, 1 }, white.getPeriodsLeft());
+    assertEquals(2, byoYomi.getTroubleCount(white, TimeUsage.DEFAULT_TROUBLE_SECONDS));
+    assertTrue(byoYomi.isInTimeTrouble(white, 2, TimeUsage.DEFAULT_TROUBLE_SECONDS));
+
+    TimeUsage canadian = games.get(1);
+    assertEquals(TimeUsage.Overtime.CANADIAN, canadian.getOvertime());
+    assertEquals(25, canadian.getPeriods());
+    // a new period on the last move
+    assertArrayEquals(new float[] { 10, 40, 5 }, canadian.getBlack().getTimeSpent());
+    assertArrayEquals(new float[] { 20, 250 }, canadian.getWhite().getTimeSpent());
+    assertEquals(0, canadian.getTroubleCount(canadian.getBlack(), TimeUsage.DEFAULT_TROUBLE_SECONDS));
+    assertEquals(1, canadian.getTroubleCount(canadian.getWhite(), TimeUsage.DEFAULT_TROUBLE_SECONDS));
+
+    TimeUsage noClock = games.get(2);
+    assertEquals(TimeUsage.Overtime.NONE, noClock.getOvertime());
+    assertTrue(Float.isNaN(noClock.getBlack().getTimeLeft()[0]));
+    assertTrue(Float.isNaN(noClock.getWhite().getTimeSpent()[0]));
+
+    // increments are not understood
+    TimeUsage fischer = TimeUsage.extract("(;OT[fischer 10];B[aa]BL[100];B[bb]BL[105];B[cc]BL[95])").get(0);
+    assertEquals(TimeUsage.Overtime.OTHER, fischer.getOvertime());
+    assertTrue(Float.isNaN(fischer.getBlack().getTimeSpent()[1]));
+    assertEquals(10f, fischer.getBlack().getTimeSpent()[2]);
+  }
+
+  @Test
+  public void testAggregate() throws IOException {
+    Path archivePath = dir.resolve("games.sgfz");
+    Path collectionPath = dir.resolve("games.sgf");
+    StringBuilder collection = new StringBuilder();
+    try (SgfArchiveWriter writer = SgfArchiveWriter.create(archivePath)) {
+      for (int i = 0; i < 500; i++) {
+        String game = i % 3 == 0 ? BYO_YOMI : i % 3 == 1 ? CANADIAN : NO_CLOCK;
+        writer.add(game);
+        collection.append(game).append('\n');
+      }
+    }
+    Files.write(collectionPath, collection.toString().getBytes(StandardCharsets.UTF_8));
+
+    TimeUsage.Aggregate aggregate;
+    try (SgfArchive archive = SgfArchive.open(archivePath)) {
+      aggregate = TimeUsage.aggregate(archive, TimeUsage.DEFAULT_TROUBLE_SECONDS);
+    }
+    // 167 byo-yomi games, 167 Canadian ones, the others without clock
+    List<TimeUsage.RankStats> ranks = aggregate.getRanks();
+    assertEquals(2, ranks.size());
+    TimeUsage.RankStats kyu = ranks.get(0);
+    assertEquals("2k", kyu.getRank());
+    assertEquals(334, kyu.getGames());
+    assertEquals(167, kyu.getTroubleGames());
+    assertEquals(167, kyu.getTimeLosses());
+    assertEquals(0.5, kyu.getTroubleRate(), 1e-9);
+    assertEquals(167 * (4 + 3), kyu.getMoves());
+    assertEquals((10 + 52 + 147 + 28 + 10 + 40 + 5) / 7.0, kyu.getAverageTimeSpent(), 1e-6);
+    TimeUsage.RankStats dan = aggregate.getRank("3d");
+    assertSame(dan, ranks.get(1));
+    assertEquals(334, dan.getGames());
+    assertEquals(167, dan.getTroubleGames());
+    assertEquals(0, dan.getTimeLosses());
+    assertEquals(167, dan.getTroubleMoves());
+
+    TimeUsage.Aggregate fromCollection = TimeUsage.aggregate(SgfCollectionIndex.open(collectionPath),
+        TimeUsage.DEFAULT_TROUBLE_SECONDS);
+    assertEquals(ranks.toString(), fromCollection.getRanks().toString());
+  }
+}
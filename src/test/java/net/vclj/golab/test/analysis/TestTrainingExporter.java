@@ -0,0 +1,184 @@
+package net.vclj.golab.test.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.analysis.TrainingExporter;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.store.GameStore;
+import net.vclj.golab.store.GameStoreWriter;
+
+public class TestTrainingExporter {
+  // black takes the ko at bb, white cannot take back and plays elsewhere
+  private static final String KO = "(;GM[1]SZ[9]RE[B+R]AB[ba][ab][bc]AW[ca][db][cc][bb];B[cb];W[ee];B[bb])";
+  private static final String PASS = "(;GM[1]SZ[9]RE[W+1.5];B[ee];W[])";
+  private static final String OTHER_SIZE = "(;GM[1]SZ[19];B[pd];W[dp])";
+
+  private Path dir;
+
+  @BeforeEach
+  public void createDirectory() throws IOException {
+    dir = Files.createTempDirectory("golab-training");
+  }
+
+  @AfterEach
+  public void deleteDirectory() throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  private static List<SgfGame> games() {
+    List<SgfGame> rtrn = new ArrayList<>();
+    rtrn.add(SgfParser.parse(KO));
+    rtrn.add(SgfParser.parse(OTHER_SIZE));
+    rtrn.add(SgfParser.parse(PASS));
+    return rtrn;
+  }
+
+  @Test
+  public void testExport() throws IOException {
+    TrainingExporter exporter = new TrainingExporter(9, false);
+    Path file = dir.resolve("train.bin");
+    assertEquals(5, exporter.export(games(), file));
+
+    int size = exporter.getRecordSize();
+    assertEquals(5 * 81 + 12, size);
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+    assertEquals(TrainingExporter.HEADER_SIZE + 5 * size, data.capacity());
+    assertEquals(TrainingExporter.MAGIC, data.getInt(0));
+    assertEquals(TrainingExporter.VERSION, data.getInt(4));
+    assertEquals(9, data.getInt(12));
+    assertEquals(size, data.getInt(20));
+    assertEquals(5, data.getLong(24));
+    assertEquals(1, data.getInt(32));
+    assertEquals(3, data.getInt(36));
+    byte[] layout = new byte[data.getShort(40)];
+    data.position(42);
+    data.get(layout);
+    assertEquals(TrainingExporter.LAYOUT, new String(layout, "US-ASCII"));
+
+    // after the ko capture : white to move, white stone bb taken, black cb in
+    // atari, white cannot play at bb
+    int record = TrainingExporter.HEADER_SIZE + size;
+    int bb = 9 + 1;
+    int cb = 9 + 2;
+    int ca = 2;
+    assertEquals(0, data.get(record + bb));
+    assertEquals(1, data.get(record + ca));
+    assertEquals(1, data.get(record + 81 + cb));
+    assertEquals(1, data.get(record + 2 * 81 + bb));
+    assertEquals(1, data.get(record + 3 * 81 + cb));
+    assertEquals(0, data.get(record + 3 * 81 + bb));
+    assertEquals(1, data.get(record + 4 * 81 + bb));
+    int ko = 0;
+    for (int i = 0; i < 81; i++) {
+      ko += data.get(record + 4 * 81 + i);
+    }
+    assertEquals(1, ko);
+    int fields = record + 5 * 81;
+    assertEquals(0, data.getInt(fields));
+    assertEquals(1, data.getShort(fields + 4));
+    assertEquals(4 * 9 + 4, data.getShort(fields + 6));
+    assertEquals(1, data.get(fields + 8));
+    assertEquals(-1, data.get(fields + 9));
+
+    // before the capture : no ko, the white stone bb has one liberty, black
+    // to move wins
+    assertEquals(0, data.get(TrainingExporter.HEADER_SIZE + 4 * 81 + bb));
+    assertEquals(1, data.get(TrainingExporter.HEADER_SIZE + 3 * 81 + bb));
+    assertEquals(1, data.get(TrainingExporter.HEADER_SIZE + 5 * 81 + 9));
+    // the white ko threat ends the ko
+    assertEquals(0, data.get(TrainingExporter.HEADER_SIZE + 2 * size + 4 * 81 + bb));
+
+    // the pass game, third of the source : white wins and passes
+    fields = TrainingExporter.HEADER_SIZE + 4 * size + 5 * 81;
+    assertEquals(2, data.getInt(fields));
+    assertEquals(81, data.getShort(fields + 6));
+    assertEquals(1, data.get(fields + 8));
+    assertEquals(1, data.get(fields + 9));
+
+    // same records from a store
+    Path base = dir.resolve("games");
+    try (GameStoreWriter writer = GameStoreWriter.open(base)) {
+      for (SgfGame game : games()) {
+        writer.append(game);
+      }
+    }
+    Path fromStore = dir.resolve("store.bin");
+    try (GameStore store = GameStore.open(base)) {
+      assertEquals(5, exporter.export(store, fromStore));
+    }
+    assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(fromStore));
+
+    // a failed export leaves neither the destination nor the temporary file
+    Path taken = dir.resolve("taken.bin");
+    Files.createDirectories(taken.resolve("child"));
+    assertThrows(RuntimeException.class, () -> exporter.export(games(), taken));
+    assertTrue(Files.isDirectory(taken));
+    assertFalse(Files.exists(dir.resolve("taken.bin.tmp")));
+  }
+
+  @Test
+  public void testSymmetries() throws IOException {
+    TrainingExporter plain = new TrainingExporter(9, false);
+    TrainingExporter augmented = new TrainingExporter(9, true);
+    Path plainFile = dir.resolve("plain.bin");
+    Path augmentedFile = dir.resolve("augmented.bin");
+    List<SgfGame> games = games();
+    assertEquals(5, plain.export(games, plainFile));
+    assertEquals(40, augmented.export(games, augmentedFile));
+
+    int size = plain.getRecordSize();
+    ByteBuffer original = ByteBuffer.wrap(Files.readAllBytes(plainFile));
+    ByteBuffer symmetric = ByteBuffer.wrap(Files.readAllBytes(augmentedFile));
+    assertEquals(8, symmetric.getInt(32));
+    for (int r = 0; r < 5; r++) {
+      int from = TrainingExporter.HEADER_SIZE + r * size;
+      for (int s = 0; s < 8; s++) {
+        int to = TrainingExporter.HEADER_SIZE + (r * 8 + s) * size;
+        for (int plane = 0; plane < TrainingExporter.PLANES; plane++) {
+          for (int i = 0; i < 81; i++) {
+            assertEquals(original.get(from + plane * 81 + i),
+                symmetric.get(to + plane * 81 + transform(s, i)));
+          }
+        }
+        int next = original.getShort(from + 5 * 81 + 6);
+        assertEquals(next == 81 ? 81 : transform(s, next), symmetric.getShort(to + 5 * 81 + 6));
+        assertEquals(original.getInt(from + 5 * 81), symmetric.getInt(to + 5 * 81));
+        assertEquals(original.get(from + 5 * 81 + 9), symmetric.get(to + 5 * 81 + 9));
+        assertEquals(s, symmetric.get(to + 5 * 81 + 10));
+      }
+    }
+  }
+
+  private static int transform(int s, int index) {
+    int x = index % 9;
+    int y = index / 9;
+    if ((s & 1) != 0) {
+      int swap = x;
+      x = y;
+      y = swap;
+    }
+    if ((s & 2) != 0) {
+      x = 8 - x;
+    }
+    if ((s & 4) != 0) {
+      y = 8 - y;
+    }
+    return y * 9 + x;
+  }
+}
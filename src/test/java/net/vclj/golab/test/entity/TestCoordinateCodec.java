@@ -0,0 +1,72 @@
+package net.vclj.golab.test.entity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.entity.Location;
+
+public class TestCoordinateCodec {
+
+  @Test
+  public void testSgfPoints() {
+    int point = CoordinateCodec.sgfToPoint("pd");
+    assertEquals(15, CoordinateCodec.pointX(point));
+    assertEquals(3, CoordinateCodec.pointY(point));
+    assertEquals("pd", CoordinateCodec.pointToSgf(point));
+    assertSame(CoordinateCodec.pointToSgf(point), CoordinateCodec.pointToSgf(point));
+
+    int wide = CoordinateCodec.sgfToPoint("AZ");
+    assertEquals(26, CoordinateCodec.pointX(wide));
+    assertEquals(51, CoordinateCodec.pointY(wide));
+    assertEquals(wide, CoordinateCodec.sgfToPoint(new byte[] { 'x', 'A', 'Z' }, 1));
+    assertEquals("AZ", CoordinateCodec.appendSgf(new StringBuilder(), wide).toString());
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      CoordinateCodec.sgfToPoint("a");
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      CoordinateCodec.sgfToPoint("a1");
+    });
+  }
+
+  @Test
+  public void testSgfToLocation() {
+    assertEquals(Location.fromString("Q16", 19), CoordinateCodec.sgfToLocation("pd", 19));
+    assertEquals(Location.fromString("A1", 19), CoordinateCodec.sgfToLocation("as", 19));
+    assertEquals(Location.fromString("T19", 19), CoordinateCodec.sgfToLocation("sa", 19));
+    assertEquals(0, CoordinateCodec.sgfToLocation("tt", 19));
+    assertEquals(0, CoordinateCodec.sgfToLocation("", 19));
+    assertEquals("pd", CoordinateCodec.locationToSgf(301, 19));
+    assertEquals("tt", CoordinateCodec.locationToSgf(CoordinateCodec.sgfToLocation("tt", 21), 21));
+    assertThrows(IllegalArgumentException.class, () -> {
+      CoordinateCodec.sgfToLocation("ta", 19);
+    });
+
+    for (int size = 1; size <= CoordinateCodec.MAX_SGF_BOARD_SIZE; size++) {
+      for (int location = 1; location <= size * size; location++) {
+        int point = CoordinateCodec.locationToPoint(location, size);
+        assertEquals(location, CoordinateCodec.pointToLocation(point, size));
+        assertEquals(location, CoordinateCodec.sgfToLocation(CoordinateCodec.pointToSgf(point), size));
+      }
+    }
+  }
+
+  @Test
+  public void testGtp() {
+    assertEquals(301, CoordinateCodec.gtpToLocation("Q16", 19));
+    assertEquals(301, CoordinateCodec.gtpToLocation("q16", 19));
+    assertEquals("Q16", CoordinateCodec.locationToGtp(301, 19));
+    assertEquals("CY99", CoordinateCodec.appendGtp(new StringBuilder(), 9801, 99).toString());
+    assertThrows(IllegalArgumentException.class, () -> {
+      CoordinateCodec.gtpToLocation("I5", 19);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      CoordinateCodec.gtpToLocation("A123", 99);
+    });
+    for (int location = 1; location <= 99 * 99; location++) {
+      assertEquals(location, CoordinateCodec.gtpToLocation(CoordinateCodec.locationToGtp(location, 99), 99));
+    }
+  }
+}
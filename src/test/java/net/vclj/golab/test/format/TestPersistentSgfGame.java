@@ -0,0 +1,139 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.PersistentSgfGame;
+import net.vclj.golab.format.PersistentSgfNode;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameHistory;
+import net.vclj.golab.format.SgfParser;
+
+public class TestPersistentSgfGame {
+  private static final String SGF = "(;GM[1]SZ[9]PB[Black];B[ee];W[cc](;B[gg]C[main];W[gc])(;B[cg]))";
+
+  @Test
+  public void testEdits() {
+    PersistentSgfGame game = PersistentSgfGame.of(SgfParser.parse(SGF));
+    assertEquals("Black", game.getProperty("PB"));
+    assertEquals(6, game.size());
+    assertEquals("gg", game.getNode(0, 0, 0).getMoveString());
+    assertEquals("cg", game.getNode(0, 0, 1).getMoveString());
+
+    PersistentSgfGame commented = game.withNodeProperty(new int[] { 0, 0, 1 }, "C", "variation");
+    assertNull(game.getNode(0, 0, 1).getProperty("C"));
+    assertEquals("variation", commented.getNode(0, 0, 1).getProperty("C"));
+    // only the path to the edited node is copied
+    assertNotSame(game.getRootNode(), commented.getRootNode());
+    assertNotSame(game.getNode(0, 0), commented.getNode(0, 0));
+    assertSame(game.getNode(0, 0, 0), commented.getNode(0, 0, 0));
+
+    PersistentSgfGame extended = commented.withChild(new int[] { 0, 0, 0, 0 }, PersistentSgfNode.move("B", "dd"));
+    assertEquals(7, extended.size());
+    assertEquals(6, commented.size());
+    assertSame(commented.getNode(0, 0, 1), extended.getNode(0, 0, 1));
+
+    PersistentSgfGame pruned = extended.withoutNode(0, 0, 0);
+    assertEquals(4, pruned.size());
+    assertEquals("cg", pruned.getNode(0, 0, 0).getMoveString());
+    assertEquals(7, extended.size());
+    assertThrows(IllegalArgumentException.class, () -> pruned.withoutNode());
+
+    assertSame(game, game.withNodeProperty(new int[] { 0 }, "B", "ee"));
+    assertSame(game, game.withoutProperty("XX"));
+    assertEquals("White", game.withProperty("PW", "White").getProperty("PW"));
+    assertEquals("main", game.getNode(0, 0, 0).getProperty("C"));
+    assertNull(game.withoutNodeProperty(new int[] { 0, 0, 0 }, "C").getNode(0, 0, 0).getProperty("C"));
+    assertEquals("main,more",
+        game.withAddedNodeProperty(new int[] { 0, 0, 0 }, "C", "more").getNode(0, 0, 0).getProperty("C"));
+  }
+
+  @Test
+  public void testConversion() {
+    SgfGame original = SgfParser.parse(SGF);
+    SgfGame copy = PersistentSgfGame.of(original).toSgfGame();
+    assertEquals(original.toString(), copy.toString());
+    copy.getRootNode().getNextNode().setProperty("B", "aa");
+    assertEquals("ee", original.getRootNode().getNextNode().getProperty("B"));
+
+    // long lines of play do not recurse
+    StringBuilder sgf = new StringBuilder("(;GM[1]");
+    for (int i = 0; i < 20000; i++) {
+      sgf.append(i % 2 == 0 ? ";B[aa]" : ";W[bb]");
+    }
+    PersistentSgfGame longGame = PersistentSgfGame.of(SgfParser.parse(sgf.append(")").toString()));
+    assertEquals(20001, longGame.size());
+    assertEquals(20001, PersistentSgfGame.of(longGame.toSgfGame()).size());
+  }
+
+  @Test
+  public void testUndo() {
+    SgfGameHistory history = new SgfGameHistory(PersistentSgfGame.EMPTY, 3);
+    assertNull(history.undo());
+    for (int i = 1; i <= 10; i++) {
+      String value = Integer.toString(i);
+      history.update(game -> game.withProperty("GN", value));
+    }
+    assertEquals("10", history.current().getProperty("GN"));
+    assertTrue(history.getUndoCount() >= 3);
+    assertEquals("9", history.undo().getProperty("GN"));
+    assertEquals("8", history.undo().getProperty("GN"));
+    assertTrue(history.canRedo());
+    assertEquals("9", history.redo().getProperty("GN"));
+    assertEquals("8", history.undo().getProperty("GN"));
+    history.publish(history.current().withProperty("GN", "new"));
+    assertFalse(history.canRedo());
+    assertNull(history.redo());
+    assertEquals("8", history.undo().getProperty("GN"));
+  }
+
+  @Test
+  public void testConcurrentReaders() throws InterruptedException {
+    SgfGameHistory history = new SgfGameHistory(PersistentSgfGame.of(SgfParser.parse(SGF)));
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicInteger snapshots = new AtomicInteger();
+    List<Throwable> errors = new ArrayList<>();
+    List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread reader = new Thread(() -> {
+        try {
+          while (!done.get()) {
+            // a snapshot is consistent : the game comment counts the moves added
+            PersistentSgfGame game = history.current();
+            String count = game.getProperty("GC");
+            int added = count == null ? 0 : Integer.parseInt(count);
+            assertEquals(6 + added, game.size());
+            snapshots.incrementAndGet();
+          }
+        }
+        catch (Throwable e) {
+          synchronized (errors) {
+            errors.add(e);
+          }
+        }
+      });
+      readers.add(reader);
+      reader.start();
+    }
+
+    int[] path = new int[] { 0 };
+    for (int i = 1; i <= 2000; i++) {
+      String count = Integer.toString(i);
+      history.update(game -> game.withChild(path, PersistentSgfNode.move("W", "aa")).withProperty("GC", count));
+    }
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(new ArrayList<>(), errors);
+    assertTrue(snapshots.get() > 0);
+    assertEquals(2006, history.current().size());
+    assertEquals(2001, history.current().getNode(0).getChildCount());
+  }
+}
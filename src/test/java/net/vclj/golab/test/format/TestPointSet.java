@@ -0,0 +1,91 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.format.PointSet;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.SgfUtil;
+
+public class TestPointSet {
+
+  @Test
+  public void testParseRectangles() {
+    PointSet set = PointSet.parse("aa:cb,dd,ss", 19, 19);
+    assertEquals(8, set.size());
+    assertTrue(set.contains(2, 1));
+    assertTrue(set.contains(3, 3));
+    assertTrue(set.contains(18, 18));
+    assertFalse(set.contains(3, 0));
+    // corners in any order
+    assertEquals(PointSet.parse("aa:cb", 19, 19), PointSet.parse("cb:aa", 19, 19));
+    assertThrows(IllegalArgumentException.class, () -> {
+      PointSet.parse("tt", 19, 19);
+    });
+  }
+
+  @Test
+  public void testCompression() {
+    PointSet set = new PointSet(19);
+    set.addRectangle(2, 2, 5, 4);
+    set.add(10, 10);
+    set.add(11, 10);
+    assertEquals(Arrays.asList("cc:fe", "kk:lk"), set.toSgfValues());
+    assertEquals(set, PointSet.parse(set.toSgf(), 19, 19));
+    assertEquals("[cc:fe][kk:lk]", set.appendSgf(new StringBuilder()).toString());
+
+    // wide board, rows spanning several words
+    PointSet wide = new PointSet(52, 40);
+    wide.addRectangle(0, 0, 51, 39);
+    assertEquals(52 * 40, wide.size());
+    assertEquals(Arrays.asList("aa:ZN"), wide.toSgfValues());
+  }
+
+  @Test
+  public void testSetOperations() {
+    PointSet a = PointSet.parse("aa:dd", 19, 19);
+    PointSet b = PointSet.parse("cc:ff", 19, 19);
+    assertTrue(a.intersects(b));
+    assertEquals(PointSet.parse("cc:dd", 19, 19), a.copy().intersect(b));
+    assertEquals(16 + 16 - 4, a.copy().union(b).size());
+    assertEquals(12, a.copy().subtract(b).size());
+    assertThrows(IllegalArgumentException.class, () -> {
+      a.union(new PointSet(13));
+    });
+
+    List<Integer> points = new ArrayList<>();
+    PointSet.parse("pd,dp", 19, 19).forEachPoint(points::add);
+    assertEquals(Arrays.asList(CoordinateCodec.sgfToPoint("pd"), CoordinateCodec.sgfToPoint("dp")), points);
+  }
+
+  @Test
+  public void testGameProperties() {
+    SgfGame game = SgfParser.parse("(;GM[1]SZ[9]AB[aa][ba][ca]AW[ee];B[gg]TR[ab][bb:cc]MA[dd])");
+    PointSet black = game.getPointSet("AB");
+    assertEquals(3, black.size());
+    assertEquals(9, black.getWidth());
+
+    SgfGameNode node = game.getRootNode().getNextNode();
+    assertEquals(5, node.getPointSet("TR", 9, 9).size());
+    node.setPointSet("SQ", PointSet.parse("aa,ab,ba,bb", 9, 9));
+    assertEquals("aa:bb", node.getProperty("SQ"));
+
+    String sgf = game.toString();
+    assertTrue(sgf.contains("AB[aa:ca]"));
+    assertTrue(sgf.contains("TR[ab:cb][bc:cc]"));
+    assertEquals(black, SgfParser.parse(sgf).getPointSet("AB"));
+    assertThrows(IllegalArgumentException.class, () -> {
+      node.getPointSet("LB", 9, 9);
+    });
+
+    assertArrayEquals(new String[] { "bb", "bc", "cb", "cc" }, SgfUtil.coordSequencesToSingle("bb:cc"));
+  }
+}
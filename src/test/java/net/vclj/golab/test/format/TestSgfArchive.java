@@ -0,0 +1,116 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfArchive;
+import net.vclj.golab.format.SgfArchiveWriter;
+import net.vclj.golab.format.SgfFileManager;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGenerator;
+
+public class TestSgfArchive {
+  private Path path;
+  private List<String> games;
+
+  @BeforeEach
+  public void generateGames() throws IOException {
+    SgfGenerator generator = new SgfGenerator(37);
+    generator.setMoves(20, 200);
+    generator.setComments(0.1, 30, 0.2);
+    games = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      games.add(generator.generate(i));
+    }
+    // a game larger than the blocks, and non ASCII text
+    StringBuilder large = new StringBuilder("(;GM[1]SZ[19]PB[Cho Hun-hyeon \u66FA\u85B0\u9249]C[");
+    for (int i = 0; i < 20000; i++) {
+      large.append("long comment ");
+    }
+    games.set(500, large.append("];B[pd])").toString());
+    path = Files.createTempFile("golab-archive-", ".sgfz");
+  }
+
+  @AfterEach
+  public void deleteArchive() throws IOException {
+    Files.delete(path);
+  }
+
+  @Test
+  public void testRandomAccess() {
+    try (SgfArchiveWriter writer = SgfArchiveWriter.create(path)) {
+      for (int i = 0; i < games.size(); i++) {
+        assertEquals(i, writer.add(games.get(i)));
+      }
+    }
+    long textSize = games.stream().mapToLong(game -> game.getBytes(StandardCharsets.UTF_8).length).sum();
+    try (SgfArchive archive = SgfArchive.open(path)) {
+      assertEquals(games.size(), archive.size());
+      assertTrue(archive.getBlockCount() > 10, archive.toString());
+      for (int k : new int[] { 999, 0, 500, 501, 499, 314 }) {
+        assertEquals(games.get(k), archive.read(k));
+      }
+      SgfGame game = SgfFileManager.createFromArchive(archive, 500);
+      assertEquals("Cho Hun-hyeon \u66FA\u85B0\u9249", game.getProperty("PB"));
+      assertThrows(IndexOutOfBoundsException.class, () -> archive.read(1000));
+    }
+    assertEquals("B", SgfFileManager.createFromArchive(path, 500).getRootNode().getNextNode().getColor());
+    assertTrue(path.toFile().length() < textSize / 2, "archive " + path.toFile().length() + " text " + textSize);
+  }
+
+  @Test
+  public void testParallel() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (SgfArchiveWriter writer = SgfArchiveWriter.create(path, 4096, Deflater.BEST_SPEED, executor, 4)) {
+      games.forEach(writer::add);
+    } finally {
+      executor.shutdown();
+    }
+    try (SgfArchive archive = SgfArchive.open(path)) {
+      ConcurrentHashMap<Integer, String> read = new ConcurrentHashMap<>();
+      archive.forEach((sgf, k) -> assertNull(read.put(k, sgf)), true);
+      assertEquals(games.size(), read.size());
+      for (int k = 0; k < games.size(); k++) {
+        assertEquals(games.get(k), read.get(k));
+      }
+    }
+  }
+
+  @Test
+  public void testCorrupted() throws IOException {
+    try (SgfArchiveWriter writer = SgfArchiveWriter.create(path)) {
+      games.subList(0, 100).forEach(writer::add);
+    }
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      // in the deflate data of the first block
+      file.seek(200);
+      int b = file.read();
+      file.seek(200);
+      file.write(b ^ 0x55);
+    }
+    try (SgfArchive archive = SgfArchive.open(path)) {
+      assertThrows(IllegalStateException.class, () -> archive.forEach((sgf, k) -> {
+      }, false));
+    }
+
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.setLength(file.length() - 4);
+    }
+    assertThrows(IllegalStateException.class, () -> SgfArchive.open(path));
+  }
+}
@@ -0,0 +1,103 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfCollectionIndex;
+import net.vclj.golab.format.SgfFileManager;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGenerator;
+
+public class TestSgfCollectionIndex {
+  private static final String SPECIAL = "(;GM[1]SZ[19]PB[Cho Hun-hyeon \u66FA\u85B0\u9249]PW[Rin \\] Kaiho]C[a comment with )( and ;B[aa]]\n"
+      + ";B[pd]C[(;W[dd\\])];W[dp])";
+
+  private Path path;
+  private List<String> games;
+
+  @BeforeEach
+  public void writeCollection() throws IOException {
+    SgfGenerator generator = new SgfGenerator(36);
+    generator.setMoves(5, 60);
+    generator.setVariations(0.05, 5, 2);
+    generator.setComments(0.1, 20, 0.3);
+    games = new ArrayList<>();
+    StringBuilder collection = new StringBuilder("\uFEFF");
+    for (int i = 0; i < 300; i++) {
+      String game = i == 150 ? SPECIAL : generator.generate(i);
+      games.add(game);
+      collection.append(game).append("\n\n");
+    }
+    path = Files.createTempFile("golab-collection-", ".sgf");
+    Files.write(path, collection.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  @AfterEach
+  public void deleteCollection() throws IOException {
+    Files.deleteIfExists(SgfCollectionIndex.indexPath(path));
+    Files.delete(path);
+  }
+
+  @Test
+  public void testReadGame() {
+    SgfCollectionIndex index = SgfCollectionIndex.open(path);
+    assertEquals(games.size(), index.size());
+    assertTrue(Files.exists(SgfCollectionIndex.indexPath(path)));
+    for (int k : new int[] { 0, 1, 149, 150, 151, 299 }) {
+      assertEquals(games.get(k), SgfFileManager.readFromCollection(index, k));
+    }
+
+    SgfGame special = SgfFileManager.createFromCollection(path, 150);
+    assertEquals("Cho Hun-hyeon \u66FA\u85B0\u9249", special.getProperty("PB"));
+    assertEquals("Cho Hun-hyeon \u66FA\u85B0\u9249", index.getHeader(150, "PB"));
+    assertEquals("Rin ] Kaiho", index.getHeader(150, "PW"));
+    assertEquals("19", index.getHeader(150, "SZ"));
+    assertNull(index.getHeader(150, "DT"));
+    assertEquals(SgfFileManager.createFromString(games.get(42)).getProperty("PW"), index.getHeader(42, "PW"));
+    assertThrows(IllegalArgumentException.class, () -> index.getHeader(0, "C"));
+    assertThrows(IndexOutOfBoundsException.class, () -> index.getOffset(300));
+  }
+
+  @Test
+  public void testSavedIndex() {
+    SgfCollectionIndex built = SgfCollectionIndex.open(path);
+    SgfCollectionIndex loaded = SgfCollectionIndex.load(path);
+    assertNotNull(loaded);
+    assertFalse(loaded.isStale());
+    assertEquals(built.size(), loaded.size());
+    for (int k = 0; k < built.size(); k++) {
+      assertEquals(built.getOffset(k), loaded.getOffset(k));
+      assertEquals(built.getLength(k), loaded.getLength(k));
+      assertEquals(built.getHeader(k, "RE"), loaded.getHeader(k, "RE"));
+    }
+  }
+
+  @Test
+  public void testStaleIndex() throws IOException {
+    SgfCollectionIndex index = SgfCollectionIndex.open(path);
+    Files.write(path, "(;GM[1]PB[Appended])".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertTrue(index.isStale());
+    assertThrows(IllegalStateException.class, () -> SgfFileManager.readFromCollection(index, 0));
+
+    SgfCollectionIndex reopened = SgfCollectionIndex.open(path);
+    assertEquals(games.size() + 1, reopened.size());
+    assertEquals("Appended", reopened.getHeader(games.size(), "PB"));
+    // same size, other modification time
+    Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() - 10000));
+    assertTrue(reopened.isStale());
+    assertTrue(SgfCollectionIndex.load(path).isStale());
+    assertFalse(SgfCollectionIndex.open(path).isStale());
+  }
+}
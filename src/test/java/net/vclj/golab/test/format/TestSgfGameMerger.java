@@ -0,0 +1,89 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameMerger;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfParser;
+
+public class TestSgfGameMerger {
+
+  @Test
+  public void testMerge() {
+    SgfGame first = SgfParser.parse("(;GM[1]SZ[9]PB[Black];B[ee]C[center];W[cc]TR[aa][bb];B[gg])");
+    SgfGame second = SgfParser.parse("(;GM[1]SZ[9]PW[White];B[ee]C[good];W[cc]TR[bb][cc]LB[dd:A];B[gc])");
+    SgfGame third = SgfParser.parse("(;GM[1]SZ[9];B[ee]C[center];W[tt];B[cc])");
+    third.postProcess();
+    SgfGame merged = SgfGameMerger.merge(Arrays.asList(first, second, third));
+
+    assertEquals("Black", merged.getProperty("PB"));
+    assertEquals("White", merged.getProperty("PW"));
+    SgfGameNode ee = merged.getRootNode().getNextNode();
+    assertEquals(1, merged.getRootNode().getChildren().size());
+    assertEquals("center\n\ngood", ee.getSgfComment());
+    assertEquals(2, ee.getChildren().size());
+
+    SgfGameNode cc = ee.getNextNode();
+    assertEquals("cc", cc.getMoveString());
+    assertEquals(3, cc.getPointSet("TR", 9, 9).size());
+    assertEquals("dd:A", cc.getProperty("LB"));
+    assertEquals(2, cc.getChildren().size());
+    assertEquals("gg", cc.getChildren().get(0).getMoveString());
+    assertEquals("gc", cc.getChildren().get(1).getMoveString());
+    assertEquals("tt", ee.getChildren().get(1).getMoveString());
+    assertEquals(3, merged.getNoMoves());
+    assertEquals(3, ee.getChildren().get(1).getNextNode().getMoveNo());
+
+    // the copies are not modified
+    assertEquals("center", first.getRootNode().getNextNode().getProperty("C"));
+    assertEquals("good", second.getRootNode().getNextNode().getProperty("C"));
+
+    // comments contained in others are kept, repeated ones are not
+    SgfGame slow = SgfParser.parse("(;GM[1]SZ[9];B[ee]C[slow move])");
+    SgfGame shorter = SgfParser.parse("(;GM[1]SZ[9];B[ee]C[slow])");
+    SgfGame comments = SgfGameMerger.merge(Arrays.asList(slow, shorter, slow, shorter));
+    assertEquals("slow move\n\nslow", comments.getRootNode().getNextNode().getSgfComment());
+
+    assertThrows(IllegalArgumentException.class,
+        () -> new SgfGameMerger().add(first).add(SgfParser.parse("(;GM[1]SZ[13];B[ee])")));
+  }
+
+  @Test
+  public void testManyReviews() {
+    StringBuilder main = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      main.append(i % 2 == 0 ? ";B[" : ";W[").append((char) ('a' + i % 19)).append((char) ('a' + i / 19)).append(']');
+    }
+    List<SgfGame> reviews = new ArrayList<>();
+    for (int r = 0; r < 100; r++) {
+      // each review comments a move and adds a variation after it
+      String line = main.toString();
+      int move = 3 * r;
+      int start = 0;
+      for (int i = 0; i < move; i++) {
+        start = line.indexOf(';', start + 1);
+      }
+      int end = line.indexOf(';', start + 1);
+      String sgf = "(;GM[1]SZ[19]" + line.substring(0, end) + "C[review " + r + "]" + "(" + line.substring(end)
+          + ")(;B[ss]C[variation " + r + "]))";
+      reviews.add(SgfParser.parse(sgf));
+    }
+    SgfGame merged = SgfGameMerger.merge(reviews);
+    assertEquals(300, merged.getNoMoves());
+    // the main line and one variation per review
+    assertEquals(301 + 100, merged.getTreeIndex().size());
+    SgfGameNode node = merged.getRootNode().getNextNode();
+    for (int i = 0; i < 3 * 7; i++) {
+      node = node.getNextNode();
+    }
+    assertEquals("review 7", node.getSgfComment());
+    assertEquals("variation 7", node.getChildren().get(1).getSgfComment());
+  }
+}
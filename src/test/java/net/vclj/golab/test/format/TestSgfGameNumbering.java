@@ -0,0 +1,183 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfParser;
+
+public class TestSgfGameNumbering {
+  private static final String SGF = "(;GM[1]SZ[9];B[ee];W[cc](;B[gg]C[main];W[gc])(;B[cg];W[gg]))";
+
+  @Test
+  public void testLongGame() {
+    StringBuilder sgf = new StringBuilder("(;GM[1]");
+    for (int i = 0; i < 20000; i++) {
+      sgf.append(i % 2 == 0 ? ";B[aa]" : ";W[bb]");
+      if (i % 100 == 50) {
+        sgf.append("(");
+      }
+    }
+    for (int i = 0; i < 20000; i++) {
+      if (i % 100 == 50) {
+        sgf.append(")(;B[cc];W[dd])");
+      }
+    }
+    SgfGame game = SgfParser.parse(sgf.append(")").toString());
+    game.postProcess();
+    assertEquals(20000, game.getNoMoves());
+    assertEquals(20001, game.getNoNodes());
+    assertEquals(20000, game.getLastMove().getMoveNo());
+    assertEquals(1, game.getFirstMove().getMoveNo());
+
+    // editing the end of the game does not walk it all : walking the line for
+    // each of these edits takes seconds
+    long start = System.nanoTime();
+    for (int i = 0; i < 20000; i++) {
+      SgfGameNode last = game.getLastMove();
+      game.addChild(last, move(i % 2 == 0 ? "B" : "W", "ee"));
+      game.addChild(last, move("B", "ff"));
+      if (i % 2 == 0) {
+        game.removeChild(last, last.getNextNode());
+        game.insertChild(last, 0, move("B", "ee"));
+      }
+    }
+    long millis = (System.nanoTime() - start) / 1000000;
+    assertTrue(millis < 3000, "Edits took " + millis + " ms");
+    assertEquals(40000, game.getNoMoves());
+    assertEquals(40001, game.getNoNodes());
+    assertEquals(40000, game.getLastMove().getMoveNo());
+    assertEquals(1, game.getFirstMove().getMoveNo());
+    assertTrue(game.isOnMainLine(game.getLastMove()));
+    assertFalse(game.isOnMainLine(game.getLastMove().getParentNode().getChildren().get(1)));
+  }
+
+  @Test
+  public void testEdits() {
+    SgfGame game = SgfParser.parse(SGF);
+    game.postProcess();
+    assertState(game);
+    SgfGameNode root = game.getRootNode();
+    SgfGameNode first = root.getNextNode();
+    SgfGameNode second = first.getNextNode();
+    assertSame(first, game.getFirstMove());
+    assertEquals("gc", game.getLastMove().getMoveString());
+
+    // new variation : the main line does not change
+    SgfGameNode variation = move("B", "aa");
+    variation.addChild(move("W", "bb"));
+    variation.getNextNode().setParentNode(variation);
+    game.addChild(second, variation);
+    assertEquals(3, variation.getMoveNo());
+    assertEquals(4, variation.getNextNode().getMoveNo());
+    assertEquals("gc", game.getLastMove().getMoveString());
+    assertState(game);
+
+    // new main line
+    game.insertChild(second, 0, move("B", "hh"));
+    assertEquals("hh", game.getLastMove().getMoveString());
+    assertEquals(3, game.getNoMoves());
+    assertState(game);
+
+    // comment nodes do not count as moves
+    SgfGameNode comment = new SgfGameNode(null);
+    comment.setProperty("C", "pause");
+    game.insertChild(root, 0, comment);
+    assertEquals(-1, comment.getMoveNo());
+    assertNull(game.getFirstMove());
+    assertEquals(0, game.getNoMoves());
+    assertState(game);
+
+    game.removeChild(root, comment);
+    assertSame(first, game.getFirstMove());
+    assertState(game);
+
+    // the parser drops empty nodes, keep the node comparable with its copy
+    first.setProperty("C", "no move");
+    game.removeMove(first);
+    assertEquals(-1, first.getMoveNo());
+    assertEquals(1, second.getMoveNo());
+    assertSame(second, game.getFirstMove());
+    assertState(game);
+
+    game.setMove(first, "B", "ab");
+    assertEquals(2, second.getMoveNo());
+    assertSame(first, game.getFirstMove());
+    assertState(game);
+
+    assertTrue(game.removeChild(second, second.getNextNode()));
+    assertFalse(game.removeChild(second, first));
+    assertState(game);
+
+    assertThrows(RuntimeException.class, () -> game.addChild(root, first));
+    assertThrows(IllegalArgumentException.class, () -> game.setMove(first, "X", "aa"));
+    assertThrows(IllegalStateException.class, () -> SgfParser.parse(SGF).removeMove(first));
+  }
+
+  @Test
+  public void testDirectEdits() {
+    SgfGame game = SgfParser.parse(SGF);
+    game.postProcess();
+    SgfGameNode root = game.getRootNode();
+    SgfGameNode first = root.getNextNode();
+    SgfGameNode last = game.getLastMove();
+
+    // edits made to the nodes, not through the game
+    SgfGameNode added = move("B", "hh");
+    last.addChild(added);
+    added.setParentNode(last);
+    assertSame(added, game.getLastMove());
+    first.removeProperty("B");
+    assertSame(first.getNextNode(), game.getFirstMove());
+    first.setProperty("W", "ab");
+    assertSame(first, game.getFirstMove());
+
+    // the children change through the node only, which counts the edits
+    assertThrows(UnsupportedOperationException.class, () -> root.getChildren().add(move("B", "aa")));
+
+    // the next edit through the game renumbers the tree
+    game.addChild(added, move("W", "hg"));
+    assertEquals("hg", game.getLastMove().getMoveString());
+    assertState(game);
+  }
+
+  private static SgfGameNode move(String color, String point) {
+    SgfGameNode rtrn = new SgfGameNode(null);
+    rtrn.setProperty(color, point);
+    return rtrn;
+  }
+
+  /**
+   * Checks the game against a copy post processed from scratch.
+   */
+  private static void assertState(SgfGame game) {
+    SgfGame copy = SgfParser.parse(game.toString());
+    copy.postProcess();
+    assertEquals(copy.getNoMoves(), game.getNoMoves());
+    assertEquals(copy.getNoNodes(), game.getNoNodes());
+    assertEquals(moveString(copy.getFirstMove()), moveString(game.getFirstMove()));
+    assertEquals(moveString(copy.getLastMove()), moveString(game.getLastMove()));
+    assertEquals(numbers(copy.getRootNode()), numbers(game.getRootNode()));
+  }
+
+  private static String moveString(SgfGameNode node) {
+    return node == null ? null : node.getMoveNo() + ":" + node.getMoveString();
+  }
+
+  private static List<String> numbers(SgfGameNode root) {
+    List<String> rtrn = new ArrayList<>();
+    List<SgfGameNode> stack = new ArrayList<>();
+    stack.add(root);
+    while (!stack.isEmpty()) {
+      SgfGameNode node = stack.remove(stack.size() - 1);
+      rtrn.add(node.getMoveNo() + "/" + node.getNodeNo());
+      stack.addAll(node.getChildren());
+    }
+    return rtrn;
+  }
+}
@@ -0,0 +1,70 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfGenerator;
+import net.vclj.golab.format.SgfParser;
+
+public class TestSgfGenerator {
+
+  @Test
+  public void testDeterminism() {
+    SgfGenerator generator = new SgfGenerator(42);
+    generator.setVariations(0.05, 8, 2);
+    generator.setComments(0.2, 300, 0.1);
+    SgfGenerator other = new SgfGenerator(42);
+    other.setVariations(0.05, 8, 2);
+    other.setComments(0.2, 300, 0.1);
+
+    assertEquals(generator.generate(3), other.generate(3));
+    assertNotEquals(generator.generate(3), generator.generate(4));
+    assertNotEquals(generator.generate(3), new SgfGenerator(43).generate(3));
+  }
+
+  @Test
+  public void testMainLineLength() {
+    SgfGenerator generator = new SgfGenerator(7);
+    generator.setMoves(120, 120);
+    SgfGame game = SgfParser.parse(generator.generate(0));
+    int moves = 0;
+    for (SgfGameNode node = game.getRootNode(); node != null; node = node.getNextNode()) {
+      if (node.isMove()) {
+        moves++;
+      }
+    }
+    assertEquals(120, moves);
+  }
+
+  @Test
+  public void testVariationsAndSetupParse() {
+    SgfGenerator generator = new SgfGenerator(11);
+    generator.setBoardSizes(9, 13, 52);
+    generator.setMoves(60, 80);
+    generator.setVariations(0.1, 6, 3);
+    generator.setSetup(30, 0.3);
+    generator.setComments(0.1, 100, 0.2);
+
+    for (int i = 0; i < 20; i++) {
+      String sgf = generator.generate(i);
+      assertEquals(sgf.chars().filter(c -> c == '(').count(), sgf.chars().filter(c -> c == ')').count());
+      SgfGame game = SgfParser.parse(sgf);
+      assertNotNull(game.getProperty("AB"));
+      assertTrue(game.getRootNode().getNextNode().isMove());
+    }
+  }
+
+  @Test
+  public void testInvalidSettings() {
+    SgfGenerator generator = new SgfGenerator(0);
+    assertThrows(IllegalArgumentException.class, () -> {
+      generator.setBoardSizes(53);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      generator.setMoves(10, 5);
+    });
+  }
+}
@@ -0,0 +1,99 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.SgfProperty;
+import net.vclj.golab.format.SgfPropertyMap;
+import net.vclj.golab.format.SgfUtil;
+
+public class TestSgfProperties {
+
+  @Test
+  public void testRegistry() {
+    SgfProperty komi = SgfProperty.get("KM");
+    assertSame(komi, SgfProperty.get("KM"));
+    assertSame(komi, SgfProperty.get(komi.getId()));
+    assertTrue(komi.isGame());
+    assertFalse(komi.isNode());
+    assertTrue(SgfProperty.B.isGame() && SgfProperty.B.isNode());
+    assertNull(SgfProperty.get("XYZZY"));
+
+    SgfProperty custom = SgfProperty.intern("GOLABTEST");
+    assertSame(custom, SgfProperty.get("GOLABTEST"));
+    assertFalse(custom.isGame() || custom.isNode());
+  }
+
+  @Test
+  public void testMultipleValues() {
+    SgfPropertyMap map = new SgfPropertyMap();
+    map.add(SgfProperty.AB, "aa");
+    assertEquals(Arrays.asList("aa"), map.getValues(SgfProperty.AB));
+    map.add(SgfProperty.AB, "bb");
+    map.add(SgfProperty.AB, "cc");
+    assertEquals("aa,bb,cc", map.getJoined(SgfProperty.AB));
+    assertEquals("aa", map.getFirst(SgfProperty.AB));
+
+    List<String> values = map.getValues(SgfProperty.AB);
+    assertThrows(UnsupportedOperationException.class, () -> {
+      values.add("dd");
+    });
+    map.set(SgfProperty.AB, "dd");
+    assertEquals(Arrays.asList("dd"), map.getValues(SgfProperty.AB));
+    assertTrue(map.getValues(SgfProperty.W).isEmpty());
+  }
+
+  @Test
+  public void testEqualsIgnoresOrder() {
+    SgfPropertyMap a = new SgfPropertyMap();
+    a.add(SgfProperty.B, "dd");
+    a.add(SgfProperty.C, "hello");
+    SgfPropertyMap b = new SgfPropertyMap();
+    b.add(SgfProperty.C, "hello");
+    b.add(SgfProperty.B, "dd");
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    b.add(SgfProperty.C, "again");
+    assertNotEquals(a, b);
+    assertTrue(b.remove(SgfProperty.C));
+    assertEquals(1, b.size());
+    assertEquals(SgfProperty.B, b.propertyAt(0));
+  }
+
+  @Test
+  public void testParsedProperties() {
+    SgfGame game = SgfParser.parse("(;GM[1]PB[Black]PB[Again]AB[aa][bb];B[cc]C[first]C[second]LB[dd:A][ee:B])");
+    assertEquals("Black,Again", game.getProperty("PB"));
+    assertEquals(Arrays.asList("Black", "Again"), game.getPropertyValues("PB"));
+
+    Map<String, String> properties = game.getProperties();
+    assertEquals("aa,bb", properties.get("AB"));
+    assertThrows(UnsupportedOperationException.class, () -> {
+      properties.put("PW", "White");
+    });
+
+    SgfGameNode node = game.getRootNode().getNextNode();
+    assertEquals(Arrays.asList("first", "second"), node.getPropertyValues("C"));
+    assertEquals(Arrays.asList("dd:A", "ee:B"), node.getPropertyValues("LB"));
+    assertTrue(game.toString().contains("PB[Black][Again]"));
+  }
+
+  @Test
+  public void testLabels() {
+    SgfGame game = SgfParser.parse("(;GM[1];B[cc]LB[dd:a, b][ee:C])");
+    Map<String, String> labels = SgfUtil.extractLabels(game.getRootNode().getNextNode());
+    assertEquals(2, labels.size());
+    assertEquals("a, b", labels.get("dd"));
+    assertEquals("C", labels.get("ee"));
+    assertEquals(labels, SgfUtil.extractLabels("dd:a, b][ee:C"));
+    assertTrue(SgfUtil.extractLabels(game.getRootNode()).isEmpty());
+  }
+}
@@ -0,0 +1,121 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfGenerator;
+import net.vclj.golab.format.SgfHandler;
+import net.vclj.golab.format.SgfParseException;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.SgfScanner;
+import net.vclj.golab.format.SgfText;
+
+public class TestSgfText {
+
+  @Test
+  public void testUnescape() {
+    assertEquals("plain", SgfText.unescape("plain"));
+    assertEquals("a]b", SgfText.unescape("a\\]b"));
+    assertEquals("a\\b", SgfText.unescape("a\\\\b"));
+    assertEquals("a:b", SgfText.unescape("a\\:b"));
+    assertEquals("one line", SgfText.unescape("one \\\nline"));
+    assertEquals("one line", SgfText.unescape("one \\\r\nline"));
+    assertEquals("hard\nbreak", SgfText.unescape("hard\nbreak"));
+    assertEquals("trailing", SgfText.unescape("trailing\\"));
+    assertEquals("b]c", SgfText.unescape("[ab\\]cd]", 2, 6));
+
+    String plain = "nothing to do";
+    assertSame(plain, SgfText.unescape(plain));
+  }
+
+  @Test
+  public void testEscape() {
+    assertEquals("a\\]b\\\\c:d", SgfText.escape("a]b\\c:d", false));
+    assertEquals("dd\\:A", SgfText.escape("dd:A", true));
+    String plain = "nothing to do";
+    assertSame(plain, SgfText.escape(plain, false));
+
+    String text = "brackets [] and \\ backslashes ]\\";
+    assertEquals(text, SgfText.unescape(SgfText.escape(text, false)));
+    assertEquals(text, SgfText.unescape(SgfText.escape(text, true)));
+  }
+
+  @Test
+  public void testScanner() {
+    String sgf = "(;GM[1]AB[aa] [bb]C[a \\] ; ( ) comment];B[cc](;W[dd])(;W[ee]))";
+    List<String> events = new ArrayList<>();
+    SgfScanner.scan(sgf, new SgfHandler() {
+      @Override
+      public void startTree(int offset) {
+        events.add("(");
+      }
+
+      @Override
+      public void endTree(int offset) {
+        events.add(")");
+      }
+
+      @Override
+      public void startNode(int offset) {
+        events.add(";");
+      }
+
+      @Override
+      public void property(String source, int keyStart, int keyEnd, int valueStart, int valueEnd) {
+        events.add(source.substring(keyStart, keyEnd) + "=" + source.substring(valueStart, valueEnd));
+      }
+    });
+    assertEquals("[(, ;, GM=1, AB=aa, AB=bb, C=a \\] ; ( ) comment, ;, B=cc, (, ;, W=dd, ), (, ;, W=ee, ), )]",
+        events.toString());
+
+    assertThrows(SgfParseException.class, () -> SgfScanner.scan("(;C[never closed)", new SgfHandler() {
+    }));
+  }
+
+  @Test
+  public void testLazyValues() {
+    String sgf = "(;GM[1]GC[game \\] comment]PB[Black];B[cc]C[first \\\\ line\\\nsame line: here]LB[dd:A])";
+    SgfGame game = SgfParser.parse(sgf);
+    assertEquals("game ] comment", game.getProperty("GC"));
+
+    SgfGameNode node = game.getRootNode().getNextNode();
+    assertEquals("first \\ linesame line: here", node.getSgfComment());
+    assertEquals("dd:A", node.getProperty("LB"));
+
+    // unchanged values are written as found, changed ones escaped
+    String written = game.toString();
+    assertTrue(written.contains("GC[game \\] comment]"), written);
+    assertTrue(written.contains("C[first \\\\ line\\\nsame line: here]"), written);
+
+    node.setProperty("C", "new ] comment");
+    written = game.toString();
+    assertTrue(written.contains("C[new \\] comment]"), written);
+    SgfGame reRead = SgfParser.parse(written);
+    assertEquals("new ] comment", reRead.getRootNode().getNextNode().getSgfComment());
+  }
+
+  @Test
+  public void testGeneratedRoundTrip() {
+    SgfGenerator generator = new SgfGenerator(33);
+    generator.setComments(0.5, 60, 0.2);
+    for (int i = 0; i < 20; i++) {
+      String sgf = generator.generate(i);
+      SgfGame game = SgfParser.parse(sgf);
+      SgfGame reRead = SgfParser.parse(game.toString());
+      assertEquals(game.getParsedNodes(), reRead.getParsedNodes());
+      SgfGameNode node = game.getRootNode();
+      SgfGameNode other = reRead.getRootNode();
+      while (node != null) {
+        assertEquals(node.getSgfComment(), other.getSgfComment());
+        node = node.getNextNode();
+        other = other.getNextNode();
+      }
+    }
+  }
+}
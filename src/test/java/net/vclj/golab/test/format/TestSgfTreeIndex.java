@@ -0,0 +1,97 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.format.PersistentSgfGame;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.SgfTreeIndex;
+
+public class TestSgfTreeIndex {
+  // ids : root 0, ee 1, cc 2, gg 3, gc 4, cg 5, tt 6, dd 7
+  private static final String SGF = "(;GM[1]SZ[9];B[ee];W[cc](;B[gg];W[gc])(;B[cg](;W[tt])(;W[dd])))";
+
+  @Test
+  public void testQueries() {
+    SgfGame game = SgfParser.parse(SGF);
+    game.postProcess();
+    SgfTreeIndex index = game.getTreeIndex();
+    assertSame(index, game.getTreeIndex());
+    assertEquals(8, index.size());
+    for (int id = 0; id < index.size(); id++) {
+      assertEquals(id, index.getId(index.getNode(id)));
+      assertEquals(id, index.getNode(id).getId());
+    }
+    assertEquals("gc", index.getNode(4).getMoveString());
+    assertEquals("dd", index.getNode(7).getMoveString());
+    assertEquals(-1, index.getParent(0));
+    assertEquals(5, index.getParent(7));
+    assertEquals(4, index.getDepth(7));
+    assertEquals(6, index.getSubtreeSize(2));
+
+    assertTrue(index.isAncestor(0, 7));
+    assertTrue(index.isAncestor(5, 5));
+    assertTrue(index.isAncestor(2, 6));
+    assertFalse(index.isAncestor(3, 5));
+    assertFalse(index.isAncestor(7, 5));
+
+    assertEquals(2, index.getCommonAncestor(4, 7));
+    assertEquals(5, index.getCommonAncestor(6, 7));
+    assertEquals(5, index.getCommonAncestor(5, 7));
+    assertEquals(1, index.getCommonAncestor(1, 1));
+    assertEquals(2, index.getAncestorAt(7, 2));
+
+    assertArrayEquals(new int[] { 0, 1, 2, 5, 7 }, index.getPath(7));
+    assertArrayEquals(new int[] { 0, 0, 1, 1 }, index.getChildPath(7));
+    assertEquals("dd", PersistentSgfGame.of(game).getNode(index.getChildPath(7)).getMoveString());
+    assertArrayEquals(new int[] { CoordinateCodec.sgfToPoint("ee"), CoordinateCodec.sgfToPoint("cc"),
+        CoordinateCodec.sgfToPoint("cg"), CoordinateCodec.PASS }, index.getMovePath(6));
+    assertArrayEquals(new int[0], index.getMovePath(0));
+
+    assertThrows(IllegalArgumentException.class, () -> index.getId(new SgfGameNode(null)));
+
+    // edits through the game rebuild the index
+    SgfGameNode move = new SgfGameNode(null);
+    move.setProperty("B", "aa");
+    game.addChild(index.getNode(3), move);
+    SgfTreeIndex rebuilt = game.getTreeIndex();
+    assertNotSame(index, rebuilt);
+    assertEquals(9, rebuilt.size());
+    assertEquals(5, rebuilt.getId(move));
+    assertEquals(3, rebuilt.getCommonAncestor(4, 5));
+
+    // as well as direct edits of the children, but not of the properties
+    move.setProperty("C", "comment");
+    assertSame(rebuilt, game.getTreeIndex());
+    assertTrue(rebuilt.getNode(2).removeChild(rebuilt.getNode(3)));
+    SgfTreeIndex pruned = game.getTreeIndex();
+    assertNotSame(rebuilt, pruned);
+    assertEquals(6, pruned.size());
+    assertEquals("cg", pruned.getNode(3).getMoveString());
+  }
+
+  @Test
+  public void testLongLines() {
+    StringBuilder sgf = new StringBuilder("(;GM[1]");
+    for (int i = 0; i < 50000; i++) {
+      sgf.append(i % 2 == 0 ? ";B[aa]" : ";W[bb]");
+      if (i == 25000) {
+        sgf.append("(;B[cc])(");
+      }
+    }
+    SgfGame game = SgfParser.parse(sgf.append("))").toString());
+    SgfTreeIndex index = SgfTreeIndex.build(game);
+    assertEquals(50002, index.size());
+    int last = index.size() - 1;
+    int variation = 25002;
+    assertEquals("cc", index.getNode(variation).getMoveString());
+    assertEquals(25001, index.getCommonAncestor(last, variation));
+    assertEquals(50000, index.getMovePath(last).length);
+    assertEquals(12345, index.getAncestorAt(last, 12345));
+    assertFalse(index.isAncestor(variation, last));
+  }
+}
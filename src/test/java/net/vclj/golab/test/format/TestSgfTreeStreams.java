@@ -0,0 +1,88 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.SgfTreeSpliterator;
+
+public class TestSgfTreeStreams {
+  private static final String SGF = "(;GM[1]SZ[9];B[ee];W[cc](;B[gg];W[gc])(;B[cg](;W[dd])(;W[de];B[df])))";
+
+  @Test
+  public void testTraversals() {
+    SgfGame game = SgfParser.parse(SGF);
+    game.postProcess();
+    assertEquals("[null, ee, cc, gg, gc, cg, dd, de, df]", moves(game.preorder().collect(Collectors.toList())));
+    assertEquals("[null, ee, cc, gg, gc]", moves(game.mainLine().collect(Collectors.toList())));
+    assertEquals("[gc, dd, df]", moves(game.leaves().collect(Collectors.toList())));
+    assertEquals("[gg, cg]", moves(game.nodesAtDepth(3).collect(Collectors.toList())));
+    assertEquals("[gc, dd, de]", moves(game.nodesAtDepth(4).collect(Collectors.toList())));
+    assertEquals(0, game.nodesAtDepth(9).count());
+
+    List<List<SgfGameNode>> variations = game.variations().collect(Collectors.toList());
+    assertEquals(3, variations.size());
+    assertEquals("[null, ee, cc, cg, de, df]", moves(variations.get(2)));
+
+    // laziness : nothing after the first match is visited
+    assertEquals("cc", game.preorder().filter(node -> "cc".equals(node.getMoveString())).findFirst().get()
+        .getMoveString());
+  }
+
+  @Test
+  public void testSplit() {
+    SgfGame game = SgfParser.parse(SGF);
+    Spliterator<SgfGameNode> suffix = SgfTreeSpliterator.preorder(game.getRootNode());
+    // the line of play down to cc and the first variation come first
+    Spliterator<SgfGameNode> prefix = suffix.trySplit();
+    List<SgfGameNode> first = new ArrayList<>();
+    prefix.forEachRemaining(first::add);
+    List<SgfGameNode> second = new ArrayList<>();
+    suffix.forEachRemaining(second::add);
+    assertEquals("[null, ee, cc, gg, gc]", moves(first));
+    assertEquals("[cg, dd, de, df]", moves(second));
+  }
+
+  @Test
+  public void testParallel() {
+    // a long game reviewed with a variation every 10 moves
+    StringBuilder sgf = new StringBuilder("(;GM[1]");
+    int variations = 0;
+    for (int i = 0; i < 3000; i++) {
+      sgf.append(i % 2 == 0 ? ";B[aa]" : ";W[bb]");
+      if (i % 10 == 5) {
+        sgf.append("(");
+        variations++;
+      }
+    }
+    for (int i = 0; i < variations; i++) {
+      sgf.append(")(;B[cc];W[dd];B[ee])");
+    }
+    SgfGame game = SgfParser.parse(sgf.append(")").toString());
+    game.postProcess();
+    long nodes = 1 + 3000 + 3 * variations;
+    assertEquals(nodes, game.preorder().parallel().count());
+    assertEquals(variations + 1, game.leaves().parallel().count());
+    assertEquals(game.preorder().map(SgfGameNode::getMoveString).collect(Collectors.toList()),
+        game.preorder().parallel().map(SgfGameNode::getMoveString).collect(Collectors.toList()));
+    assertEquals(3001, game.mainLine().count());
+    // the main line and the last move of the first variation
+    assertEquals(2, game.nodesAtDepth(9).parallel().count());
+  }
+
+  private static String moves(List<SgfGameNode> nodes) {
+    List<String> rtrn = new ArrayList<>();
+    for (SgfGameNode node : nodes) {
+      rtrn.add(node.getMoveString());
+    }
+    return rtrn.toString();
+  }
+}
@@ -0,0 +1,145 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfDateRange;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.SgfResult;
+import net.vclj.golab.format.SgfValues;
+
+public class TestSgfValues {
+
+  @Test
+  public void testReals() {
+    assertEquals(6.5, SgfValues.parseReal("6.5"));
+    assertEquals(-0.5, SgfValues.parseReal(" -0.5 "));
+    assertEquals(7.5, SgfValues.parseReal("7,5"));
+    assertEquals(375, SgfValues.parseReal("375"));
+    assertEquals(0.1, SgfValues.parseReal("0.1"));
+    assertEquals(1.5e3, SgfValues.parseReal("1.5e3"));
+    assertTrue(Double.isNaN(SgfValues.parseReal("")));
+    assertTrue(Double.isNaN(SgfValues.parseReal("six")));
+    assertTrue(Double.isNaN(SgfValues.parseReal(null)));
+    // accepted by Double.parseDouble, not SGF reals
+    assertTrue(Double.isNaN(SgfValues.parseReal("NaN")));
+    assertTrue(Double.isNaN(SgfValues.parseReal("-Infinity")));
+    assertTrue(Double.isNaN(SgfValues.parseReal("0x1p3")));
+    assertTrue(Double.isNaN(SgfValues.parseReal("1.5e3d")));
+
+    assertEquals(3, SgfValues.parseNumber("3", 0));
+    assertEquals(-12, SgfValues.parseNumber(" -12", 0));
+    assertEquals(7, SgfValues.parseNumber("3.5", 7));
+    assertEquals(19 << 8 | 13, SgfValues.parseBoardSize("19:13"));
+    assertThrows(IllegalArgumentException.class, () -> SgfValues.parseBoardSize("big"));
+  }
+
+  @Test
+  public void testResults() {
+    SgfResult result = SgfResult.parse("B+3.5");
+    assertTrue(result.isBlackWin());
+    assertEquals(SgfResult.Reason.SCORE, result.getReason());
+    assertEquals(3.5, result.getMargin());
+
+    result = SgfResult.parse("W+Resign");
+    assertTrue(result.isWhiteWin());
+    assertTrue(result.isResign());
+    assertFalse(result.hasMargin());
+
+    assertTrue(SgfResult.parse("w+t").isTime());
+    assertTrue(SgfResult.parse("B+F").isForfeit());
+    assertTrue(SgfResult.parse("0").isDraw());
+    assertTrue(SgfResult.parse("Jigo").isDraw());
+    assertEquals(SgfResult.Winner.NONE, SgfResult.parse("Void").getWinner());
+    assertEquals(SgfResult.Winner.UNKNOWN, SgfResult.parse("?").getWinner());
+    assertEquals(SgfResult.Winner.UNKNOWN, SgfResult.parse("black won").getWinner());
+    assertEquals(12.5, SgfResult.parse("B+12.5 after extension").getMargin());
+    assertEquals(SgfResult.Reason.UNKNOWN, SgfResult.parse("W+").getReason());
+  }
+
+  @Test
+  public void testDates() {
+    SgfDateRange range = SgfDateRange.parse("1996-05-06,07,08");
+    assertEquals(LocalDate.of(1996, 5, 6), range.getFirst());
+    assertEquals(LocalDate.of(1996, 5, 8), range.getLast());
+
+    range = SgfDateRange.parse("1996-12-27,28,1997-01-03,04");
+    assertEquals(LocalDate.of(1996, 12, 27), range.getFirst());
+    assertEquals(LocalDate.of(1997, 1, 4), range.getLast());
+
+    range = SgfDateRange.parse("1996-05-06,06-01");
+    assertEquals(LocalDate.of(1996, 6, 1), range.getLast());
+
+    range = SgfDateRange.parse("1996-05,06");
+    assertEquals(LocalDate.of(1996, 5, 1), range.getFirst());
+    assertEquals(LocalDate.of(1996, 6, 30), range.getLast());
+
+    range = SgfDateRange.parse("1789");
+    assertEquals(LocalDate.of(1789, 1, 1), range.getFirst());
+    assertEquals(LocalDate.of(1789, 12, 31), range.getLast());
+    assertTrue(range.contains(LocalDate.of(1789, 7, 14)));
+
+    assertNull(SgfDateRange.parse("1996-02-30"));
+    assertNull(SgfDateRange.parse("06,07"));
+    assertNull(SgfDateRange.parse("sometime in 1996"));
+  }
+
+  @Test
+  public void testGameAccessors() {
+    SgfGame game = SgfParser.parse("(;GM[1]SZ[13]KM[6.5]HA[2]RE[W+R]DT[2019-03-01,02]TM[1800];B[cc]BL[1795.3]OB[3])");
+    assertEquals(13, game.getBoardWidth());
+    assertEquals(13, game.getBoardHeight());
+    assertEquals(6.5, game.getKomi());
+    assertEquals(2, game.getHandicap());
+    assertTrue(game.getResult().isWhiteWin());
+    assertSame(game.getResult(), game.getResult());
+    assertEquals(LocalDate.of(2019, 3, 2), game.getDateRange().getLast());
+    assertEquals(1800, game.getTimeLimit());
+
+    SgfGameNode node = game.getRootNode().getNextNode();
+    assertEquals(1795.3, node.getBlackTimeLeft());
+    assertEquals(3, node.getBlackMovesLeft());
+    assertTrue(Double.isNaN(node.getWhiteTimeLeft()));
+    assertEquals(-1, node.getWhiteMovesLeft());
+  }
+
+  @Test
+  public void testCacheInvalidation() {
+    SgfGame game = SgfParser.parse("(;GM[1]KM[6.5]RE[B+R];B[cc])");
+    assertEquals(6.5, game.getKomi());
+    game.setProperty("KM", "7.5");
+    assertEquals(7.5, game.getKomi());
+    game.removeProperty("KM");
+    assertTrue(Double.isNaN(game.getKomi()));
+    game.addProperty("KM", "0.5");
+    assertEquals(0.5, game.getKomi());
+
+    assertTrue(game.getResult().isBlackWin());
+    game.setProperty("RE", "W+2.5");
+    assertEquals(2.5, game.getResult().getMargin());
+
+    game.setProperty("HA", "many");
+    assertEquals(0, game.getHandicap());
+    game.setProperty("HA", "4");
+    assertEquals(4, game.getHandicap());
+
+    assertEquals(19, game.getBoardWidth());
+    game.setProperty("SZ", "9");
+    assertEquals(9, game.getBoardWidth());
+    game.setProperty("SZ", "nine");
+    assertThrows(IllegalArgumentException.class, () -> game.getBoardWidth());
+    assertThrows(IllegalArgumentException.class, () -> game.getBoardHeight());
+    game.setProperty("SZ", "13");
+    assertEquals(13, game.getBoardHeight());
+
+    SgfGameNode node = game.getRootNode().getNextNode();
+    assertTrue(Double.isNaN(node.getBlackTimeLeft()));
+    node.addProperty("BL", "12");
+    assertEquals(12, node.getBlackTimeLeft());
+  }
+}
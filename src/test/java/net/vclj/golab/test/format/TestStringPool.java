@@ -0,0 +1,91 @@
+package net.vclj.golab.test.format;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGenerator;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.format.StringPool;
+
+public class TestStringPool {
+
+  @Test
+  public void testIntern() {
+    StringPool pool = new StringPool(100, 10);
+    assertEquals(128, pool.getCapacity());
+
+    String first = new String("Honinbo");
+    String second = new String("Honinbo");
+    assertSame(first, pool.intern(first));
+    assertSame(first, pool.intern(second));
+    assertSame(first, pool.intern("PB[Honinbo]", 3, 10));
+    assertEquals(2, pool.getHits());
+    assertEquals(1, pool.getMisses());
+
+    String longValue = "much longer than ten characters";
+    assertSame(longValue, pool.intern(longValue));
+    assertEquals(1, pool.getSkipped());
+    assertEquals(2.0 / 3, pool.getHitRate(), 1e-9);
+    assertNull(pool.intern(null));
+  }
+
+  @Test
+  public void testBounded() {
+    StringPool pool = new StringPool(16, 64);
+    for (int i = 0; i < 10000; i++) {
+      pool.intern("value " + i);
+    }
+    assertTrue(pool.size() <= 16);
+    assertEquals(10000, pool.getMisses());
+  }
+
+  @Test
+  public void testConcurrent() {
+    StringPool pool = new StringPool(1024, 64);
+    IntStream.range(0, 100000).parallel().forEach(i -> {
+      String value = "player " + (i % 100);
+      assertEquals(value, pool.intern(value));
+    });
+    assertEquals(100000, pool.getHits() + pool.getMisses());
+    assertTrue(pool.getHitRate() > 0.9, pool.toString());
+  }
+
+  @Test
+  public void testCorpus() {
+    assertNull(StringPool.getDefault());
+    int withoutPool = countDistinctInstances();
+    StringPool pool = new StringPool();
+    StringPool.setDefault(pool);
+    try {
+      int withPool = countDistinctInstances();
+      // 200 games, 4 properties : nearly one instance per property value
+      // without the pool, one instance per distinct value with it
+      assertTrue(withoutPool > 700, "instances " + withoutPool);
+      assertTrue(withPool < 50, "instances " + withPool);
+      assertTrue(pool.getHitRate() > 0.9, pool.toString());
+    } finally {
+      StringPool.setDefault(null);
+    }
+  }
+
+  private int countDistinctInstances() {
+    SgfGenerator generator = new SgfGenerator(34);
+    generator.setMoves(0, 5);
+    Set<String> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (int i = 0; i < 200; i++) {
+      SgfGame game = SgfParser.parse(generator.generate(i));
+      instances.add(game.getProperty("PB"));
+      instances.add(game.getProperty("PW"));
+      instances.add(game.getProperty("RU"));
+      instances.add(game.getProperty("AP"));
+    }
+    return instances.size();
+  }
+}
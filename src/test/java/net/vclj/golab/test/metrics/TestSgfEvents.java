@@ -0,0 +1,109 @@
+package net.vclj.golab.test.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.vclj.golab.format.SgfFileManager;
+import net.vclj.golab.format.SgfGame;
+
+public class TestSgfEvents {
+
+  @Test
+  public void testReadEvents() throws Exception {
+    Path path = Paths.get("./src/main/resources/sgf/game-branching-simple.sgf");
+    Path dump = Files.createTempFile("golab-", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("net.vclj.golab.SgfRead");
+      recording.enable("net.vclj.golab.SgfParse");
+      recording.enable("net.vclj.golab.SgfPostProcess");
+      recording.start();
+      SgfGame game = SgfFileManager.createFromPath(path);
+      assertNotNull(game);
+      recording.stop();
+      recording.dump(dump);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    Files.delete(dump);
+    RecordedEvent read = events.stream().filter(e -> e.getEventType().getName().equals("net.vclj.golab.SgfRead"))
+        .findFirst().get();
+    assertEquals(path.toString(), read.getString("fileName"));
+    assertEquals(Files.size(path), read.getLong("byteSize"));
+    assertEquals(9, read.getInt("nodeCount"));
+    // root, B[dd], W[pp], B[pd], W[dp]
+    assertEquals(5, read.getInt("maxDepth"));
+    RecordedEvent parse = events.stream().filter(e -> e.getEventType().getName().equals("net.vclj.golab.SgfParse"))
+        .findFirst().get();
+    assertEquals(path.toString(), parse.getString("fileName"));
+    assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("net.vclj.golab.SgfPostProcess")));
+  }
+
+  @Test
+  public void testCharsAndBytes() throws Exception {
+    // three bytes per character in UTF-8
+    SgfGame game = SgfFileManager.createFromString("(;GM[1]SZ[19]C[\u56f2\u7881];B[pd])");
+    Path file = Files.createTempFile("golab-", ".sgf");
+    Path dump = Files.createTempFile("golab-", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("net.vclj.golab.SgfParse");
+      recording.enable("net.vclj.golab.SgfWrite");
+      recording.start();
+      SgfFileManager.writeToFile(game, file, "UTF-8");
+      SgfFileManager.createFromPath(file);
+      recording.stop();
+      recording.dump(dump);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    Files.delete(dump);
+    long bytes = Files.size(file);
+    String sgf = new String(Files.readAllBytes(file), "UTF-8");
+    Files.delete(file);
+    RecordedEvent write = events.stream().filter(e -> e.getEventType().getName().equals("net.vclj.golab.SgfWrite"))
+        .findFirst().get();
+    assertEquals(bytes, write.getLong("byteSize"));
+    RecordedEvent parse = events.stream().filter(e -> e.getEventType().getName().equals("net.vclj.golab.SgfParse"))
+        .findFirst().get();
+    assertEquals(sgf.length(), parse.getLong("charCount"));
+    assertEquals(bytes - 4, parse.getLong("charCount"));
+  }
+
+  @Test
+  public void testFailedRead() throws Exception {
+    Path dump = Files.createTempFile("golab-", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("net.vclj.golab.SgfRead");
+      recording.start();
+      assertThrows(RuntimeException.class, () -> SgfFileManager.createFromString("(;GM[1]C[not terminated"));
+      recording.stop();
+      recording.dump(dump);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    Files.delete(dump);
+    assertEquals(1, events.size());
+    assertTrue(events.get(0).getBoolean("failed"));
+    assertEquals("string", events.get(0).getString("source"));
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    Path dump = Files.createTempFile("golab-", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.start();
+      SgfFileManager.createFromPath(Paths.get("./src/main/resources/sgf/game-branching-simple.sgf"));
+      recording.stop();
+      recording.dump(dump);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    Files.delete(dump);
+    assertFalse(events.stream().anyMatch(e -> e.getEventType().getName().startsWith("net.vclj.golab.")));
+  }
+}
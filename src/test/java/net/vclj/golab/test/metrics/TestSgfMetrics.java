@@ -0,0 +1,55 @@
+package net.vclj.golab.test.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.vclj.golab.format.SgfFileManager;
+import net.vclj.golab.format.SgfParseException;
+import net.vclj.golab.metrics.SgfMetrics;
+
+public class TestSgfMetrics {
+  private SimpleMeterRegistry registry;
+
+  @BeforeEach
+  public void setUp() {
+    registry = new SimpleMeterRegistry();
+    SgfMetrics.setRegistry(registry);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    SgfMetrics.setRegistry(Metrics.globalRegistry);
+  }
+
+  @Test
+  public void testFileRead() throws Exception {
+    Path path = Paths.get("./src/main/resources/sgf/simple-12-move-game.sgf");
+    SgfFileManager.createFromPath(path);
+
+    assertEquals(1, registry.get("golab.sgf.read").tag("source", "file").tag("outcome", "success").timer().count());
+    assertEquals(1.0, registry.get("golab.sgf.games").tag("source", "file").counter().count());
+    assertEquals((double) Files.size(path), registry.get("golab.sgf.bytes").tag("source", "file").counter().count());
+    assertEquals(1, registry.get("golab.sgf.parse").tag("outcome", "success").timer().count());
+    assertEquals(13.0, registry.get("golab.sgf.nodes").counter().count());
+    assertEquals(1, registry.get("golab.sgf.postprocess").timer().count());
+  }
+
+  @Test
+  public void testParseFailure() {
+    assertThrows(SgfParseException.class, () -> {
+      SgfFileManager.createFromString("(;GM[1]ZZZ[unknown];B[aa])");
+    });
+    assertEquals(1, registry.get("golab.sgf.parse").tag("outcome", "failure").timer().count());
+    assertEquals(1.0,
+        registry.get("golab.sgf.games").tag("source", "string").tag("outcome", "failure").counter().count());
+  }
+}
@@ -0,0 +1,252 @@
+package net.vclj.golab.test.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.vclj.golab.entity.CoordinateCodec;
+import net.vclj.golab.entity.Game;
+import net.vclj.golab.entity.Move;
+import net.vclj.golab.format.SgfGame;
+import net.vclj.golab.format.SgfGameNode;
+import net.vclj.golab.format.SgfGenerator;
+import net.vclj.golab.format.SgfParser;
+import net.vclj.golab.service.GameMapper;
+import net.vclj.golab.store.GameRecord;
+import net.vclj.golab.store.GameStore;
+import net.vclj.golab.store.GameStoreWriter;
+
+public class TestGameStore {
+  private Path dir;
+
+  @BeforeEach
+  public void createDirectory() throws IOException {
+    dir = Files.createTempDirectory("golab-store-");
+  }
+
+  @AfterEach
+  public void deleteDirectory() throws IOException {
+    Files.walk(dir).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+  }
+
+  private static List<SgfGame> generate(int count) {
+    SgfGenerator generator = new SgfGenerator(35);
+    generator.setMoves(10, 120);
+    generator.setVariations(0.05, 8, 3);
+    generator.setComments(0.1, 30, 0.2);
+    List<SgfGame> rtrn = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      rtrn.add(SgfParser.parse(generator.generate(i)));
+    }
+    return rtrn;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    List<SgfGame> games = generate(300);
+    Path base = dir.resolve("games");
+    // small regions so that records are padded across region boundaries
+    try (GameStoreWriter writer = GameStoreWriter.open(base, 12)) {
+      for (int i = 0; i < games.size(); i++) {
+        assertEquals(i, writer.append(games.get(i)));
+      }
+    }
+
+    try (GameStore store = GameStore.open(base)) {
+      assertEquals(games.size(), store.size());
+      GameRecord record = new GameRecord();
+      for (int i = games.size() - 1; i >= 0; i--) {
+        SgfGame game = games.get(i);
+        store.get(i, record);
+        assertEquals(i, record.getIndex());
+        assertEquals(game.getProperty("PB"), record.getProperty("PB"));
+        assertEquals(game.getProperty("SZ"), record.getProperty("SZ"));
+        assertNull(record.getProperty("XX"));
+        // decoded values : soft line breaks of the original text are not kept
+        SgfGame decoded = record.toSgfGame();
+        assertEquals(game.getProperties(), decoded.getProperties());
+        assertEquals(nodeProperties(game), nodeProperties(decoded));
+      }
+      assertThrows(IndexOutOfBoundsException.class, () -> store.get(games.size()));
+    }
+  }
+
+  @Test
+  public void testNodes() {
+    SgfGame game = SgfParser.parse("(;GM[1]SZ[9];B[ee];W[]C[pass](;B[cc];W[gg])(;B[gc]))");
+    Path base = dir.resolve("nodes");
+    try (GameStoreWriter writer = GameStoreWriter.open(base)) {
+      writer.append(game);
+    }
+    try (GameStore store = GameStore.open(base)) {
+      GameRecord record = store.get(0);
+      assertEquals(6, record.getNodeCount());
+      assertEquals(5, record.getMoveCount());
+      List<String> nodes = new ArrayList<>();
+      record.forEachNode((node, parent, color, point) -> nodes
+          .add(node + ":" + parent + ":" + color + ":" + (point == CoordinateCodec.PASS ? "" : CoordinateCodec.pointToSgf(point))));
+      assertEquals("[0:-1:0:, 1:0:1:ee, 2:1:2:, 3:2:1:cc, 4:3:2:gg, 5:2:1:gc]", nodes.toString());
+      assertEquals("pass", record.toSgfGame().getRootNode().getChildren().get(0).getChildren().get(0).getProperty("C"));
+    }
+  }
+
+  @Test
+  public void testAppendAndScan() throws IOException {
+    List<SgfGame> games = generate(400);
+    Path base = dir.resolve("scan");
+    try (GameStoreWriter writer = GameStoreWriter.open(base)) {
+      for (SgfGame game : games.subList(0, 100)) {
+        writer.append(game);
+      }
+    }
+    Path sgfFile = dir.resolve("game.sgf");
+    Files.write(sgfFile, games.get(100).toString().getBytes("UTF-8"));
+    try (GameStoreWriter writer = GameStoreWriter.open(base)) {
+      assertEquals(100, writer.getCount());
+      assertEquals(100, writer.appendFile(sgfFile));
+      for (SgfGame game : games.subList(101, games.size())) {
+        writer.append(game);
+      }
+    }
+
+    long expected = 0;
+    for (SgfGame game : games) {
+      expected += countNodes(game);
+    }
+    try (GameStore store = GameStore.open(base)) {
+      assertEquals(games.size(), store.size());
+      AtomicLong nodes = new AtomicLong();
+      store.forEach(record -> nodes.addAndGet(record.getNodeCount()));
+      assertEquals(expected, nodes.get());
+
+      AtomicLong parallelNodes = new AtomicLong();
+      AtomicLong visited = new AtomicLong();
+      store.parallelForEach(record -> {
+        parallelNodes.addAndGet(record.getNodeCount());
+        record.forEachNode((node, parent, color, point) -> visited.incrementAndGet());
+      });
+      assertEquals(expected, parallelNodes.get());
+      assertEquals(expected, visited.get());
+    }
+  }
+
+  @Test
+  public void testReadWhileWriting() {
+    // small games : many index entries per data buffer
+    List<SgfGame> games = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      games.add(SgfParser.parse("(;GM[1]SZ[9]PB[p" + i + "];B[ee];W[cc])"));
+    }
+    Path base = dir.resolve("live");
+    try (GameStoreWriter writer = GameStoreWriter.open(base)) {
+      // the headers are written at once : an empty store
+      try (GameStore store = GameStore.open(base)) {
+        assertEquals(0, store.size());
+      }
+      int seen = 0;
+      for (int i = 0; i < games.size(); i++) {
+        writer.append(games.get(i));
+        if (i % 100 == 0) {
+          // the games present, the last one complete
+          try (GameStore store = GameStore.open(base)) {
+            assertTrue(store.size() >= seen && store.size() <= i + 1);
+            seen = store.size();
+            if (seen > 0) {
+              assertEquals("p" + (seen - 1), store.get(seen - 1).getProperty("PB"));
+            }
+          }
+        }
+      }
+      assertTrue(seen > 0);
+      writer.flush();
+      try (GameStore store = GameStore.open(base)) {
+        assertEquals(games.size(), store.size());
+      }
+    }
+  }
+
+  @Test
+  public void testEntities() {
+    List<SgfGame> games = generate(50);
+    List<Game> entities = new ArrayList<>();
+    for (SgfGame game : games) {
+      entities.add(GameMapper.toEntity(game));
+    }
+    Path base = dir.resolve("entities");
+    try (GameStoreWriter writer = GameStoreWriter.open(base)) {
+      assertEquals(50, writer.appendAll(entities));
+    }
+    try (GameStore store = GameStore.open(base)) {
+      for (int i = 0; i < entities.size(); i++) {
+        Game entity = entities.get(i);
+        GameRecord record = store.get(i);
+        assertEquals(entity.getProperties().get("PW"), record.getProperty("PW"));
+        // the first line of play of the entity is the main line of the record
+        SgfGame decoded = record.toSgfGame();
+        Game again = GameMapper.toEntity(decoded);
+        assertEquals(entity.getProperties(), again.getProperties());
+        assertEquals(moves(entity), moves(again));
+      }
+    }
+
+    // the moves of a game without valid size cannot be stored
+    Game invalid = GameMapper.toEntity(games.get(0));
+    invalid.getProperties().put("SZ", "big");
+    Path other = dir.resolve("invalid");
+    try (GameStoreWriter writer = GameStoreWriter.open(other)) {
+      assertThrows(IllegalArgumentException.class, () -> writer.append(invalid));
+      assertEquals(2, writer.appendAll(Arrays.asList(entities.get(1), invalid, entities.get(2))));
+    }
+    try (GameStore store = GameStore.open(other)) {
+      assertEquals(2, store.size());
+      assertEquals(moves(entities.get(2)), moves(GameMapper.toEntity(store.get(1).toSgfGame())));
+    }
+  }
+
+  private static List<String> moves(Game game) {
+    List<String> rtrn = new ArrayList<>();
+    for (Move move = game.getFirstMove(); move != null; move = move.getNextMoves().isEmpty()
+        ? null : move.getNextMoves().get(0)) {
+      rtrn.add(move.getPlayer() + move.getLocation() + move.getComment());
+    }
+    return rtrn;
+  }
+
+  private static List<Object> nodeProperties(SgfGame game) {
+    List<Object> rtrn = new ArrayList<>();
+    List<SgfGameNode> stack = new ArrayList<>();
+    stack.add(game.getRootNode());
+    while (!stack.isEmpty()) {
+      SgfGameNode node = stack.remove(stack.size() - 1);
+      rtrn.add(node.getProperties());
+      rtrn.add(node.getChildren().size());
+      for (int i = node.getChildren().size() - 1; i >= 0; i--) {
+        stack.add(node.getChildren().get(i));
+      }
+    }
+    return rtrn;
+  }
+
+  private static long countNodes(SgfGame game) {
+    long rtrn = 0;
+    List<SgfGameNode> stack = new ArrayList<>();
+    stack.add(game.getRootNode());
+    while (!stack.isEmpty()) {
+      SgfGameNode node = stack.remove(stack.size() - 1);
+      rtrn++;
+      stack.addAll(node.getChildren());
+    }
+    return rtrn;
+  }
+}